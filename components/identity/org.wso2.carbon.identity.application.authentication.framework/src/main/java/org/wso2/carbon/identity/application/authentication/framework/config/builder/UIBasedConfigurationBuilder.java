@@ -20,10 +20,13 @@ package org.wso2.carbon.identity.application.authentication.framework.config.bui
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.authentication.framework.ApplicationAuthenticator;
+import org.wso2.carbon.identity.application.authentication.framework.config.ConfigurationFacade;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.ApplicationConfig;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.AuthenticatorConfig;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.SequenceConfig;
@@ -40,12 +43,25 @@ import org.wso2.carbon.identity.application.common.model.RequestPathAuthenticato
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
 import org.wso2.carbon.identity.application.mgt.ApplicationInfoProvider;
 
+/**
+ * Builds the authentication sequence of a service provider from its configuration in the
+ * application management component. A built sequence is kept, per tenant, until the service
+ * provider or an identity provider of the tenant is changed, or the configured
+ * SequenceConfigCache timeout passes, and each request is given a copy of it.
+ */
 public class UIBasedConfigurationBuilder {
 
     private static Log log = LogFactory.getLog(UIBasedConfigurationBuilder.class);
 
+    private static final String SEQUENCE_CONFIG_CACHE = "SequenceConfigCache";
+    private static final int DEFAULT_SEQUENCE_CONFIG_CACHE_TIMEOUT = 300;
+
     private static volatile UIBasedConfigurationBuilder instance;
 
+    // built sequences of each tenant domain, keyed by the request type and the client id
+    private ConcurrentMap<String, ConcurrentMap<String, CachedSequence>> sequenceCache =
+            new ConcurrentHashMap<String, ConcurrentMap<String, CachedSequence>>();
+
     public static UIBasedConfigurationBuilder getInstance() {
         if (instance == null) {
             synchronized (UIBasedConfigurationBuilder.class) {
@@ -61,14 +77,61 @@ public class UIBasedConfigurationBuilder {
     public SequenceConfig getSequence(String reqType, String clientId, String tenantDomain)
             throws FrameworkException {
 
-        SequenceConfig sequenceConfig = null;
-        ApplicationInfoProvider appInfo = ApplicationInfoProvider.getInstance();
-        
         // special case for OpenID Connect, these clients are stored as OAuth2 clients
         if("oidc".equals(reqType)) {
         	reqType = "oauth2";
         }
 
+        String cacheKey = reqType + ":" + clientId;
+        ConcurrentMap<String, CachedSequence> tenantSequences = sequenceCache.get(String.valueOf(tenantDomain));
+        if (tenantSequences != null) {
+            CachedSequence cachedSequence = tenantSequences.get(cacheKey);
+            if (cachedSequence != null && cachedSequence.expiryTime > System.currentTimeMillis()) {
+                return new SequenceConfig(cachedSequence.sequenceConfig);
+            }
+        }
+
+        SequenceConfig sequenceConfig = buildSequence(reqType, clientId, tenantDomain);
+
+        long timeout = getCacheTimeout();
+        if (timeout > 0) {
+            if (tenantSequences == null) {
+                tenantSequences = new ConcurrentHashMap<String, CachedSequence>();
+                ConcurrentMap<String, CachedSequence> existing =
+                        sequenceCache.putIfAbsent(String.valueOf(tenantDomain), tenantSequences);
+                if (existing != null) {
+                    tenantSequences = existing;
+                }
+            }
+            // the cached sequence is never handed out, so that it is not changed by a request
+            tenantSequences.put(cacheKey, new CachedSequence(new SequenceConfig(sequenceConfig),
+                    System.currentTimeMillis() + timeout * 1000));
+        }
+        return sequenceConfig;
+    }
+
+    /**
+     * Drops the sequences built for the service providers of a tenant
+     *
+     * @param tenantDomain tenant domain
+     */
+    public void clearSequences(String tenantDomain) {
+        sequenceCache.remove(String.valueOf(tenantDomain));
+    }
+
+    /**
+     * Drops the sequences built for all the tenants, e.g. when an authenticator is added or removed
+     */
+    public void clearSequences() {
+        sequenceCache.clear();
+    }
+
+    private SequenceConfig buildSequence(String reqType, String clientId, String tenantDomain)
+            throws FrameworkException {
+
+        SequenceConfig sequenceConfig = null;
+        ApplicationInfoProvider appInfo = ApplicationInfoProvider.getInstance();
+
         ServiceProvider serviceProvider;
 
         try {
@@ -216,4 +279,20 @@ public class UIBasedConfigurationBuilder {
         }
     }
 
+    private long getCacheTimeout() {
+        Integer timeout = ConfigurationFacade.getInstance().getCacheTimeouts().get(SEQUENCE_CONFIG_CACHE);
+        return timeout != null ? timeout : DEFAULT_SEQUENCE_CONFIG_CACHE_TIMEOUT;
+    }
+
+    private static class CachedSequence {
+
+        private SequenceConfig sequenceConfig;
+        private long expiryTime;
+
+        private CachedSequence(SequenceConfig sequenceConfig, long expiryTime) {
+            this.sequenceConfig = sequenceConfig;
+            this.expiryTime = expiryTime;
+        }
+    }
+
 }
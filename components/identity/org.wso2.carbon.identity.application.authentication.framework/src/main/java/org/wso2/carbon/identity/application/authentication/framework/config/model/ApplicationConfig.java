@@ -119,6 +119,29 @@ public class ApplicationConfig implements Serializable {
         }
     }
 
+    /**
+     * Copies the configuration of an application, leaving out the state of the
+     * authentication request it was used for
+     *
+     * @param applicationConfig
+     */
+    public ApplicationConfig(ApplicationConfig applicationConfig) {
+        this.serviceProvider = applicationConfig.serviceProvider;
+        this.applicationID = applicationConfig.applicationID;
+        this.applicationName = applicationConfig.applicationName;
+        this.roleClaim = applicationConfig.roleClaim;
+        this.alwaysSendMappedLocalSubjectId = applicationConfig.alwaysSendMappedLocalSubjectId;
+        this.subjectClaimUri = applicationConfig.subjectClaimUri;
+        this.permissions = applicationConfig.permissions;
+        this.claimMappings = applicationConfig.claimMappings != null ?
+                new HashMap<String, String>(applicationConfig.claimMappings) : null;
+        this.roleMappings = applicationConfig.roleMappings != null ?
+                new HashMap<String, String>(applicationConfig.roleMappings) : null;
+        this.requestedClaims = applicationConfig.requestedClaims != null ?
+                new HashMap<String, String>(applicationConfig.requestedClaims) : null;
+        this.isSaaSApp = applicationConfig.isSaaSApp;
+    }
+
     public int getApplicationID() {
         return applicationID;
     }
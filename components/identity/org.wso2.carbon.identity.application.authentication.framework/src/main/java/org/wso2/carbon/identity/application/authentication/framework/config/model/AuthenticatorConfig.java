@@ -47,6 +47,21 @@ public class AuthenticatorConfig implements Serializable {
     public AuthenticatorConfig() {
     }
 
+    /**
+     * Copies the configuration of an authenticator, leaving out the state of
+     * the authentication request it was used for
+     *
+     * @param authenticatorConfig
+     */
+    public AuthenticatorConfig(AuthenticatorConfig authenticatorConfig) {
+        this.name = authenticatorConfig.name;
+        this.enabled = authenticatorConfig.enabled;
+        this.applicationAuthenticator = authenticatorConfig.applicationAuthenticator;
+        this.parameterMap = authenticatorConfig.parameterMap;
+        this.idps.putAll(authenticatorConfig.idps);
+        this.idpNames.addAll(authenticatorConfig.idpNames);
+    }
+
 	public AuthenticatorConfig(String name, boolean enabled, 
 	                            Map<String, String> parameterMap) {
 		this.name = name;
@@ -51,6 +51,28 @@ public class SequenceConfig implements Serializable {
 	private AuthenticatorConfig authenticatedReqPathAuthenticator;
 	
 	public SequenceConfig() {}
+
+	/**
+	 * Copies the configuration of a sequence, leaving out the state of the
+	 * authentication request it was used for
+	 * 
+	 * @param sequenceConfig
+	 */
+	public SequenceConfig(SequenceConfig sequenceConfig) {
+		this.name = sequenceConfig.name;
+		this.isForceAuthn = sequenceConfig.isForceAuthn;
+		this.isCheckAuthn = sequenceConfig.isCheckAuthn;
+		this.applicationId = sequenceConfig.applicationId;
+		if (sequenceConfig.applicationConfig != null) {
+			this.applicationConfig = new ApplicationConfig(sequenceConfig.applicationConfig);
+		}
+		for (Map.Entry<Integer, StepConfig> step : sequenceConfig.stepMap.entrySet()) {
+			this.stepMap.put(step.getKey(), new StepConfig(step.getValue()));
+		}
+		for (AuthenticatorConfig authenticatorConfig : sequenceConfig.reqPathAuthenticators) {
+			this.reqPathAuthenticators.add(new AuthenticatorConfig(authenticatorConfig));
+		}
+	}
 	
 	public String getName() {
 		return name;
@@ -51,6 +51,24 @@ public class StepConfig implements Serializable {
 	private boolean retrying;
 
 	public StepConfig() {}
+
+	/**
+	 * Copies the configuration of a step, leaving out the state of the
+	 * authentication request it was used for
+	 * 
+	 * @param stepConfig
+	 */
+	public StepConfig(StepConfig stepConfig) {
+		this.order = stepConfig.order;
+		this.loginPage = stepConfig.loginPage;
+		this.subjectIdentifierStep = stepConfig.subjectIdentifierStep;
+		this.subjectAttributeStep = stepConfig.subjectAttributeStep;
+		this.multiOption = stepConfig.multiOption;
+		for (AuthenticatorConfig authenticatorConfig : stepConfig.authenticatorList) {
+			this.authenticatorList.add(new AuthenticatorConfig(authenticatorConfig));
+		}
+		this.authenticatorMappings.addAll(stepConfig.authenticatorMappings);
+	}
 	
 	/**
 	 * 
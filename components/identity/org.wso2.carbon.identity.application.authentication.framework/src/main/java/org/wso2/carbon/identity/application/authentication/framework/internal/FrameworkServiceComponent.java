@@ -32,12 +32,17 @@ import org.wso2.carbon.identity.application.authentication.framework.Application
 import org.wso2.carbon.identity.application.authentication.framework.FederatedApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authentication.framework.LocalApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authentication.framework.RequestPathApplicationAuthenticator;
+import org.wso2.carbon.identity.application.authentication.framework.config.builder.UIBasedConfigurationBuilder;
+import org.wso2.carbon.identity.application.authentication.framework.listener.CacheClearingApplicationMgtListener;
+import org.wso2.carbon.identity.application.authentication.framework.listener.CacheClearingIdentityProviderMgtListener;
 import org.wso2.carbon.identity.application.authentication.framework.servlet.CommonAuthenticationServlet;
 import org.wso2.carbon.identity.application.common.ApplicationAuthenticatorService;
 import org.wso2.carbon.identity.application.common.model.FederatedAuthenticatorConfig;
 import org.wso2.carbon.identity.application.common.model.LocalAuthenticatorConfig;
 import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.application.common.model.RequestPathAuthenticatorConfig;
+import org.wso2.carbon.identity.application.mgt.listener.ApplicationMgtListener;
+import org.wso2.carbon.idp.mgt.listener.IdentityProviderMgtLister;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.core.service.RealmService;
 
@@ -80,6 +85,8 @@ public class FrameworkServiceComponent {
     protected void activate(ComponentContext ctxt) {
 		bundleContext = ctxt.getBundleContext();
         bundleContext.registerService(ApplicationAuthenticationService.class.getName(), new ApplicationAuthenticationService(), null);
+        bundleContext.registerService(ApplicationMgtListener.class.getName(), new CacheClearingApplicationMgtListener(), null);
+        bundleContext.registerService(IdentityProviderMgtLister.class.getName(), new CacheClearingIdentityProviderMgtListener(), null);
 
 		ServiceTracker authServiceTracker = new ServiceTracker(
 				bundleContext,
@@ -93,6 +100,7 @@ public class FrameworkServiceComponent {
 								.getBundle().getBundleContext()
 								.getService(serviceReference);
 						authenticators.add(authenticator);
+						UIBasedConfigurationBuilder.getInstance().clearSequences();
 						
 						Property[] configProperties = null;
 						
@@ -139,6 +147,7 @@ public class FrameworkServiceComponent {
 							ServiceReference<ApplicationAuthenticator> serviceReference,
 							ApplicationAuthenticator authenticator) {
 						authenticators.remove(authenticator);
+						UIBasedConfigurationBuilder.getInstance().clearSequences();
 						String authenticatorName = authenticator.getName();
 						ApplicationAuthenticatorService appAuthenticatorService = ApplicationAuthenticatorService.getInstance();
 						
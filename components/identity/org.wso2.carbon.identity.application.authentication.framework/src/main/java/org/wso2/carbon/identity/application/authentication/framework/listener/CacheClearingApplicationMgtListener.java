@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authentication.framework.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authentication.framework.config.builder.UIBasedConfigurationBuilder;
+import org.wso2.carbon.identity.application.common.model.ServiceProvider;
+import org.wso2.carbon.identity.application.mgt.listener.ApplicationMgtListener;
+
+/**
+ * Drops the authentication sequences built for the service providers of a tenant when one of them
+ * is changed
+ */
+public class CacheClearingApplicationMgtListener implements ApplicationMgtListener {
+
+    private static Log log = LogFactory.getLog(CacheClearingApplicationMgtListener.class);
+
+    @Override
+    public void createApplication(ServiceProvider serviceProvider) {
+        clearSequences(serviceProvider.getApplicationName());
+    }
+
+    @Override
+    public void updateApplication(ServiceProvider serviceProvider) {
+        clearSequences(serviceProvider.getApplicationName());
+    }
+
+    @Override
+    public void deleteApplication(String applicationName) {
+        clearSequences(applicationName);
+    }
+
+    private void clearSequences(String applicationName) {
+        String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        if (log.isDebugEnabled()) {
+            log.debug("Clearing authentication sequences of tenant " + tenantDomain + " as application "
+                    + applicationName + " is changed");
+        }
+        UIBasedConfigurationBuilder.getInstance().clearSequences(tenantDomain);
+    }
+}
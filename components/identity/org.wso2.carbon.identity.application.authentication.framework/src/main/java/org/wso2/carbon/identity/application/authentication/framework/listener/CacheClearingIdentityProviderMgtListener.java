@@ -0,0 +1,64 @@
+/*
+ *  Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authentication.framework.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authentication.framework.config.builder.UIBasedConfigurationBuilder;
+import org.wso2.carbon.identity.application.common.model.IdentityProvider;
+import org.wso2.carbon.idp.mgt.listener.IdentityProviderMgtLister;
+
+/**
+ * Drops the authentication sequences built for the service providers of a tenant when an identity
+ * provider of the tenant is changed, as the sequences hold the identity providers of their steps
+ */
+public class CacheClearingIdentityProviderMgtListener implements IdentityProviderMgtLister {
+
+    private static Log log = LogFactory.getLog(CacheClearingIdentityProviderMgtListener.class);
+
+    @Override
+    public void updateResidentIdP(IdentityProvider identityProvider) {
+        clearSequences(identityProvider.getIdentityProviderName());
+    }
+
+    @Override
+    public void addIdP(IdentityProvider identityProvider) {
+        clearSequences(identityProvider.getIdentityProviderName());
+    }
+
+    @Override
+    public void deleteIdP(String idPName) {
+        clearSequences(idPName);
+    }
+
+    @Override
+    public void updateIdP(String oldIdPName, IdentityProvider identityProvider) {
+        clearSequences(oldIdPName);
+    }
+
+    private void clearSequences(String idPName) {
+        String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        if (log.isDebugEnabled()) {
+            log.debug("Clearing authentication sequences of tenant " + tenantDomain + " as identity provider "
+                    + idPName + " is changed");
+        }
+        UIBasedConfigurationBuilder.getInstance().clearSequences(tenantDomain);
+    }
+}
@@ -29,10 +29,13 @@ public class SessionContextDO {
 
     private Object entry;
 
+    private long queuedTime;
+
     public SessionContextDO(String key, String type, Object entry) {
         this.type = type;
         this.key = key;
         this.entry = entry;
+        this.queuedTime = System.currentTimeMillis();
     }
 
     public String getKey() {
@@ -58,4 +61,8 @@ public class SessionContextDO {
     public void setEntry(Object entry) {
         this.entry = entry;
     }
+
+    public long getQueuedTime() {
+        return queuedTime;
+    }
 }
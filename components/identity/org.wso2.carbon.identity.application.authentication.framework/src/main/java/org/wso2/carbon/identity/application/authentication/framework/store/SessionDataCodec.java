@@ -0,0 +1,47 @@
+/*
+*  Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.identity.application.authentication.framework.store;
+
+import java.io.IOException;
+
+/**
+ *  Converts session data objects to and from the bytes stored in the session store. Implementations must be
+ *  able to decode every format they have encoded before, as rows outlive the server that wrote them.
+ */
+public interface SessionDataCodec {
+
+    /**
+     * Encodes the session data object
+     *
+     * @param object session data object
+     * @return encoded bytes
+     * @throws IOException if the object can not be encoded
+     */
+    byte[] encode(Object object) throws IOException;
+
+    /**
+     * Decodes the bytes of a stored session data object
+     *
+     * @param data encoded bytes
+     * @return session data object
+     * @throws IOException if the data is corrupted or in an unknown format
+     * @throws ClassNotFoundException if a class of the object graph is not available
+     */
+    Object decode(byte[] data) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,177 @@
+/*
+*  Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.identity.application.authentication.framework.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Task to persist and remove session data in batches. A batch is closed either when it reaches the
+ *  configured size or when the configured time window has elapsed since its first entry. Within a batch,
+ *  only the last operation on a session is written, as it overrides the earlier ones.
+ */
+public class SessionDataPersistBatchTask implements Runnable {
+
+    private static Log log = LogFactory.getLog(SessionDataPersistBatchTask.class);
+
+    private static volatile long batchCount;
+
+    private static volatile long persistedCount;
+
+    private static volatile long removedCount;
+
+    private static volatile long coalescedCount;
+
+    private static volatile long lastLag;
+
+    private static volatile long maxLag;
+
+    private BlockingDeque<SessionContextDO> sessionContextQueue;
+
+    private int batchSize;
+
+    private long batchWindow;
+
+    public SessionDataPersistBatchTask(BlockingDeque<SessionContextDO> sessionContextQueue, int batchSize,
+                                       long batchWindow) {
+        this.sessionContextQueue = sessionContextQueue;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.batchWindow = batchWindow > 0 ? batchWindow : 0;
+    }
+
+    @Override
+    public void run() {
+
+        log.debug("Session Context batch persist consumer is started");
+
+        while (true) {
+            try {
+                List<SessionContextDO> batch = nextBatch();
+                persistBatch(batch);
+            } catch (InterruptedException e) {
+                //ignore
+                log.error(e);
+            } catch (Throwable e) {
+                log.error("Error while persisting a batch of session data", e);
+            }
+        }
+    }
+
+    private List<SessionContextDO> nextBatch() throws InterruptedException {
+
+        List<SessionContextDO> batch = new ArrayList<SessionContextDO>(batchSize);
+        batch.add(sessionContextQueue.takeFirst());
+        long deadline = System.currentTimeMillis() + batchWindow;
+        while (batch.size() < batchSize) {
+            if (sessionContextQueue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            SessionContextDO sessionContextDO = sessionContextQueue.pollFirst(remaining, TimeUnit.MILLISECONDS);
+            if (sessionContextDO == null) {
+                break;
+            }
+            batch.add(sessionContextDO);
+        }
+        return batch;
+    }
+
+    private void persistBatch(List<SessionContextDO> batch) {
+
+        // the last operation on each session, in the order the sessions were first seen
+        Map<String, SessionContextDO> operations = new LinkedHashMap<String, SessionContextDO>();
+        long oldestQueuedTime = Long.MAX_VALUE;
+        for (SessionContextDO sessionContextDO : batch) {
+            operations.put(sessionContextDO.getType() + ":" + sessionContextDO.getKey(), sessionContextDO);
+            if (sessionContextDO.getQueuedTime() < oldestQueuedTime) {
+                oldestQueuedTime = sessionContextDO.getQueuedTime();
+            }
+        }
+
+        List<SessionContextDO> stores = new ArrayList<SessionContextDO>();
+        List<SessionContextDO> removals = new ArrayList<SessionContextDO>();
+        for (SessionContextDO sessionContextDO : operations.values()) {
+            if (sessionContextDO.getEntry() == null) {
+                removals.add(sessionContextDO);
+            } else {
+                stores.add(sessionContextDO);
+            }
+        }
+
+        SessionDataStore sessionDataStore = SessionDataStore.getInstance();
+        if (!stores.isEmpty()) {
+            sessionDataStore.persistSessionData(stores);
+        }
+        if (!removals.isEmpty()) {
+            sessionDataStore.removeSessionData(removals);
+        }
+
+        // time the oldest operation of the batch has waited before reaching the database
+        long lag = System.currentTimeMillis() - oldestQueuedTime;
+        int coalesced = batch.size() - operations.size();
+        batchCount++;
+        persistedCount += stores.size();
+        removedCount += removals.size();
+        coalescedCount += coalesced;
+        lastLag = lag;
+        if (lag > maxLag) {
+            maxLag = lag;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Session data batch persisted. Stored : " + stores.size() + ", removed : " +
+                    removals.size() + ", coalesced : " + coalesced + ", lag : " + lag + "ms, queue depth : " +
+                    sessionContextQueue.size());
+        }
+    }
+
+    public static long getBatchCount() {
+        return batchCount;
+    }
+
+    public static long getPersistedCount() {
+        return persistedCount;
+    }
+
+    public static long getRemovedCount() {
+        return removedCount;
+    }
+
+    public static long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public static long getLastLag() {
+        return lastLag;
+    }
+
+    public static long getMaxLag() {
+        return maxLag;
+    }
+}
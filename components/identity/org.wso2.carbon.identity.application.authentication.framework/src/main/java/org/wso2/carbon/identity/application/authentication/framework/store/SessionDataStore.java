@@ -27,6 +27,7 @@ import org.wso2.carbon.identity.core.util.IdentityUtil;
 
 import java.io.*;
 import java.sql.*;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -52,10 +53,25 @@ public class SessionDataStore {
     private String sqlSelect;
     
     private String sqlDeleteTask; 
+
+    private String sqlUpsert;
+
+    private SessionDataCodec sessionDataCodec;
+
+    // reads the rows which the configured codec does not recognize, i.e. rows written before it was configured
+    private SessionDataCodec defaultSessionDataCodec = new DefaultSessionDataCodec();
     
     private static int maxPoolSize = 100;
 
-    private static BlockingDeque<SessionContextDO> sessionContextQueue = new LinkedBlockingDeque<SessionContextDO> ();
+    private static boolean enableBatchPersist = false;
+
+    private static int batchPersistSize = 100;
+
+    private static long batchPersistWindow = 100;
+
+    private static int persistQueueSize = 10000;
+
+    private static BlockingDeque<SessionContextDO> sessionContextQueue;
     
     private static Log log = LogFactory.getLog(SessionDataStore.class);
     
@@ -68,13 +84,47 @@ public class SessionDataStore {
 		} catch (Exception e) {
 		}
 
-		if (maxPoolSize > 0) {
-			log.info("Thread pool size for session persistent consumer : " + maxPoolSize);
+		enableBatchPersist = Boolean.parseBoolean(
+				IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.Batch.Enable"));
+		try {
+			batchPersistSize =
+			              Integer.parseInt(IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.Batch.Size"));
+		} catch (Exception e) {
+		}
+		try {
+			batchPersistWindow =
+			              Long.parseLong(IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.Batch.Window"));
+		} catch (Exception e) {
+		}
+		try {
+			persistQueueSize =
+			              Integer.parseInt(IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.QueueSize"));
+		} catch (Exception e) {
+		}
 
-			ExecutorService threadPool = Executors.newFixedThreadPool(maxPoolSize);
+		if (enableBatchPersist && persistQueueSize > 0) {
+			sessionContextQueue = new LinkedBlockingDeque<SessionContextDO>(persistQueueSize);
+		} else {
+			sessionContextQueue = new LinkedBlockingDeque<SessionContextDO>();
+		}
 
-			for (int i = 0; i < maxPoolSize; i++) {
-				threadPool.execute(new SessionDataPersistTask(sessionContextQueue));
+		if (maxPoolSize > 0) {
+			if (enableBatchPersist) {
+				// a single batch consumer keeps the operations on a session in order, so that they can be
+				// coalesced before reaching the database
+				log.info("Batch persistence of session data is enabled. Batch size : " + batchPersistSize +
+				         ", batch window : " + batchPersistWindow + "ms, queue size : " + persistQueueSize);
+				ExecutorService threadPool = Executors.newSingleThreadExecutor();
+				threadPool.execute(new SessionDataPersistBatchTask(sessionContextQueue, batchPersistSize,
+				                                                   batchPersistWindow));
+			} else {
+				log.info("Thread pool size for session persistent consumer : " + maxPoolSize);
+
+				ExecutorService threadPool = Executors.newFixedThreadPool(maxPoolSize);
+
+				for (int i = 0; i < maxPoolSize; i++) {
+					threadPool.execute(new SessionDataPersistTask(sessionContextQueue));
+				}
 			}
 		}
 
@@ -87,6 +137,28 @@ public class SessionDataStore {
     private static final String SQL_CHECK_SERIALIZED_OBJECT = "SELECT SESSION_ID FROM IDN_AUTH_SESSION_STORE WHERE SESSION_ID = ? AND SESSION_TYPE=?";
     private static final String SQL_DELETE_SERIALIZED_OBJECT = "DELETE FROM IDN_AUTH_SESSION_STORE WHERE SESSION_ID = ? AND SESSION_TYPE=?";
     private static final String SQL_DELETE_SERIALIZED_OBJECT_TASK = "DELETE FROM IDN_AUTH_SESSION_STORE WHERE TIME_CREATED<?";
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_MYSQL = "INSERT INTO IDN_AUTH_SESSION_STORE(SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE SESSION_OBJECT=VALUES(SESSION_OBJECT)";
+    // H2 merge replaces the whole row, so the creation time of an existing row is selected back into it
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_H2 = "MERGE INTO IDN_AUTH_SESSION_STORE(SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) KEY(SESSION_ID, SESSION_TYPE) SELECT ?, ?, ?, COALESCE((SELECT TIME_CREATED FROM IDN_AUTH_SESSION_STORE WHERE SESSION_ID =? AND SESSION_TYPE=?), ?)";
+    // needs PostgreSQL 9.5 or later, older versions fall back to storing each entry separately
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_POSTGRESQL = "INSERT INTO IDN_AUTH_SESSION_STORE(SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) VALUES (?, ?, ?, ?) ON CONFLICT (SESSION_ID, SESSION_TYPE) DO UPDATE SET SESSION_OBJECT=EXCLUDED.SESSION_OBJECT";
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_ORACLE = "MERGE INTO IDN_AUTH_SESSION_STORE T USING (SELECT ? SESSION_ID, ? SESSION_TYPE FROM DUAL) S ON (T.SESSION_ID = S.SESSION_ID AND T.SESSION_TYPE = S.SESSION_TYPE) WHEN MATCHED THEN UPDATE SET T.SESSION_OBJECT =? WHEN NOT MATCHED THEN INSERT (SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) VALUES (S.SESSION_ID, S.SESSION_TYPE, ?, ?)";
+    // HOLDLOCK keeps two concurrent merges of a new session from both inserting it
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_MSSQL = "MERGE INTO IDN_AUTH_SESSION_STORE WITH (HOLDLOCK) AS T USING (SELECT ? AS SESSION_ID, ? AS SESSION_TYPE) AS S ON (T.SESSION_ID = S.SESSION_ID AND T.SESSION_TYPE = S.SESSION_TYPE) WHEN MATCHED THEN UPDATE SET SESSION_OBJECT =? WHEN NOT MATCHED THEN INSERT (SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) VALUES (S.SESSION_ID, S.SESSION_TYPE, ?, ?);";
+    private static final String SQL_UPSERT_SERIALIZED_OBJECT_DB2 = "MERGE INTO IDN_AUTH_SESSION_STORE T USING (VALUES (CAST(? AS VARCHAR(100)), CAST(? AS VARCHAR(100)))) AS S(SESSION_ID, SESSION_TYPE) ON (T.SESSION_ID = S.SESSION_ID AND T.SESSION_TYPE = S.SESSION_TYPE) WHEN MATCHED THEN UPDATE SET SESSION_OBJECT =? WHEN NOT MATCHED THEN INSERT (SESSION_ID, SESSION_TYPE, SESSION_OBJECT, TIME_CREATED) VALUES (S.SESSION_ID, S.SESSION_TYPE, ?, ?)";
+
+    private static final int UPSERT_SESSION_ID = 0;
+    private static final int UPSERT_SESSION_TYPE = 1;
+    private static final int UPSERT_SESSION_OBJECT = 2;
+    private static final int UPSERT_TIME_CREATED = 3;
+
+    // order of the upsert parameters, the configured upsert uses the default order
+    private static final int[] UPSERT_PARAMETERS_DEFAULT = {UPSERT_SESSION_ID, UPSERT_SESSION_TYPE,
+            UPSERT_SESSION_OBJECT, UPSERT_TIME_CREATED};
+    private static final int[] UPSERT_PARAMETERS_H2 = {UPSERT_SESSION_ID, UPSERT_SESSION_TYPE,
+            UPSERT_SESSION_OBJECT, UPSERT_SESSION_ID, UPSERT_SESSION_TYPE, UPSERT_TIME_CREATED};
+    private static final int[] UPSERT_PARAMETERS_MERGE = {UPSERT_SESSION_ID, UPSERT_SESSION_TYPE,
+            UPSERT_SESSION_OBJECT, UPSERT_SESSION_OBJECT, UPSERT_TIME_CREATED};
 
     private static volatile SessionDataStore instance;
 
@@ -101,6 +173,8 @@ public class SessionDataStore {
             String sqlCheck = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.SQL.Check");
             String sqlSelect = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.SQL.Select");
             String sqlDeleteTask = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.SQL.Task");
+            // upsert taking SESSION_ID, SESSION_TYPE, SESSION_OBJECT and TIME_CREATED, used by batch persistence
+            String sqlUpsert = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.SQL.Upsert");
             if(sqlStore != null && sqlStore.trim().length() > 0){
                 this.sqlStore = sqlStore;
             } else {
@@ -131,6 +205,9 @@ public class SessionDataStore {
             } else {
                 this.sqlDeleteTask = SQL_DELETE_SERIALIZED_OBJECT_TASK;
             }
+            if(sqlUpsert != null && sqlUpsert.trim().length() > 0){
+                this.sqlUpsert = sqlUpsert;
+            }
         } catch (IdentityException e) {
             //ignore
             log.error("Error while loading session data store manager", e);
@@ -140,6 +217,8 @@ public class SessionDataStore {
             log.info("Session Data Persistence of Authentication framework is not enabled.");
         }
 
+        sessionDataCodec = createSessionDataCodec();
+
         if(Boolean.parseBoolean(IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.CleanUp.Enable"))){
             String sessionCleanupPeriod = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.CleanUp.Period");
             if (sessionCleanupPeriod == null || sessionCleanupPeriod.trim().length() == 0) {
@@ -226,7 +305,7 @@ public class SessionDataStore {
         }
 
 		if (maxPoolSize > 0){
-			sessionContextQueue.push(new SessionContextDO(key, type, entry));
+			enqueueSessionContext(new SessionContextDO(key, type, entry));
 		} else {
 			persistSessionData(key, type, entry);
 		}
@@ -239,12 +318,47 @@ public class SessionDataStore {
         }
 
 		if (maxPoolSize > 0){		
-			sessionContextQueue.push(new SessionContextDO(key, type, null));
+			enqueueSessionContext(new SessionContextDO(key, type, null));
 		} else {
 			removeSessionData(key, type);
 		}
     }
 
+    /**
+     * Hands over a session data operation to the persistence consumers, in arrival order. In batch mode
+     * the queue is bounded and the caller is blocked until there is space in it.
+     *
+     * @param sessionContextDO session data operation to be persisted
+     */
+    private void enqueueSessionContext(SessionContextDO sessionContextDO) {
+
+        if (!enableBatchPersist) {
+            sessionContextQueue.addLast(sessionContextDO);
+            return;
+        }
+        try {
+            sessionContextQueue.putLast(sessionContextDO);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while queuing session data for persistence. Persisting it directly", e);
+            if (sessionContextDO.getEntry() == null) {
+                removeSessionData(sessionContextDO.getKey(), sessionContextDO.getType());
+            } else {
+                persistSessionData(sessionContextDO.getKey(), sessionContextDO.getType(),
+                                   sessionContextDO.getEntry());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of session data operations waiting to be persisted
+     *
+     * @return session data persistence queue depth
+     */
+    public static int getSessionDataQueueDepth() {
+        return sessionContextQueue.size();
+    }
+
     public void removeExpiredSessionData(Timestamp timestamp) {
 
         Connection connection = null;
@@ -344,8 +458,8 @@ public class SessionDataStore {
                 preparedStatement.setString(1, key);
                 preparedStatement.setString(2, type);
                 setBlobObject(preparedStatement, entry, 3);
+                preparedStatement.setTimestamp(4, new java.sql.Timestamp(new java.util.Date().getTime()));
             }
-            preparedStatement.setTimestamp(4, new java.sql.Timestamp(new java.util.Date().getTime()));
             preparedStatement.executeUpdate();
             connection.commit();
         } catch (IdentityException e) {
@@ -372,6 +486,181 @@ public class SessionDataStore {
     }
 
 
+    /**
+     * Stores a batch of session data with a single upsert batch. Falls back to storing each entry on its own
+     * if no upsert statement is known for the database, or if the batch fails.
+     *
+     * @param sessionContextDOs session data to be stored, at most one entry for each session
+     */
+    public void persistSessionData(List<SessionContextDO> sessionContextDOs){
+
+        if(!enablePersist){
+            return;
+        }
+
+        boolean persisted = false;
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        try {
+            connection = jdbcPersistenceManager.getDBConnection();
+            String upsert = getUpsertSQL(connection);
+            if (upsert != null) {
+                int[] parameters = getUpsertParameters(upsert);
+                connection.setAutoCommit(false);
+                preparedStatement = connection.prepareStatement(upsert);
+                Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+                for (SessionContextDO sessionContextDO : sessionContextDOs) {
+                    byte[] data = null;
+                    if (sessionContextDO.getEntry() != null) {
+                        data = sessionDataCodec.encode(sessionContextDO.getEntry());
+                    }
+                    for (int i = 0; i < parameters.length; i++) {
+                        switch (parameters[i]) {
+                            case UPSERT_SESSION_ID:
+                                preparedStatement.setString(i + 1, sessionContextDO.getKey());
+                                break;
+                            case UPSERT_SESSION_TYPE:
+                                preparedStatement.setString(i + 1, sessionContextDO.getType());
+                                break;
+                            case UPSERT_SESSION_OBJECT:
+                                setBlobData(preparedStatement, data, i + 1);
+                                break;
+                            default:
+                                preparedStatement.setTimestamp(i + 1, timestamp);
+                        }
+                    }
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+                persisted = true;
+            }
+        } catch (IdentityException e) {
+            log.error("Error while storing session data batch", e);
+        } catch (SQLException e) {
+            rollback(connection);
+            log.error("Error while storing session data batch. Storing each entry separately", e);
+        } catch (IOException e) {
+            rollback(connection);
+            log.error("Error while storing session data batch. Storing each entry separately", e);
+        } finally {
+            try {
+                if(preparedStatement != null){
+                    preparedStatement.close();
+                }
+                if(connection != null){
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                log.error("Error while closing the stream", e);
+            }
+        }
+
+        if (!persisted) {
+            for (SessionContextDO sessionContextDO : sessionContextDOs) {
+                persistSessionData(sessionContextDO.getKey(), sessionContextDO.getType(),
+                                   sessionContextDO.getEntry());
+            }
+        }
+    }
+
+    /**
+     * Removes a batch of session data with a single delete batch
+     *
+     * @param sessionContextDOs sessions to be removed
+     */
+    public void removeSessionData(List<SessionContextDO> sessionContextDOs){
+
+        if(!enablePersist){
+            return;
+        }
+
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        try {
+            connection = jdbcPersistenceManager.getDBConnection();
+            connection.setAutoCommit(false);
+            preparedStatement = connection.prepareStatement(sqlDelete);
+            for (SessionContextDO sessionContextDO : sessionContextDOs) {
+                preparedStatement.setString(1, sessionContextDO.getKey());
+                preparedStatement.setString(2, sessionContextDO.getType());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            connection.commit();
+        } catch (IdentityException e) {
+            //ignore
+            log.error("Error while deleting session data batch", e);
+        } catch (SQLException e) {
+            rollback(connection);
+            log.error("Error while deleting session data batch", e);
+        } finally {
+            try {
+                if(preparedStatement != null){
+                    preparedStatement.close();
+                }
+                if(connection != null){
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                log.error("Error while closing the stream", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the configured upsert statement, or the native one of the database if it is known
+     */
+    private String getUpsertSQL(Connection connection) throws SQLException {
+
+        if (sqlUpsert != null) {
+            return sqlUpsert;
+        }
+        String databaseProductName = connection.getMetaData().getDatabaseProductName();
+        if ("MySQL".equalsIgnoreCase(databaseProductName)) {
+            return SQL_UPSERT_SERIALIZED_OBJECT_MYSQL;
+        } else if ("H2".equalsIgnoreCase(databaseProductName)) {
+            return SQL_UPSERT_SERIALIZED_OBJECT_H2;
+        } else if ("PostgreSQL".equalsIgnoreCase(databaseProductName)) {
+            return SQL_UPSERT_SERIALIZED_OBJECT_POSTGRESQL;
+        } else if ("Oracle".equalsIgnoreCase(databaseProductName)) {
+            return SQL_UPSERT_SERIALIZED_OBJECT_ORACLE;
+        } else if ("Microsoft SQL Server".equalsIgnoreCase(databaseProductName)) {
+            return SQL_UPSERT_SERIALIZED_OBJECT_MSSQL;
+        } else if (databaseProductName != null && databaseProductName.startsWith("DB2")) {
+            // DB2 reports the platform as well, e.g. DB2/LINUXX8664
+            return SQL_UPSERT_SERIALIZED_OBJECT_DB2;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the order in which the session id, type, object and creation time are bound to the given upsert
+     */
+    private int[] getUpsertParameters(String upsert) {
+
+        if (upsert.equals(sqlUpsert)) {
+            return UPSERT_PARAMETERS_DEFAULT;
+        } else if (SQL_UPSERT_SERIALIZED_OBJECT_H2.equals(upsert)) {
+            return UPSERT_PARAMETERS_H2;
+        } else if (SQL_UPSERT_SERIALIZED_OBJECT_ORACLE.equals(upsert) ||
+                   SQL_UPSERT_SERIALIZED_OBJECT_MSSQL.equals(upsert) ||
+                   SQL_UPSERT_SERIALIZED_OBJECT_DB2.equals(upsert)) {
+            return UPSERT_PARAMETERS_MERGE;
+        }
+        return UPSERT_PARAMETERS_DEFAULT;
+    }
+
+    private void rollback(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                log.error("Error while rolling back session data changes", e);
+            }
+        }
+    }
+
     public void removeSessionData(String key, String type){
 
         if(!enablePersist){
@@ -408,20 +697,34 @@ public class SessionDataStore {
         }
     }
 
+    /**
+     * Creates the configured session data codec, or the default one if none is configured
+     */
+    private SessionDataCodec createSessionDataCodec() {
+
+        String codecClass = IdentityUtil.getProperty("JDBCPersistenceManager.SessionDataPersist.Codec.Class");
+        if (codecClass != null && codecClass.trim().length() > 0) {
+            try {
+                return (SessionDataCodec) Class.forName(codecClass.trim()).newInstance();
+            } catch (Exception e) {
+                log.error("Error while loading session data codec " + codecClass + ". Using the default codec", e);
+            }
+        }
+        return defaultSessionDataCodec;
+    }
+
     private void setBlobObject(PreparedStatement prepStmt, Object value, int index)
             throws SQLException, IOException {
         if (value != null) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(value);
-            oos.flush();
-            oos.close();
-            InputStream inputStream = new ByteArrayInputStream(baos.toByteArray());
-            if(inputStream != null){
-                prepStmt.setBinaryStream(index, inputStream ,inputStream.available());
-            } else {
-                prepStmt.setBinaryStream(index, inputStream , 0);
-            }
+            setBlobData(prepStmt, sessionDataCodec.encode(value), index);
+        } else {
+            setBlobData(prepStmt, null, index);
+        }
+    }
+
+    private void setBlobData(PreparedStatement prepStmt, byte[] data, int index) throws SQLException {
+        if (data != null) {
+            prepStmt.setBinaryStream(index, new ByteArrayInputStream(data), data.length);
         } else {
             prepStmt.setBinaryStream(index, null, 0);
         }
@@ -430,21 +733,33 @@ public class SessionDataStore {
     private Object getBlobObject(InputStream is) throws IdentityApplicationManagementException,
             IOException, ClassNotFoundException {
         if (is != null) {
-            BufferedReader br = null;
-            Object object = null;
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             try {
-                ObjectInput ois = new ObjectInputStream(is);
-                object = ois.readObject();
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = is.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, length);
+                }
             } finally {
-                if (br != null) {
-                    try {
-                        br.close();
-                    } catch (IOException e) {
-                        throw new IdentityApplicationManagementException(e);
-                    }
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    throw new IdentityApplicationManagementException(e);
+                }
+            }
+            byte[] data = outputStream.toByteArray();
+            try {
+                return sessionDataCodec.decode(data);
+            } catch (IOException e) {
+                if (sessionDataCodec == defaultSessionDataCodec) {
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Session data is not in the format of the configured codec. Decoding it with the " +
+                            "default codec", e);
                 }
+                return defaultSessionDataCodec.decode(data);
             }
-            return object;
         }
         return null;
     }
@@ -22,10 +22,19 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.certificateauthority.CRLService;
 import org.wso2.carbon.identity.certificateauthority.Constants;
+import org.wso2.carbon.identity.certificateauthority.crl.CachedCrl;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
+/**
+ * Serves the latest full and delta crls of a tenant. Responses carry the crl number as the ETag, and the
+ * time the crl was issued as Last-Modified, so that clients which already have the latest crl are
+ * answered with 304 Not Modified.
+ */
 @Path("/crl")
 public class CRLResponder {
     Log log = LogFactory.getLog(CRLResponder.class);
@@ -33,23 +42,33 @@ public class CRLResponder {
     @GET
     @Path("/{tenantID}")
     @Produces("application/pkix-crl")
-    public Response getCRL(@QueryParam(Constants.CRL_COMMAND) String command, @PathParam("tenantID") int tenantId) {
+    public Response getCRL(@QueryParam(Constants.CRL_COMMAND) String command, @PathParam("tenantID") int tenantId,
+                           @Context Request request) {
+        boolean deltaCrl;
         if (Constants.REQUEST_TYPE_CRL.equals(command)) {
-            CRLService crlService = new CRLService();
-            try {
-                byte[] crlBytes = crlService.getLatestCrl(tenantId);
-                return Response.ok().type("application/pkix-crl").entity(crlBytes).build();
-            } catch (Exception e) {
-                log.error("error whilte trying to get CRL for the tenant :" + tenantId, e);
-            }
+            deltaCrl = false;
         } else if (Constants.REQUEST_TYPE_DELTA_CRL.equals(command)) {
-            //todo : fetch delta crl
-            CRLService crlService = new CRLService();
-            try {
-                return Response.ok().type("application/pkix-crl").entity(crlService.getLatestDeltaCrl(tenantId)).build();
-            } catch (Exception e) {
-                log.error("error whilte trying to get CRL for the tenant :" + tenantId, e);
+            deltaCrl = true;
+        } else {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        CRLService crlService = new CRLService();
+        try {
+            CachedCrl crl = crlService.getLatestCachedCrl(tenantId, deltaCrl);
+            EntityTag entityTag = new EntityTag(tenantId + "-" + crl.getCrlNumber());
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(crl.getThisUpdate(), entityTag);
+            if (notModified != null) {
+                return notModified.build();
+            }
+            Response.ResponseBuilder builder = Response.ok().type("application/pkix-crl").entity(crl.getEncoded())
+                    .tag(entityTag).lastModified(crl.getThisUpdate());
+            if (crl.getNextUpdate() != null) {
+                builder.expires(crl.getNextUpdate());
             }
+            return builder.build();
+        } catch (Exception e) {
+            log.error("error whilte trying to get CRL for the tenant :" + tenantId, e);
         }
         return Response.status(Response.Status.BAD_REQUEST).build();
     }
@@ -125,6 +125,7 @@ public class CAAdminService extends AbstractAdmin {
         } else {
             certificateDAO.updateCertificateStatus(serial, CertificateStatus.REVOKED.toString());
         }
+        OCSPService.invalidateCachedResponses(tenantID, serial);
 
         crlFactory.createAndStoreDeltaCrl(tenantID);
 
@@ -19,6 +19,7 @@
 package org.wso2.carbon.identity.certificateauthority;
 
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.certificateauthority.crl.CachedCrl;
 import org.wso2.carbon.identity.certificateauthority.crl.CrlFactory;
 import org.wso2.carbon.identity.certificateauthority.crl.CrlStore;
 import org.wso2.carbon.identity.certificateauthority.scheduledTask.CrlUpdater;
@@ -51,6 +52,16 @@ public class CRLService {
 
     }
 
+    /**
+     * @param tenantId tenant id
+     * @param deltaCrl true for the latest delta crl, false for the latest full crl
+     * @return the crl along with its encoding, number and update times
+     */
+    public CachedCrl getLatestCachedCrl(int tenantId, boolean deltaCrl) throws CertificateException, CaException {
+        CrlStore store = new CrlStore();
+        return store.getLatestCachedCrl(tenantId, deltaCrl);
+    }
+
     public void updateCrl() throws Exception {
         CrlUpdater updater = new CrlUpdater();
         updater.buildFullCrl();
@@ -20,19 +20,50 @@ package org.wso2.carbon.identity.certificateauthority;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.ocsp.*;
 import org.bouncycastle.ocsp.CertificateStatus;
 import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.certificateauthority.dao.CertificateDAO;
 import org.wso2.carbon.identity.certificateauthority.dao.RevocationDAO;
 import org.wso2.carbon.identity.certificateauthority.data.*;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
 
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Answers OCSP requests. Signed responses to requests for a single certificate without a nonce are
+ * cached until their nextUpdate time, so that clients polling the status of a certificate do not cause
+ * a database lookup and a signature each time. The cached responses of a certificate are dropped when
+ * it is revoked.
+ */
 public class OCSPService {
 
+    private static final String RESPONSE_VALIDITY = "CertificateAuthority.OCSPResponseValidity";
+    private static final long DEFAULT_RESPONSE_VALIDITY = 300;
+    private static final int MAX_CACHED_CERTIFICATES = 10000;
+
+    // cached responses of each certificate, keyed by tenant and serial number. A certificate may be
+    // requested with certificate IDs of different hash algorithms, each of which needs its own response.
+    private static ConcurrentMap<String, ConcurrentMap<CertificateID, CachedResponse>> responseCache =
+            new ConcurrentHashMap<String, ConcurrentMap<CertificateID, CachedResponse>>();
+
+    // incremented on each invalidation, so that a response built from statuses read before it is not cached
+    private static AtomicLong invalidationCount = new AtomicLong();
+
+    private static ConcurrentMap<Integer, SigningKey> signingKeys = new ConcurrentHashMap<Integer, SigningKey>();
+
+    private static volatile long responseValidity = -1;
+
     private CertificateDAO certificateDAO;
     private RevocationDAO revocationDAO;
 
@@ -48,41 +79,216 @@ public class OCSPService {
         if (req == null || req.getRequestList().length <= 0) {
             return respGenerator.generate(OCSPRespGenerator.MALFORMED_REQUEST, null);
         }
-        //sign with tenant's configured key
         Req[] requests = req.getRequestList();
+        long validity = getResponseValidity();
+        // a response to a request with a nonce is only valid for that request
+        boolean cacheable = validity > 0 && requests.length == 1
+                && req.getExtensionValue(OCSPObjectIdentifiers.id_pkix_ocsp_nonce.getId()) == null;
+
+        CertificateID cacheID = requests[0].getCertID();
+        String cacheKey = getCacheKey(tenantID, cacheID.getSerialNumber().toString());
+        if (cacheable) {
+            OCSPResp cachedResponse = getCachedResponse(cacheKey, cacheID);
+            if (cachedResponse != null) {
+                return cachedResponse;
+            }
+        }
+
+        long invalidations = invalidationCount.get();
         try {
-            CertificateID certID;
-            Certificate certificate;
-            KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(tenantID);
-            PublicKey publicKey = keyStoreManager.getDefaultPublicKey();
-            PrivateKey privateKey = keyStoreManager.getDefaultPrivateKey();
-            BasicOCSPRespGenerator basicRespGen = new BasicOCSPRespGenerator(publicKey);
+            List<String> serialNos = new ArrayList<String>();
             for (Req request : requests) {
-                certID = request.getCertID();
-                certificate = certificateDAO.getCertificate(certID.getSerialNumber().toString());
-                if (certificate == null || tenantID != certificate.getTenantID()) {
-                    basicRespGen.addResponse(certID, new UnknownStatus());
-                } else {
-                    org.wso2.carbon.identity.certificateauthority.data.CertificateStatus certificateStatus = org.wso2
-                            .carbon.identity.certificateauthority.data.CertificateStatus.valueOf(certificate.getStatus());
-                    switch (certificateStatus) {
-                        case REVOKED:
-                            RevokedCertificate revokedCertificate = revocationDAO.getRevokedCertificate(certificate.getSerialNo());
-                            basicRespGen.addResponse(certID, new RevokedStatus(revokedCertificate.getRevokedDate(),
-                                    revokedCertificate.getReason()));
-                            break;
-                        case ACTIVE:
-                            basicRespGen.addResponse(certID, CertificateStatus.GOOD);
-                            break;
-                        default:
-                            basicRespGen.addResponse(certID, new UnknownStatus());
-                    }
+                serialNos.add(request.getCertID().getSerialNumber().toString());
+            }
+            Map<String, String> statuses = certificateDAO.getCertificateStatuses(serialNos, tenantID);
+            List<String> revokedSerialNos = new ArrayList<String>();
+            for (Map.Entry<String, String> status : statuses.entrySet()) {
+                if (org.wso2.carbon.identity.certificateauthority.data.CertificateStatus.REVOKED.toString()
+                        .equals(status.getValue())) {
+                    revokedSerialNos.add(status.getKey());
                 }
             }
-            BasicOCSPResp basicOCSPResp = basicRespGen.generate("SHA256WithRSA", privateKey, null, new Date(), "BC");
-            return respGenerator.generate(OCSPRespGenerator.SUCCESSFUL, basicOCSPResp);
+            Map<String, RevokedCertificate> revokedCertificates =
+                    revocationDAO.getRevokedCertificates(revokedSerialNos);
+
+            //sign with tenant's configured key
+            SigningKey signingKey = getSigningKey(tenantID, validity);
+            Date thisUpdate = new Date();
+            Date nextUpdate = validity > 0 ? new Date(thisUpdate.getTime() + validity * 1000) : null;
+            BasicOCSPRespGenerator basicRespGen = new BasicOCSPRespGenerator(signingKey.publicKey);
+            for (Req request : requests) {
+                CertificateID certID = request.getCertID();
+                String serialNo = certID.getSerialNumber().toString();
+                basicRespGen.addResponse(certID, getStatus(statuses.get(serialNo),
+                        revokedCertificates.get(serialNo)), nextUpdate, null);
+            }
+            BasicOCSPResp basicOCSPResp = basicRespGen.generate("SHA256WithRSA", signingKey.privateKey, null,
+                    thisUpdate, "BC");
+            OCSPResp response = respGenerator.generate(OCSPRespGenerator.SUCCESSFUL, basicOCSPResp);
+            if (cacheable) {
+                cacheResponse(cacheKey, cacheID, response, nextUpdate.getTime(), invalidations);
+            }
+            return response;
         } catch (Exception e) {
+            log.error("Error while generating the OCSP response", e);
             return respGenerator.generate(OCSPRespGenerator.INTERNAL_ERROR, null);
         }
     }
+
+    /**
+     * Drops the cached responses of a certificate, e.g. when it is revoked
+     *
+     * @param tenantID tenant the certificate is issued by
+     * @param serialNo serial number of the certificate
+     */
+    public static void invalidateCachedResponses(int tenantID, String serialNo) {
+        // incremented before the removal, so that a response cached concurrently is either removed here or
+        // removed by cacheResponse
+        invalidationCount.incrementAndGet();
+        responseCache.remove(getCacheKey(tenantID, serialNo));
+    }
+
+    private CertificateStatus getStatus(String status, RevokedCertificate revokedCertificate) {
+        if (status == null) {
+            return new UnknownStatus();
+        }
+        switch (org.wso2.carbon.identity.certificateauthority.data.CertificateStatus.valueOf(status)) {
+            case REVOKED:
+                if (revokedCertificate == null) {
+                    return new UnknownStatus();
+                }
+                return new RevokedStatus(revokedCertificate.getRevokedDate(), revokedCertificate.getReason());
+            case ACTIVE:
+                return CertificateStatus.GOOD;
+            default:
+                return new UnknownStatus();
+        }
+    }
+
+    private OCSPResp getCachedResponse(String cacheKey, CertificateID certID) {
+        Map<CertificateID, CachedResponse> responses = responseCache.get(cacheKey);
+        if (responses == null) {
+            return null;
+        }
+        CachedResponse cachedResponse = responses.get(certID);
+        if (cachedResponse == null) {
+            return null;
+        }
+        if (cachedResponse.nextUpdate <= System.currentTimeMillis()) {
+            responses.remove(certID);
+            return null;
+        }
+        return cachedResponse.response;
+    }
+
+    /**
+     * Caches the response unless a certificate has been invalidated since the given invalidation count was
+     * read, i.e. the response may have been built from a status read before a revocation
+     */
+    private void cacheResponse(String cacheKey, CertificateID certID, OCSPResp response, long nextUpdate,
+                               long invalidations) {
+        if (invalidationCount.get() != invalidations) {
+            return;
+        }
+        if (responseCache.size() >= MAX_CACHED_CERTIFICATES) {
+            removeExpiredResponses();
+        }
+        ConcurrentMap<CertificateID, CachedResponse> responses = responseCache.get(cacheKey);
+        if (responses == null) {
+            responses = new ConcurrentHashMap<CertificateID, CachedResponse>();
+            ConcurrentMap<CertificateID, CachedResponse> existing = responseCache.putIfAbsent(cacheKey, responses);
+            if (existing != null) {
+                responses = existing;
+            }
+        }
+        CachedResponse cachedResponse = new CachedResponse(response, nextUpdate);
+        responses.put(certID, cachedResponse);
+        if (invalidationCount.get() != invalidations) {
+            responses.remove(certID, cachedResponse);
+        }
+    }
+
+    private void removeExpiredResponses() {
+        long now = System.currentTimeMillis();
+        for (Iterator<ConcurrentMap<CertificateID, CachedResponse>> certificates =
+                     responseCache.values().iterator(); certificates.hasNext(); ) {
+            Map<CertificateID, CachedResponse> responses = certificates.next();
+            for (Iterator<CachedResponse> iterator = responses.values().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().nextUpdate <= now) {
+                    iterator.remove();
+                }
+            }
+            if (responses.isEmpty()) {
+                certificates.remove();
+            }
+        }
+        if (responseCache.size() >= MAX_CACHED_CERTIFICATES) {
+            responseCache.clear();
+        }
+    }
+
+    /**
+     * Keys of the tenant are cached, for the same time a response is valid, instead of being resolved
+     * from the key store on each request
+     */
+    private SigningKey getSigningKey(int tenantID, long validity) throws Exception {
+        SigningKey signingKey = signingKeys.get(tenantID);
+        if (signingKey == null || signingKey.expiryTime <= System.currentTimeMillis()) {
+            KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(tenantID);
+            signingKey = new SigningKey(keyStoreManager.getDefaultPublicKey(),
+                    keyStoreManager.getDefaultPrivateKey(), System.currentTimeMillis() + validity * 1000);
+            if (validity > 0) {
+                signingKeys.put(tenantID, signingKey);
+            }
+        }
+        return signingKey;
+    }
+
+    private static String getCacheKey(int tenantID, String serialNo) {
+        return tenantID + ":" + serialNo;
+    }
+
+    /**
+     * @return time in seconds a response is valid, read once from the configuration
+     */
+    private static long getResponseValidity() {
+        if (responseValidity < 0) {
+            long configuredValidity = DEFAULT_RESPONSE_VALIDITY;
+            String validity = IdentityUtil.getProperty(RESPONSE_VALIDITY);
+            if (validity != null && validity.trim().length() > 0) {
+                try {
+                    configuredValidity = Long.parseLong(validity.trim());
+                } catch (NumberFormatException e) {
+                    LogFactory.getLog(OCSPService.class).error("Invalid value for " + RESPONSE_VALIDITY
+                            + " : " + validity, e);
+                }
+            }
+            responseValidity = Math.max(configuredValidity, 0);
+        }
+        return responseValidity;
+    }
+
+    private static class CachedResponse {
+
+        private OCSPResp response;
+        private long nextUpdate;
+
+        private CachedResponse(OCSPResp response, long nextUpdate) {
+            this.response = response;
+            this.nextUpdate = nextUpdate;
+        }
+    }
+
+    private static class SigningKey {
+
+        private PublicKey publicKey;
+        private PrivateKey privateKey;
+        private long expiryTime;
+
+        private SigningKey(PublicKey publicKey, PrivateKey privateKey, long expiryTime) {
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+            this.expiryTime = expiryTime;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.certificateauthority.crl;
+
+import org.wso2.carbon.identity.certificateauthority.data.RevokedCertificate;
+
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+/**
+ * A CRL kept in memory along with its DER encoding, so that it is served without reading and decoding
+ * it from the database on each request
+ */
+public class CachedCrl {
+
+    private X509CRL crl;
+    private byte[] encoded;
+    private int crlNumber;
+    private int baseCrlNumber;
+    private RevokedCertificate[] revokedCertificates;
+    private Date revocationsReadTime;
+    private long expiryTime;
+
+    /**
+     * @param crl                 the crl
+     * @param encoded             DER encoding of the crl
+     * @param crlNumber           number of the crl
+     * @param baseCrlNumber       number of the base crl of a delta crl, -1 for a full crl or if it is not known
+     * @param revokedCertificates entries of the crl, or null if they are not known
+     * @param revocationsReadTime time just before the entries were read from the database, or null if it is not
+     *                            known
+     * @param expiryTime          time the crl is to be read again from the database
+     */
+    public CachedCrl(X509CRL crl, byte[] encoded, int crlNumber, int baseCrlNumber,
+                     RevokedCertificate[] revokedCertificates, Date revocationsReadTime, long expiryTime) {
+        this.crl = crl;
+        this.encoded = encoded;
+        this.crlNumber = crlNumber;
+        this.baseCrlNumber = baseCrlNumber;
+        this.revokedCertificates = revokedCertificates;
+        this.revocationsReadTime = revocationsReadTime;
+        this.expiryTime = expiryTime;
+    }
+
+    public X509CRL getCrl() {
+        return crl;
+    }
+
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    public int getCrlNumber() {
+        return crlNumber;
+    }
+
+    public int getBaseCrlNumber() {
+        return baseCrlNumber;
+    }
+
+    public RevokedCertificate[] getRevokedCertificates() {
+        return revokedCertificates;
+    }
+
+    /**
+     * @return time just before the entries of the crl were read, i.e. revocations after it may not be in the
+     * crl. The thisUpdate time of the crl if it is not known.
+     */
+    public Date getRevocationsReadTime() {
+        return revocationsReadTime != null ? revocationsReadTime : crl.getThisUpdate();
+    }
+
+    public Date getThisUpdate() {
+        return crl.getThisUpdate();
+    }
+
+    public Date getNextUpdate() {
+        return crl.getNextUpdate();
+    }
+
+    public boolean isExpired() {
+        return expiryTime <= System.currentTimeMillis();
+    }
+}
@@ -28,7 +28,6 @@ import org.wso2.carbon.identity.certificateauthority.CaException;
 import org.wso2.carbon.identity.certificateauthority.dao.CertificateDAO;
 import org.wso2.carbon.identity.certificateauthority.dao.CrlDataHolderDao;
 import org.wso2.carbon.identity.certificateauthority.dao.RevocationDAO;
-import org.wso2.carbon.identity.certificateauthority.data.CRLDataHolder;
 import org.wso2.carbon.identity.certificateauthority.data.RevokedCertificate;
 import org.wso2.carbon.identity.certificateauthority.utils.CAUtils;
 
@@ -37,12 +36,18 @@ import java.security.PrivateKey;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class CrlFactory {
     Log log = LogFactory.getLog(CrlFactory.class);
 
     private final long CRL_UPDATE_TIME = 24 * 60 * 60 * 1000;
 
+    // revocations dated this long before the previous read are read again, as they may have been committed
+    // after it. Entries read twice are listed once.
+    private static final long REVOCATION_READ_OVERLAP = 60 * 1000;
+
 
     /**
      * @param caCert              Certoficate authority's certificate
@@ -83,43 +88,23 @@ public class CrlFactory {
 
     public X509CRL createFullCrl(int tenantId) throws Exception {
         RevocationDAO revocationDAO = new RevocationDAO();
-        CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
         RevokedCertificate[] revokedCertificates = revocationDAO.getRevokedCertificates(tenantId);
-//        CRLDataHolder crlDataHolder = crlDataHolderDao.getLatestCRL(tenantId, false);
-        PrivateKey privateKey = CAUtils.getConfiguredPrivateKey();
-        X509Certificate certb = CAUtils.getConfiguredCaCert();
-        int fullnumber = crlDataHolderDao.findHighestCrlNumber(tenantId, false);
-        int deltanumber = crlDataHolderDao.findHighestCrlNumber(tenantId, true);
-        // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
-        int nextCrlNumber = ((fullnumber > deltanumber) ? fullnumber : deltanumber) + 1;
-        return createCRL(certb, privateKey, revokedCertificates, nextCrlNumber, -1, false);
+        return createCRL(CAUtils.getConfiguredCaCert(), CAUtils.getConfiguredPrivateKey(), revokedCertificates,
+                getNextCrlNumber(tenantId), -1, false);
     }
 
     /**
+     * A delta crl lists the certificates revoked after its base crl was issued. When the previous delta crl
+     * of the same base crl has been issued on this node, the new one is built from its entries and the
+     * certificates revoked since then, instead of reading all the revocations since the base crl.
+     *
      * @param tenantId id of the tenant creating delta crl
      * @return a delta crl which
      * @throws Exception
      */
     public X509CRL creteDeltaCrl(int tenantId) throws Exception {
-        RevocationDAO revocationDAO = new RevocationDAO();
-        CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
-        X509CRL latestCrl;
-        try{
-            CRLDataHolder dataholder = crlDataHolderDao.getLatestCRL(tenantId, false);
-            latestCrl = crlDataHolderDao.getLatestCRL(tenantId, false).getCRL();
-            RevokedCertificate[] revokedCertificates = revocationDAO.getRevokedCertificatesAfter(tenantId, latestCrl.getThisUpdate());
-            CRLDataHolder crlDataHolder = crlDataHolderDao.getLatestCRL(tenantId, false);
-            PrivateKey privateKey = CAUtils.getConfiguredPrivateKey();
-            X509Certificate certb = CAUtils.getConfiguredCaCert();
-            int fullnumber = crlDataHolderDao.findHighestCrlNumber(tenantId, false);
-            int deltanumber = crlDataHolderDao.findHighestCrlNumber(tenantId, true);
-            // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
-            int nextCrlNumber = ((fullnumber > deltanumber) ? fullnumber : deltanumber) + 1;
-            return createCRL(certb, privateKey, revokedCertificates, nextCrlNumber, fullnumber, false);
-        } catch (CaException e){
-            log.info("No base crl found to create a delta crl");
-        }
-        return null;
+        DeltaCrl deltaCrl = buildDeltaCrl(tenantId, getNextCrlNumber(tenantId));
+        return deltaCrl != null ? deltaCrl.crl : null;
     }
 
     /**
@@ -129,17 +114,17 @@ public class CrlFactory {
      * @throws Exception
      */
     public void createAndStoreCrl(int tenantId) throws Exception {
-        X509CRL crl = createFullCrl(tenantId);
         CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
         RevocationDAO revocationDAO = new RevocationDAO();
+        int nextCrlNumber = getNextCrlNumber(tenantId);
+        Date revocationsReadTime = new Date();
+        RevokedCertificate[] revokedCertificates = revocationDAO.getRevokedCertificates(tenantId);
+        X509CRL crl = createCRL(CAUtils.getConfiguredCaCert(), CAUtils.getConfiguredPrivateKey(),
+                revokedCertificates, nextCrlNumber, -1, false);
         revocationDAO.removeActivedCertificates();
-        int fullnumber = crlDataHolderDao.findHighestCrlNumber(tenantId, false);
-        int deltanumber = crlDataHolderDao.findHighestCrlNumber(tenantId, true);
-        // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
-        int nextCrlNumber = ((fullnumber > deltanumber) ? fullnumber : deltanumber) + 1;
 
         crlDataHolderDao.addCRL(crl, tenantId, crl.getThisUpdate(), crl.getNextUpdate(), nextCrlNumber, -1);
-
+        CrlStore.cacheCrl(tenantId, crl, nextCrlNumber, -1, revokedCertificates, revocationsReadTime);
     }
 
     /**
@@ -149,17 +134,98 @@ public class CrlFactory {
      * @throws Exception
      */
     public void createAndStoreDeltaCrl(int tenantId) throws Exception {
-        X509CRL crl = creteDeltaCrl(tenantId);
-        if (crl != null) {
+        int nextCrlNumber = getNextCrlNumber(tenantId);
+        DeltaCrl deltaCrl = buildDeltaCrl(tenantId, nextCrlNumber);
+        if (deltaCrl != null) {
+            X509CRL crl = deltaCrl.crl;
             CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
-            int fullnumber = crlDataHolderDao.findHighestCrlNumber(tenantId, false);
-            int deltanumber = crlDataHolderDao.findHighestCrlNumber(tenantId, true);
-            // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
-            int nextCrlNumber = ((fullnumber > deltanumber) ? fullnumber : deltanumber) + 1;
             crlDataHolderDao.addCRL(crl, tenantId, crl.getThisUpdate(), crl.getNextUpdate(), nextCrlNumber, 1);
+            CrlStore.cacheCrl(tenantId, crl, nextCrlNumber, deltaCrl.baseCrlNumber, deltaCrl.revokedCertificates,
+                    deltaCrl.revocationsReadTime);
         } else {
             log.info("Error while creating delta crl for tenant " + tenantId);
         }
     }
 
+    private DeltaCrl buildDeltaCrl(int tenantId, int crlNumber) throws Exception {
+        CrlStore crlStore = new CrlStore();
+        CachedCrl baseCrl;
+        try {
+            baseCrl = crlStore.getLatestCachedCrl(tenantId, false);
+        } catch (CaException e) {
+            log.info("No base crl found to create a delta crl");
+            return null;
+        }
+
+        RevocationDAO revocationDAO = new RevocationDAO();
+        Map<String, RevokedCertificate> entries = new LinkedHashMap<String, RevokedCertificate>();
+        // the crl is issued after the revocations are read, so its thisUpdate time may miss the ones in between
+        Date revokedAfter = baseCrl.getRevocationsReadTime();
+        CachedCrl previousDeltaCrl = getPreviousDeltaCrl(crlStore, tenantId, baseCrl.getCrlNumber());
+        if (previousDeltaCrl != null) {
+            for (RevokedCertificate revokedCertificate : previousDeltaCrl.getRevokedCertificates()) {
+                entries.put(revokedCertificate.getSerialNo(), revokedCertificate);
+            }
+            revokedAfter = previousDeltaCrl.getRevocationsReadTime();
+        }
+        revokedAfter = new Date(revokedAfter.getTime() - REVOCATION_READ_OVERLAP);
+        Date revocationsReadTime = new Date();
+        RevokedCertificate[] revokedCertificates = revocationDAO.getRevokedCertificatesAfter(tenantId, revokedAfter);
+        if (revokedCertificates == null) {
+            return null;
+        }
+        for (RevokedCertificate revokedCertificate : revokedCertificates) {
+            entries.put(revokedCertificate.getSerialNo(), revokedCertificate);
+        }
+
+        RevokedCertificate[] deltaEntries = entries.values().toArray(new RevokedCertificate[entries.size()]);
+        X509CRL crl = createCRL(CAUtils.getConfiguredCaCert(), CAUtils.getConfiguredPrivateKey(), deltaEntries,
+                crlNumber, baseCrl.getCrlNumber(), true);
+        return new DeltaCrl(crl, baseCrl.getCrlNumber(), deltaEntries, revocationsReadTime);
+    }
+
+    /**
+     * @return the previous delta crl of the given base crl, if its entries are known
+     */
+    private CachedCrl getPreviousDeltaCrl(CrlStore crlStore, int tenantId, int baseCrlNumber) {
+        try {
+            CachedCrl deltaCrl = crlStore.getLatestCachedCrl(tenantId, true);
+            if (deltaCrl.getBaseCrlNumber() == baseCrlNumber && deltaCrl.getRevokedCertificates() != null) {
+                return deltaCrl;
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("No previous delta crl found for tenant " + tenantId, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the highest number of last CRL (full or delta) increased by 1 (both full CRLs and deltaCRLs
+     * share the same series of CRL Number)
+     */
+    private int getNextCrlNumber(int tenantId) throws Exception {
+        CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
+        int fullnumber = crlDataHolderDao.findHighestCrlNumber(tenantId, false);
+        int deltanumber = crlDataHolderDao.findHighestCrlNumber(tenantId, true);
+        return ((fullnumber > deltanumber) ? fullnumber : deltanumber) + 1;
+    }
+
+    private static class DeltaCrl {
+
+        private X509CRL crl;
+        private int baseCrlNumber;
+        private RevokedCertificate[] revokedCertificates;
+        private Date revocationsReadTime;
+
+        private DeltaCrl(X509CRL crl, int baseCrlNumber, RevokedCertificate[] revokedCertificates,
+                         Date revocationsReadTime) {
+            this.crl = crl;
+            this.baseCrlNumber = baseCrlNumber;
+            this.revokedCertificates = revokedCertificates;
+            this.revocationsReadTime = revocationsReadTime;
+        }
+    }
+
 }
@@ -18,14 +18,37 @@
 
 package org.wso2.carbon.identity.certificateauthority.crl;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.certificateauthority.CaException;
 import org.wso2.carbon.identity.certificateauthority.dao.CrlDataHolderDao;
+import org.wso2.carbon.identity.certificateauthority.data.CRLDataHolder;
+import org.wso2.carbon.identity.certificateauthority.data.RevokedCertificate;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
 
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Serves the latest full and delta crls of the tenants. The crls are kept in memory, per tenant, and are
+ * read again from the database after a configured timeout, or their next update time, in case another
+ * node has issued a newer one. The crls issued on this node replace the cached ones right away.
+ */
 public class CrlStore {
+
+    private static final String CACHE_TIMEOUT = "CertificateAuthority.CRLCacheTimeout";
+    private static final long DEFAULT_CACHE_TIMEOUT = 60;
+
+    private static ConcurrentMap<String, CachedCrl> crlCache = new ConcurrentHashMap<String, CachedCrl>();
+
+    private static volatile long cacheTimeout = -1;
+
+    private static Log log = LogFactory.getLog(CrlStore.class);
+
     CrlDataHolderDao crlDataHolderDao = new CrlDataHolderDao();
 
     /**
@@ -38,11 +61,91 @@ public class CrlStore {
      * @throws CaException
      */
     public byte[] getLatestCrl(int tenantId, boolean deltaCrl) throws CertificateException, CaException, CRLException {
-        return crlDataHolderDao.getLatestCRL(tenantId, deltaCrl).getCRL().getEncoded();
+        return getLatestCachedCrl(tenantId, deltaCrl).getEncoded();
     }
 
     public X509CRL getLatestX509Crl(int tenantId, boolean deltaCrl)
             throws CertificateException, CaException {
-        return crlDataHolderDao.getLatestCRL(tenantId, deltaCrl).getCRL();
+        return getLatestCachedCrl(tenantId, deltaCrl).getCrl();
+    }
+
+    /**
+     * to get the latest full crl or delta crl for a tenant, along with its encoding
+     *
+     * @param tenantId tenant id
+     * @param deltaCrl true if requesting a delta crl, false if requesting full crl
+     * @return the cached crl
+     * @throws CertificateException
+     * @throws CaException if the tenant has no crl
+     */
+    public CachedCrl getLatestCachedCrl(int tenantId, boolean deltaCrl) throws CertificateException, CaException {
+        String key = getCacheKey(tenantId, deltaCrl);
+        CachedCrl cachedCrl = crlCache.get(key);
+        if (cachedCrl != null && !cachedCrl.isExpired()) {
+            return cachedCrl;
+        }
+        CRLDataHolder crlDataHolder = crlDataHolderDao.getLatestCRL(tenantId, deltaCrl);
+        X509CRL crl = crlDataHolder.getCRL();
+        try {
+            cachedCrl = newCachedCrl(crl, crlDataHolder.getCrlNumber(), -1, null, null);
+        } catch (CRLException e) {
+            throw new CertificateException("Error while encoding the crl of tenant " + tenantId, e);
+        }
+        crlCache.put(key, cachedCrl);
+        return cachedCrl;
+    }
+
+    /**
+     * Replaces the cached crl of a tenant with a crl which has been just issued
+     *
+     * @param tenantId            tenant id
+     * @param crl                 the crl
+     * @param crlNumber           number of the crl
+     * @param baseCrlNumber       number of the base crl if it is a delta crl, -1 if it is a full crl
+     * @param revokedCertificates entries of the crl
+     * @param revocationsReadTime time just before the entries were read from the database
+     * @return the cached crl
+     * @throws CRLException
+     */
+    public static CachedCrl cacheCrl(int tenantId, X509CRL crl, int crlNumber, int baseCrlNumber,
+                                     RevokedCertificate[] revokedCertificates, Date revocationsReadTime)
+            throws CRLException {
+        CachedCrl cachedCrl = newCachedCrl(crl, crlNumber, baseCrlNumber, revokedCertificates, revocationsReadTime);
+        crlCache.put(getCacheKey(tenantId, baseCrlNumber >= 0), cachedCrl);
+        return cachedCrl;
+    }
+
+    private static CachedCrl newCachedCrl(X509CRL crl, int crlNumber, int baseCrlNumber,
+                                          RevokedCertificate[] revokedCertificates, Date revocationsReadTime)
+            throws CRLException {
+        long expiryTime = System.currentTimeMillis() + getCacheTimeout() * 1000;
+        if (crl.getNextUpdate() != null && crl.getNextUpdate().getTime() < expiryTime) {
+            expiryTime = crl.getNextUpdate().getTime();
+        }
+        return new CachedCrl(crl, crl.getEncoded(), crlNumber, baseCrlNumber, revokedCertificates,
+                revocationsReadTime, expiryTime);
+    }
+
+    private static String getCacheKey(int tenantId, boolean deltaCrl) {
+        return tenantId + (deltaCrl ? ":delta" : ":full");
+    }
+
+    /**
+     * @return time in seconds a crl is served from memory, read once from the configuration
+     */
+    private static long getCacheTimeout() {
+        if (cacheTimeout < 0) {
+            long configuredTimeout = DEFAULT_CACHE_TIMEOUT;
+            String timeout = IdentityUtil.getProperty(CACHE_TIMEOUT);
+            if (timeout != null && timeout.trim().length() > 0) {
+                try {
+                    configuredTimeout = Long.parseLong(timeout.trim());
+                } catch (NumberFormatException e) {
+                    log.error("Invalid value for " + CACHE_TIMEOUT + " : " + timeout, e);
+                }
+            }
+            cacheTimeout = Math.max(configuredTimeout, 0);
+        }
+        return cacheTimeout;
     }
 }
@@ -37,6 +37,9 @@ import java.security.cert.X509Certificate;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class CertificateDAO {
     Log log = LogFactory.getLog(CertificateDAO.class);
@@ -487,5 +490,53 @@ public class CertificateDAO {
         return new CertificateMetaInfo[0];
     }
 
-
+    /**
+     * get the statuses of a set of certificates of a tenant with a single query, without loading
+     * the certificates
+     *
+     * @param serialNos serial numbers of the certificates
+     * @param tenantID  tenant the certificates are issued by
+     * @return status of each certificate found, keyed by serial number
+     * @throws CaException
+     */
+    public Map<String, String> getCertificateStatuses(List<String> serialNos, int tenantID) throws CaException {
+        Map<String, String> statuses = new HashMap<String, String>();
+        if (serialNos.isEmpty()) {
+            return statuses;
+        }
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        String sql = null;
+        try {
+            log.debug("retriving statuses of certificates :" + serialNos);
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            StringBuilder query = new StringBuilder("SELECT SERIAL_NO, STATUS FROM CA_CERTIFICATE_STORE WHERE TENANT_ID = ? AND SERIAL_NO IN (");
+            for (int i = 0; i < serialNos.size(); i++) {
+                query.append(i == 0 ? "?" : ",?");
+            }
+            sql = query.append(")").toString();
+            prepStmt = connection.prepareStatement(sql);
+            prepStmt.setInt(1, tenantID);
+            for (int i = 0; i < serialNos.size(); i++) {
+                prepStmt.setString(i + 2, serialNos.get(i));
+            }
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                statuses.put(resultSet.getString(Constants.SERIAL_NO_LABEL),
+                        resultSet.getString(Constants.PC_STATUS_LABEL));
+            }
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new CaException(errorMsg, e);
+        } catch (SQLException e) {
+            log.error("Error when executing the SQL : " + sql);
+            log.error(e.getMessage(), e);
+            throw new CaException("Error when retrieving the certificate statuses", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return statuses;
+    }
 }
@@ -31,6 +31,9 @@ import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class RevocationDAO {
     Log log = LogFactory.getLog(RevocationDAO.class);
@@ -323,5 +326,49 @@ public class RevocationDAO {
         }
     }
 
+    /**
+     * get a set of revoked certificates with a single query
+     *
+     * @param serialNos serial numbers of the certificates
+     * @return revoked certificates found, keyed by serial number
+     * @throws CaException
+     */
+    public Map<String, RevokedCertificate> getRevokedCertificates(List<String> serialNos) throws CaException {
+        Map<String, RevokedCertificate> revokedCertificates = new HashMap<String, RevokedCertificate>();
+        if (serialNos.isEmpty()) {
+            return revokedCertificates;
+        }
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        String sql = null;
+        try {
+            log.debug("retriving revoked certificates from serials :" + serialNos);
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            StringBuilder query = new StringBuilder("SELECT * FROM CA_REVOKED_CERTIFICATES WHERE SERIAL_NO IN (");
+            for (int i = 0; i < serialNos.size(); i++) {
+                query.append(i == 0 ? "?" : ",?");
+            }
+            sql = query.append(")").toString();
+            prepStmt = connection.prepareStatement(sql);
+            for (int i = 0; i < serialNos.size(); i++) {
+                prepStmt.setString(i + 1, serialNos.get(i));
+            }
+            resultSet = prepStmt.executeQuery();
+            for (RevokedCertificate revokedCertificate : getRevCertificateArray(resultSet)) {
+                revokedCertificates.put(revokedCertificate.getSerialNo(), revokedCertificate);
+            }
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new CaException(errorMsg, e);
+        } catch (SQLException e) {
+            log.error("Error when executing the SQL : " + sql);
+            log.error(e.getMessage(), e);
+            throw new CaException("Error when retrieving the revoked certificates", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return revokedCertificates;
+    }
 }
-
@@ -17,7 +17,12 @@ package org.wso2.carbon.identity.entitlement.pep.agent;
 
 import java.util.Calendar;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
@@ -32,13 +37,23 @@ class PEPAgentCache {
 
 	private static Log log = LogFactory.getLog(PEPAgentCache.class);
 	
-    private SimpleCache<String, EntitlementDecision> simpleCache;
+    // number of independently locked segments of the simple cache
+    private static final int SIMPLE_CACHE_SEGMENTS = 16;
+
+    private SimpleCache simpleCache;
     private boolean isCarbonCache = false;
     private int invalidationInterval = 0;
 
+    // decisions which are being fetched from the PDP, so that concurrent misses share a single call
+    private ConcurrentMap<String, FutureTask<String>> pendingDecisions =
+            new ConcurrentHashMap<String, FutureTask<String>>();
+
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+
     PEPAgentCache(String enableCaching, int invalidationInterval, int maxEntries){
         if(enableCaching.equalsIgnoreCase("simple")){
-            simpleCache = new SimpleCache<String, EntitlementDecision>(maxEntries);
+            simpleCache = new SimpleCache(maxEntries, SIMPLE_CACHE_SEGMENTS);
             this.invalidationInterval = invalidationInterval;
         }else if(enableCaching.equalsIgnoreCase("carbon")){
         	isCarbonCache = true;
@@ -46,33 +61,92 @@ class PEPAgentCache {
         }
     }
 
-    private class SimpleCache<K, V> extends LinkedHashMap<K, V> {
+    /**
+     * Bounded LRU cache which is split in to segments by the hash of the key. Each segment is locked on
+     * its own, so that concurrent requests only contend when their keys fall in to the same segment.
+     */
+    private class SimpleCache {
+
+        private Segment[] segments;
+
+        SimpleCache(int maxEntries, int segmentCount) {
+            int count = Math.max(1, Math.min(segmentCount, maxEntries));
+            int segmentSize = Math.max(1, (maxEntries + count - 1) / count);
+            segments = new Segment[count];
+            for (int i = 0; i < count; i++) {
+                segments[i] = new Segment(segmentSize);
+            }
+        }
+
+        EntitlementDecision get(String key) {
+            Segment segment = getSegment(key);
+            synchronized (segment) {
+                return segment.get(key);
+            }
+        }
+
+        void put(String key, EntitlementDecision entitlementDecision) {
+            Segment segment = getSegment(key);
+            synchronized (segment) {
+                segment.put(key, entitlementDecision);
+            }
+        }
+
+        void remove(String key) {
+            Segment segment = getSegment(key);
+            synchronized (segment) {
+                segment.remove(key);
+            }
+        }
+
+        /**
+         * Removes the entry of the key only if it is still the given one, so that an entry put by a
+         * concurrent request in the meantime is kept
+         */
+        void remove(String key, EntitlementDecision entitlementDecision) {
+            Segment segment = getSegment(key);
+            synchronized (segment) {
+                if (segment.get(key) == entitlementDecision) {
+                    segment.remove(key);
+                }
+            }
+        }
+
+        void clear() {
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    segment.clear();
+                }
+            }
+        }
+
+        private Segment getSegment(String key) {
+            int hash = key.hashCode();
+            hash ^= (hash >>> 16);
+            return segments[(hash & 0x7fffffff) % segments.length];
+        }
+    }
+
+    private class Segment extends LinkedHashMap<String, EntitlementDecision> {
 
         private static final long serialVersionUID = 1L;
 
         private int maxEntries;
 
-        public SimpleCache(int maxEntries) {
+        Segment(int maxEntries) {
             // removeEldestEntry() is called after a put(). To allow maxEntries in
-            // cache, capacity should be maxEntries + 1 (for the entry which will be
-            // removed). Load factor is taken as 1 because size is fixed. This is
-            // less space efficient when very less entries are present, but there
-            // will be no effect on time complexity for get(). The third parameter
-            // in the base class constructor says that this map is
-            // insertion-order oriented.
-            super(maxEntries + 1, 1, false);
+            // the segment, capacity should be maxEntries + 1 (for the entry which
+            // will be removed). The third parameter in the base class constructor
+            // says that this map is access-order oriented, so the eldest entry is
+            // the least recently used one.
+            super(maxEntries + 1, 1, true);
             this.maxEntries = maxEntries;
         }
 
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            // After size exceeds max entries, this statement returns true and the
-            // oldest value will be removed. Behaves like a queue, the first
-            // inserted value will go away.
+        protected boolean removeEldestEntry(java.util.Map.Entry<String, EntitlementDecision> eldest) {
             return size() > maxEntries;
         }
-
-
     }
 
     /**
@@ -129,6 +203,64 @@ class PEPAgentCache {
         return cache;
     }
 
+    /**
+     * Returns the cached decision for the key, or loads it with the given loader on a miss. Concurrent
+     * misses for the same key wait for a single load instead of each calling the PDP. Failed loads are
+     * not cached.
+     *
+     * @param key cache key of the request
+     * @param loader fetches the decision from the PDP
+     * @return decision
+     * @throws Exception if the decision can not be loaded
+     */
+    String get(String key, Callable<String> loader) throws Exception {
+
+        String decision = get(key);
+        if (decision != null) {
+            hitCount.incrementAndGet();
+            return decision;
+        }
+        missCount.incrementAndGet();
+
+        FutureTask<String> pendingDecision = new FutureTask<String>(loader);
+        FutureTask<String> existingDecision = pendingDecisions.putIfAbsent(key, pendingDecision);
+        if (existingDecision == null) {
+            try {
+                pendingDecision.run();
+                decision = pendingDecision.get();
+                if (decision != null) {
+                    put(key, decision);
+                }
+            } catch (ExecutionException e) {
+                // not cached, the next request tries again
+            } finally {
+                pendingDecisions.remove(key, pendingDecision);
+            }
+        } else {
+            pendingDecision = existingDecision;
+        }
+
+        try {
+            return pendingDecision.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
     void put(String key,String entry){
         if(simpleCache != null){
             EntitlementDecision entitlementDecision = new EntitlementDecision(entry,Calendar.getInstance().getTimeInMillis());
@@ -146,11 +278,13 @@ class PEPAgentCache {
 
     String get(String key){
         if(simpleCache != null){
-            EntitlementDecision entitlementDecision = (EntitlementDecision)simpleCache.get(key);
-            if(entitlementDecision != null &&
-               (entitlementDecision.getCachedTime() + (long) invalidationInterval >
-                Calendar.getInstance().getTimeInMillis())){
-                return entitlementDecision.getResponse();
+            EntitlementDecision entitlementDecision = simpleCache.get(key);
+            if(entitlementDecision != null){
+                if(entitlementDecision.getCachedTime() + (long) invalidationInterval >
+                   Calendar.getInstance().getTimeInMillis()){
+                    return entitlementDecision.getResponse();
+                }
+                simpleCache.remove(key, entitlementDecision);
             }
         }else if(isCarbonCache){
         	Cache<IdentityCacheKey, IdentityCacheEntry> carbonCache = getCommonCache();
@@ -168,7 +302,7 @@ class PEPAgentCache {
 
     void clear(){
         if(simpleCache != null){
-            simpleCache =  new SimpleCache<String, EntitlementDecision>(simpleCache.maxEntries);
+            simpleCache.clear();
         }else if(isCarbonCache){
         	Cache<IdentityCacheKey, IdentityCacheEntry> carbonCache = getCommonCache();
         	if(carbonCache != null){
@@ -35,6 +35,10 @@ public final class ProxyConstants {
     public final static String TRUST_STORE_PASSWORD = "javax.net.ssl.trustStorePassword";
     public static final int THRIFT_TIME_OUT = 30000;
     public static final int DEFAULT_THRIFT_PORT = 10500;
+    public static final int DEFAULT_THRIFT_MAX_CONNECTIONS = 10;
+    public static final long DEFAULT_THRIFT_IDLE_TIME_OUT = 60000;
+    // message of the error the Thrift entitlement service returns for an unknown or expired session
+    public static final String THRIFT_AUTHENTICATION_ERROR = "User is not authenticated. Please login first.";
 
     public static final String DEFAULT_DATA_TYPE = "string";
 
@@ -20,9 +20,9 @@ package org.wso2.carbon.identity.entitlement.proxy;
 
 import org.wso2.carbon.identity.entitlement.proxy.exception.EntitlementProxyException;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class PEPProxy {
 
@@ -61,24 +61,19 @@ public class PEPProxy {
      * @return the Entitlement Decision as a String
      * @throws Exception
      */
-    public String getDecision(Attribute[] attributes, String appId) throws Exception {
-        AbstractEntitlementServiceClient appProxy;
+    public String getDecision(final Attribute[] attributes, final String appId) throws Exception {
+        final AbstractEntitlementServiceClient appProxy;
         if(!appToPDPClientMap.containsKey(appId))   {
             throw new EntitlementProxyException("Invalid App Id");
         } else {
             appProxy = appToPDPClientMap.get(appId);
         }
         if(cache != null){
-            String key = generateKey(attributes);
-            String decision = cache.get(key);
-            if(decision != null) {
-                return decision;
-            }
-            else{
-                decision = appProxy.getDecision(attributes, appId);
-                cache.put(key,decision);
-                return decision;
-            }
+            return cache.get(generateKey(attributes, appId), new Callable<String>() {
+                public String call() throws Exception {
+                    return appProxy.getDecision(attributes, appId);
+                }
+            });
         } else{
             return appProxy.getDecision(attributes, appId);
         }
@@ -215,11 +210,49 @@ public class PEPProxy {
         return appProxy.getActionsForResource(alias, resources, appId);
     }
 
-    private String generateKey(Attribute[] attributes) {
-        int key = 1;
-        key = 11 * key + ((attributes == null) ? 0 : Arrays.hashCode(attributes));
-        key = 31 * key + ((defaultAppId == null) ? 0 : defaultAppId.hashCode());
-        return (new Integer(key)).toString();
+    /**
+     * Builds the cache key from the full content of the request, so that distinct requests never
+     * share a cached decision
+     */
+    private String generateKey(Attribute[] attributes, String appId) {
+        StringBuilder key = new StringBuilder();
+        appendKeyPart(key, appId);
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                if (attribute == null) {
+                    key.append('#');
+                    continue;
+                }
+                appendKeyPart(key, attribute.getCategory());
+                appendKeyPart(key, attribute.getId());
+                appendKeyPart(key, attribute.getType());
+                appendKeyPart(key, attribute.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    // length prefixed, so that the parts can not run into each other
+    private void appendKeyPart(StringBuilder key, String part) {
+        if (part == null) {
+            key.append("-1:");
+        } else {
+            key.append(part.length()).append(':').append(part);
+        }
+    }
+
+    /**
+     * @return number of decisions served from the cache
+     */
+    public long getCacheHitCount() {
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    /**
+     * @return number of decisions that were not in the cache
+     */
+    public long getCacheMissCount() {
+        return cache != null ? cache.getMissCount() : 0;
     }
 
     public void clear(){
@@ -120,7 +120,15 @@ public class PEPProxyFactory {
                 if(appConfig.get("reuseSession") != null){
                     reuseSession = Boolean.parseBoolean(appConfig.get("reuseSession"));
                 }
-                appToPDPClientMap.put(appId, new ThriftEntitlementServiceClient(serverUrl,appConfig.get("userName"),appConfig.get("password"),appConfig.get("thriftHost"),thriftPort,reuseSession));
+                int maxConnections = ProxyConstants.DEFAULT_THRIFT_MAX_CONNECTIONS;
+                if(appConfig.get("maxConnections") != null && appConfig.get("maxConnections").length() > 0){
+                    maxConnections = Integer.parseInt(appConfig.get("maxConnections").trim());
+                }
+                long connectionIdleTimeout = ProxyConstants.DEFAULT_THRIFT_IDLE_TIME_OUT;
+                if(appConfig.get("connectionIdleTimeout") != null && appConfig.get("connectionIdleTimeout").length() > 0){
+                    connectionIdleTimeout = Long.parseLong(appConfig.get("connectionIdleTimeout").trim());
+                }
+                appToPDPClientMap.put(appId, new ThriftEntitlementServiceClient(serverUrl,appConfig.get("userName"),appConfig.get("password"),appConfig.get("thriftHost"),thriftPort,reuseSession,maxConnections,connectionIdleTimeout));
             }else if (ProxyConstants.WS_XACML.equals(client)) {
                 if(appConfig.get("serverUrl") == null || appConfig.get("serverUrl").length() == 0){
                     throw new EntitlementProxyException("serverUrl cannot be null or empty");
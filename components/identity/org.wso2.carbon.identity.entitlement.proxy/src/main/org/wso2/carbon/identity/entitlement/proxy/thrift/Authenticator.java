@@ -59,7 +59,7 @@ public class Authenticator {
 
     }
 
-    public String getSessionId(boolean isExpired) throws Exception {
+    public synchronized String getSessionId(boolean isExpired) throws Exception {
         if (isExpired) {
             authenticate();
         }
@@ -0,0 +1,185 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.identity.entitlement.proxy.thrift;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TSSLTransportFactory;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.wso2.carbon.identity.entitlement.proxy.ProxyConstants;
+import org.wso2.carbon.identity.entitlement.proxy.exception.EntitlementProxyException;
+import org.wso2.carbon.identity.entitlement.proxy.generatedCode.EntitlementThriftClient;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of Thrift clients connected to a PDP host over TLS. Connections are reused across decisions,
+ * so the TLS handshake is paid once per connection instead of once per decision. The number of
+ * connections to the host is bounded, and connections which are closed or have been idle for longer
+ * than the idle timeout are discarded instead of being reused.
+ */
+public class ThriftClientPool {
+
+    private static Log log = LogFactory.getLog(ThriftClientPool.class);
+
+    private String host;
+    private int port;
+    private TSSLTransportFactory.TSSLTransportParameters transportParameters;
+    private long idleTimeout;
+
+    // one permit for each connection that may be in use
+    private Semaphore permits;
+
+    // idle connections, the most recently used first
+    private BlockingDeque<PooledClient> idleClients = new LinkedBlockingDeque<PooledClient>();
+
+    public ThriftClientPool(String host, int port, String trustStore, String trustStorePass, int maxConnections,
+                            long idleTimeout) {
+        this.host = host;
+        this.port = port;
+        this.idleTimeout = idleTimeout;
+        this.permits = new Semaphore(maxConnections > 0 ? maxConnections : 1, true);
+        transportParameters = new TSSLTransportFactory.TSSLTransportParameters();
+        transportParameters.setTrustStore(trustStore, trustStorePass);
+    }
+
+    /**
+     * Borrows a connected client from the pool, opening a new connection if there is no idle one. Waits
+     * for a connection to be returned if the pool is exhausted.
+     *
+     * @return connected client, which must be given back with either returnClient or invalidateClient
+     * @throws EntitlementProxyException if no connection could be obtained
+     */
+    public EntitlementThriftClient.Client borrowClient() throws EntitlementProxyException {
+
+        try {
+            if (!permits.tryAcquire(ProxyConstants.THRIFT_TIME_OUT, TimeUnit.MILLISECONDS)) {
+                throw new EntitlementProxyException("Timed out while waiting for a Thrift connection to " +
+                        host + ":" + port);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EntitlementProxyException("Interrupted while waiting for a Thrift connection to " +
+                    host + ":" + port, e);
+        }
+
+        boolean borrowed = false;
+        try {
+            EntitlementThriftClient.Client client = null;
+            PooledClient pooledClient;
+            while (client == null && (pooledClient = idleClients.pollFirst()) != null) {
+                if (isUsable(pooledClient, System.currentTimeMillis())) {
+                    client = pooledClient.client;
+                } else {
+                    close(pooledClient.client);
+                }
+            }
+            if (client == null) {
+                client = createClient();
+            }
+            borrowed = true;
+            return client;
+        } finally {
+            if (!borrowed) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Gives a healthy client back to the pool, so that its connection is reused
+     *
+     * @param client borrowed client
+     */
+    public void returnClient(EntitlementThriftClient.Client client) {
+        long now = System.currentTimeMillis();
+        // the pool is used most recently first, so the idle connections are at the end
+        PooledClient eldest;
+        while ((eldest = idleClients.peekLast()) != null && !isUsable(eldest, now)) {
+            if (idleClients.removeLastOccurrence(eldest)) {
+                close(eldest.client);
+            }
+        }
+        idleClients.offerFirst(new PooledClient(client, now));
+        permits.release();
+    }
+
+    /**
+     * Closes a client whose connection can not be trusted any more, e.g. after a transport error
+     *
+     * @param client borrowed client
+     */
+    public void invalidateClient(EntitlementThriftClient.Client client) {
+        close(client);
+        permits.release();
+    }
+
+    /**
+     * Closes all idle connections
+     */
+    public void close() {
+        PooledClient pooledClient;
+        while ((pooledClient = idleClients.pollFirst()) != null) {
+            close(pooledClient.client);
+        }
+    }
+
+    private boolean isUsable(PooledClient pooledClient, long now) {
+        return now - pooledClient.lastUsedTime < idleTimeout &&
+                pooledClient.client.getInputProtocol().getTransport().isOpen();
+    }
+
+    private EntitlementThriftClient.Client createClient() throws EntitlementProxyException {
+        try {
+            TTransport transport = TSSLTransportFactory.getClientSocket(host, port, ProxyConstants.THRIFT_TIME_OUT,
+                    transportParameters);
+            TProtocol protocol = new TBinaryProtocol(transport);
+            return new EntitlementThriftClient.Client(protocol);
+        } catch (TTransportException e) {
+            throw new EntitlementProxyException("Error while connecting to Thrift server " + host + ":" + port, e);
+        }
+    }
+
+    private void close(EntitlementThriftClient.Client client) {
+        try {
+            client.getInputProtocol().getTransport().close();
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while closing Thrift connection to " + host + ":" + port, e);
+            }
+        }
+    }
+
+    private static class PooledClient {
+
+        private EntitlementThriftClient.Client client;
+        private long lastUsedTime;
+
+        private PooledClient(EntitlementThriftClient.Client client, long lastUsedTime) {
+            this.client = client;
+            this.lastUsedTime = lastUsedTime;
+        }
+    }
+}
@@ -19,10 +19,7 @@
 package org.wso2.carbon.identity.entitlement.proxy.thrift;
 
 import org.apache.thrift.TException;
-import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.protocol.TProtocol;
-import org.apache.thrift.transport.TSSLTransportFactory;
-import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.wso2.carbon.identity.entitlement.proxy.*;
 import org.wso2.carbon.identity.entitlement.proxy.exception.EntitlementProxyException;
 import org.wso2.carbon.identity.entitlement.proxy.generatedCode.EntitlementException;
@@ -43,25 +40,32 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
     private String thriftHost;
     private int thriftPort;
     private boolean reuseSession = true;
+    private ThriftClientPool clientPool;
 
     private Map<String, Authenticator> authenticators = new ConcurrentHashMap<String, Authenticator>();
 
     public ThriftEntitlementServiceClient(String serverUrl, String username, String password, String thriftHost, int thriftPort, boolean reuseSession){
+        this(serverUrl, username, password, thriftHost, thriftPort, reuseSession,
+                ProxyConstants.DEFAULT_THRIFT_MAX_CONNECTIONS, ProxyConstants.DEFAULT_THRIFT_IDLE_TIME_OUT);
+    }
+
+    public ThriftEntitlementServiceClient(String serverUrl, String username, String password, String thriftHost,
+                                          int thriftPort, boolean reuseSession, int maxConnections,
+                                          long connectionIdleTimeout){
         this.serverUrl = serverUrl;
         this.userName = username;
         this.password = password;
         this.thriftHost =  thriftHost;
         this.thriftPort = thriftPort;
         this.reuseSession = reuseSession;
+        this.clientPool = new ThriftClientPool(thriftHost, thriftPort, trustStore, trustStorePass, maxConnections,
+                connectionIdleTimeout);
     }
 
     @Override
     public String getDecision(Attribute[] attributes, String appId) throws Exception {
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(attributes);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
-        Authenticator authenticator = getAuthenticator(serverUrl, userName,
-                password);
-        return getDecision(xacmlRequest,client,authenticator.getSessionId(false));
+        return getDecision(xacmlRequest);
     }
 
     @Override
@@ -73,9 +77,7 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         Attribute environmentAttribute = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:environment", "urn:oasis:names:tc:xacml:1.0:environment:environment-id", ProxyConstants.DEFAULT_DATA_TYPE, domainId);
         Attribute[] tempArr = {subjectAttribute, actionAttribute, resourceAttribute, environmentAttribute};
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(tempArr);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
-        Authenticator authenticator = getAuthenticator(serverUrl, userName, password);
-        return (getDecision(xacmlRequest,client,authenticator.getSessionId(false))).contains("Permit");
+        return (getDecision(xacmlRequest)).contains("Permit");
     }
 
     @Override
@@ -91,9 +93,7 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         attrs[attrs.length - 2] = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:resource", "urn:oasis:names:tc:xacml:1.0:resource:resource-id", ProxyConstants.DEFAULT_DATA_TYPE, resourceId);
         attrs[attrs.length - 1] = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:environment", "urn:oasis:names:tc:xacml:1.0:environment:environment-id", ProxyConstants.DEFAULT_DATA_TYPE, domainId);
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(attrs);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
-        Authenticator authenticator = getAuthenticator(serverUrl,userName,password);
-        return (getDecision(xacmlRequest,client,authenticator.getSessionId(false))).contains("Permit");
+        return (getDecision(xacmlRequest)).contains("Permit");
     }
 
     @Override
@@ -121,13 +121,56 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         return null;
     }
 
-    private String getDecision(String xacmlRequest, EntitlementThriftClient.Client client, String sessionId) throws EntitlementProxyException{
+    /**
+     * Gets the decision, retrying once when the pooled connection turns out to be broken or when the reused
+     * session has expired on the server. Other errors, e.g. evaluation errors of the PDP, are not retried.
+     */
+    private String getDecision(String xacmlRequest) throws Exception {
+        Authenticator authenticator = getAuthenticator(serverUrl, userName, password);
+        String sessionId;
         try {
-            return client.getDecision(xacmlRequest, sessionId);
-        } catch (TException e) {
+            return getDecision(xacmlRequest, authenticator.getSessionId(false));
+        } catch (EntitlementException e) {
+            if (!reuseSession || !ProxyConstants.THRIFT_AUTHENTICATION_ERROR.equals(e.getMessage())) {
+                throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+            }
+            // the reused session has expired on the server, so authenticate again
+            sessionId = authenticator.getSessionId(true);
+        } catch (TTransportException e) {
+            // the pooled connection may have been closed by the server, it has been discarded
+            sessionId = authenticator.getSessionId(false);
+        }
+        try {
+            return getDecision(xacmlRequest, sessionId);
+        } catch (EntitlementException e) {
             throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+        } catch (TTransportException e) {
+            throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+        }
+    }
+
+    private String getDecision(String xacmlRequest, String sessionId)
+            throws EntitlementProxyException, EntitlementException, TTransportException {
+        EntitlementThriftClient.Client client = clientPool.borrowClient();
+        boolean reusable = false;
+        try {
+            String decision = client.getDecision(xacmlRequest, sessionId);
+            reusable = true;
+            return decision;
         } catch (EntitlementException e) {
+            // the PDP has answered, so the connection is still usable
+            reusable = true;
+            throw e;
+        } catch (TTransportException e) {
+            throw e;
+        } catch (TException e) {
             throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+        } finally {
+            if (reusable) {
+                clientPool.returnClient(client);
+            } else {
+                clientPool.invalidateClient(client);
+            }
         }
     }
 
@@ -142,15 +185,4 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         authenticators.put(serverUrl, authenticator);
         return authenticator;
     }
-
-    private EntitlementThriftClient.Client getThriftClient(String appId) throws Exception {
-
-        TSSLTransportFactory.TSSLTransportParameters param = new TSSLTransportFactory.TSSLTransportParameters();
-        param.setTrustStore(trustStore, trustStorePass);
-        TTransport transport;
-        transport = TSSLTransportFactory.getClientSocket(thriftHost, thriftPort, ProxyConstants.THRIFT_TIME_OUT, param);
-        TProtocol protocol = new TBinaryProtocol(transport);
-        EntitlementThriftClient.Client client = new EntitlementThriftClient.Client(protocol);
-        return client;
-    }
 }
@@ -246,6 +246,8 @@ public class PDPConstants {
 
     public static final String ATTRIBUTE_CACHING_INTERVAL = "PDP.AttributeCaching.CachingInterval";
 
+    public static final String ATTRIBUTE_PREFETCH = "PDP.AttributePrefetch.Enable";
+
     public static final String RESOURCE_CACHING = "PDP.ResourceCaching.Enable";
 
     public static final String RESOURCE_CACHING_INTERVAL = "PDP.DecisionCaching.CachingInterval";
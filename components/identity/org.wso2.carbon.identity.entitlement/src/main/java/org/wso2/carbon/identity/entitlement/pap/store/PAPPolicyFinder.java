@@ -41,7 +41,7 @@ public class PAPPolicyFinder extends PolicyFinderModule {
 	// the list of policy URLs passed to the constructor
 	private PAPPolicyStoreReader policyReader;
 
-	// the map of policies
+	// only used to combine the matching policies, the policies are read from the store on each request
 	private DefaultPolicyCollection policies;
 
     //keeps policy ids according to the order
@@ -117,9 +117,6 @@ public class PAPPolicyFinder extends PolicyFinderModule {
 	public PolicyFinderResult findPolicy(URI idReference, int type, VersionConstraints constraints,
 			PolicyMetaData parentMetaData) {
 
-        // clear all current policies
-        policies.getPolicies().clear();
-
         AbstractPolicy policy = null;
 
         try {
@@ -130,12 +127,10 @@ public class PAPPolicyFinder extends PolicyFinderModule {
                 if (type == PolicyReference.POLICY_REFERENCE) {
                     if (policyFromStore instanceof Policy){
                         policy = policyFromStore;
-                        policies.addPolicy(policy);
                     }
                 } else {
                     if (policyFromStore instanceof PolicySet){
                         policy = policyFromStore;
-                        policies.addPolicy(policy);
                     }
                 }
             }
@@ -158,9 +153,8 @@ public class PAPPolicyFinder extends PolicyFinderModule {
 	 */
 	public PolicyFinderResult findPolicy(EvaluationCtx context) {
 
-        // clear all current policies
-        policies.getPolicies().clear();
-
+        // the policies are read from the store, so that the latest versions are tested, and matched
+        // directly. Indexing their targets would cost more than it saves for a single request.
         ArrayList<AbstractPolicy> list = new ArrayList<AbstractPolicy>();
 
         try {
@@ -179,8 +173,6 @@ public class PAPPolicyFinder extends PolicyFinderModule {
                 }
                 if(policy == null){
                     continue;
-                } else {
-                    policies.addPolicy(policy);
                 }
                 // see if we match
                 MatchResult match = policy.match(context);
@@ -0,0 +1,221 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.entitlement.pdp;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.wso2.carbon.identity.entitlement.EntitlementException;
+import org.wso2.carbon.identity.entitlement.policy.PolicyRequestBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * XACML request which is parsed once, together with a canonical key for the decision cache. The key
+ * only depends on the attributes of the request, so that requests which differ only in the order of
+ * their categories, attributes or attribute values, in formatting or in namespace prefixes share the
+ * same key.
+ *
+ * Requests which can not be reduced to a plain set of attributes, i.e. which carry content, multiple
+ * request references, request defaults or repeated categories, are keyed by the raw request string.
+ */
+public class CanonicalRequest {
+
+    private static Log log = LogFactory.getLog(CanonicalRequest.class);
+
+    private Element requestElement;
+
+    private String key;
+
+    private CanonicalRequest(Element requestElement, String key) {
+        this.requestElement = requestElement;
+        this.key = key;
+    }
+
+    /**
+     * Parses the given XACML request and builds its key. This does not fail on malformed requests, in
+     * which case there is no request element and the raw request string is used as the key.
+     *
+     * @param xacmlRequest XACML request as String
+     * @return parsed request
+     */
+    public static CanonicalRequest build(String xacmlRequest) {
+
+        Element requestElement;
+        try {
+            requestElement = new PolicyRequestBuilder().getXacmlRequest(xacmlRequest);
+        } catch (EntitlementException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("XACML request can not be parsed", e);
+            }
+            return new CanonicalRequest(null, xacmlRequest);
+        }
+
+        String canonicalForm = getCanonicalForm(requestElement);
+        if (canonicalForm == null) {
+            return new CanonicalRequest(requestElement, xacmlRequest);
+        }
+        String digest = getDigest(canonicalForm);
+        if (digest == null) {
+            return new CanonicalRequest(requestElement, xacmlRequest);
+        }
+        return new CanonicalRequest(requestElement, digest);
+    }
+
+    /**
+     * @return DOM of the request, or null if the request is malformed
+     */
+    public Element getRequestElement() {
+        return requestElement;
+    }
+
+    /**
+     * @return key of the request for the decision cache
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Canonical form of the request, or null if the request is not a plain set of attributes
+     */
+    private static String getCanonicalForm(Element requestElement) {
+
+        StringBuilder builder = new StringBuilder();
+        appendElementName(builder, requestElement);
+        appendAttributes(builder, requestElement);
+
+        List<String> categories = new ArrayList<String>();
+        Set<String> categoryNames = new HashSet<String>();
+        for (Element category : getChildElements(requestElement)) {
+            StringBuilder categoryBuilder = new StringBuilder();
+            appendElementName(categoryBuilder, category);
+            appendAttributes(categoryBuilder, category);
+            if (!categoryNames.add(categoryBuilder.toString())) {
+                // repeated categories are evaluated as separate requests, so the order is significant
+                return null;
+            }
+
+            List<String> attributes = new ArrayList<String>();
+            for (Element attribute : getChildElements(category)) {
+                if (!"Attribute".equals(attribute.getLocalName())) {
+                    return null;
+                }
+                StringBuilder attributeBuilder = new StringBuilder();
+                appendAttributes(attributeBuilder, attribute);
+
+                List<String> values = new ArrayList<String>();
+                for (Element value : getChildElements(attribute)) {
+                    if (!"AttributeValue".equals(value.getLocalName()) || !getChildElements(value).isEmpty()) {
+                        return null;
+                    }
+                    StringBuilder valueBuilder = new StringBuilder();
+                    appendAttributes(valueBuilder, value);
+                    append(valueBuilder, value.getTextContent());
+                    values.add(valueBuilder.toString());
+                }
+                Collections.sort(values);
+                append(attributeBuilder, values);
+                attributes.add(attributeBuilder.toString());
+            }
+            Collections.sort(attributes);
+            append(categoryBuilder, attributes);
+            categories.add(categoryBuilder.toString());
+        }
+        Collections.sort(categories);
+        append(builder, categories);
+        return builder.toString();
+    }
+
+    private static void appendElementName(StringBuilder builder, Element element) {
+        append(builder, element.getNamespaceURI());
+        append(builder, element.getLocalName());
+    }
+
+    private static void appendAttributes(StringBuilder builder, Element element) {
+        List<String> attributes = new ArrayList<String>();
+        NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Node attributeNode = attributeNodes.item(i);
+            String name = attributeNode.getNodeName();
+            if ("xmlns".equals(name) || name.startsWith("xmlns:")) {
+                continue;
+            }
+            StringBuilder attributeBuilder = new StringBuilder();
+            append(attributeBuilder, attributeNode.getLocalName() != null ? attributeNode.getLocalName() : name);
+            append(attributeBuilder, attributeNode.getNodeValue());
+            attributes.add(attributeBuilder.toString());
+        }
+        Collections.sort(attributes);
+        append(builder, attributes);
+    }
+
+    private static void append(StringBuilder builder, List<String> parts) {
+        builder.append('[').append(parts.size()).append(']');
+        for (String part : parts) {
+            append(builder, part);
+        }
+    }
+
+    // length prefixed, so that the values can not run into each other
+    private static void append(StringBuilder builder, String part) {
+        if (part == null) {
+            builder.append("-1:");
+        } else {
+            builder.append(part.length()).append(':').append(part);
+        }
+    }
+
+    private static String getDigest(String canonicalForm) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonicalForm.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            log.error("Error while creating the key of the XACML request", e);
+        } catch (UnsupportedEncodingException e) {
+            log.error("Error while creating the key of the XACML request", e);
+        }
+        return null;
+    }
+
+    private static List<Element> getChildElements(Element element) {
+        List<Element> children = new ArrayList<Element>();
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) nodes.item(i));
+            }
+        }
+        return children;
+    }
+}
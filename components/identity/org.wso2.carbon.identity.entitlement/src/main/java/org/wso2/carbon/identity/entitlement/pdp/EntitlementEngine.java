@@ -31,7 +31,6 @@ import org.wso2.balana.ctx.AbstractRequestCtx;
 import org.wso2.balana.finder.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.dom.Element;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.identity.entitlement.EntitlementException;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
@@ -226,32 +225,55 @@ public class EntitlementEngine {
 
         String xacmlResponse;
 
-        if ((xacmlResponse = getFromCache(xacmlRequest, false)) != null) {
+        Map<PIPExtension, Properties> extensions = EntitlementServiceComponent.getEntitlementConfig()
+                .getExtensions();
+        boolean pipExtensionsEnabled = extensions != null && !extensions.isEmpty();
+
+        // the request is parsed only once, and is keyed in the cache by its canonical form
+        CanonicalRequest canonicalRequest = null;
+        String cacheKey = xacmlRequest;
+        if (pdpDecisionCacheEnable || pipExtensionsEnabled) {
+            canonicalRequest = CanonicalRequest.build(xacmlRequest);
+            cacheKey = canonicalRequest.getKey();
+        }
+
+        if ((xacmlResponse = getFromCache(cacheKey, false)) != null) {
             if(log.isDebugEnabled()){
                 log.debug("XACML Response : " + xacmlResponse);
             }
             return xacmlResponse;
 		}
 
-        Map<PIPExtension, Properties> extensions = EntitlementServiceComponent.getEntitlementConfig()
-                .getExtensions();
+        AbstractRequestCtx requestCtx = null;
+        if (canonicalRequest != null && canonicalRequest.getRequestElement() != null) {
+            try {
+                requestCtx = RequestCtxFactory.getFactory().getRequestCtx(canonicalRequest.getRequestElement());
+            } catch (ParsingException e) {
+                if (pipExtensionsEnabled) {
+                    throw e;
+                }
+                // let the PDP build the error response
+            }
+        }
 
-        if(extensions != null && !extensions.isEmpty()){
-            PolicyRequestBuilder policyRequestBuilder = new PolicyRequestBuilder();
-            Element xacmlRequestElement = policyRequestBuilder.getXacmlRequest(xacmlRequest);
-            AbstractRequestCtx requestCtx = RequestCtxFactory.getFactory().
-                                                            getRequestCtx(xacmlRequestElement);
+        if(pipExtensionsEnabled){
+            if (requestCtx == null) {
+                throw new EntitlementException("Error while creating DOM from XACML request");
+            }
             Set<PIPExtension> pipExtensions = extensions.keySet();
             for (PIPExtension pipExtension : pipExtensions) {
                 pipExtension.update(requestCtx);
             }
+        }
+
+        if (requestCtx != null) {
             ResponseCtx responseCtx = pdp.evaluate(requestCtx);
             xacmlResponse = responseCtx.encode();
         } else {
             xacmlResponse = pdp.evaluate(xacmlRequest);
         }
 
-        addToCache(xacmlRequest, xacmlResponse, false);
+        addToCache(cacheKey, xacmlResponse, false);
 
         if(log.isDebugEnabled()){
             log.debug("XACML Response : " + xacmlResponse);
@@ -134,6 +134,8 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 			URI category, EvaluationCtx context) {
 
 		List<AttributeValue> attrBag = new ArrayList<AttributeValue>();
+		// attributes of the subjects are kept for the rest of this evaluation
+		SubjectAttributeBag subjectAttributeBag = SubjectAttributeBag.bind(context);
 		// Get the list of attribute finders who are registered with this particular attribute.
 		List<PIPAttributeFinder> finders = attrFinders.get(attributeId.toString());
 
@@ -166,7 +168,7 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 				if (attributeFinderCache != null && !pipAttributeFinder.overrideDefaultCache()) {
 
                     key = attributeType.toString() + attributeId.toString() + category.toString() +
-                                 encodeContext(context);
+                                 getEncodedContext(subjectAttributeBag, context);
 
                     if(issuer != null){
                         key += issuer;
@@ -279,6 +281,24 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 		}
 	}
 
+    /**
+     * The request is encoded once per evaluation, instead of once per attribute designator
+     *
+     * @param subjectAttributeBag attributes of the evaluation
+     * @param evaluationCtx EvaluationCtx
+     * @return encoded request
+     * @throws TransformerException Exception throws if fails
+     */
+    private String getEncodedContext(SubjectAttributeBag subjectAttributeBag, EvaluationCtx evaluationCtx)
+            throws TransformerException {
+        String encodedContext = subjectAttributeBag.getEncodedContext();
+        if (encodedContext == null) {
+            encodedContext = encodeContext(evaluationCtx);
+            subjectAttributeBag.setEncodedContext(encodedContext);
+        }
+        return encodedContext;
+    }
+
     /**
      * Converts DOM object to String. This is a helper method for creating cache key
      * @param evaluationCtx EvaluationCtx
@@ -18,7 +18,9 @@
 
 package org.wso2.carbon.identity.entitlement.pip;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -27,7 +29,9 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.core.util.AdminServicesUtil;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.internal.EntitlementServiceComponent;
+import org.wso2.carbon.user.api.Claim;
 import org.wso2.carbon.user.api.ClaimManager;
 import org.wso2.carbon.user.api.ClaimMapping;
 import org.wso2.carbon.user.core.UserCoreConstants;
@@ -38,11 +42,17 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
  * DefaultAttributeFinder talks to the underlying user store to read user attributes.
  * DefaultAttributeFinder is by default registered for all the claims defined under
  * http://wso2.org/claims dialect.
+ *
+ * When attribute prefetch is enabled, all the claims of a subject are read with a single call to the
+ * user store on the first request for one of them, and the roles with a single call on the first request
+ * for them. They are kept in the SubjectAttributeBag of the evaluation for the other designators of the
+ * same subject.
  */
 public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
 
 	private Set<String> supportedAttrs = new HashSet<String>();
 	private static Log log = LogFactory.getLog(DefaultAttributeFinder.class);
+	private boolean prefetchEnabled;
 
 	/**
 	 * Loads all the claims defined under http://wso2.org/claims dialect.
@@ -50,6 +60,9 @@ public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
 	 * @throws Exception
 	 */
 	public void init(Properties properties) throws Exception {
+		Properties engineProperties = EntitlementServiceComponent.getEntitlementConfig().getEngineProperties();
+		prefetchEnabled = engineProperties != null &&
+				"true".equals(engineProperties.getProperty(PDPConstants.ATTRIBUTE_PREFETCH));
 		if (log.isDebugEnabled()) {
 			log.debug("DefaultAttributeFinder is initialized successfully");
 		}
@@ -72,7 +85,16 @@ public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
 		Set<String> values = new HashSet<String>();
 
         subjectId = MultitenantUtils.getTenantAwareUsername(subjectId);
-		if (UserCoreConstants.ClaimTypeURIs.ROLE.equals(attributeId)) {
+		SubjectAttributeBag subjectAttributeBag = prefetchEnabled ? SubjectAttributeBag.getCurrent() : null;
+		if (subjectAttributeBag != null) {
+			// the bag is not handed out, as callers may cache or modify the returned values
+			Set<String> prefetchedValues = getPrefetchedValues(subjectAttributeBag, subjectId, attributeId);
+			if (prefetchedValues != null) {
+				values.addAll(prefetchedValues);
+			} else if (log.isDebugEnabled()) {
+				log.debug(String.format("Request attribute %1$s not found", attributeId));
+			}
+		} else if (UserCoreConstants.ClaimTypeURIs.ROLE.equals(attributeId)) {
 			if (log.isDebugEnabled()) {
 				log.debug("Looking for roles via DefaultAttributeFinder");
 			}
@@ -104,6 +126,52 @@ public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
 		return values;
 	}
 
+	private Set<String> getPrefetchedValues(SubjectAttributeBag subjectAttributeBag, String subjectId,
+	                                        String attributeId) throws Exception {
+		if (UserCoreConstants.ClaimTypeURIs.ROLE.equals(attributeId)) {
+			Set<String> roles = subjectAttributeBag.getRoles(subjectId);
+			if (roles == null) {
+				if (log.isDebugEnabled()) {
+					log.debug("Reading the roles of " + subjectId + " for the evaluation");
+				}
+				roles = new HashSet<String>();
+				String[] roleList = CarbonContext.getThreadLocalCarbonContext().getUserRealm()
+						.getUserStoreManager().getRoleListOfUser(subjectId);
+				if (roleList != null) {
+					for (String role : roleList) {
+						roles.add(role);
+					}
+				}
+				subjectAttributeBag.setRoles(subjectId, roles);
+			}
+			return roles;
+		}
+
+		Map<String, Set<String>> claims = subjectAttributeBag.getClaims(subjectId);
+		if (claims == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Reading all the claims of " + subjectId + " for the evaluation");
+			}
+			claims = new HashMap<String, Set<String>>();
+			Claim[] claimValues = CarbonContext.getThreadLocalCarbonContext().getUserRealm()
+					.getUserStoreManager().getUserClaimValues(subjectId, null);
+			if (claimValues != null) {
+				for (Claim claim : claimValues) {
+					if (claim.getValue() != null) {
+						// Fix for multiple claim values
+						Set<String> values = new HashSet<String>();
+						for (String value : claim.getValue().split(",")) {
+							values.add(value);
+						}
+						claims.put(claim.getClaimUri(), values);
+					}
+				}
+			}
+			subjectAttributeBag.setClaims(subjectId, claims);
+		}
+		return claims.get(attributeId);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
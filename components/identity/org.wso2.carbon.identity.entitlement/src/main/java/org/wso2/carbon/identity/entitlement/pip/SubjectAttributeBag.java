@@ -0,0 +1,115 @@
+/*
+*  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.identity.entitlement.pip;
+
+import org.wso2.balana.ctx.EvaluationCtx;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes of the subjects of a single evaluation. A request is evaluated by a single thread, so the bag
+ * is kept per thread and is bound to the EvaluationCtx of the evaluation by the CarbonAttributeFinder. An
+ * attribute request of another evaluation starts a new bag, so values are never shared between requests.
+ *
+ * Attribute finders which can read all the attributes of a subject at once keep them here, so that
+ * each designator of the same subject does not result in a separate call to the user store.
+ */
+public class SubjectAttributeBag {
+
+    private static ThreadLocal<SubjectAttributeBag> currentBag = new ThreadLocal<SubjectAttributeBag>();
+
+    // the context is not kept alive by the bag after the evaluation
+    private WeakReference<EvaluationCtx> context;
+
+    private String encodedContext;
+
+    private Map<String, Map<String, Set<String>>> claims = new HashMap<String, Map<String, Set<String>>>();
+
+    private Map<String, Set<String>> roles = new HashMap<String, Set<String>>();
+
+    private SubjectAttributeBag(EvaluationCtx context) {
+        this.context = new WeakReference<EvaluationCtx>(context);
+    }
+
+    /**
+     * Binds the bag of the current thread to the given evaluation, starting a new bag if it belongs to
+     * another evaluation
+     *
+     * @param context context of the evaluation
+     * @return bag of the evaluation
+     */
+    static SubjectAttributeBag bind(EvaluationCtx context) {
+        SubjectAttributeBag bag = currentBag.get();
+        if (bag == null || bag.context.get() != context) {
+            bag = new SubjectAttributeBag(context);
+            currentBag.set(bag);
+        }
+        return bag;
+    }
+
+    /**
+     * @return bag of the evaluation in progress in the current thread, or null if there is none
+     */
+    public static SubjectAttributeBag getCurrent() {
+        SubjectAttributeBag bag = currentBag.get();
+        if (bag != null && bag.context.get() == null) {
+            currentBag.remove();
+            return null;
+        }
+        return bag;
+    }
+
+    /**
+     * @return encoded request of the evaluation, used to build the keys of the attribute cache
+     */
+    String getEncodedContext() {
+        return encodedContext;
+    }
+
+    void setEncodedContext(String encodedContext) {
+        this.encodedContext = encodedContext;
+    }
+
+    /**
+     * @param subject subject name
+     * @return values of all the claims of the subject by claim URI, or null if they have not been read yet
+     */
+    public Map<String, Set<String>> getClaims(String subject) {
+        return claims.get(subject);
+    }
+
+    public void setClaims(String subject, Map<String, Set<String>> claimValues) {
+        claims.put(subject, claimValues);
+    }
+
+    /**
+     * @param subject subject name
+     * @return roles of the subject, or null if they have not been read yet
+     */
+    public Set<String> getRoles(String subject) {
+        return roles.get(subject);
+    }
+
+    public void setRoles(String subject, Set<String> roleNames) {
+        roles.put(subject, roleNames);
+    }
+}
@@ -55,6 +55,9 @@ public class DefaultPolicyCollection implements PolicyCollection{
 
     private int maxInMemoryPolicies;
 
+    // index over the policy targets, used to avoid matching every policy against each request
+    private PolicyTargetIndex targetIndex = new PolicyTargetIndex();
+
     private static Log log = LogFactory.getLog(DefaultPolicyCollection.class);
 
     /**
@@ -142,13 +145,21 @@ public class DefaultPolicyCollection implements PolicyCollection{
             // this identifier is already is use, so see if this version is
             // already in the set
             TreeSet<AbstractPolicy> set = policies.get(identifier);
-            return set.add(policy);
+            AbstractPolicy current = set.isEmpty() ? null : set.first();
+            boolean added = set.add(policy);
+            // the target is only indexed again when the most recent version has changed
+            if (set.first() != current) {
+                targetIndex.addPolicy(identifier, set.first());
+            }
+            return added;
         } else {
             // this identifier isn't already being used, so create a new
             // set in the map for it, and add the policy
             TreeSet<AbstractPolicy> set = new TreeSet<AbstractPolicy>(versionComparator);
             policies.put(identifier, set);
-            return set.add(policy);
+            boolean added = set.add(policy);
+            targetIndex.addPolicy(identifier, policy);
+            return added;
         }
     }
 
@@ -166,12 +177,16 @@ public class DefaultPolicyCollection implements PolicyCollection{
     public AbstractPolicy getEffectivePolicy(EvaluationCtx context) throws EntitlementException {
         // setup a list of matching policies
         ArrayList<AbstractPolicy> list = new ArrayList<AbstractPolicy>();
-        // get an iterator over all the identifiers
-        Iterator<TreeSet<AbstractPolicy>> it = policies.values().iterator();
-
-        while (it.hasNext()) {
+        // only the policies whose targets may match the request are considered
+        for (String identifier : targetIndex.getCandidatePolicies(context)) {
+            TreeSet<AbstractPolicy> set = policies.get(identifier);
+            if (set == null) {
+                // policy has been removed from the collection
+                targetIndex.removePolicy(identifier);
+                continue;
+            }
             // for each identifier, get only the most recent policy
-            AbstractPolicy policy = it.next().first();        
+            AbstractPolicy policy = set.first();
 
             // see if we match
             MatchResult match = policy.match(context);
@@ -250,6 +265,15 @@ public class DefaultPolicyCollection implements PolicyCollection{
         return policies;
     }
 
+    /**
+     * Removes all the policies from the collection, together with their target index entries. The
+     * collection must be cleared through this method rather than through <code>getPolicies()</code>.
+     */
+    public void clearPolicies() {
+        policies.clear();
+        targetIndex.clear();
+    }
+
     /**
      * Get Policy or Policy Set for given applicable policies
      * @param policies applicable policies as array list
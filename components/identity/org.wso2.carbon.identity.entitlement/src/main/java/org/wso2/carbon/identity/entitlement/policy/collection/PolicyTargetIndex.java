@@ -0,0 +1,428 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.entitlement.policy.collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.wso2.balana.AbstractPolicy;
+import org.wso2.balana.AbstractTarget;
+import org.wso2.balana.attr.AttributeValue;
+import org.wso2.balana.attr.StringAttribute;
+import org.wso2.balana.ctx.AbstractRequestCtx;
+import org.wso2.balana.ctx.Attribute;
+import org.wso2.balana.ctx.EvaluationCtx;
+import org.wso2.balana.xacml3.Attributes;
+import org.wso2.carbon.identity.entitlement.PDPConstants;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index over the targets of the policies in a policy collection. For each policy, the target is
+ * inspected for a subject-id, resource-id or action-id that the request must carry for the target to
+ * match, i.e. a section of the target in which every group has a string-equal match on that attribute.
+ * The policy is then put in a hash bucket for each of those values. Policies whose targets can not be
+ * indexed this way are kept aside and are always returned as candidates.
+ *
+ * The index only narrows down the policies that need to be matched. It never decides on a match, so
+ * the candidates still have to be matched against the request. Only the attributes carried by the
+ * request itself are looked at, so that looking up the candidates never calls the attribute finders.
+ *
+ * Lookups share a read lock, while adding and removing policies takes the write lock.
+ */
+public class PolicyTargetIndex {
+
+    private static final String STRING_EQUAL = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+
+    // attributes that can be indexed, in the order of preference, as {category, attribute id}
+    private static final String[][] INDEXED_ATTRIBUTES = {
+            {PDPConstants.RESOURCE_CATEGORY_URI, PDPConstants.RESOURCE_ID_DEFAULT},
+            {PDPConstants.ACTION_CATEGORY_URI, PDPConstants.ACTION_ID_DEFAULT},
+            {PDPConstants.SUBJECT_CATEGORY_URI, PDPConstants.SUBJECT_ID_DEFAULT}};
+
+    private static Log log = LogFactory.getLog(PolicyTargetIndex.class);
+
+    // indexed attribute -> attribute value -> policy identifiers
+    private Map<String, Map<String, Set<String>>> buckets = new HashMap<String, Map<String, Set<String>>>();
+
+    // policy identifier -> {indexed attribute, values}, for the indexed policies
+    private Map<String, IndexEntry> indexedPolicies = new HashMap<String, IndexEntry>();
+
+    private Set<String> unindexedPolicies = new HashSet<String>();
+
+    // policy identifier -> order in which it was first added to the collection
+    private Map<String, Long> ordinals = new HashMap<String, Long>();
+
+    private long nextOrdinal;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes the target of the given policy, replacing any previous index entry of the identifier
+     *
+     * @param identifier policy identifier in the collection
+     * @param policy current version of the policy
+     */
+    public void addPolicy(String identifier, AbstractPolicy policy) {
+
+        // the target is encoded and parsed outside of the lock
+        IndexEntry entry = buildIndexEntry(policy.getTarget());
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            removeIndexEntry(identifier);
+            if (!ordinals.containsKey(identifier)) {
+                ordinals.put(identifier, nextOrdinal++);
+            }
+            if (entry == null) {
+                unindexedPolicies.add(identifier);
+                return;
+            }
+            indexedPolicies.put(identifier, entry);
+            Map<String, Set<String>> valueBuckets = buckets.get(entry.attribute);
+            if (valueBuckets == null) {
+                valueBuckets = new HashMap<String, Set<String>>();
+                buckets.put(entry.attribute, valueBuckets);
+            }
+            for (String value : entry.values) {
+                Set<String> identifiers = valueBuckets.get(value);
+                if (identifiers == null) {
+                    identifiers = new HashSet<String>();
+                    valueBuckets.put(value, identifiers);
+                }
+                identifiers.add(identifier);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the policy from the index
+     *
+     * @param identifier policy identifier in the collection
+     */
+    public void removePolicy(String identifier) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            removeIndexEntry(identifier);
+            ordinals.remove(identifier);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all the policies from the index
+     */
+    public void clear() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            buckets.clear();
+            indexedPolicies.clear();
+            unindexedPolicies.clear();
+            ordinals.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the identifiers of the policies whose targets may match the request, in the order the
+     * policies were added
+     *
+     * @param context XACML request context
+     * @return candidate policy identifiers
+     */
+    public List<String> getCandidatePolicies(EvaluationCtx context) {
+
+        Map<String, Set<String>> requestValues = getRequestValues(context);
+
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Set<String> candidates = new HashSet<String>(unindexedPolicies);
+            for (String[] indexedAttribute : INDEXED_ATTRIBUTES) {
+                String attribute = getAttributeKey(indexedAttribute[0], indexedAttribute[1]);
+                Map<String, Set<String>> valueBuckets = buckets.get(attribute);
+                if (valueBuckets == null) {
+                    continue;
+                }
+                Set<String> values = requestValues.get(attribute);
+                if (values == null) {
+                    // the attribute is not in the request, so leave the decision to the matching
+                    for (Set<String> identifiers : valueBuckets.values()) {
+                        candidates.addAll(identifiers);
+                    }
+                    continue;
+                }
+                for (String value : values) {
+                    Set<String> identifiers = valueBuckets.get(value);
+                    if (identifiers != null) {
+                        candidates.addAll(identifiers);
+                    }
+                }
+            }
+
+            List<String> orderedCandidates = new ArrayList<String>(candidates);
+            Collections.sort(orderedCandidates, new Comparator<String>() {
+                public int compare(String o1, String o2) {
+                    Long ordinal1 = ordinals.get(o1);
+                    Long ordinal2 = ordinals.get(o2);
+                    return ordinal1.compareTo(ordinal2);
+                }
+            });
+            return orderedCandidates;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void removeIndexEntry(String identifier) {
+
+        unindexedPolicies.remove(identifier);
+        IndexEntry entry = indexedPolicies.remove(identifier);
+        if (entry == null) {
+            return;
+        }
+        Map<String, Set<String>> valueBuckets = buckets.get(entry.attribute);
+        for (String value : entry.values) {
+            Set<String> identifiers = valueBuckets.get(value);
+            if (identifiers != null) {
+                identifiers.remove(identifier);
+                if (identifiers.isEmpty()) {
+                    valueBuckets.remove(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * String values of the indexed attributes carried by the request itself, by indexed attribute. The
+     * attribute finders are not consulted, so an attribute the request does not carry has no entry.
+     */
+    private Map<String, Set<String>> getRequestValues(EvaluationCtx context) {
+
+        Map<String, Set<String>> requestValues = new HashMap<String, Set<String>>();
+        AbstractRequestCtx requestCtx = context.getRequestCtx();
+        if (requestCtx == null || requestCtx.getAttributesSet() == null) {
+            return requestValues;
+        }
+        for (Attributes attributes : requestCtx.getAttributesSet()) {
+            for (Attribute attribute : attributes.getAttributes()) {
+                if (!StringAttribute.identifier.equals(attribute.getType().toString())) {
+                    continue;
+                }
+                String key = getAttributeKey(attributes.getCategory().toString(), attribute.getId().toString());
+                if (!isIndexedAttribute(key)) {
+                    continue;
+                }
+                Set<String> values = requestValues.get(key);
+                if (values == null) {
+                    values = new HashSet<String>();
+                    requestValues.put(key, values);
+                }
+                for (AttributeValue value : attribute.getValues()) {
+                    values.add(value.encode().trim());
+                }
+            }
+        }
+        return requestValues;
+    }
+
+    private static boolean isIndexedAttribute(String key) {
+        for (String[] indexedAttribute : INDEXED_ATTRIBUTES) {
+            if (getAttributeKey(indexedAttribute[0], indexedAttribute[1]).equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the indexed attribute that the target requires, together with its allowed values.
+     *
+     * @param target policy target
+     * @return index entry or null if the target can not be indexed
+     */
+    private IndexEntry buildIndexEntry(AbstractTarget target) {
+
+        if (target == null) {
+            return null;
+        }
+
+        Element targetElement;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setExpandEntityReferences(false);
+            Document document = factory.newDocumentBuilder().parse(
+                    new ByteArrayInputStream(target.encode().getBytes("UTF-8")));
+            targetElement = document.getDocumentElement();
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Policy target can not be indexed", e);
+            }
+            return null;
+        }
+
+        // XACML 3.0 : Target -> AnyOf -> AllOf -> Match
+        // XACML 2.0 : Target -> Subjects -> Subject -> SubjectMatch and likewise for the other sections
+        List<Map<String, Set<String>>> sections = new ArrayList<Map<String, Set<String>>>();
+        for (Element section : getChildElements(targetElement)) {
+            Map<String, Set<String>> sectionValues = null;
+            for (Element group : getChildElements(section)) {
+                Map<String, String> groupValues = new HashMap<String, String>();
+                for (Element match : getChildElements(group)) {
+                    String[] matchValue = getMatchValue(match);
+                    if (matchValue != null && !groupValues.containsKey(matchValue[0])) {
+                        groupValues.put(matchValue[0], matchValue[1]);
+                    }
+                }
+                if (sectionValues == null) {
+                    sectionValues = new HashMap<String, Set<String>>();
+                    for (Map.Entry<String, String> groupValue : groupValues.entrySet()) {
+                        Set<String> values = new LinkedHashSet<String>();
+                        values.add(groupValue.getValue());
+                        sectionValues.put(groupValue.getKey(), values);
+                    }
+                } else {
+                    // only attributes constrained by every group of the section are kept
+                    Iterator<Map.Entry<String, Set<String>>> iterator = sectionValues.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<String, Set<String>> sectionValue = iterator.next();
+                        String value = groupValues.get(sectionValue.getKey());
+                        if (value == null) {
+                            iterator.remove();
+                        } else {
+                            sectionValue.getValue().add(value);
+                        }
+                    }
+                }
+            }
+            if (sectionValues != null && !sectionValues.isEmpty()) {
+                sections.add(sectionValues);
+            }
+        }
+
+        for (String[] indexedAttribute : INDEXED_ATTRIBUTES) {
+            String attribute = getAttributeKey(indexedAttribute[0], indexedAttribute[1]);
+            Set<String> values = null;
+            for (Map<String, Set<String>> sectionValues : sections) {
+                Set<String> candidateValues = sectionValues.get(attribute);
+                if (candidateValues != null && (values == null || candidateValues.size() < values.size())) {
+                    values = candidateValues;
+                }
+            }
+            if (values != null) {
+                return new IndexEntry(attribute, values);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {indexed attribute, value} if the element is a string-equal match of an indexed
+     * attribute against a literal value, null otherwise
+     */
+    private String[] getMatchValue(Element match) {
+
+        if (!STRING_EQUAL.equals(match.getAttribute("MatchId"))) {
+            return null;
+        }
+
+        String value = null;
+        String attribute = null;
+        for (Element child : getChildElements(match)) {
+            String name = child.getLocalName();
+            if (PDPConstants.ATTRIBUTE_VALUE.equals(name)) {
+                if (!StringAttribute.identifier.equals(child.getAttribute(PDPConstants.DATA_TYPE))) {
+                    return null;
+                }
+                value = child.getTextContent().trim();
+            } else if (PDPConstants.ATTRIBUTE_DESIGNATOR.equals(name)) {
+                attribute = getAttributeKey(child.getAttribute(PDPConstants.CATEGORY),
+                        child.getAttribute(PDPConstants.ATTRIBUTE_ID));
+            } else if ("SubjectAttributeDesignator".equals(name)) {
+                String subjectCategory = child.getAttribute("SubjectCategory");
+                if (subjectCategory.length() == 0 || PDPConstants.SUBJECT_CATEGORY_DEFAULT.equals(subjectCategory)) {
+                    attribute = getAttributeKey(PDPConstants.SUBJECT_CATEGORY_URI,
+                            child.getAttribute(PDPConstants.ATTRIBUTE_ID));
+                }
+            } else if ("ResourceAttributeDesignator".equals(name)) {
+                attribute = getAttributeKey(PDPConstants.RESOURCE_CATEGORY_URI,
+                        child.getAttribute(PDPConstants.ATTRIBUTE_ID));
+            } else if ("ActionAttributeDesignator".equals(name)) {
+                attribute = getAttributeKey(PDPConstants.ACTION_CATEGORY_URI,
+                        child.getAttribute(PDPConstants.ATTRIBUTE_ID));
+            }
+        }
+
+        if (value == null || attribute == null) {
+            return null;
+        }
+        return new String[]{attribute, value};
+    }
+
+    private static String getAttributeKey(String category, String attributeId) {
+        return category + "#" + attributeId;
+    }
+
+    private static List<Element> getChildElements(Element element) {
+        List<Element> children = new ArrayList<Element>();
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) nodes.item(i));
+            }
+        }
+        return children;
+    }
+
+    private static class IndexEntry {
+
+        private String attribute;
+
+        private Set<String> values;
+
+        private IndexEntry(String attribute, Set<String> values) {
+            this.attribute = attribute;
+            this.values = values;
+        }
+    }
+}
@@ -86,6 +86,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // already logged, passed on as is so that clients can tell an authentication failure apart
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -119,6 +122,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // already logged, passed on as is so that clients can tell an authentication failure apart
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -154,6 +160,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // already logged, passed on as is so that clients can tell an authentication failure apart
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -186,6 +195,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // already logged, passed on as is so that clients can tell an authentication failure apart
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -42,6 +42,7 @@ import org.wso2.carbon.identity.mgt.store.RegistryRecoveryDataStore;
 import org.wso2.carbon.identity.mgt.store.UserIdentityDataStore;
 import org.wso2.carbon.identity.mgt.store.UserRecoveryDataStore;
 import org.wso2.carbon.identity.mgt.store.UserStoreBasedIdentityDataStore;
+import org.wso2.carbon.identity.mgt.store.WriteBehindIdentityDataStore;
 import org.wso2.carbon.user.api.RealmConfiguration;
 import org.wso2.carbon.user.core.jdbc.JDBCRealmConstants;
 import org.wso2.carbon.utils.CarbonUtils;
@@ -79,6 +80,8 @@ public class IdentityMgtConfig {
 
     private int authPolicyLockingTime;
 
+    private int authPolicyFailedAttemptsFlushInterval;
+
     private int authPolicyPasswordExpireTime;
 
     private int notificationExpireTime;
@@ -260,6 +263,12 @@ public class IdentityMgtConfig {
                 this.authPolicyLockingTime = Integer.parseInt(authPolicyLockingTime.trim());
             }
 
+            String authPolicyFailedAttemptsFlushInterval = properties.
+                    getProperty(IdentityMgtConstants.PropertyConfig.AUTH_POLICY_ACCOUNT_LOCKING_FLUSH_INTERVAL);
+            if(authPolicyFailedAttemptsFlushInterval != null){
+                this.authPolicyFailedAttemptsFlushInterval = Integer.parseInt(authPolicyFailedAttemptsFlushInterval.trim());
+            }
+
             String authPolicyPasswordExpireTime = properties.
                     getProperty(IdentityMgtConstants.PropertyConfig.AUTH_POLICY_PASSWORD_EXPIRE_TIME);
             if(authPolicyPasswordExpireTime != null){
@@ -387,6 +396,12 @@ public class IdentityMgtConfig {
                 this.identityDataStore = new UserStoreBasedIdentityDataStore();
             }
 
+            if(this.authPolicyFailedAttemptsFlushInterval > 0){
+                // failed login attempts are written periodically instead of on each attempt
+                this.identityDataStore = new WriteBehindIdentityDataStore(this.identityDataStore,
+                        this.authPolicyFailedAttemptsFlushInterval);
+            }
+
             if(this.recoveryDataStore == null){
                 this.recoveryDataStore = new RegistryRecoveryDataStore();
             }
@@ -470,6 +485,14 @@ public class IdentityMgtConfig {
         return authPolicyLockingTime;
     }
 
+    /**
+     * @return interval in seconds between writes of the failed login attempts which did not lock
+     * the account, or 0 if they are written on each attempt
+     */
+    public int getAuthPolicyFailedAttemptsFlushInterval() {
+        return authPolicyFailedAttemptsFlushInterval;
+    }
+
     public boolean isAuthPolicyAccountLockCheck() {
         return authPolicyAccountLockCheck;
     }
@@ -379,7 +379,12 @@ public class IdentityMgtEventListener extends AbstractUserOperationEventListener
                 }
 
                 try {
-                    module.store(userIdentityDTO, userStoreManager);
+                    if (userIdentityDTO.getAccountLock()) {
+                        module.store(userIdentityDTO, userStoreManager);
+                    } else {
+                        // only the fail attempt count has changed, which need not be persisted right away
+                        module.storeDeferred(userIdentityDTO, userStoreManager);
+                    }
                 } catch (IdentityException e) {
                     throw new UserStoreException("Error while doPostAuthenticate", e);
                 }
@@ -150,6 +150,8 @@ public class IdentityMgtConstants {
 
         public static final String  AUTH_POLICY_ACCOUNT_LOCKING_FAIL_ATTEMPTS = "Authentication.Policy.Account.Lock.On.Failure.Max.Attempts";
 
+        public static final String  AUTH_POLICY_ACCOUNT_LOCKING_FLUSH_INTERVAL = "Authentication.Policy.Account.Lock.On.Failure.Flush.Interval";
+
         public static final String  AUTH_POLICY_ACCOUNT_LOCK_ON_CREATION = "Authentication.Policy.Account.Lock.On.Creation";
 
         public static final String  CHALLENGE_QUESTION_SEPARATOR = "Challenge.Question.Separator";
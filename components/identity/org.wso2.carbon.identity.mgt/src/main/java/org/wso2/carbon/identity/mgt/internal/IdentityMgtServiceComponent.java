@@ -32,6 +32,7 @@ import org.wso2.carbon.identity.mgt.IdentityMgtEventListener;
 import org.wso2.carbon.identity.mgt.RecoveryProcessor;
 import org.wso2.carbon.identity.mgt.constants.IdentityMgtConstants;
 import org.wso2.carbon.identity.mgt.dto.ChallengeQuestionDTO;
+import org.wso2.carbon.identity.mgt.store.WriteBehindIdentityDataStore;
 import org.wso2.carbon.registry.core.Collection;
 import org.wso2.carbon.registry.core.Registry;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
@@ -89,6 +90,11 @@ public class IdentityMgtServiceComponent {
 
 
     protected void deactivate(ComponentContext context) {
+        IdentityMgtConfig config = IdentityMgtConfig.getInstance();
+        if (config != null && config.getIdentityDataStore() instanceof WriteBehindIdentityDataStore) {
+            // persist the failed login attempts which are not written yet
+            ((WriteBehindIdentityDataStore) config.getIdentityDataStore()).flush();
+        }
         log.debug("Identity Management bundle is de-activated");
     }
 
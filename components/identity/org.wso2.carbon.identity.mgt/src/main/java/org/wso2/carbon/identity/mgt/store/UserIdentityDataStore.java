@@ -59,6 +59,19 @@ public abstract class UserIdentityDataStore {
 	public abstract void store(UserIdentityClaimsDO userIdentityDTO, UserStoreManager userStoreManager)
                                                                             throws IdentityException;
 
+	/**
+	 * Stores a failed login attempt which does not lock the account, which need not be persisted
+	 * right away. The given data has one more failed attempt than the data loaded from this store.
+	 * By default the data is stored right away.
+	 * 
+	 * @param userIdentityDTO
+	 * @param userStoreManager
+	 */
+	public void storeDeferred(UserIdentityClaimsDO userIdentityDTO, UserStoreManager userStoreManager)
+	                                                                        throws IdentityException {
+		store(userIdentityDTO, userStoreManager);
+	}
+
 	/**
 	 * Loads
 	 * 
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.mgt.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.mgt.dto.UserIdentityClaimsDO;
+import org.wso2.carbon.user.api.UserStoreManager;
+
+/**
+ * Identity data store which counts the failed login attempts stored with {@link #storeDeferred} in memory
+ * and adds them to the underlying store periodically. Pending attempts of a user are dropped when newer
+ * data of the user is stored right away on this node, e.g. when the account is locked or the failed login
+ * attempts are reset.
+ *
+ * A flush only adds the pending number of attempts to the data currently in the underlying store, and
+ * does not write the lock of the account. The pending attempts are dropped if the account has been locked,
+ * or the attempts have been reset, on another node in the mean time.
+ *
+ * Pending attempts are lost if the node stops without flushing them, i.e. up to one flush interval of
+ * failed login attempts.
+ */
+public class WriteBehindIdentityDataStore extends UserIdentityDataStore {
+
+    private static final Log log = LogFactory.getLog(WriteBehindIdentityDataStore.class);
+
+    // beyond this number of users with pending writes, data is written right away
+    private static final int MAX_PENDING_WRITES = 10000;
+
+    private static final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "IdentityDataStoreFlusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private UserIdentityDataStore identityDataStore;
+
+    private ConcurrentMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<String, PendingWrite>();
+
+    /**
+     *
+     * @param identityDataStore store the data is written to
+     * @param flushInterval interval in seconds between writes of the deferred data
+     */
+    public WriteBehindIdentityDataStore(UserIdentityDataStore identityDataStore, long flushInterval) {
+        this.identityDataStore = identityDataStore;
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.SECONDS);
+    }
+
+    public UserIdentityDataStore getIdentityDataStore() {
+        return identityDataStore;
+    }
+
+    @Override
+    public String[] getUserIdentityDataClaims() throws IdentityException {
+        return identityDataStore.getUserIdentityDataClaims();
+    }
+
+    @Override
+    public void store(UserIdentityClaimsDO userIdentityDTO, UserStoreManager userStoreManager)
+            throws IdentityException {
+        // the stored data includes the pending attempts of the user, so they need not be written
+        discard(getKey(userIdentityDTO.getUserName()));
+        identityDataStore.store(userIdentityDTO, userStoreManager);
+    }
+
+    /**
+     * Counts a failed login attempt of the user, i.e. the given data has one more failed attempt than the
+     * data loaded from this store.
+     */
+    @Override
+    public void storeDeferred(UserIdentityClaimsDO userIdentityDTO, UserStoreManager userStoreManager)
+            throws IdentityException {
+
+        if (userIdentityDTO.getUserName() == null) {
+            identityDataStore.store(userIdentityDTO, userStoreManager);
+            return;
+        }
+
+        String key = getKey(userIdentityDTO.getUserName());
+        while (true) {
+            PendingWrite pendingWrite = pendingWrites.get(key);
+            if (pendingWrite == null) {
+                if (pendingWrites.size() >= MAX_PENDING_WRITES) {
+                    identityDataStore.store(userIdentityDTO, userStoreManager);
+                    return;
+                }
+                if (pendingWrites.putIfAbsent(key, new PendingWrite(userIdentityDTO, userStoreManager)) == null) {
+                    break;
+                }
+            } else {
+                synchronized (pendingWrite) {
+                    // the entry is removed once it is written
+                    if (pendingWrites.get(key) == pendingWrite) {
+                        pendingWrite.failedAttempts++;
+                        pendingWrite.lastFailAttemptTime = Math.max(pendingWrite.lastFailAttemptTime,
+                                userIdentityDTO.getLastFailAttemptTime());
+                        pendingWrite.userStoreManager = userStoreManager;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the data of the user from the underlying store, with the pending failed attempts added. The
+     * returned data is a copy, which the caller may change.
+     */
+    @Override
+    public UserIdentityClaimsDO load(String userName, UserStoreManager userStoreManager) {
+        UserIdentityClaimsDO userIdentityDTO = identityDataStore.load(userName, userStoreManager);
+        if (userName == null) {
+            return userIdentityDTO;
+        }
+        PendingWrite pendingWrite = pendingWrites.get(getKey(userName));
+        if (pendingWrite == null) {
+            return userIdentityDTO;
+        }
+        int failedAttempts;
+        long lastFailAttemptTime;
+        synchronized (pendingWrite) {
+            failedAttempts = pendingWrite.failedAttempts;
+            lastFailAttemptTime = pendingWrite.lastFailAttemptTime;
+        }
+        userIdentityDTO = copy(userName, userIdentityDTO);
+        if (!userIdentityDTO.getAccountLock()) {
+            userIdentityDTO.setFailAttempts(userIdentityDTO.getFailAttempts() + failedAttempts);
+            userIdentityDTO.setLastFailAttemptTime(Math.max(userIdentityDTO.getLastFailAttemptTime(),
+                    lastFailAttemptTime));
+        }
+        return userIdentityDTO;
+    }
+
+    @Override
+    public void remove(String userName, UserStoreManager userStoreManager) throws IdentityException {
+        if (userName != null) {
+            discard(getKey(userName));
+        }
+        identityDataStore.remove(userName, userStoreManager);
+    }
+
+    /**
+     * Adds all the pending failed attempts to the underlying store
+     */
+    public void flush() {
+        for (Map.Entry<String, PendingWrite> entry : pendingWrites.entrySet()) {
+            PendingWrite pendingWrite = entry.getValue();
+            synchronized (pendingWrite) {
+                if (pendingWrites.get(entry.getKey()) != pendingWrite) {
+                    continue;
+                }
+                try {
+                    PrivilegedCarbonContext.startTenantFlow();
+                    PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                    carbonContext.setTenantId(pendingWrite.tenantId);
+                    carbonContext.setTenantDomain(pendingWrite.tenantDomain);
+                    write(pendingWrite);
+                } catch (IdentityException e) {
+                    log.error("Error while persisting identity data of user : " + pendingWrite.userName, e);
+                } catch (RuntimeException e) {
+                    log.error("Error while persisting identity data of user : " + pendingWrite.userName, e);
+                } finally {
+                    PrivilegedCarbonContext.endTenantFlow();
+                    // removed only after it is written, so that a newer write of the user waits for it
+                    pendingWrites.remove(entry.getKey(), pendingWrite);
+                }
+            }
+        }
+    }
+
+    private void write(PendingWrite pendingWrite) throws IdentityException {
+        UserIdentityClaimsDO userIdentityDTO = copy(pendingWrite.userName,
+                identityDataStore.load(pendingWrite.userName, pendingWrite.userStoreManager));
+        if (userIdentityDTO.getAccountLock() || userIdentityDTO.getFailAttempts() < pendingWrite.baseFailedAttempts) {
+            if (log.isDebugEnabled()) {
+                log.debug("Account of user : " + pendingWrite.userName + " has been locked or its failed login " +
+                        "attempts reset since they were counted. Dropping " + pendingWrite.failedAttempts +
+                        " pending failed login attempts");
+            }
+            return;
+        }
+        userIdentityDTO.setFailAttempts(userIdentityDTO.getFailAttempts() + pendingWrite.failedAttempts);
+        userIdentityDTO.setLastFailAttemptTime(Math.max(userIdentityDTO.getLastFailAttemptTime(),
+                pendingWrite.lastFailAttemptTime));
+        identityDataStore.store(userIdentityDTO, pendingWrite.userStoreManager);
+    }
+
+    private void discard(String key) {
+        PendingWrite pendingWrite = pendingWrites.get(key);
+        if (pendingWrite != null) {
+            // waits if the pending data is being written
+            synchronized (pendingWrite) {
+                pendingWrites.remove(key, pendingWrite);
+            }
+        }
+    }
+
+    /**
+     * Copies the data, so that the data cached by the underlying store is not changed
+     */
+    private static UserIdentityClaimsDO copy(String userName, UserIdentityClaimsDO userIdentityDTO) {
+        if (userIdentityDTO == null) {
+            return new UserIdentityClaimsDO(userName);
+        }
+        UserIdentityClaimsDO copy = new UserIdentityClaimsDO(userIdentityDTO.getUserName(),
+                new HashMap<String, String>(userIdentityDTO.getUserDataMap()));
+        copy.setTenantId(userIdentityDTO.getTenantId());
+        copy.setTemporaryPassword(userIdentityDTO.getTemporaryPassword());
+        copy.setConfirmationCode(userIdentityDTO.getConfirmationCode());
+        return copy;
+    }
+
+    private static String getKey(String userName) {
+        return CarbonContext.getThreadLocalCarbonContext().getTenantId() + ":" + userName;
+    }
+
+    private static class PendingWrite {
+
+        private String userName;
+        private UserStoreManager userStoreManager;
+        private int tenantId;
+        private String tenantDomain;
+        // failed attempts stored for the user when the first pending attempt was counted
+        private int baseFailedAttempts;
+        private int failedAttempts;
+        private long lastFailAttemptTime;
+
+        private PendingWrite(UserIdentityClaimsDO userIdentityDTO, UserStoreManager userStoreManager) {
+            this.userName = userIdentityDTO.getUserName();
+            this.userStoreManager = userStoreManager;
+            this.baseFailedAttempts = userIdentityDTO.getFailAttempts() - 1;
+            this.failedAttempts = 1;
+            this.lastFailAttemptTime = userIdentityDTO.getLastFailAttemptTime();
+            CarbonContext carbonContext = CarbonContext.getThreadLocalCarbonContext();
+            this.tenantId = carbonContext.getTenantId();
+            this.tenantDomain = carbonContext.getTenantDomain();
+        }
+    }
+}
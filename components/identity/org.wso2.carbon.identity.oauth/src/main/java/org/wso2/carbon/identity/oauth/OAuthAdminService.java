@@ -41,6 +41,7 @@ import org.wso2.carbon.identity.oauth.dto.OAuthRevocationResponseDTO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.utils.ServerConstants;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
@@ -56,7 +57,7 @@ public class OAuthAdminService extends AbstractAdmin {
 
     private static List<String> allowedGrants = null;
 
-    private BaseCache<String, OAuthAppDO> appInfoCache = new BaseCache<String,OAuthAppDO>("AppInfoCache");
+    private BaseCache<String, OAuthAppDO> appInfoCache = new BaseCache<String,OAuthAppDO>("AppInfoCache", true);
 
     /**
      * Registers an consumer secret against the logged in user. A given user can only have a single
@@ -281,6 +282,8 @@ public class OAuthAdminService extends AbstractAdmin {
     public void removeOAuthApplicationData(String consumerKey) throws Exception {
         OAuthAppDAO dao = new OAuthAppDAO();
         dao.removeConsumerApplication(consumerKey);
+        // self contained access tokens of the client would stay valid until they expire
+        JWTAccessTokenUtil.revokeTokensOfClient(consumerKey);
         // remove client credentials from cache
         if(OAuthServerConfiguration.getInstance().isCacheEnabled()){
             OAuthCache.getInstance().clearCacheEntry(new OAuthCacheKey(consumerKey));
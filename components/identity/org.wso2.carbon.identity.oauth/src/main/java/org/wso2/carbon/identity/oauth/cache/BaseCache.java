@@ -20,11 +20,21 @@ package org.wso2.carbon.identity.oauth.cache;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.Caching;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A base class for all cache implementations in oauth module.
@@ -34,15 +44,87 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	private static Log log = LogFactory.getLog(BaseCache.class);
 	
     private static final String OAUTH_CACHE_MANAGER = "OAuthCacheManager";
+
+    // node local tiers by cache name, shared by all the instances of a cache, e.g. of the AppInfoCache
+    private static final ConcurrentMap<String, LocalCache<?,?>> localCaches =
+            new ConcurrentHashMap<String, LocalCache<?,?>>();
+
+    // tenants, by cache name, whose distributed cache has a listener invalidating the local tier
+    private static final ConcurrentMap<String, Set<Integer>> listenedTenants =
+            new ConcurrentHashMap<String, Set<Integer>>();
+
     private String CACHE_NAME;
+    private boolean localCacheSupported;
+    private volatile LocalCache<K,V> localCache;
+    private volatile Set<Integer> localCacheListenedTenants;
+    private volatile boolean localCacheInitialized;
 
 	public BaseCache(String cacheName) {
+		this(cacheName, false);
+	}
+
+	/**
+	 * @param cacheName
+	 *            Name of the distributed cache.
+	 * @param localCacheSupported
+	 *            Whether the entries of this cache can be kept in the node local cache tier, when
+	 *            it is enabled. Only immutable entries, which are invalidated through this cache,
+	 *            should be kept there. Entries removed or updated in the distributed cache, also
+	 *            by other nodes, are removed from the local tier when the distributed cache
+	 *            notifies its listeners, and the local timeout bounds their lifetime otherwise.
+	 */
+	public BaseCache(String cacheName, boolean localCacheSupported) {
 		this.CACHE_NAME = cacheName;
+		this.localCacheSupported = localCacheSupported;
+	}
+
+	/**
+	 * Returns the node local cache tier, if it is enabled for this cache.
+	 *
+	 * @return Local cache or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public LocalCache<K,V> getLocalCache() {
+		if (!localCacheSupported) {
+			return null;
+		}
+		if (!localCacheInitialized) {
+			synchronized (this) {
+				if (!localCacheInitialized) {
+					OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+					if (config.isLocalCacheEnabled()) {
+						LocalCache<K,V> newLocalCache = new LocalCache<K,V>(config.getLocalCacheCapacity(),
+								config.getLocalCacheTimeoutInSeconds() * 1000);
+						LocalCache<K,V> existing = (LocalCache<K,V>) localCaches.putIfAbsent(CACHE_NAME, newLocalCache);
+						Set<Integer> newTenants = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+						Set<Integer> existingTenants = listenedTenants.putIfAbsent(CACHE_NAME, newTenants);
+						localCacheListenedTenants = existingTenants != null ? existingTenants : newTenants;
+						localCache = existing != null ? existing : newLocalCache;
+						if (log.isDebugEnabled()) {
+							log.debug("Local cache is enabled for " + CACHE_NAME);
+						}
+					}
+					localCacheInitialized = true;
+				}
+			}
+		}
+		return localCache;
+	}
+
+	private int getTenantId() {
+		return CarbonContext.getThreadLocalCarbonContext().getTenantId();
 	}
 
 	private Cache<K,V> getBaseCache() {
     	CacheManager manager = Caching.getCacheManagerFactory().getCacheManager(BaseCache.OAUTH_CACHE_MANAGER);
         Cache<K,V> cache = manager.getCache(CACHE_NAME);
+        LocalCache<K,V> localCache = getLocalCache();
+        if (cache != null && localCache != null) {
+            int tenantId = getTenantId();
+            if (localCacheListenedTenants.add(tenantId)) {
+                cache.registerCacheEntryListener(new LocalCacheInvalidator<K,V>(localCache, tenantId));
+            }
+        }
         return cache;
 	}
     
@@ -60,6 +142,11 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 		if (cache != null) {
 			cache.put(key, entry);
 		}
+		// added after the distributed cache, whose update event invalidates the local tier
+		LocalCache<K,V> localCache = getLocalCache();
+		if (localCache != null) {
+			localCache.put(getTenantId(), key, entry);
+		}
 	}
 
 	/**
@@ -70,9 +157,22 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	 * @return Cached entry.
 	 */
 	public V getValueFromCache(K key) {
+		LocalCache<K,V> localCache = getLocalCache();
+		if (localCache != null) {
+			V value = localCache.get(getTenantId(), key);
+			if (value != null) {
+				return value;
+			}
+		}
+		// an invalidation racing with the read of the distributed cache keeps the value out of the local tier
+		long invalidationCount = localCache != null ? localCache.getInvalidationCount(getTenantId(), key) : 0;
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
-            return (V) cache.get(key);
+			V value = (V) cache.get(key);
+			if (value != null && localCache != null) {
+				localCache.putIfNotInvalidated(getTenantId(), key, value, invalidationCount);
+			}
+			return value;
 		}
 		return null;
 	}
@@ -84,6 +184,10 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	 *            Key to clear cache.
 	 */
 	public void clearCacheEntry(K key) {
+		LocalCache<K,V> localCache = getLocalCache();
+		if (localCache != null) {
+			localCache.remove(getTenantId(), key);
+		}
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
             cache.remove(key);
@@ -94,10 +198,40 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	 * Remove everything in the cache.
 	 */
 	public void clear() {
+		LocalCache<K,V> localCache = getLocalCache();
+		if (localCache != null) {
+			localCache.clear();
+		}
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
 			cache.removeAll();
 		}
 	}
 
+	/**
+	 * Removes the entries removed or updated in the distributed cache of a tenant, including by other
+	 * nodes, from the local tier
+	 */
+	private static class LocalCacheInvalidator<K,V>
+			implements CacheEntryRemovedListener<K,V>, CacheEntryUpdatedListener<K,V> {
+
+		private LocalCache<K,V> localCache;
+		private int tenantId;
+
+		private LocalCacheInvalidator(LocalCache<K,V> localCache, int tenantId) {
+			this.localCache = localCache;
+			this.tenantId = tenantId;
+		}
+
+		public void entryRemoved(CacheEntryEvent<? extends K, ? extends V> event)
+				throws CacheEntryListenerException {
+			localCache.remove(tenantId, event.getKey());
+		}
+
+		public void entryUpdated(CacheEntryEvent<? extends K, ? extends V> event)
+				throws CacheEntryListenerException {
+			localCache.remove(tenantId, event.getKey());
+		}
+	}
+
 }
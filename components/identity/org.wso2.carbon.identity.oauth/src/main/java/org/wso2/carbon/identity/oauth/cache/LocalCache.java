@@ -0,0 +1,239 @@
+/*
+*Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, in memory LRU cache with a time to live for each entry. Used as a node local tier in front
+ * of the distributed caches. Entries are partitioned by tenant, the same way the distributed caches are.
+ *
+ * The entries are spread over a fixed number of segments, each an LRU map guarded by its own lock, so
+ * that lookups of different keys seldom contend. Each segment counts the entries removed from it, which
+ * lets a caller that read a value from the distributed cache skip putting it back if the entry was
+ * invalidated in the meantime.
+ */
+public class LocalCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final long timeToLiveMillis;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public LocalCache(int capacity, long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max((capacity + SEGMENTS - 1) / SEGMENTS, 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<V>(segmentCapacity);
+        }
+    }
+
+    public V get(int tenantId, K key) {
+        LocalCacheKey localCacheKey = new LocalCacheKey(tenantId, key);
+        Segment<V> segment = segmentFor(localCacheKey);
+        synchronized (segment) {
+            LocalCacheEntry<V> entry = segment.entries.get(localCacheKey);
+            if (entry == null) {
+                segment.missCount++;
+                return null;
+            }
+            if (entry.expiryTime < System.currentTimeMillis()) {
+                segment.entries.remove(localCacheKey);
+                segment.evictionCount++;
+                segment.missCount++;
+                return null;
+            }
+            segment.hitCount++;
+            return entry.value;
+        }
+    }
+
+    public void put(int tenantId, K key, V value) {
+        LocalCacheKey localCacheKey = new LocalCacheKey(tenantId, key);
+        Segment<V> segment = segmentFor(localCacheKey);
+        synchronized (segment) {
+            segment.entries.put(localCacheKey,
+                    new LocalCacheEntry<V>(value, System.currentTimeMillis() + timeToLiveMillis));
+        }
+    }
+
+    /**
+     * Returns the invalidation count of the segment of a key, to be passed to
+     * {@link #putIfNotInvalidated(int, Object, Object, long)}
+     */
+    public long getInvalidationCount(int tenantId, K key) {
+        Segment<V> segment = segmentFor(new LocalCacheKey(tenantId, key));
+        synchronized (segment) {
+            return segment.invalidationCount;
+        }
+    }
+
+    /**
+     * Puts an entry unless an entry of its segment has been removed since the invalidation count was read,
+     * so that a value read before an invalidation is not put back after it
+     *
+     * @return true if the entry was put
+     */
+    public boolean putIfNotInvalidated(int tenantId, K key, V value, long invalidationCount) {
+        LocalCacheKey localCacheKey = new LocalCacheKey(tenantId, key);
+        Segment<V> segment = segmentFor(localCacheKey);
+        synchronized (segment) {
+            if (segment.invalidationCount != invalidationCount) {
+                return false;
+            }
+            segment.entries.put(localCacheKey,
+                    new LocalCacheEntry<V>(value, System.currentTimeMillis() + timeToLiveMillis));
+            return true;
+        }
+    }
+
+    public void remove(int tenantId, K key) {
+        LocalCacheKey localCacheKey = new LocalCacheKey(tenantId, key);
+        Segment<V> segment = segmentFor(localCacheKey);
+        synchronized (segment) {
+            segment.invalidationCount++;
+            segment.entries.remove(localCacheKey);
+        }
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.invalidationCount++;
+                segment.entries.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        long count = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                count += segment.hitCount;
+            }
+        }
+        return count;
+    }
+
+    public long getMissCount() {
+        long count = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                count += segment.missCount;
+            }
+        }
+        return count;
+    }
+
+    public long getEvictionCount() {
+        long count = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    private Segment<V> segmentFor(LocalCacheKey localCacheKey) {
+        int hash = localCacheKey.hashCode();
+        // spread the higher bits, as only the lower bits select the segment
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment<V> {
+
+        private final Map<LocalCacheKey, LocalCacheEntry<V>> entries;
+
+        private long hitCount;
+
+        private long missCount;
+
+        private long evictionCount;
+
+        private long invalidationCount;
+
+        private Segment(final int capacity) {
+            this.entries = new LinkedHashMap<LocalCacheKey, LocalCacheEntry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LocalCacheKey, LocalCacheEntry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static final class LocalCacheKey {
+
+        private final int tenantId;
+
+        private final Object key;
+
+        private LocalCacheKey(int tenantId, Object key) {
+            this.tenantId = tenantId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LocalCacheKey)) {
+                return false;
+            }
+            LocalCacheKey other = (LocalCacheKey) o;
+            return tenantId == other.tenantId && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tenantId + key.hashCode();
+        }
+    }
+
+    private static final class LocalCacheEntry<V> {
+
+        private final V value;
+
+        private final long expiryTime;
+
+        private LocalCacheEntry(V value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
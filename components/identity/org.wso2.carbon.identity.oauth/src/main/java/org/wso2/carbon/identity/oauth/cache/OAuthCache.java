@@ -27,7 +27,7 @@ public class OAuthCache extends BaseCache<CacheKey, CacheEntry> {
     private static final OAuthCache instance = new OAuthCache(OAUTH_CACHE_NAME);
 
     private OAuthCache(String cacheName) {
-        super(cacheName);
+        super(cacheName, true);
     }
 
     public static OAuthCache getInstance(){
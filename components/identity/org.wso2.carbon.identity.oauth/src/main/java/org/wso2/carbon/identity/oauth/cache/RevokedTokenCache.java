@@ -0,0 +1,160 @@
+/*
+*Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import javax.cache.Cache;
+import javax.cache.CacheConfiguration;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revocation list of the self contained access tokens, shared by all the nodes of the cluster. Each entry
+ * holds the time the revoked token expires at, after which the token is rejected for having expired and
+ * the entry is treated as absent. The cache itself drops an entry once the longest validity period of a
+ * token has elapsed since it was added.
+ *
+ * Tokens revoked in bulk, e.g. all the tokens of a client, are listed with a single entry holding the time
+ * until which the tokens issued are revoked. Such an entry is dropped by the cache once all these tokens
+ * have expired.
+ *
+ * The list is kept in the cache of the super tenant, as tokens of all the tenants are validated against it.
+ */
+public class RevokedTokenCache {
+
+    private static final Log log = LogFactory.getLog(RevokedTokenCache.class);
+
+    private static final String OAUTH_CACHE_MANAGER = "OAuthCacheManager";
+
+    private static final String REVOKED_TOKEN_CACHE_NAME = "RevokedTokenCache";
+
+    private static final RevokedTokenCache instance = new RevokedTokenCache();
+
+    private volatile boolean cacheBuilt;
+
+    private RevokedTokenCache() {
+    }
+
+    public static RevokedTokenCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Adds a token to the revocation list
+     *
+     * @param tokenIdentifier identifier of the revoked token
+     * @param expiryTime      time in milliseconds the token expires at
+     */
+    public void addToCache(String tokenIdentifier, long expiryTime) {
+        if (expiryTime <= System.currentTimeMillis()) {
+            return;
+        }
+        put(tokenIdentifier, expiryTime);
+    }
+
+    /**
+     * Revokes all the tokens listed under a key, e.g. the tokens of a client, issued until the given time
+     *
+     * @param key            key of the revoked tokens
+     * @param revocationTime time in milliseconds until which the tokens issued are revoked
+     */
+    public void addRevocationTime(String key, long revocationTime) {
+        put(key, revocationTime);
+    }
+
+    /**
+     * @param key key of revoked tokens
+     * @return time in milliseconds until which the tokens issued are revoked, or -1 if they are not revoked
+     */
+    public long getRevocationTime(String key) {
+        Long revocationTime = get(key);
+        return revocationTime != null ? revocationTime : -1;
+    }
+
+    /**
+     * @param tokenIdentifier identifier of a token
+     * @return true if the token is in the revocation list and has not expired yet
+     */
+    public boolean isRevoked(String tokenIdentifier) {
+        Long expiryTime = get(tokenIdentifier);
+        return expiryTime != null && expiryTime > System.currentTimeMillis();
+    }
+
+    private void put(String key, Long value) {
+        try {
+            startSuperTenantFlow();
+            Cache<String, Long> cache = getCache();
+            if (cache != null) {
+                cache.put(key, value);
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private Long get(String key) {
+        try {
+            startSuperTenantFlow();
+            Cache<String, Long> cache = getCache();
+            return cache != null ? cache.get(key) : null;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private Cache<String, Long> getCache() {
+        CacheManager cacheManager = Caching.getCacheManagerFactory().getCacheManager(OAUTH_CACHE_MANAGER);
+        if (!cacheBuilt) {
+            synchronized (this) {
+                if (!cacheBuilt) {
+                    cacheBuilt = true;
+                    OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+                    long timeout = Math.max(config.getUserAccessTokenValidityPeriodInSeconds(),
+                            config.getApplicationAccessTokenValidityPeriodInSeconds()) +
+                            config.getTimeStampSkewInSeconds();
+                    try {
+                        return cacheManager.<String, Long>createCacheBuilder(REVOKED_TOKEN_CACHE_NAME).
+                                setExpiry(CacheConfiguration.ExpiryType.MODIFIED,
+                                        new CacheConfiguration.Duration(TimeUnit.SECONDS, timeout)).
+                                setStoreByValue(false).build();
+                    } catch (Exception e) {
+                        // the cache has already been created, e.g. by another node of the cluster
+                        if (log.isDebugEnabled()) {
+                            log.debug("Using the existing " + REVOKED_TOKEN_CACHE_NAME, e);
+                        }
+                    }
+                }
+            }
+        }
+        return cacheManager.getCache(REVOKED_TOKEN_CACHE_NAME);
+    }
+
+    private static void startSuperTenantFlow() {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        carbonContext.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+    }
+}
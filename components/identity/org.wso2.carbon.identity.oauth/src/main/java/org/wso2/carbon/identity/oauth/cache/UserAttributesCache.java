@@ -26,7 +26,7 @@ public class UserAttributesCache extends BaseCache<CacheKey, CacheEntry> {
     private static final UserAttributesCache instance = new UserAttributesCache(USER_ATTRIBUTES_CACHE_NAME);
 
     private UserAttributesCache(String cacheName) {
-        super(cacheName);
+        super(cacheName, true);
     }
 
     public static UserAttributesCache getInstance(){
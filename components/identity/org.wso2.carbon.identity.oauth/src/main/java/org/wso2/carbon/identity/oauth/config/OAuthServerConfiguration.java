@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.identity.oauth.config;
 
+import org.apache.amber.oauth2.as.issuer.ValueGenerator;
 import org.apache.amber.oauth2.common.message.types.GrantType;
 import org.apache.amber.oauth2.common.message.types.ResponseType;
 import org.apache.axiom.om.OMElement;
@@ -34,6 +35,7 @@ import org.wso2.carbon.identity.oauth2.authz.handlers.ResponseTypeHandler;
 import org.wso2.carbon.identity.oauth2.token.handlers.clientauth.ClientAuthenticationHandler;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationGrantHandler;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.saml.SAML2TokenCallbackHandler;
+import org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator;
 import org.wso2.carbon.identity.oauth2.validators.OAuth2ScopeValidator;
 import org.wso2.carbon.identity.openidconnect.CustomClaimsCallbackHandler;
 import org.wso2.carbon.identity.openidconnect.IDTokenBuilder;
@@ -85,12 +87,24 @@ public class OAuthServerConfiguration {
 		// Enable/Disable cache
 		private static final String ENABLE_CACHE = "EnableOAuthCache";
 
+		// Node local cache tier in front of the OAuth caches
+		private static final String LOCAL_CACHE = "LocalCache";
+		private static final String LOCAL_CACHE_ENABLE = "Enable";
+		private static final String LOCAL_CACHE_CAPACITY = "Capacity";
+		private static final String LOCAL_CACHE_TIMEOUT = "Timeout";
+
+        // Issue access tokens as signed JWTs, which are validated without looking them up
+        private static final String ENABLE_SELF_CONTAINED_ACCESS_TOKENS = "EnableSelfContainedAccessTokens";
+
         // Enable/Disable refresh token renewal on each refresh_token grant request
         private static final String RENEW_REFRESH_TOKEN_FOR_REFRESH_GRANT = "RenewRefreshTokenForRefreshGrant";
 
 		// TokenPersistenceProcessor
 		private static final String TOKEN_PERSISTENCE_PROCESSOR = "TokenPersistenceProcessor";
 
+        // Generator of the token and authorization code values
+        private static final String TOKEN_VALUE_GENERATOR = "TokenValueGenerator";
+
 		// Supported Grant Types
 		private static final String SUPPORTED_GRANT_TYPES = "SupportedGrantTypes";
         private static final String SUPPORTED_GRANT_TYPE = "SupportedGrantType";
@@ -156,10 +170,20 @@ public class OAuthServerConfiguration {
 
     private String tokenPersistenceProcessorClassName = "org.wso2.carbon.identity.oauth.tokenprocessor.PlainTextPersistenceProcessor";
 
+    private String tokenValueGeneratorClassName = "org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator";
+
 	private boolean cacheEnabled = true;
 
+	private boolean localCacheEnabled = false;
+
+	private int localCacheCapacity = 10000;
+
+	private long localCacheTimeoutInSeconds = 30;
+
     private boolean isRefreshTokenRenewalEnabled = true;
 
+    private boolean selfContainedAccessTokensEnabled = false;
+
 	private boolean assertionsUserNameEnabled = false;
 
 	private boolean accessTokenPartitioningEnabled = false;
@@ -168,6 +192,8 @@ public class OAuthServerConfiguration {
 
 	private TokenPersistenceProcessor persistenceProcessor = null;
 
+    private volatile ValueGenerator tokenValueGenerator = null;
+
 	private Set<OAuthCallbackHandlerMetaData> callbackHandlerMetaData = new HashSet<OAuthCallbackHandlerMetaData>();
 
     private Map<String,String> supportedGrantTypeClassNames = new Hashtable<String,String>();
@@ -279,9 +305,15 @@ public class OAuthServerConfiguration {
             // read refresh token renewal config
             parseRefreshTokenRenewalConfiguration(oauthElem);
 
+            // read self contained access token config
+            parseSelfContainedAccessTokensConfig(oauthElem);
+
 			// read token persistence processor config
 			parseTokenPersistenceProcessorConfig(oauthElem);
 
+            // read token value generator config
+            parseTokenValueGeneratorConfig(oauthElem);
+
 			// read supported grant types
 			parseSupportedGrantTypesConfig(oauthElem);
 
@@ -339,10 +371,26 @@ public class OAuthServerConfiguration {
 		return timeStampSkewInSeconds;
 	}
 
+    public boolean isSelfContainedAccessTokensEnabled() {
+        return selfContainedAccessTokensEnabled;
+    }
+
 	public boolean isCacheEnabled() {
 		return cacheEnabled;
 	}
 
+	public boolean isLocalCacheEnabled() {
+		return cacheEnabled && localCacheEnabled;
+	}
+
+	public int getLocalCacheCapacity() {
+		return localCacheCapacity;
+	}
+
+	public long getLocalCacheTimeoutInSeconds() {
+		return localCacheTimeoutInSeconds;
+	}
+
     public boolean isRefreshTokenRenewalEnabled(){
         return isRefreshTokenRenewalEnabled;
     }
@@ -530,6 +578,33 @@ public class OAuthServerConfiguration {
         return persistenceProcessor;
 	}
 	
+    /**
+     * @return generator of the access token, refresh token and authorization code values
+     */
+    public ValueGenerator getTokenValueGenerator() {
+        if (tokenValueGenerator == null) {
+            synchronized (this) {
+                if (tokenValueGenerator == null) {
+                    try {
+                        Class clazz = this.getClass().getClassLoader().loadClass(tokenValueGeneratorClassName);
+                        tokenValueGenerator = (ValueGenerator) clazz.newInstance();
+
+                        if (log.isDebugEnabled()) {
+                            log.debug("An instance of " + tokenValueGeneratorClassName +
+                                    " is created for OAuthServerConfiguration.");
+                        }
+                    } catch (Exception e) {
+                        String errorMsg = "Error when instantiating the TokenValueGenerator : " +
+                                tokenValueGeneratorClassName + ". Defaulting to SecureTokenValueGenerator";
+                        log.error(errorMsg, e);
+                        tokenValueGenerator = new SecureTokenValueGenerator();
+                    }
+                }
+            }
+        }
+        return tokenValueGenerator;
+    }
+
 	/**
 	 * Return an instance of the IDToken builder 
 	 * @return
@@ -826,6 +901,35 @@ public class OAuthServerConfiguration {
 		if (log.isDebugEnabled()) {
 			log.debug("Enable OAuth Cache was set to : " + cacheEnabled);
 		}
+
+		OMElement localCacheElem =
+		                            oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.LOCAL_CACHE));
+		if (localCacheElem != null) {
+			OMElement enableElem =
+			                       localCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.LOCAL_CACHE_ENABLE));
+			OMElement capacityElem =
+			                         localCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.LOCAL_CACHE_CAPACITY));
+			OMElement timeoutElem =
+			                        localCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.LOCAL_CACHE_TIMEOUT));
+			if (enableElem != null) {
+				localCacheEnabled = Boolean.parseBoolean(enableElem.getText().trim());
+			}
+			try {
+				if (capacityElem != null) {
+					localCacheCapacity = Integer.parseInt(capacityElem.getText().trim());
+				}
+				if (timeoutElem != null) {
+					localCacheTimeoutInSeconds = Long.parseLong(timeoutElem.getText().trim());
+				}
+			} catch (NumberFormatException e) {
+				log.error("Invalid local cache configuration. Continuing with the default values.", e);
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Local OAuth Cache was set to : " + localCacheEnabled + ", capacity : " +
+			          localCacheCapacity + ", timeout : " + localCacheTimeoutInSeconds + "s");
+		}
 	}
 
     private void parseRefreshTokenRenewalConfiguration(OMElement oauthConfigElem) {
@@ -840,6 +944,19 @@ public class OAuthServerConfiguration {
         }
     }
 
+    private void parseSelfContainedAccessTokensConfig(OMElement oauthConfigElem) {
+
+        OMElement enableSelfContainedAccessTokensElem = oauthConfigElem.getFirstChildWithName(
+                getQNameWithIdentityNS(ConfigElements.ENABLE_SELF_CONTAINED_ACCESS_TOKENS));
+        if (enableSelfContainedAccessTokensElem != null) {
+            selfContainedAccessTokensEnabled =
+                    Boolean.parseBoolean(enableSelfContainedAccessTokensElem.getText().trim());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("EnableSelfContainedAccessTokens was set to : " + selfContainedAccessTokensEnabled);
+        }
+    }
+
 	private void parseAccessTokenPartitioningConfig(OMElement oauthConfigElem) {
 		OMElement enableAccessTokenPartitioningElem =
 		                                              oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ENABLE_ACCESS_TOKEN_PARTITIONING));
@@ -896,6 +1013,19 @@ public class OAuthServerConfiguration {
 
 	}
 
+    private void parseTokenValueGeneratorConfig(OMElement oauthConfigElem) {
+
+        OMElement valueGeneratorConfigElem =
+                oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_VALUE_GENERATOR));
+        if (valueGeneratorConfigElem != null && !valueGeneratorConfigElem.getText().trim().equals("")) {
+            tokenValueGeneratorClassName = valueGeneratorConfigElem.getText().trim();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Token Value Generator was set to : " + tokenValueGeneratorClassName);
+        }
+    }
+
 	private void parseSupportedGrantTypesConfig(OMElement oauthConfigElem) {
 		OMElement supportedGrantTypesElem =
 		                                    oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.SUPPORTED_GRANT_TYPES));
@@ -0,0 +1,202 @@
+/*
+*Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth.tokenprocessor;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.core.util.KeyStoreManager;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * An implementation of <Code>TokenPersistenceProcessor</Code>
+ * which stores a keyed SHA-256 digest of access tokens, refresh tokens
+ * and authorization codes. The digest of a token is the same each time,
+ * so the token is looked up with its digest on the indexed column.
+ * Digests are one way: the stored value is returned as it is when it
+ * is read, and tokens read from the database are not handed out to
+ * clients again.
+ *
+ * Client secrets are recoverable and are encrypted with AES. Client ids
+ * are stored as they are. The keys are derived from the private key of
+ * the primary key store, which all the nodes of a cluster share, and the
+ * Mac and Cipher instances are kept per thread.
+ */
+public class HashingPersistenceProcessor implements TokenPersistenceProcessor {
+
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+    private static final String CIPHER_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final int IV_LENGTH = 16;
+    private static final int AES_KEY_LENGTH = 16;
+
+    protected Log log = LogFactory.getLog(HashingPersistenceProcessor.class);
+
+    private static volatile SecretKeySpec hashKey;
+    private static volatile SecretKeySpec encryptionKey;
+
+    private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+    private static final ThreadLocal<Cipher> encryptCiphers = new ThreadLocal<Cipher>();
+    private static final ThreadLocal<Cipher> decryptCiphers = new ThreadLocal<Cipher>();
+
+    public String getPreprocessedClientId(String processedClientId) throws IdentityOAuth2Exception {
+        return processedClientId;
+    }
+
+    public String getProcessedClientId(String clientId) throws IdentityOAuth2Exception {
+        return clientId;
+    }
+
+    public String getPreprocessedClientSecret(String processedClientSecret) throws IdentityOAuth2Exception {
+        if (processedClientSecret == null) {
+            return null;
+        }
+        try {
+            byte[] encrypted = Base64.decodeBase64(processedClientSecret.getBytes("UTF-8"));
+            if (encrypted.length <= IV_LENGTH) {
+                throw new IdentityOAuth2Exception("Stored client secret is not encrypted");
+            }
+            Cipher cipher = getCipher(decryptCiphers);
+            cipher.init(Cipher.DECRYPT_MODE, getEncryptionKey(),
+                    new IvParameterSpec(encrypted, 0, IV_LENGTH));
+            return new String(cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH), "UTF-8");
+        } catch (IdentityOAuth2Exception e) {
+            throw e;
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            throw new IdentityOAuth2Exception("Error while decrypting the client secret");
+        }
+    }
+
+    public String getProcessedClientSecret(String clientSecret) throws IdentityOAuth2Exception {
+        if (clientSecret == null) {
+            return null;
+        }
+        try {
+            Cipher cipher = getCipher(encryptCiphers);
+            // a random IV is generated on each initialization
+            cipher.init(Cipher.ENCRYPT_MODE, getEncryptionKey());
+            byte[] iv = cipher.getIV();
+            byte[] cipherText = cipher.doFinal(clientSecret.getBytes("UTF-8"));
+            byte[] encrypted = new byte[iv.length + cipherText.length];
+            System.arraycopy(iv, 0, encrypted, 0, iv.length);
+            System.arraycopy(cipherText, 0, encrypted, iv.length, cipherText.length);
+            return new String(Base64.encodeBase64(encrypted), "UTF-8");
+        } catch (IdentityOAuth2Exception e) {
+            throw e;
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            throw new IdentityOAuth2Exception("Error while encrypting the client secret");
+        }
+    }
+
+    public String getPreprocessedAuthzCode(String processedAuthzCode) throws IdentityOAuth2Exception {
+        return processedAuthzCode;
+    }
+
+    public String getProcessedAuthzCode(String authzCode) throws IdentityOAuth2Exception {
+        return hash(authzCode);
+    }
+
+    public String getPreprocessedAccessTokenIdentifier(String processedAccessTokenIdentifier)
+            throws IdentityOAuth2Exception {
+        return processedAccessTokenIdentifier;
+    }
+
+    public String getProcessedAccessTokenIdentifier(String accessTokenIdentifier)
+            throws IdentityOAuth2Exception {
+        return hash(accessTokenIdentifier);
+    }
+
+    public String getPreprocessedRefreshToken(String processedRefreshToken)
+            throws IdentityOAuth2Exception {
+        return processedRefreshToken;
+    }
+
+    public String getProcessedRefreshToken(String refreshToken)
+            throws IdentityOAuth2Exception {
+        return hash(refreshToken);
+    }
+
+    private String hash(String value) throws IdentityOAuth2Exception {
+        if (value == null) {
+            return null;
+        }
+        try {
+            Mac mac = macs.get();
+            if (mac == null) {
+                mac = Mac.getInstance(HASH_ALGORITHM);
+                mac.init(getHashKey());
+                macs.set(mac);
+            }
+            return new String(Base64.encodeBase64(mac.doFinal(value.getBytes("UTF-8"))), "UTF-8");
+        } catch (IdentityOAuth2Exception e) {
+            throw e;
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            throw new IdentityOAuth2Exception("Error while computing the digest of the token");
+        }
+    }
+
+    private static Cipher getCipher(ThreadLocal<Cipher> ciphers) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static SecretKeySpec getHashKey() throws IdentityOAuth2Exception {
+        if (hashKey == null) {
+            hashKey = new SecretKeySpec(deriveKey("OAuth2TokenDigest"), HASH_ALGORITHM);
+        }
+        return hashKey;
+    }
+
+    private static SecretKeySpec getEncryptionKey() throws IdentityOAuth2Exception {
+        if (encryptionKey == null) {
+            encryptionKey = new SecretKeySpec(Arrays.copyOf(deriveKey("OAuth2ClientSecret"), AES_KEY_LENGTH), "AES");
+        }
+        return encryptionKey;
+    }
+
+    /**
+     * Derives a key for the given purpose from the private key of the primary key store
+     */
+    private static byte[] deriveKey(String purpose) throws IdentityOAuth2Exception {
+        try {
+            Key privateKey = KeyStoreManager.getInstance(MultitenantConstants.SUPER_TENANT_ID).getDefaultPrivateKey();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(purpose.getBytes("UTF-8"));
+            return digest.digest(privateKey.getEncoded());
+        } catch (Exception e) {
+            throw new IdentityOAuth2Exception("Error while deriving the key of the token persistence processor", e);
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.wso2.carbon.identity.oauth2.dto.*;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.AccessTokenIssuer;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.api.Claim;
 import org.wso2.carbon.user.core.UserStoreManager;
@@ -213,40 +214,42 @@ public class OAuth2Service extends AbstractAdmin {
                     revokeRespDTO.setErrorMsg("Unauthorized Client");
                     return revokeRespDTO;
                 }
+                // a self contained access token is persisted with its JWT ID
+                String token = JWTAccessTokenUtil.getTokenIdentifier(revokeRequestDTO.getToken());
                 boolean refreshTokenFirst = false;
                 if(revokeRequestDTO.getToken_type() != null && revokeRequestDTO.equals("refresh_token")){
                     refreshTokenFirst = true;
                 }
                 if (refreshTokenFirst) {
-                    RefreshTokenValidationDataDO refreshTokenDO = tokenMgtDAO.validateRefreshToken(revokeRequestDTO.getConsumerKey(), revokeRequestDTO.getToken());
+                    RefreshTokenValidationDataDO refreshTokenDO = tokenMgtDAO.validateRefreshToken(revokeRequestDTO.getConsumerKey(), token);
                     if (refreshTokenDO != null && refreshTokenDO.getRefreshTokenState() != null &&
                             (refreshTokenDO.getRefreshTokenState().equals(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE) ||
                                     refreshTokenDO.getRefreshTokenState().equals(OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED))) {
                         org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(revokeRequestDTO.getConsumerKey(), refreshTokenDO.getAuthorizedUser(), OAuth2Util.buildScopeString(refreshTokenDO.getScope()));
-                        tokenMgtDAO.revokeTokensByClient(refreshTokenDO.getAccessToken(), revokeRequestDTO.getConsumerKey());
-                        addRevokeResponseHeaders(revokeResponseDTO, refreshTokenDO.getAccessToken(), revokeRequestDTO.getToken(), refreshTokenDO.getAuthorizedUser());
+                        tokenMgtDAO.revokeAccessTokenOfRefreshToken(refreshTokenDO, revokeRequestDTO.getConsumerKey());
+                        addRevokeResponseHeaders(revokeResponseDTO, refreshTokenDO.getAccessToken(), token, refreshTokenDO.getAuthorizedUser(), token);
                     } else {
-                        AccessTokenDO accessTokenDO = tokenMgtDAO.retrieveAccessToken(revokeRequestDTO.getToken());
+                        AccessTokenDO accessTokenDO = tokenMgtDAO.retrieveAccessToken(token);
                         if (accessTokenDO != null) {
                             org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(revokeRequestDTO.getConsumerKey(), accessTokenDO.getAuthzUser(), OAuth2Util.buildScopeString(accessTokenDO.getScope()));
-                            tokenMgtDAO.revokeTokensByClient(revokeRequestDTO.getToken(), revokeRequestDTO.getConsumerKey());
-                            addRevokeResponseHeaders(revokeResponseDTO, accessTokenDO.getAccessToken(), accessTokenDO.getRefreshToken(), refreshTokenDO.getAuthorizedUser());
+                            tokenMgtDAO.revokeTokensByClient(token, revokeRequestDTO.getConsumerKey());
+                            addRevokeResponseHeaders(revokeResponseDTO, accessTokenDO.getAccessToken(), accessTokenDO.getRefreshToken(), refreshTokenDO.getAuthorizedUser(), token);
                         }
                     }
                 } else {
-                    AccessTokenDO accessTokenDO = tokenMgtDAO.retrieveAccessToken(revokeRequestDTO.getToken());
+                    AccessTokenDO accessTokenDO = tokenMgtDAO.retrieveAccessToken(token);
                     if (accessTokenDO != null) {
                         org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(revokeRequestDTO.getConsumerKey(), accessTokenDO.getAuthzUser(), OAuth2Util.buildScopeString(accessTokenDO.getScope()));
-                        tokenMgtDAO.revokeTokensByClient(revokeRequestDTO.getToken(), revokeRequestDTO.getConsumerKey());
-                        addRevokeResponseHeaders(revokeResponseDTO, revokeRequestDTO.getToken(), accessTokenDO.getRefreshToken(), accessTokenDO.getAuthzUser());
+                        tokenMgtDAO.revokeTokensByClient(token, revokeRequestDTO.getConsumerKey());
+                        addRevokeResponseHeaders(revokeResponseDTO, token, accessTokenDO.getRefreshToken(), accessTokenDO.getAuthzUser(), token);
                     } else {
-                        RefreshTokenValidationDataDO refreshTokenDO = tokenMgtDAO.validateRefreshToken(revokeRequestDTO.getConsumerKey(), revokeRequestDTO.getToken());
+                        RefreshTokenValidationDataDO refreshTokenDO = tokenMgtDAO.validateRefreshToken(revokeRequestDTO.getConsumerKey(), token);
                         if (refreshTokenDO != null && refreshTokenDO.getRefreshTokenState() != null &&
                                 (refreshTokenDO.getRefreshTokenState().equals(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE) ||
                                         refreshTokenDO.getRefreshTokenState().equals(OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED))) {
                             org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(revokeRequestDTO.getConsumerKey(), refreshTokenDO.getAuthorizedUser(), OAuth2Util.buildScopeString(refreshTokenDO.getScope()));
-                            tokenMgtDAO.revokeTokensByClient(refreshTokenDO.getAccessToken(), revokeRequestDTO.getConsumerKey());
-                            addRevokeResponseHeaders(revokeResponseDTO, refreshTokenDO.getAccessToken(), revokeRequestDTO.getToken(),refreshTokenDO.getAuthorizedUser());
+                            tokenMgtDAO.revokeAccessTokenOfRefreshToken(refreshTokenDO, revokeRequestDTO.getConsumerKey());
+                            addRevokeResponseHeaders(revokeResponseDTO, refreshTokenDO.getAccessToken(), token,refreshTokenDO.getAuthorizedUser(), token);
                         }
                     }
                 }
@@ -395,21 +398,33 @@ public class OAuth2Service extends AbstractAdmin {
 		return allClaims;
 	}
 
-    private void addRevokeResponseHeaders(OAuthRevocationResponseDTO revokeResponseDTP, String accessToken, String refreshToken, String authorizedUser){
+    /**
+     * When tokens are hashed, the tokens read from the database are digests, which are of no use to the
+     * receivers of the headers, so only the token of the revocation request is sent
+     */
+    private void addRevokeResponseHeaders(OAuthRevocationResponseDTO revokeResponseDTP, String accessToken,
+                                          String refreshToken, String authorizedUser, String requestToken)
+            throws IdentityOAuth2Exception {
 
+        boolean hashed = OAuth2Util.isTokenHashingEnabled();
         ArrayList<ResponseHeader> respHeaders = new ArrayList<ResponseHeader>();
-        ResponseHeader header = new ResponseHeader();
-        header.setKey("RevokedAccessToken");
-        header.setValue(accessToken);
-        respHeaders.add(header);
+        ResponseHeader header;
+        if (!hashed || requestToken.equals(accessToken)) {
+            header = new ResponseHeader();
+            header.setKey("RevokedAccessToken");
+            header.setValue(accessToken);
+            respHeaders.add(header);
+        }
         header = new ResponseHeader();
         header.setKey("AuthorizedUser");
         header.setValue(authorizedUser);
         respHeaders.add(header);
-        header = new ResponseHeader();
-        header.setKey("RevokedRefreshToken");
-        header.setValue(refreshToken);
-        respHeaders.add(header);
+        if (!hashed || requestToken.equals(refreshToken)) {
+            header = new ResponseHeader();
+            header.setKey("RevokedRefreshToken");
+            header.setValue(refreshToken);
+            respHeaders.add(header);
+        }
         revokeResponseDTP.setResponseHeaders(respHeaders.toArray(new ResponseHeader[respHeaders.size()]));
     }
 }
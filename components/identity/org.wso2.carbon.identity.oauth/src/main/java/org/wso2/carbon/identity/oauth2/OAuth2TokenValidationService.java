@@ -54,6 +54,35 @@ public class OAuth2TokenValidationService extends AbstractAdmin {
 		}
 	}
 	
+	/**
+	 * Validates a set of access tokens in a single call.
+	 *
+	 * @param validationReqDTOs
+	 * @return validation responses, in the order of the requests
+	 */
+	public OAuth2TokenValidationResponseDTO[] validateBulk(OAuth2TokenValidationRequestDTO[] validationReqDTOs) {
+
+		if (validationReqDTOs == null) {
+			return new OAuth2TokenValidationResponseDTO[0];
+		}
+
+		TokenValidationHandler validationHandler = TokenValidationHandler.getInstance();
+
+		try {
+			return validationHandler.validate(validationReqDTOs);
+		} catch (IdentityOAuth2Exception e) {
+			log.error("Error occurred while validating the OAuth2 access tokens", e);
+			OAuth2TokenValidationResponseDTO[] errRespDTOs =
+					new OAuth2TokenValidationResponseDTO[validationReqDTOs.length];
+			for (int i = 0; i < errRespDTOs.length; i++) {
+				errRespDTOs[i] = new OAuth2TokenValidationResponseDTO();
+				errRespDTOs[i].setValid(false);
+				errRespDTOs[i].setErrorMsg("Server error occurred while validating the OAuth2 access token");
+			}
+			return errRespDTOs;
+		}
+	}
+
 	/**
 	 * 
 	 * @param validationReqDTO
@@ -21,8 +21,6 @@ package org.wso2.carbon.identity.oauth2.authcontext;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.core.model.OAuthAppDO;
 import org.wso2.carbon.identity.oauth.cache.CacheKey;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
@@ -35,6 +33,7 @@ import org.wso2.carbon.identity.oauth.util.UserClaims;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationResponseDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.oauth2.validators.OAuth2TokenValidationMessageContext;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.service.RealmService;
@@ -47,7 +46,6 @@ import java.util.Calendar;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class represents the JSON Web Token generator.
@@ -79,8 +77,6 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
 
     private boolean enableSigning = true;
 
-    private static ConcurrentHashMap<Integer, Key> privateKeys = new ConcurrentHashMap<Integer, Key>();
-    private static ConcurrentHashMap<Integer, Certificate> publicCerts = new ConcurrentHashMap<Integer, Certificate>();
 
     private ClaimCache claimsLocalCache;
 
@@ -278,32 +274,7 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             //get tenantId
             int tenantId = getTenantId(endUserName);
 
-            Key privateKey = null;
-
-            if (!(privateKeys.containsKey(tenantId))) {
-                //get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                if(!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)){
-                    //derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    //obtain private key
-                    //TODO: maintain a hash map with tenants' private keys after first initialization
-                    privateKey = tenantKSM.getPrivateKey(jksName, tenantDomain);
-                }else{
-                    try{
-                        privateKey = tenantKSM.getDefaultPrivateKey();
-                    }catch (Exception e){
-                        log.error("Error while obtaining private key for super tenant",e);
-                    }
-                }
-                if (privateKey != null) {
-                    privateKeys.put(tenantId, privateKey);
-                }
-            } else {
-                privateKey = privateKeys.get(tenantId);
-            }
+            Key privateKey = OAuth2Util.getPrivateKey(tenantDomain, tenantId);
 
             //initialize signature with private key and algorithm
             Signature signature = Signature.getInstance(signatureAlgorithm);
@@ -348,28 +319,7 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             String tenantDomain = MultitenantUtils.getTenantDomain(endUserName);
             //get tenantId
             int tenantId = getTenantId(endUserName);
-            Certificate publicCert = null;
-
-            if (!(publicCerts.containsKey(tenantId))) {
-                //get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                KeyStore keyStore = null;
-                if(!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)){
-                    //derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    keyStore = tenantKSM.getKeyStore(jksName);
-                    publicCert = keyStore.getCertificate(tenantDomain);
-                }else{
-                    publicCert = tenantKSM.getDefaultPrimaryCertificate();
-                }
-                if (publicCert != null) {
-                    publicCerts.put(tenantId, publicCert);
-                }
-            } else {
-                publicCert = publicCerts.get(tenantId);
-            }
+            Certificate publicCert = OAuth2Util.getCertificate(tenantDomain, tenantId);
 
             //generate the SHA-1 thumbprint of the certificate
             //TODO: maintain a hashmap with tenants' pubkey thumbprints after first initialization
@@ -398,9 +348,6 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             jwtHeader.append("}");
             return jwtHeader.toString();
 
-        } catch (KeyStoreException e) {
-            String error = "Error in obtaining tenant's keystore";
-            throw new IdentityOAuth2Exception(error);
         } catch (CertificateEncodingException e) {
             String error = "Error in generating public cert thumbprint";
             throw new IdentityOAuth2Exception(error);
@@ -64,7 +64,7 @@ public class AuthorizationHandlerManager {
 
     private AuthorizationHandlerManager() throws IdentityOAuth2Exception {
         responseHandlers = OAuthServerConfiguration.getInstance().getSupportedResponseTypes();
-        appInfoCache = new BaseCache<String, OAuthAppDO>("AppInfoCache");
+        appInfoCache = new BaseCache<String, OAuthAppDO>("AppInfoCache", true);
         if(appInfoCache != null) {
             if (log.isDebugEnabled()) {
                 log.debug("Successfully created AppInfoCache under "+ OAuthConstants.OAUTH_CACHE_MANAGER);
@@ -18,7 +18,6 @@
 
 package org.wso2.carbon.identity.oauth2.authz.handlers;
 
-import org.apache.amber.oauth2.as.issuer.MD5Generator;
 import org.apache.amber.oauth2.as.issuer.OAuthIssuerImpl;
 import org.apache.amber.oauth2.common.message.types.ResponseType;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
@@ -42,7 +41,7 @@ public abstract class AbstractResponseTypeHandler implements ResponseTypeHandler
 
     public void init() throws IdentityOAuth2Exception {
         callbackManager = new OAuthCallbackManager();
-        oauthIssuerImpl = new OAuthIssuerImpl(new MD5Generator());
+        oauthIssuerImpl = new OAuthIssuerImpl(OAuthServerConfiguration.getInstance().getTokenValueGenerator());
         tokenMgtDAO = new TokenMgtDAO();
         if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
             cacheEnabled = true;
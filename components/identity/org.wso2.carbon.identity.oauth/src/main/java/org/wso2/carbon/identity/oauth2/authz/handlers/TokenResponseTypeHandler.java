@@ -31,11 +31,12 @@ import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeReqDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator;
 
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.UUID;
 
 public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
 
@@ -69,7 +70,7 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
 					if (accessTokenDO != null) {
 						long expireTime = OAuth2Util.getTokenExpireTimeMillis(accessTokenDO);
 						if (expireTime > 0) {
-							respDTO.setAccessToken(accessTokenDO.getAccessToken());
+							respDTO.setAccessToken(getResponseToken(accessTokenDO));
 							respDTO.setValidityPeriod(accessTokenDO.getValidityPeriod());
                             if (log.isDebugEnabled()) {
                                 log.debug("Access Token info retrieved from the cache and served to client with client id : " +
@@ -82,7 +83,7 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                             //Token is expired. Mark it as expired on database
                             //TODO : Read token state from a constant
                             tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "EXPIRED",
-                                    UUID.randomUUID().toString(),
+                                    SecureTokenValueGenerator.generateRandomValue(),
                                     userStoreDomain, scope);
                         }
                     }
@@ -91,7 +92,8 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                 //Check if previously issued token exists in database
 				AccessTokenDO accessTokenDO = tokenMgtDAO.getValidAccessTokenIfExist(consumerKey, authorizedUser,
 						userStoreDomain, scope);
-				if (accessTokenDO != null) {
+                // a token persisted as a digest can not be handed out again, so a new one is issued
+				if (accessTokenDO != null && !OAuth2Util.isTokenHashingEnabled()) {
                     if (log.isDebugEnabled()) {
                         log.debug("Retrieving existing valid access token for client ID" + consumerKey);
                     }
@@ -102,7 +104,8 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                         }
                         oauthCache.addToCache(cacheKey, accessTokenDO);
                     }
-                    respDTO.setAccessToken(accessTokenDO.getAccessToken());
+                    accessTokenDO.setScope(oauthAuthzMsgCtx.getApprovedScope());
+                    respDTO.setAccessToken(getResponseToken(accessTokenDO));
                     respDTO.setValidityPeriod(OAuth2Util.getTokenExpireTimeMillis(accessTokenDO)/1000);
                     return respDTO;
                 } else {
@@ -113,8 +116,11 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                     //Token is expired. Mark it as expired on database
                     //TODO : Read token state from a constant
                     //TODO : This should move to validation check of getValidAccessTokenIfExist() method
+                    if (accessTokenDO != null) {
+                        JWTAccessTokenUtil.revokeToken(accessTokenDO);
+                    }
                     tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "EXPIRED",
-                            UUID.randomUUID().toString(),
+                            SecureTokenValueGenerator.generateRandomValue(),
                             userStoreDomain, scope);
                 }
             } catch (Exception e) {
@@ -186,9 +192,19 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                         "User Type : " + OAuthConstants.USER_TYPE_FOR_USER_TOKEN);
             }
 
-            respDTO.setAccessToken(accessToken);
+            respDTO.setAccessToken(getResponseToken(accessTokenDO));
             respDTO.setValidityPeriod(validityPeriod);
             return respDTO;
         }
     }
+
+    /**
+     * @return the signed JWT of the token if self contained access tokens are enabled, the token itself otherwise
+     */
+    private String getResponseToken(AccessTokenDO accessTokenDO) throws IdentityOAuth2Exception {
+        if (JWTAccessTokenUtil.isEnabled()) {
+            return JWTAccessTokenUtil.buildToken(accessTokenDO);
+        }
+        return accessTokenDO.getAccessToken();
+    }
 }
@@ -29,6 +29,9 @@ public class AccessContextTokenDO {
     private String consumerKey;
     private AccessTokenDO accessTokenDO;
     private String userStoreDomain;
+    // state the token has been moved to while it was waiting to be persisted
+    private String tokenState;
+    private String tokenStateId;
 
     public AccessContextTokenDO(String accessToken, String consumerKey, AccessTokenDO accessTokenDO, String userStoreDomain) {
         this.accessToken = accessToken;
@@ -52,4 +55,17 @@ public class AccessContextTokenDO {
     public String getUserStoreDomain() {
         return userStoreDomain;
     }
+
+    public String getTokenState() {
+        return tokenState;
+    }
+
+    public String getTokenStateId() {
+        return tokenStateId;
+    }
+
+    public void setTokenState(String tokenState, String tokenStateId) {
+        this.tokenState = tokenState;
+        this.tokenStateId = tokenStateId;
+    }
 }
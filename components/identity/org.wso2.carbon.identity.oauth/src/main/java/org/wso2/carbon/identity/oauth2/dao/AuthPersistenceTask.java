@@ -46,16 +46,22 @@ public class AuthPersistenceTask implements Runnable{
             try {
                 AuthContextTokenDO authContextTokenDO =  authContextTokenQueue.take();
                 if(authContextTokenDO != null){
-                    if(authContextTokenDO.getAuthzCodeDO() == null){
-                        log.debug("Auth Token Data removing Task is started to run");
-                        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
-                        tokenMgtDAO.removeAuthzCode(authContextTokenDO.getAuthzCode());
-                    } else {
-                        log.debug("Auth Token Data persisting Task is started to run");
-                        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
-                        tokenMgtDAO.persistAuthorizationCode(authContextTokenDO.getAuthzCode(),
-                                authContextTokenDO.getConsumerKey(), authContextTokenDO.getCallbackUrl(),
-                                authContextTokenDO.getAuthzCodeDO());
+                    // the token cleanup does not remove rows while authorization codes are being written
+                    TokenCleanupTask.persistenceLock.readLock().lock();
+                    try {
+                        if(authContextTokenDO.getAuthzCodeDO() == null){
+                            log.debug("Auth Token Data removing Task is started to run");
+                            TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+                            tokenMgtDAO.removeAuthzCode(authContextTokenDO.getAuthzCode());
+                        } else {
+                            log.debug("Auth Token Data persisting Task is started to run");
+                            TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+                            tokenMgtDAO.persistAuthorizationCode(authContextTokenDO.getAuthzCode(),
+                                    authContextTokenDO.getConsumerKey(), authContextTokenDO.getCallbackUrl(),
+                                    authContextTokenDO.getAuthzCodeDO());
+                        }
+                    } finally {
+                        TokenCleanupTask.persistenceLock.readLock().unlock();
                     }
                 }
             } catch (InterruptedException e) {
@@ -57,6 +57,9 @@ public class SQLQueries {
     public static final String REVOKE_ACCESS_TOKEN_BY_CLIENT = "UPDATE IDN_OAUTH2_ACCESS_TOKEN" + " SET TOKEN_STATE=? ," +
             " TOKEN_STATE_ID=?" + " WHERE ACCESS_TOKEN=? AND CONSUMER_KEY=?";
 
+    public static final String UPDATE_TOKEN_STATE_BY_ACCESS_TOKEN = "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET " +
+            "TOKEN_STATE = ?, TOKEN_STATE_ID = ? WHERE ACCESS_TOKEN = ?";
+
     public static final String REVOKE_ACCESS_TOKEN_BY_RESOURCE_OWNER = "UPDATE IDN_OAUTH2_ACCESS_TOKEN " + " SET TOKEN_STATE=? ," +
             " TOKEN_STATE_ID=?" + " WHERE CONSUMER_KEY=? AND AUTHZ_USER=? AND ACCESS_TOKEN=?";
     public static final String REVOKE_ALL_ACCESS_TOKEN_BY_RESOURCE_OWNER = "UPDATE IDN_OAUTH2_ACCESS_TOKEN " + " SET TOKEN_STATE=? ," +
@@ -69,4 +72,29 @@ public class SQLQueries {
 
     public static final String GET_TOKEN_STATE = "SELECT TOKEN_STATE FROM IDN_OAUTH2_ACCESS_TOKEN " +
             "WHERE CONSUMER_KEY = ? AND AUTHZ_USER = ? AND TOKEN_SCOPE = ? AND TOKEN_STATE_ID = 'NONE'";
+
+    // queries of the token cleanup task, which reads the tables in the order of TIME_CREATED, one batch at a time
+
+    public static final String GET_ACCESS_TOKENS_TO_CLEAN_UP = "SELECT ACCESS_TOKEN, REFRESH_TOKEN, TOKEN_STATE, " +
+            "TIME_CREATED, VALIDITY_PERIOD FROM IDN_OAUTH2_ACCESS_TOKEN WHERE TIME_CREATED < ? " +
+            "ORDER BY TIME_CREATED, ACCESS_TOKEN";
+
+    public static final String GET_NEXT_ACCESS_TOKENS_TO_CLEAN_UP = "SELECT ACCESS_TOKEN, REFRESH_TOKEN, " +
+            "TOKEN_STATE, TIME_CREATED, VALIDITY_PERIOD FROM IDN_OAUTH2_ACCESS_TOKEN WHERE TIME_CREATED < ? " +
+            "AND (TIME_CREATED > ? OR (TIME_CREATED = ? AND ACCESS_TOKEN > ?)) ORDER BY TIME_CREATED, ACCESS_TOKEN";
+
+    public static final String ARCHIVE_ACCESS_TOKEN = "INSERT INTO IDN_OAUTH2_ACCESS_TOKEN_ARCHIVE " +
+            "SELECT * FROM IDN_OAUTH2_ACCESS_TOKEN WHERE ACCESS_TOKEN = ?";
+
+    public static final String GET_AUTHZ_CODES_TO_CLEAN_UP = "SELECT AUTHORIZATION_CODE, TIME_CREATED, " +
+            "VALIDITY_PERIOD FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE TIME_CREATED < ? " +
+            "ORDER BY TIME_CREATED, AUTHORIZATION_CODE";
+
+    public static final String GET_NEXT_AUTHZ_CODES_TO_CLEAN_UP = "SELECT AUTHORIZATION_CODE, TIME_CREATED, " +
+            "VALIDITY_PERIOD FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE TIME_CREATED < ? " +
+            "AND (TIME_CREATED > ? OR (TIME_CREATED = ? AND AUTHORIZATION_CODE > ?)) " +
+            "ORDER BY TIME_CREATED, AUTHORIZATION_CODE";
+
+    public static final String ARCHIVE_AUTHZ_CODE = "INSERT INTO IDN_OAUTH2_AUTHORIZATION_CODE_ARCHIVE " +
+            "SELECT * FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE AUTHORIZATION_CODE = ?";
 }
@@ -0,0 +1,301 @@
+/*
+*Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.persistence.JDBCPersistenceManager;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Removes the access tokens and authorization codes which can no longer be used from the database. Revoked
+ * and inactive access tokens are removed, as well as active and expired ones once both the access token
+ * and its refresh token have expired. Authorization codes are removed once they have expired.
+ *
+ * The tables are read in the order of TIME_CREATED, one batch at a time, and the rows of a batch are
+ * removed, or moved to the archive tables, in a single transaction. Rows created within the grace period
+ * are not read at all, which is what keeps the rows being written out of the way of the cleanup. The
+ * asynchronous persistence consumers additionally hold the read lock of the persistence lock while
+ * writing. That lock is local to the JVM and is not taken by the synchronous store methods of
+ * TokenMgtDAO, so the grace period has to be longer than a token takes to be written.
+ *
+ * The task is scheduled on every node it is enabled on and has no cluster coordination, so in a cluster
+ * it is to be enabled on a single node. The rows of all the partitioned access token tables are moved to
+ * the same archive table.
+ */
+public class TokenCleanupTask implements Runnable {
+
+    private static final Log log = LogFactory.getLog(TokenCleanupTask.class);
+
+    private static final String ENABLE = "JDBCPersistenceManager.TokenCleanup.Enable";
+    private static final String INTERVAL = "JDBCPersistenceManager.TokenCleanup.Interval";
+    private static final String BATCH_SIZE = "JDBCPersistenceManager.TokenCleanup.BatchSize";
+    private static final String GRACE_PERIOD = "JDBCPersistenceManager.TokenCleanup.GracePeriod";
+    private static final String ARCHIVE = "JDBCPersistenceManager.TokenCleanup.Archive";
+
+    private static final long DEFAULT_INTERVAL = 3600;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final long DEFAULT_GRACE_PERIOD = 3600;
+
+    private static final String AUTHZ_CODE_TABLE = "IDN_OAUTH2_AUTHORIZATION_CODE";
+
+    // held by the persistence consumers of this node only
+    static final ReadWriteLock persistenceLock = new ReentrantReadWriteLock();
+
+    private int batchSize;
+
+    private long gracePeriod;
+
+    private boolean archive;
+
+    public TokenCleanupTask() {
+        this.batchSize = (int) Math.max(getProperty(BATCH_SIZE, DEFAULT_BATCH_SIZE), 1);
+        this.gracePeriod = Math.max(getProperty(GRACE_PERIOD, DEFAULT_GRACE_PERIOD), 0);
+        this.archive = Boolean.parseBoolean(IdentityUtil.getProperty(ARCHIVE));
+    }
+
+    /**
+     * @return true if the token cleanup is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(IdentityUtil.getProperty(ENABLE));
+    }
+
+    /**
+     * @return interval in seconds between two runs of the token cleanup
+     */
+    public static long getInterval() {
+        return Math.max(getProperty(INTERVAL, DEFAULT_INTERVAL), 1);
+    }
+
+    @Override
+    public void run() {
+
+        long startTime = System.currentTimeMillis();
+        Timestamp createdBefore = new Timestamp(startTime - gracePeriod * 1000);
+        int removedTokens = 0;
+        int removedCodes = 0;
+
+        try {
+            for (String accessTokenStoreTable : getAccessTokenStoreTables()) {
+                try {
+                    removedTokens += cleanUp(accessTokenStoreTable, true, createdBefore, startTime);
+                } catch (Exception e) {
+                    log.error("Error while cleaning up the access tokens of " + accessTokenStoreTable, e);
+                }
+            }
+            try {
+                removedCodes = cleanUp(AUTHZ_CODE_TABLE, false, createdBefore, startTime);
+            } catch (Exception e) {
+                log.error("Error while cleaning up the authorization codes", e);
+            }
+        } catch (Throwable e) {
+            // a scheduled task which throws is not run again
+            log.error("Error while cleaning up the tokens", e);
+        }
+
+        if (removedTokens > 0 || removedCodes > 0) {
+            log.info("Token cleanup " + (archive ? "archived " : "removed ") + removedTokens +
+                    " access tokens and " + removedCodes + " authorization codes in " +
+                    (System.currentTimeMillis() - startTime) + "ms");
+        } else if (log.isDebugEnabled()) {
+            log.debug("Token cleanup found no access tokens or authorization codes to remove");
+        }
+    }
+
+    private int cleanUp(String table, boolean accessTokens, Timestamp createdBefore, long now)
+            throws Exception {
+
+        String mainTable = accessTokens ? OAuthConstants.ACCESS_TOKEN_STORE_TABLE : AUTHZ_CODE_TABLE;
+        String firstQuery = (accessTokens ? SQLQueries.GET_ACCESS_TOKENS_TO_CLEAN_UP :
+                SQLQueries.GET_AUTHZ_CODES_TO_CLEAN_UP).replace(mainTable, table);
+        String nextQuery = (accessTokens ? SQLQueries.GET_NEXT_ACCESS_TOKENS_TO_CLEAN_UP :
+                SQLQueries.GET_NEXT_AUTHZ_CODES_TO_CLEAN_UP).replace(mainTable, table);
+        // only the source table is partitioned, the archive table is the one created by the dbscripts
+        String archiveQuery = (accessTokens ? SQLQueries.ARCHIVE_ACCESS_TOKEN :
+                SQLQueries.ARCHIVE_AUTHZ_CODE).replace("FROM " + mainTable, "FROM " + table);
+        String removeQuery = (accessTokens ? SQLQueries.REMOVE_ACCESS_TOKEN :
+                SQLQueries.REMOVE_AUTHZ_CODE).replace(mainTable, table);
+
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        Connection connection = null;
+        int removed = 0;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            connection.setAutoCommit(false);
+
+            // the next batch starts after the last row of the previous one
+            Timestamp lastTimeCreated = null;
+            String lastKey = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<String> keys = new ArrayList<String>();
+                int rows = 0;
+                PreparedStatement prepStmt = null;
+                ResultSet resultSet = null;
+                try {
+                    if (lastKey == null) {
+                        prepStmt = connection.prepareStatement(firstQuery);
+                        prepStmt.setTimestamp(1, createdBefore, utc);
+                    } else {
+                        prepStmt = connection.prepareStatement(nextQuery);
+                        prepStmt.setTimestamp(1, createdBefore, utc);
+                        prepStmt.setTimestamp(2, lastTimeCreated, utc);
+                        prepStmt.setTimestamp(3, lastTimeCreated, utc);
+                        prepStmt.setString(4, lastKey);
+                    }
+                    prepStmt.setMaxRows(batchSize);
+                    resultSet = prepStmt.executeQuery();
+                    while (resultSet.next()) {
+                        rows++;
+                        lastKey = resultSet.getString(1);
+                        lastTimeCreated = resultSet.getTimestamp("TIME_CREATED", utc);
+                        boolean removable = accessTokens ? isAccessTokenRemovable(resultSet, lastTimeCreated, now) :
+                                isExpired(lastTimeCreated, resultSet.getLong("VALIDITY_PERIOD"), now);
+                        if (removable) {
+                            keys.add(lastKey);
+                        }
+                    }
+                    connection.commit();
+                } finally {
+                    IdentityDatabaseUtil.closeAllConnections(null, resultSet, prepStmt);
+                }
+
+                if (!keys.isEmpty()) {
+                    removeRows(connection, keys, archiveQuery, removeQuery);
+                    removed += keys.size();
+                }
+                if (rows < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, null);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes a batch of rows, after copying them to the archive table if archiving is enabled
+     */
+    private void removeRows(Connection connection, List<String> keys, String archiveQuery, String removeQuery)
+            throws SQLException {
+
+        PreparedStatement archiveStmt = null;
+        PreparedStatement removeStmt = null;
+        Lock lock = persistenceLock.writeLock();
+        lock.lock();
+        try {
+            if (archive) {
+                archiveStmt = connection.prepareStatement(archiveQuery);
+                for (String key : keys) {
+                    archiveStmt.setString(1, key);
+                    archiveStmt.addBatch();
+                }
+                archiveStmt.executeBatch();
+            }
+            removeStmt = connection.prepareStatement(removeQuery);
+            for (String key : keys) {
+                removeStmt.setString(1, key);
+                removeStmt.addBatch();
+            }
+            removeStmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            log.error("Error when executing the SQL : " + (archive ? archiveQuery + " , " : "") + removeQuery);
+            throw e;
+        } finally {
+            lock.unlock();
+            IdentityDatabaseUtil.closeStatement(archiveStmt);
+            IdentityDatabaseUtil.closeStatement(removeStmt);
+        }
+    }
+
+    /**
+     * The refresh token of an active or expired access token can still be used, so such a token is kept
+     * until the refresh token has expired as well
+     */
+    private boolean isAccessTokenRemovable(ResultSet resultSet, Timestamp timeCreated, long now)
+            throws SQLException {
+
+        String tokenState = resultSet.getString("TOKEN_STATE");
+        if (tokenState != null && !OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE.equals(tokenState) &&
+                !OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED.equals(tokenState)) {
+            return true;
+        }
+        long validityPeriod = resultSet.getLong("VALIDITY_PERIOD");
+        if (validityPeriod >= 0 && resultSet.getString("REFRESH_TOKEN") != null) {
+            validityPeriod = Math.max(validityPeriod,
+                    OAuthServerConfiguration.getInstance().getRefreshTokenValidityPeriodInSeconds() * 1000);
+        }
+        return isExpired(timeCreated, validityPeriod, now);
+    }
+
+    /**
+     * @param validityPeriod validity period in milliseconds, as it is persisted
+     */
+    private static boolean isExpired(Timestamp timeCreated, long validityPeriod, long now) {
+        if (timeCreated == null || validityPeriod < 0) {
+            return false;
+        }
+        long skew = OAuthServerConfiguration.getInstance().getTimeStampSkewInSeconds() * 1000;
+        return timeCreated.getTime() + validityPeriod + skew < now;
+    }
+
+    private static Set<String> getAccessTokenStoreTables() throws Exception {
+        Set<String> tables = new LinkedHashSet<String>();
+        tables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE);
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled()) {
+            for (String mapping : OAuth2Util.getAvailableUserStoreDomainMappings().values()) {
+                tables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE + "_" + mapping);
+            }
+        }
+        return tables;
+    }
+
+    private static long getProperty(String name, long defaultValue) {
+        String value = IdentityUtil.getProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for " + name + " : " + value, e);
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -35,7 +35,9 @@ import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.AuthzCodeDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator;
 
 import java.sql.*;
 import java.util.*;
@@ -43,6 +45,11 @@ import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Data Access Layer functionality for Token management in OAuth 2.0 implementation. This includes
@@ -56,12 +63,31 @@ public class TokenMgtDAO {
 
     private boolean enablePersist = true;
 
-    private static BlockingDeque<AccessContextTokenDO> accessContextTokenQueue = new LinkedBlockingDeque<AccessContextTokenDO>();
+    private static boolean enableBatchPersist = false;
+
+    private static int batchPersistSize = 100;
+
+    private static long batchPersistWindow = 100;
+
+    private static int persistQueueSize = 10000;
+
+    private static BlockingDeque<AccessContextTokenDO> accessContextTokenQueue;
+
+    // access tokens handed over to the batch consumer and not written yet, keyed by the access token
+    private static final ConcurrentMap<String, AccessContextTokenDO> pendingAccessTokens =
+            new ConcurrentHashMap<String, AccessContextTokenDO>();
+
+    // state changes hold the read lock and the batch consumer holds the write lock while writing a batch,
+    // so that a token is either in the database or still pending when its state is changed
+    private static final ReadWriteLock pendingAccessTokenLock = new ReentrantReadWriteLock();
 
     private static BlockingDeque<AuthContextTokenDO> authContextTokenQueue = new LinkedBlockingDeque<AuthContextTokenDO>();
 
     private static final Log log = LogFactory.getLog(TokenMgtDAO.class);
 
+    // upper bound of bind variables in a single IN (...) clause, kept well below the database limits
+    private static final int MAX_IN_QUERY_SIZE = 100;
+
     static {
 
         final Log log = LogFactory.getLog(TokenMgtDAO.class);
@@ -72,13 +98,47 @@ public class TokenMgtDAO {
         } catch (Exception e) {
         }
 
+        enableBatchPersist =
+                Boolean.parseBoolean(IdentityUtil.getProperty("JDBCPersistenceManager.TokenPersist.Batch.Enable"));
+        try {
+            batchPersistSize =
+                    Integer.parseInt(IdentityUtil.getProperty("JDBCPersistenceManager.TokenPersist.Batch.Size"));
+        } catch (Exception e) {
+        }
+        try {
+            batchPersistWindow =
+                    Long.parseLong(IdentityUtil.getProperty("JDBCPersistenceManager.TokenPersist.Batch.Window"));
+        } catch (Exception e) {
+        }
+        try {
+            persistQueueSize =
+                    Integer.parseInt(IdentityUtil.getProperty("JDBCPersistenceManager.TokenPersist.QueueSize"));
+        } catch (Exception e) {
+        }
+
+        if (enableBatchPersist && persistQueueSize > 0) {
+            accessContextTokenQueue = new LinkedBlockingDeque<AccessContextTokenDO>(persistQueueSize);
+        } else {
+            accessContextTokenQueue = new LinkedBlockingDeque<AccessContextTokenDO>();
+        }
+
         if (maxPoolSize > 0) {
             log.info("Thread pool size for session persistent consumer : " + maxPoolSize);
 
-            ExecutorService threadPool = Executors.newFixedThreadPool(maxPoolSize);
-
-            for (int i = 0; i < maxPoolSize; i++) {
-                threadPool.execute(new TokenPersistenceTask(accessContextTokenQueue));
+            ExecutorService threadPool;
+            if (enableBatchPersist) {
+                // a single batch consumer keeps inserts and removals of a token in order, so that they
+                // can be coalesced before reaching the database
+                log.info("Batch persistence of access tokens is enabled. Batch size : " + batchPersistSize +
+                        ", batch window : " + batchPersistWindow + "ms, queue size : " + persistQueueSize);
+                threadPool = Executors.newSingleThreadExecutor();
+                threadPool.execute(new TokenPersistenceBatchTask(accessContextTokenQueue, batchPersistSize,
+                        batchPersistWindow));
+            } else {
+                threadPool = Executors.newFixedThreadPool(maxPoolSize);
+                for (int i = 0; i < maxPoolSize; i++) {
+                    threadPool.execute(new TokenPersistenceTask(accessContextTokenQueue));
+                }
             }
 
             threadPool = Executors.newFixedThreadPool(maxPoolSize);
@@ -203,12 +263,232 @@ public class TokenMgtDAO {
             return;
         }
         if (maxPoolSize > 0){
-            accessContextTokenQueue.push(new AccessContextTokenDO(accessToken, consumerKey, accessTokenDO, userStoreDomain));
+            enqueueAccessContextToken(new AccessContextTokenDO(accessToken, consumerKey, accessTokenDO, userStoreDomain));
         } else {
             persistAccessToken(accessToken, consumerKey, accessTokenDO, userStoreDomain);
         }
     }
 
+    /**
+     * Hands over an access token operation to the persistence consumers. In batch mode the queue is bounded
+     * and the caller is blocked until there is space in it, so that the queue can not grow without bound.
+     *
+     * @param accessContextTokenDO access token operation to be persisted
+     * @throws IdentityOAuth2Exception if interrupted while waiting for space in the queue
+     */
+    private void enqueueAccessContextToken(AccessContextTokenDO accessContextTokenDO) throws IdentityOAuth2Exception {
+
+        if (!enableBatchPersist) {
+            accessContextTokenQueue.push(accessContextTokenDO);
+            return;
+        }
+        pendingAccessTokens.put(accessContextTokenDO.getAccessToken(), accessContextTokenDO);
+        try {
+            accessContextTokenQueue.putLast(accessContextTokenDO);
+        } catch (InterruptedException e) {
+            pendingAccessTokens.remove(accessContextTokenDO.getAccessToken(), accessContextTokenDO);
+            Thread.currentThread().interrupt();
+            throw new IdentityOAuth2Exception("Interrupted while queuing the access token for persistence", e);
+        }
+    }
+
+    /**
+     * Returns the number of access token operations waiting to be persisted
+     *
+     * @return access token persistence queue depth
+     */
+    public static int getAccessTokenQueueDepth() {
+        return accessContextTokenQueue.size();
+    }
+
+    /**
+     * Persists a batch of access tokens using JDBC batch inserts. Tokens are grouped by the access token
+     * table of their user store domain and each table is written with a single batch. If a batch fails,
+     * e.g. due to a unique key constraint, the tokens of that table are persisted one by one. State changes
+     * made while the tokens were waiting in the queue, e.g. revocations, are applied right after the inserts.
+     *
+     * @param accessContextTokenDOs access tokens to be persisted
+     * @throws IdentityOAuth2Exception if an Identity Persistence Store instance can not be obtained
+     */
+    public void persistAccessTokens(List<AccessContextTokenDO> accessContextTokenDOs) throws IdentityOAuth2Exception {
+
+        if (!enablePersist || accessContextTokenDOs.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<AccessContextTokenDO>> tokensByTable = new HashMap<String, List<AccessContextTokenDO>>();
+        for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+            String accessTokenStoreTable = "IDN_OAUTH2_ACCESS_TOKEN";
+            if (accessContextTokenDO.getUserStoreDomain() != null) {
+                accessTokenStoreTable = accessTokenStoreTable + "_" + accessContextTokenDO.getUserStoreDomain();
+            }
+            List<AccessContextTokenDO> tokens = tokensByTable.get(accessTokenStoreTable);
+            if (tokens == null) {
+                tokens = new ArrayList<AccessContextTokenDO>();
+                tokensByTable.put(accessTokenStoreTable, tokens);
+            }
+            tokens.add(accessContextTokenDO);
+        }
+
+        Connection connection = null;
+        Lock lock = pendingAccessTokenLock.writeLock();
+        lock.lock();
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            connection.setAutoCommit(false);
+            for (Map.Entry<String, List<AccessContextTokenDO>> entry : tokensByTable.entrySet()) {
+                try {
+                    storeAccessTokens(entry.getValue(), connection, entry.getKey());
+                } catch (SQLException e) {
+                    IdentityDatabaseUtil.rollBack(connection);
+                    log.error("Error while batch persisting access tokens into " + entry.getKey() +
+                            ". Persisting them one by one : " + e.getMessage(), e);
+                    for (AccessContextTokenDO accessContextTokenDO : entry.getValue()) {
+                        try {
+                            storeAccessToken(accessContextTokenDO.getAccessToken(),
+                                    accessContextTokenDO.getConsumerKey(), accessContextTokenDO.getAccessTokenDO(),
+                                    connection, accessContextTokenDO.getUserStoreDomain());
+                        } catch (IdentityOAuth2Exception e1) {
+                            //Could be due to failing unique key constraint
+                            log.error("Error saving Access Token for consumer key : " +
+                                    accessContextTokenDO.getConsumerKey(), e1);
+                        }
+                    }
+                }
+                updateAccessTokenStates(entry.getValue(), connection, entry.getKey());
+            }
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new IdentityOAuth2Exception(errorMsg, e);
+        } catch (SQLException e) {
+            String errorMsg = "Error saving Access Tokens :" + e.getMessage();
+            log.error(errorMsg, e);
+        } finally {
+            for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+                pendingAccessTokens.remove(accessContextTokenDO.getAccessToken(), accessContextTokenDO);
+            }
+            IdentityDatabaseUtil.closeAllConnections(connection, null, null);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the state changes made to access tokens while they were waiting to be persisted
+     */
+    private void updateAccessTokenStates(List<AccessContextTokenDO> accessContextTokenDOs, Connection connection,
+                                         String accessTokenStoreTable) throws IdentityOAuth2Exception {
+
+        PreparedStatement prepStmt = null;
+        String sql = SQLQueries.UPDATE_TOKEN_STATE_BY_ACCESS_TOKEN.replace("IDN_OAUTH2_ACCESS_TOKEN",
+                accessTokenStoreTable);
+        int count = 0;
+        try {
+            for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+                if (accessContextTokenDO.getTokenState() == null) {
+                    continue;
+                }
+                if (prepStmt == null) {
+                    prepStmt = connection.prepareStatement(sql);
+                }
+                prepStmt.setString(1, accessContextTokenDO.getTokenState());
+                prepStmt.setString(2, accessContextTokenDO.getTokenStateId());
+                prepStmt.setString(3, persistenceProcessor.getProcessedAccessTokenIdentifier(
+                        accessContextTokenDO.getAccessToken()));
+                prepStmt.addBatch();
+                count++;
+            }
+            if (prepStmt != null) {
+                prepStmt.executeBatch();
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            log.error("Error when executing the SQL : " + sql + ". The state of " + count +
+                    " access tokens changed while they were queued could not be updated", e);
+        } finally {
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        }
+    }
+
+    /**
+     * Records a state change on the access tokens which are waiting to be persisted by the batch consumer,
+     * which applies it right after inserting them. The caller holds the read lock of the pending access
+     * tokens across the database update and this call.
+     *
+     * @param accessToken     access token to be changed, or null to match the tokens of the client and user
+     * @param unchangedOnly   if true, only tokens whose state has not been changed yet are matched, else
+     *                        active and expired tokens are matched
+     */
+    private static void setPendingAccessTokenState(String accessToken, String consumerKey, String authorizedUser,
+                                                   String scope, String tokenState, String tokenStateId,
+                                                   boolean unchangedOnly) {
+
+        if (pendingAccessTokens.isEmpty()) {
+            return;
+        }
+        Collection<AccessContextTokenDO> candidates;
+        if (accessToken != null) {
+            AccessContextTokenDO accessContextTokenDO = pendingAccessTokens.get(accessToken);
+            if (accessContextTokenDO == null) {
+                return;
+            }
+            candidates = Collections.singletonList(accessContextTokenDO);
+        } else {
+            candidates = pendingAccessTokens.values();
+        }
+        for (AccessContextTokenDO accessContextTokenDO : candidates) {
+            AccessTokenDO accessTokenDO = accessContextTokenDO.getAccessTokenDO();
+            if (!consumerKey.equals(accessContextTokenDO.getConsumerKey())) {
+                continue;
+            }
+            if (authorizedUser != null && !authorizedUser.equalsIgnoreCase(accessTokenDO.getAuthzUser())) {
+                continue;
+            }
+            if (scope != null && !scope.equals(OAuth2Util.buildScopeString(accessTokenDO.getScope()))) {
+                continue;
+            }
+            String currentState = accessContextTokenDO.getTokenState();
+            if (unchangedOnly ? currentState != null : currentState != null &&
+                    !OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED.equals(currentState)) {
+                continue;
+            }
+            accessContextTokenDO.setTokenState(tokenState, tokenStateId);
+        }
+    }
+
+    private void storeAccessTokens(List<AccessContextTokenDO> accessContextTokenDOs, Connection connection,
+                                   String accessTokenStoreTable) throws SQLException, IdentityOAuth2Exception {
+
+        PreparedStatement prepStmt = null;
+        String sql = SQLQueries.STORE_ACCESS_TOKEN.replace("IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable);
+        try {
+            prepStmt = connection.prepareStatement(sql);
+            for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+                AccessTokenDO accessTokenDO = accessContextTokenDO.getAccessTokenDO();
+                prepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(
+                        accessContextTokenDO.getAccessToken()));
+                if (accessTokenDO.getRefreshToken() != null) {
+                    prepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(accessTokenDO.getRefreshToken()));
+                } else {
+                    prepStmt.setString(2, accessTokenDO.getRefreshToken());
+                }
+                prepStmt.setString(3, persistenceProcessor.getProcessedClientId(accessContextTokenDO.getConsumerKey()));
+                prepStmt.setString(4, accessTokenDO.getAuthzUser().toLowerCase());
+                prepStmt.setTimestamp(5, accessTokenDO.getIssuedTime(), Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                prepStmt.setLong(6, accessTokenDO.getValidityPeriod() * 1000);
+                prepStmt.setString(7, OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+                prepStmt.setString(8, accessTokenDO.getTokenState());
+                prepStmt.setString(9, accessTokenDO.getTokenType());
+                prepStmt.addBatch();
+            }
+            prepStmt.executeBatch();
+            connection.commit();
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(null, null, prepStmt);
+        }
+    }
+
     public boolean persistAccessToken(String accessToken, String consumerKey,
                                     AccessTokenDO accessTokenDO,
                                     String userStoreDomain) throws IdentityOAuth2Exception {
@@ -593,7 +873,7 @@ public class TokenMgtDAO {
         try {
             connection = JDBCPersistenceManager.getInstance().getDBConnection();
             prepStmt = connection.prepareStatement(SQLQueries.REMOVE_AUTHZ_CODE);
-            prepStmt.setString(1, persistenceProcessor.getPreprocessedAuthzCode(authzCode));
+            prepStmt.setString(1, persistenceProcessor.getProcessedAuthzCode(authzCode));
 
             prepStmt.execute();
             connection.commit();
@@ -701,14 +981,6 @@ public class TokenMgtDAO {
         return validationDataDO;
     }
 
-    public void cleanUpAccessToken(String accessToken) throws IdentityOAuth2Exception{
-        if (maxPoolSize > 0){
-            accessContextTokenQueue.push(new AccessContextTokenDO(accessToken, null, null, null));
-        } else {
-            removeAccessToken(accessToken);
-        }
-    }
-
     public void removeAccessToken(String accessToken) throws IdentityOAuth2Exception {
         Connection connection = null;
         PreparedStatement prepStmt = null;
@@ -804,6 +1076,108 @@ public class TokenMgtDAO {
     }
 
 
+    /**
+     * Retrieves the active access tokens for a set of access token identifiers. Identifiers are grouped by
+     * the access token table of their user store domain and each table is queried with IN (...) queries
+     * of at most {@link #MAX_IN_QUERY_SIZE} identifiers.
+     *
+     * @param accessTokenIdentifiers access token identifiers
+     * @return active access tokens, keyed by their identifier. Identifiers without an active token are omitted
+     * @throws IdentityOAuth2Exception if the tokens could not be retrieved
+     */
+    public Map<String, AccessTokenDO> retrieveAccessTokens(Collection<String> accessTokenIdentifiers)
+            throws IdentityOAuth2Exception {
+
+        Map<String, AccessTokenDO> accessTokenDOs = new HashMap<String, AccessTokenDO>();
+        if (accessTokenIdentifiers.isEmpty()) {
+            return accessTokenDOs;
+        }
+
+        Map<String, List<String>> tokensByTable = new HashMap<String, List<String>>();
+        for (String accessTokenIdentifier : accessTokenIdentifiers) {
+            String userStoreDomain = null;
+            if (OAuth2Util.checkAccessTokenPartitioningEnabled() &&
+                    OAuth2Util.checkUserNameAssertionEnabled()) {
+                userStoreDomain = OAuth2Util.getUserStoreDomainFromAccessToken(accessTokenIdentifier);
+            }
+            String accessTokenStoreTable = "IDN_OAUTH2_ACCESS_TOKEN";
+            if (userStoreDomain != null) {
+                accessTokenStoreTable = accessTokenStoreTable + "_" + userStoreDomain;
+            }
+            List<String> tokens = tokensByTable.get(accessTokenStoreTable);
+            if (tokens == null) {
+                tokens = new ArrayList<String>();
+                tokensByTable.put(accessTokenStoreTable, tokens);
+            }
+            tokens.add(accessTokenIdentifier);
+        }
+
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        String sql = null;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            for (Map.Entry<String, List<String>> entry : tokensByTable.entrySet()) {
+                List<String> tokens = entry.getValue();
+                for (int from = 0; from < tokens.size(); from += MAX_IN_QUERY_SIZE) {
+                    List<String> chunk = tokens.subList(from, Math.min(from + MAX_IN_QUERY_SIZE, tokens.size()));
+                    StringBuilder placeholders = new StringBuilder();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        placeholders.append(i == 0 ? "?" : ",?");
+                    }
+                    sql = "SELECT ACCESS_TOKEN, CONSUMER_KEY, AUTHZ_USER, " +
+                            "TOKEN_SCOPE, TIME_CREATED, VALIDITY_PERIOD, USER_TYPE, REFRESH_TOKEN " +
+                            "FROM " + entry.getKey() + " WHERE TOKEN_STATE=? AND ACCESS_TOKEN IN (" +
+                            placeholders + ")";
+                    prepStmt = connection.prepareStatement(sql);
+                    prepStmt.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE);
+                    Map<String, String> identifiers = new HashMap<String, String>();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        String processedIdentifier =
+                                persistenceProcessor.getProcessedAccessTokenIdentifier(chunk.get(i));
+                        identifiers.put(processedIdentifier, chunk.get(i));
+                        prepStmt.setString(i + 2, processedIdentifier);
+                    }
+                    resultSet = prepStmt.executeQuery();
+                    while (resultSet.next()) {
+                        String accessTokenIdentifier = identifiers.get(resultSet.getString(1));
+                        if (accessTokenIdentifier == null) {
+                            continue;
+                        }
+                        String consumerKey = persistenceProcessor.getPreprocessedClientId(resultSet.getString(2));
+                        String authorizedUser = resultSet.getString(3);
+                        String[] scope = OAuth2Util.buildScopeArray(resultSet.getString(4));
+                        Timestamp timestamp = resultSet.getTimestamp(5,
+                                Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                        long validityPeriod = resultSet.getLong(6);
+                        String tokenType = resultSet.getString(7);
+                        String refreshToken = resultSet.getString(8);
+                        AccessTokenDO dataDO = new AccessTokenDO(consumerKey, authorizedUser, scope, timestamp,
+                                validityPeriod, tokenType);
+                        dataDO.setRefreshToken(refreshToken);
+                        accessTokenDOs.put(accessTokenIdentifier, dataDO);
+                    }
+                    IdentityDatabaseUtil.closeResultSet(resultSet);
+                    IdentityDatabaseUtil.closeStatement(prepStmt);
+                    resultSet = null;
+                    prepStmt = null;
+                }
+            }
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new IdentityOAuth2Exception(errorMsg, e);
+        } catch (SQLException e) {
+            log.error("Error when executing the SQL : " + sql);
+            log.error(e.getMessage(), e);
+            throw new IdentityOAuth2Exception("Error when validating bearer tokens", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return accessTokenDOs;
+    }
+
     /**
      * Sets state of access token
      *
@@ -817,6 +1191,8 @@ public class TokenMgtDAO {
             throws IdentityOAuth2Exception {
         Connection connection = null;
         PreparedStatement prepStmt = null;
+        Lock lock = pendingAccessTokenLock.readLock();
+        lock.lock();
         try {
             connection = JDBCPersistenceManager.getInstance().getDBConnection();
             connection.setAutoCommit(false);
@@ -841,6 +1217,7 @@ public class TokenMgtDAO {
             prepStmt.setString(5, scope);
             prepStmt.executeUpdate();
             connection.commit();
+            setPendingAccessTokenState(null, consumerKey, authorizedUser, scope, tokenState, tokenStateId, true);
         } catch (IdentityException e) {
             String errorMsg = "Error when getting an Identity Persistence Store instance.";
             log.error(errorMsg, e);
@@ -851,6 +1228,7 @@ public class TokenMgtDAO {
             throw new IdentityOAuth2Exception("Error while updating token state", e);
         } finally {
             IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+            lock.unlock();
         }
     }
 
@@ -864,21 +1242,63 @@ public class TokenMgtDAO {
     public void revokeTokensByClient(String token, String consumerKey) throws IdentityOAuth2Exception {
 
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled() &&
+                OAuth2Util.checkUserNameAssertionEnabled()) {
+            accessTokenStoreTable = OAuth2Util.getAccessTokenStoreTableFromAccessToken(token);
+        }
+        org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(OAuth2Util.getAccessTokenCacheKey(token));
+        Lock lock = pendingAccessTokenLock.readLock();
+        lock.lock();
+        try {
+            revokeToken(persistenceProcessor.getProcessedAccessTokenIdentifier(token), consumerKey,
+                    accessTokenStoreTable);
+            JWTAccessTokenUtil.revokeToken(token);
+            setPendingAccessTokenState(token, consumerKey, null, null, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED,
+                    SecureTokenValueGenerator.generateRandomValue(), false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method is to revoke the access token of a refresh token by OAuth clients
+     *
+     * @param refreshTokenDO refresh token, as validated with {@link #validateRefreshToken(String, String)}
+     * @param consumerKey consumerKey of the OAuth client to whom the token was issued
+     * @throws IdentityOAuth2Exception if failed to update the access token
+     */
+    public void revokeAccessTokenOfRefreshToken(RefreshTokenValidationDataDO refreshTokenDO, String consumerKey)
+            throws IdentityOAuth2Exception {
+
+        if (!OAuth2Util.isTokenHashingEnabled()) {
+            revokeTokensByClient(refreshTokenDO.getAccessToken(), consumerKey);
+            return;
+        }
+        // the access token read with the refresh token is the digest it is persisted with, which is also the
+        // key of the token in the validation cache
+        org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(refreshTokenDO.getAccessToken());
+        String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled() &&
+                OAuth2Util.checkUserNameAssertionEnabled()) {
+            accessTokenStoreTable = OAuth2Util.getAccessTokenStoreTableFromUserId(refreshTokenDO.getAuthorizedUser());
+        }
+        revokeToken(refreshTokenDO.getAccessToken(), consumerKey, accessTokenStoreTable);
+        JWTAccessTokenUtil.revokeToken(refreshTokenDO.getAccessToken());
+    }
+
+    private void revokeToken(String processedToken, String consumerKey, String accessTokenStoreTable)
+            throws IdentityOAuth2Exception {
+
         Connection connection = null;
         PreparedStatement ps = null;
         try {
-            if (OAuth2Util.checkAccessTokenPartitioningEnabled() &&
-                    OAuth2Util.checkUserNameAssertionEnabled()) {
-                accessTokenStoreTable = OAuth2Util.getAccessTokenStoreTableFromAccessToken(token);
-            }
-            org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(token);
             String sqlQuery = SQLQueries.REVOKE_ACCESS_TOKEN_BY_CLIENT.replace("IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable);
             connection = IdentityDatabaseUtil.getDBConnection();
             connection.setAutoCommit(false);
             ps = connection.prepareStatement(sqlQuery);
             ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
-            ps.setString(2, UUID.randomUUID().toString());
-            ps.setString(3, persistenceProcessor.getProcessedAccessTokenIdentifier(token));
+            ps.setString(2, SecureTokenValueGenerator.generateRandomValue());
+            ps.setString(3, processedToken);
             ps.setString(4, persistenceProcessor.getProcessedClientId(consumerKey));
             int count = ps.executeUpdate();
             if (log.isDebugEnabled()) {
@@ -910,6 +1330,8 @@ public class TokenMgtDAO {
         authzUser = authzUser.toLowerCase();
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
         Connection dbConnection = null;
+        Lock lock = pendingAccessTokenLock.readLock();
+        lock.lock();
         try {
             dbConnection =  IdentityDatabaseUtil.getDBConnection();
             if (OAuth2Util.checkAccessTokenPartitioningEnabled() &&
@@ -917,6 +1339,7 @@ public class TokenMgtDAO {
                 accessTokenStoreTable = OAuth2Util.getAccessTokenStoreTableFromUserId(authzUser);
             }
             OAuthAppDO[] oauthAppDOs =  getAppsAuthorizedByUser(authzUser);
+            List<String> revokedConsumerKeys = new ArrayList<String>();
             dbConnection.setAutoCommit(false);
             for (String app : apps) {
                 for(OAuthAppDO appDO:oauthAppDOs){
@@ -924,10 +1347,18 @@ public class TokenMgtDAO {
                     if(appDO.getApplicationName().equals(app)){
                         revokeTokenForApp(dbConnection, appDO.getOauthConsumerKey(), authzUser, accessTokenStoreTable);
                         org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(appDO.getOauthConsumerKey(), authzUser);
+                        revokedConsumerKeys.add(appDO.getOauthConsumerKey());
                     }
                 }
             }
             dbConnection.commit();
+            for (String consumerKey : revokedConsumerKeys) {
+                setPendingAccessTokenState(null, consumerKey, authzUser, null,
+                        OAuthConstants.TokenStates.TOKEN_STATE_REVOKED,
+                        SecureTokenValueGenerator.generateRandomValue(), false);
+                // all the tokens of the user for the client are revoked, not only the valid one read above
+                JWTAccessTokenUtil.revokeTokensOfUser(consumerKey, authzUser);
+            }
         } catch (SQLException e) {
             log.debug(e.getMessage(), e);
             IdentityDatabaseUtil.rollBack(dbConnection);
@@ -940,6 +1371,7 @@ public class TokenMgtDAO {
             throw new IdentityOAuth2Exception(e.getMessage());
         } finally {
             IdentityDatabaseUtil.closeConnection(dbConnection);
+            lock.unlock();
         }
 
 
@@ -955,12 +1387,13 @@ public class TokenMgtDAO {
         }
         AccessTokenDO accessTokenDO = getValidAccessTokenIfExist(consumerKey, authzUser, userStoreDomain, true);
         if (accessTokenDO != null) {
+            // the token read from the database is the key of the token in the validation cache
             org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
             String sqlQuery = SQLQueries.REVOKE_ALL_ACCESS_TOKEN_BY_RESOURCE_OWNER.replace("IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable);
             PreparedStatement ps = null;
             ps = dbConnection.prepareStatement(sqlQuery);
             ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
-            ps.setString(2, UUID.randomUUID().toString());
+            ps.setString(2, SecureTokenValueGenerator.generateRandomValue());
             ps.setString(3, persistenceProcessor.getProcessedClientId(consumerKey));
             ps.setString(4, authzUser.toLowerCase());
 //            ps.setString(5, persistenceProcessor.getProcessedAccessTokenIdentifier(accessTokenDO.getAccessToken()));
@@ -0,0 +1,142 @@
+/*
+*  Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access token persistence consumer which drains the queue in batches. A batch is closed either when it
+ * reaches the configured size or when the configured time window has elapsed since its first entry.
+ * Tokens are written in the order they were queued, and a state change made to a token while it was
+ * queued is applied right after the token is inserted.
+ */
+public class TokenPersistenceBatchTask implements Runnable {
+
+    private static Log log = LogFactory.getLog(TokenPersistenceBatchTask.class);
+
+    private static volatile long batchCount;
+
+    private static volatile long persistedTokenCount;
+
+    private static volatile long lastBatchLatency;
+
+    private static volatile long maxBatchLatency;
+
+    private BlockingDeque<AccessContextTokenDO> accessContextTokenQueue;
+
+    private int batchSize;
+
+    private long batchWindow;
+
+    public TokenPersistenceBatchTask(BlockingDeque<AccessContextTokenDO> accessContextTokenQueue, int batchSize,
+                                     long batchWindow) {
+        this.accessContextTokenQueue = accessContextTokenQueue;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.batchWindow = batchWindow > 0 ? batchWindow : 0;
+    }
+
+    @Override
+    public void run() {
+
+        log.debug("Access Token context batch persist consumer is started");
+
+        while (true) {
+            try {
+                List<AccessContextTokenDO> batch = nextBatch();
+                persistBatch(batch);
+            } catch (InterruptedException e) {
+                log.error(e);
+            } catch (Throwable e) {
+                log.error("Error while persisting a batch of access tokens", e);
+            }
+        }
+    }
+
+    private List<AccessContextTokenDO> nextBatch() throws InterruptedException {
+
+        List<AccessContextTokenDO> batch = new ArrayList<AccessContextTokenDO>(batchSize);
+        batch.add(accessContextTokenQueue.takeFirst());
+        long deadline = System.currentTimeMillis() + batchWindow;
+        while (batch.size() < batchSize) {
+            if (accessContextTokenQueue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            AccessContextTokenDO accessContextTokenDO =
+                    accessContextTokenQueue.pollFirst(remaining, TimeUnit.MILLISECONDS);
+            if (accessContextTokenDO == null) {
+                break;
+            }
+            batch.add(accessContextTokenDO);
+        }
+        return batch;
+    }
+
+    private void persistBatch(List<AccessContextTokenDO> batch) throws IdentityOAuth2Exception {
+
+        long startTime = System.currentTimeMillis();
+
+        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+        // the token cleanup does not remove rows while a batch is being written
+        TokenCleanupTask.persistenceLock.readLock().lock();
+        try {
+            tokenMgtDAO.persistAccessTokens(batch);
+        } finally {
+            TokenCleanupTask.persistenceLock.readLock().unlock();
+        }
+
+        long latency = System.currentTimeMillis() - startTime;
+        batchCount++;
+        persistedTokenCount += batch.size();
+        lastBatchLatency = latency;
+        if (latency > maxBatchLatency) {
+            maxBatchLatency = latency;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Access token batch persisted. Inserted : " + batch.size() + ", latency : " + latency +
+                    "ms, queue depth : " + accessContextTokenQueue.size());
+        }
+    }
+
+    public static long getBatchCount() {
+        return batchCount;
+    }
+
+    public static long getPersistedTokenCount() {
+        return persistedTokenCount;
+    }
+
+    public static long getLastBatchLatency() {
+        return lastBatchLatency;
+    }
+
+    public static long getMaxBatchLatency() {
+        return maxBatchLatency;
+    }
+}
@@ -45,15 +45,21 @@ public class TokenPersistenceTask implements Runnable{
             try {
                 AccessContextTokenDO accessContextTokenDO =  accessContextTokenQueue.take();
                 if(accessContextTokenDO != null){
-                    if(accessContextTokenDO.getAccessToken() == null){
-                        log.debug("Access Token Data removing Task is started to run");
-                        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
-                        tokenMgtDAO.removeAccessToken(accessContextTokenDO.getAccessToken());
-                    } else {
-                        log.debug("Access Token Data persisting Task is started to run");
-                        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
-                        tokenMgtDAO.persistAccessToken(accessContextTokenDO.getAccessToken(), accessContextTokenDO.getConsumerKey(),
-                                accessContextTokenDO.getAccessTokenDO(), accessContextTokenDO.getUserStoreDomain());
+                    // the token cleanup does not remove rows while tokens are being written
+                    TokenCleanupTask.persistenceLock.readLock().lock();
+                    try {
+                        if(accessContextTokenDO.getAccessTokenDO() == null){
+                            log.debug("Access Token Data removing Task is started to run");
+                            TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+                            tokenMgtDAO.removeAccessToken(accessContextTokenDO.getAccessToken());
+                        } else {
+                            log.debug("Access Token Data persisting Task is started to run");
+                            TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+                            tokenMgtDAO.persistAccessToken(accessContextTokenDO.getAccessToken(), accessContextTokenDO.getConsumerKey(),
+                                    accessContextTokenDO.getAccessTokenDO(), accessContextTokenDO.getUserStoreDomain());
+                        }
+                    } finally {
+                        TokenCleanupTask.persistenceLock.readLock().unlock();
                     }
                 }
             } catch (InterruptedException e) {
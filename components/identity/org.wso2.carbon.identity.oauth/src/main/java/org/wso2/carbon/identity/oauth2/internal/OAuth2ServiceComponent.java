@@ -26,6 +26,12 @@ import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth2.OAuth2Service;
 import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
+import org.wso2.carbon.identity.oauth2.dao.TokenCleanupTask;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @scr.component name="identity.oauth2.component" immediate="true"
@@ -40,6 +46,7 @@ import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
 public class OAuth2ServiceComponent {
     private static Log log = LogFactory.getLog(OAuth2ServiceComponent.class);
     private static BundleContext bundleContext;
+    private ScheduledExecutorService tokenCleanupScheduler;
 
     protected void activate(ComponentContext context) {
         //Registering OAuth2Service as a OSGIService
@@ -50,11 +57,35 @@ public class OAuth2ServiceComponent {
         bundleContext.registerService(OAuthServerConfiguration.class.getName(), oauthServerConfig, null);
         OAuth2TokenValidationService tokenValidationService = new OAuth2TokenValidationService();
         bundleContext.registerService(OAuth2TokenValidationService.class.getName(), tokenValidationService, null);
+        if (TokenCleanupTask.isEnabled()) {
+            long interval = TokenCleanupTask.getInterval();
+            log.info("Starting the cleanup of expired and revoked tokens. Interval : " + interval + "s. " +
+                    "In a cluster, the token cleanup is to be enabled on one node only");
+            tokenCleanupScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "OAuth2TokenCleanup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            tokenCleanupScheduler.scheduleWithFixedDelay(new TokenCleanupTask(), interval, interval,
+                    TimeUnit.SECONDS);
+        }
         if (log.isDebugEnabled()) {
             log.info("Identity OAuth bundle is activated");
         }
     }
 
+    protected void deactivate(ComponentContext context) {
+        if (tokenCleanupScheduler != null) {
+            tokenCleanupScheduler.shutdownNow();
+            tokenCleanupScheduler = null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Identity OAuth bundle is deactivated");
+        }
+    }
+
     /**
      * Set Application management service implementation
      *
@@ -18,7 +18,6 @@
 
 package org.wso2.carbon.identity.oauth2.token.handlers.grant;
 
-import org.apache.amber.oauth2.as.issuer.MD5Generator;
 import org.apache.amber.oauth2.as.issuer.OAuthIssuer;
 import org.apache.amber.oauth2.as.issuer.OAuthIssuerImpl;
 import org.apache.amber.oauth2.common.exception.OAuthSystemException;
@@ -40,18 +39,25 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator;
+import org.wso2.carbon.identity.oauth2.util.StripedLock;
 
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
 public abstract class AbstractAuthorizationGrantHandler implements AuthorizationGrantHandler {
 
     private static Log log = LogFactory.getLog(AbstractAuthorizationGrantHandler.class);
 
+    // serializes token issuance for the same consumer key, user and scope combination
+    private static final StripedLock tokenIssuanceLock = new StripedLock(1024);
+
     protected TokenMgtDAO tokenMgtDAO;
-    protected final OAuthIssuer oauthIssuerImpl = new OAuthIssuerImpl(new MD5Generator());
+    protected final OAuthIssuer oauthIssuerImpl = new OAuthIssuerImpl(
+            OAuthServerConfiguration.getInstance().getTokenValueGenerator());
     protected OAuthCallbackManager callbackManager;
     protected boolean cacheEnabled;
     protected OAuthCache oauthCache;
@@ -104,7 +110,9 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
             tokenType = OAuthConstants.USER_TYPE_FOR_APPLICATION_TOKEN;
         }
 
-        synchronized ((consumerKey + ":" + authorizedUser + ":" + scope).intern()) {
+        Lock issuanceLock = tokenIssuanceLock.getLock(consumerKey, authorizedUser, scope);
+        issuanceLock.lock();
+        try {
             try {
                 //TODO Need to refactor this logic
                 //First serve from the cache
@@ -114,7 +122,7 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
 						long expireTime = OAuth2Util.getTokenExpireTimeMillis(AccessTokenDO);
                           if (expireTime > 0) {
                             tokenRespDTO = new OAuth2AccessTokenRespDTO();
-                            tokenRespDTO.setAccessToken(AccessTokenDO.getAccessToken());
+                            tokenRespDTO.setAccessToken(getResponseToken(AccessTokenDO));
                             if (issueRefreshToken() &&
                                     OAuthServerConfiguration.getInstance().getSupportedGrantTypes().containsKey(
                                             GrantType.REFRESH_TOKEN.toString())) {
@@ -136,13 +144,14 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
                 //Check if previously issued token exists in database
                 AccessTokenDO accessTokenDO = tokenMgtDAO.getValidAccessTokenIfExist(oAuth2AccessTokenReqDTO.getClientId(),
                         tokReqMsgCtx.getAuthorizedUser(), userStoreDomain, scope);
-				if (accessTokenDO != null) {
+                // a token persisted as a digest can not be handed out again, so a new one is issued
+				if (accessTokenDO != null && !OAuth2Util.isTokenHashingEnabled()) {
 					// set the missing accessTokenDO attributes
 					accessTokenDO.setScope(tokReqMsgCtx.getScope());
 					accessTokenDO.setTokenType(tokenType);
 					tokenRespDTO = new OAuth2AccessTokenRespDTO();
 					tokenRespDTO.setRefreshToken(accessTokenDO.getRefreshToken());
-					tokenRespDTO.setAccessToken(accessTokenDO.getAccessToken());
+					tokenRespDTO.setAccessToken(getResponseToken(accessTokenDO));
 					long expireTime = OAuth2Util.getTokenExpireTimeMillis(accessTokenDO);
 					tokenRespDTO.setExpiresIn(expireTime / 1000);
                   tokenRespDTO.setExpiresInMillis(expireTime);
@@ -169,13 +178,16 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
                     }
                     //TODO : Read token state from a constant
                     //TODO : This should move to validation check of getValidAccessTokenIfExist() method
+                    if (accessTokenDO != null) {
+                        JWTAccessTokenUtil.revokeToken(accessTokenDO);
+                    }
                     String tokenState = tokenMgtDAO.getAccessTokenState(consumerKey, authorizedUser, scope);
                     if (tokenState != null){
                         if(tokenState.equals("REVOKED")) {
-                            tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "REVOKED", UUID.randomUUID().toString(), userStoreDomain, scope);
+                            tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "REVOKED", SecureTokenValueGenerator.generateRandomValue(), userStoreDomain, scope);
                         } else { // Token is expired. Mark it as expired on database
                             tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "EXPIRED",
-                                    UUID.randomUUID().toString(), userStoreDomain,scope);
+                                    SecureTokenValueGenerator.generateRandomValue(), userStoreDomain,scope);
                         }
                     }
                 }
@@ -198,7 +210,7 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
                 accessToken = oauthIssuerImpl.accessToken();
                 refreshToken = oauthIssuerImpl.refreshToken();
                 AccessTokenDO accessTokenDO = tokenMgtDAO.getValidAccessTokenIfExist(consumerKey, authorizedUser, userStoreDomain, true);
-                if(accessTokenDO != null){
+                if(accessTokenDO != null && !OAuth2Util.isTokenHashingEnabled()){
                     RefreshTokenValidationDataDO refreshTokenValidationDataDO = tokenMgtDAO.validateRefreshToken(
                             consumerKey, accessTokenDO.getRefreshToken());
                     String state = refreshTokenValidationDataDO.getRefreshTokenState();
@@ -271,7 +283,7 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
                 }
             }
             tokenRespDTO = new OAuth2AccessTokenRespDTO();
-            tokenRespDTO.setAccessToken(accessToken);
+            tokenRespDTO.setAccessToken(getResponseToken(accessTokenDO));
             if(issueRefreshToken() &&
                     OAuthServerConfiguration.getInstance().getSupportedGrantTypes().containsKey(
                             GrantType.REFRESH_TOKEN.toString())){
@@ -279,7 +291,19 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
             }
             tokenRespDTO.setExpiresIn(OAuth2Util.getTokenExpireTimeMillis(accessTokenDO)/1000);
             return tokenRespDTO;
+        } finally {
+            issuanceLock.unlock();
+        }
+    }
+
+    /**
+     * @return the signed JWT of the token if self contained access tokens are enabled, the token itself otherwise
+     */
+    private String getResponseToken(AccessTokenDO accessTokenDO) throws IdentityOAuth2Exception {
+        if (JWTAccessTokenUtil.isEnabled()) {
+            return JWTAccessTokenUtil.buildToken(accessTokenDO);
         }
+        return accessTokenDO.getAccessToken();
     }
 
     public boolean authorizeAccessDelegation(OAuthTokenReqMessageContext tokReqMsgCtx)
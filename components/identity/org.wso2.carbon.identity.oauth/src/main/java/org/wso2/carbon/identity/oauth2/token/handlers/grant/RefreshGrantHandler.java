@@ -34,12 +34,13 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.identity.oauth2.util.SecureTokenValueGenerator;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.UUID;
 
 /**
  * Grant Type handler for Grant Type refresh_token which is used to get a new access token.
@@ -179,14 +180,15 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
         String authorizedUser = tokReqMsgCtx.getAuthorizedUser();
         // set the previous access token state to "INACTIVE"
         tokenMgtDAO.setAccessTokenState(consumerKey, authorizedUser, "INACTIVE",
-                UUID.randomUUID().toString(), userStoreDomain, scope);
+                SecureTokenValueGenerator.generateRandomValue(), userStoreDomain, scope);
+        // a self contained access token stays valid until it expires, unless it is revoked
+        JWTAccessTokenUtil.revokeToken(oldAccessToken);
+        // the previous access token, as read from the database, is its key in the validation cache
+        org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(oldAccessToken);
 
         // store the new access token
         tokenMgtDAO.storeAccessToken(accessToken, clientId, accessTokenDO, userStoreDomain);
 
-        // Remove the previous access token (this is already a preprocessed token)
-        //tokenMgtDAO.cleanUpAccessToken(oldAccessToken);
-
         //remove the previous access token from cache and add the access token info to the cache,
         // if it's enabled.
         if(cacheEnabled){
@@ -214,15 +216,23 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
                     "User Type : " + tokenType);
         }
 
-        tokenRespDTO.setAccessToken(accessToken);
+        if (JWTAccessTokenUtil.isEnabled()) {
+            tokenRespDTO.setAccessToken(JWTAccessTokenUtil.buildToken(accessTokenDO));
+        } else {
+            tokenRespDTO.setAccessToken(accessToken);
+        }
         tokenRespDTO.setRefreshToken(refreshToken);
         tokenRespDTO.setExpiresIn(validityPeriod);
 
+        // the previous access token is a digest when tokens are hashed, which is of no use to the receivers
+        // of the header
         ArrayList<ResponseHeader> respHeaders = new ArrayList<ResponseHeader>();
-        ResponseHeader header = new ResponseHeader();
-        header.setKey("DeactivatedAccessToken");
-        header.setValue(oldAccessToken);
-        respHeaders.add(header);
+        if (!OAuth2Util.isTokenHashingEnabled()) {
+            ResponseHeader header = new ResponseHeader();
+            header.setKey("DeactivatedAccessToken");
+            header.setValue(oldAccessToken);
+            respHeaders.add(header);
+        }
 
         tokReqMsgCtx.addProperty("RESPONSE_HEADERS", respHeaders.toArray(
                 new ResponseHeader[respHeaders.size()]));
@@ -0,0 +1,379 @@
+/*
+ *Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *WSO2 Inc. licenses this file to you under the Apache License,
+ *Version 2.0 (the "License"); you may not use this file except
+ *in compliance with the License.
+ *You may obtain a copy of the License at
+ *
+ *http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an
+ *"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *KIND, either express or implied.  See the License for the
+ *specific language governing permissions and limitations
+ *under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.cache.RevokedTokenCache;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
+import org.wso2.carbon.identity.oauth.tokenprocessor.TokenPersistenceProcessor;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+import java.security.cert.Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Self contained access tokens. When enabled, the access token handed to the client is a JWT signed with
+ * the key of the tenant of the authorized user, and resource servers validating it need not look it up in
+ * the cache or the database.
+ *
+ * The token is still persisted for refreshing and revoking it, with the JWT ID as its identifier, as the
+ * JWT itself does not fit in the access token column. Revoked tokens are kept in a revocation list shared
+ * by the nodes of the cluster until they expire, which is checked when a JWT is validated. The list is
+ * keyed by the JWT ID, or by its persisted form when the persistence processor is one way, so that the key
+ * of a token is the same whether it is revoked by the client or through the database. When all the
+ * tokens of a client, or of a user for a client, are revoked, the list holds the time they are revoked at
+ * instead, and the tokens issued until then are rejected.
+ */
+public class JWTAccessTokenUtil {
+
+    private static final Log log = LogFactory.getLog(JWTAccessTokenUtil.class);
+
+    private static final String CLIENT_ID = "client_id";
+    private static final String SCOPE = "scope";
+    private static final String USER_TYPE = "user_type";
+
+    private static final String CLIENT_REVOCATION_PREFIX = "client:";
+    private static final String USER_REVOCATION_PREFIX = "user:";
+
+    private static final String ONE_WAY_PROBE = "one-way-probe";
+
+    private static final Map<TokenPersistenceProcessor, Boolean> oneWayProcessors =
+            new ConcurrentHashMap<TokenPersistenceProcessor, Boolean>();
+
+    private JWTAccessTokenUtil() {
+    }
+
+    /**
+     * @return true if access tokens are issued as signed JWTs
+     */
+    public static boolean isEnabled() {
+        return OAuthServerConfiguration.getInstance().isSelfContainedAccessTokensEnabled();
+    }
+
+    /**
+     * @param token access token sent by a client
+     * @return true if self contained access tokens are enabled and the token is a JWT
+     */
+    public static boolean isJWT(String token) {
+        if (token == null || !isEnabled()) {
+            return false;
+        }
+        int firstDot = token.indexOf('.');
+        return firstDot > 0 && token.indexOf('.', firstDot + 1) > firstDot + 1;
+    }
+
+    /**
+     * Builds the signed JWT handed to the client for a persisted access token. The JWT ID is the
+     * identifier of the persisted token, and the same token is built each time for a persisted token.
+     *
+     * @param accessTokenDO persisted access token
+     * @return signed JWT
+     * @throws IdentityOAuth2Exception if the token could not be signed
+     */
+    public static String buildToken(AccessTokenDO accessTokenDO) throws IdentityOAuth2Exception {
+
+        String authzUser = accessTokenDO.getAuthzUser();
+        long issuedTime = accessTokenDO.getIssuedTime().getTime();
+
+        JWTClaimsSet claimsSet = new JWTClaimsSet();
+        claimsSet.setIssuer(OAuthServerConfiguration.getInstance().getOpenIDConnectIDTokenIssuerIdentifier());
+        claimsSet.setSubject(authzUser);
+        claimsSet.setCustomClaim(CLIENT_ID, accessTokenDO.getConsumerKey());
+        claimsSet.setCustomClaim(SCOPE, OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+        if (accessTokenDO.getTokenType() != null) {
+            claimsSet.setCustomClaim(USER_TYPE, accessTokenDO.getTokenType());
+        }
+        claimsSet.setIssueTime(new Date(issuedTime));
+        claimsSet.setExpirationTime(new Date(issuedTime + accessTokenDO.getValidityPeriodInMillis()));
+        claimsSet.setJWTID(accessTokenDO.getAccessToken());
+
+        String tenantDomain = MultitenantUtils.getTenantDomain(authzUser);
+        RSAPrivateKey privateKey = (RSAPrivateKey) OAuth2Util.getPrivateKey(tenantDomain, getTenantId(tenantDomain));
+        try {
+            SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claimsSet);
+            signedJWT.sign(new RSASSASigner(privateKey));
+            return signedJWT.serialize();
+        } catch (JOSEException e) {
+            throw new IdentityOAuth2Exception("Error while signing the access token", e);
+        }
+    }
+
+    /**
+     * @param token access token sent by a client
+     * @return identifier the token is persisted with, i.e. the JWT ID of a JWT and the token itself otherwise
+     */
+    public static String getTokenIdentifier(String token) {
+        if (!isJWT(token)) {
+            return token;
+        }
+        try {
+            String jwtID = SignedJWT.parse(token).getJWTClaimsSet().getJWTID();
+            return jwtID != null ? jwtID : token;
+        } catch (ParseException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is not a valid JWT", e);
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Validates a JWT access token with the certificate of the tenant of its subject. The expiry of the
+     * token is not checked here, but by the caller as for the persisted tokens.
+     *
+     * @param token JWT access token
+     * @return access token, with its identifier and the validity period in milliseconds, or null if the token
+     * is malformed, is not issued by this server, is not signed by the tenant or is revoked
+     * @throws IdentityOAuth2Exception if the certificate of the tenant could not be obtained
+     */
+    public static AccessTokenDO validate(String token) throws IdentityOAuth2Exception {
+
+        SignedJWT signedJWT;
+        ReadOnlyJWTClaimsSet claimsSet;
+        try {
+            signedJWT = SignedJWT.parse(token);
+            claimsSet = signedJWT.getJWTClaimsSet();
+        } catch (ParseException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is not a valid JWT", e);
+            }
+            return null;
+        }
+
+        String authzUser = claimsSet.getSubject();
+        String jwtID = claimsSet.getJWTID();
+        Date issueTime = claimsSet.getIssueTime();
+        Date expirationTime = claimsSet.getExpirationTime();
+        Object clientId = claimsSet.getCustomClaim(CLIENT_ID);
+        if (authzUser == null || jwtID == null || issueTime == null || expirationTime == null ||
+                !(clientId instanceof String) || !JWSAlgorithm.RS256.equals(signedJWT.getHeader().getAlgorithm())) {
+            log.debug("Access token does not have the claims of a self contained access token");
+            return null;
+        }
+        String issuer = OAuthServerConfiguration.getInstance().getOpenIDConnectIDTokenIssuerIdentifier();
+        if (issuer == null || !issuer.equals(claimsSet.getIssuer())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is issued by " + claimsSet.getIssuer() + " instead of " + issuer);
+            }
+            return null;
+        }
+
+        String tenantDomain = MultitenantUtils.getTenantDomain(authzUser);
+        Certificate certificate = OAuth2Util.getCertificate(tenantDomain, getTenantId(tenantDomain));
+        try {
+            if (certificate == null ||
+                    !signedJWT.verify(new RSASSAVerifier((RSAPublicKey) certificate.getPublicKey()))) {
+                log.debug("Signature validation of the access token failed");
+                return null;
+            }
+        } catch (JOSEException e) {
+            log.debug("Signature validation of the access token failed", e);
+            return null;
+        }
+
+        if (isRevoked(jwtID) || isRevoked((String) clientId, authzUser, issueTime)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token : " + jwtID + " is revoked");
+            }
+            return null;
+        }
+
+        // the validity period of a persisted token is in milliseconds
+        long validityPeriod = expirationTime.getTime() - issueTime.getTime();
+        AccessTokenDO accessTokenDO = new AccessTokenDO((String) clientId, authzUser,
+                OAuth2Util.buildScopeArray((String) claimsSet.getCustomClaim(SCOPE)),
+                new Timestamp(issueTime.getTime()), validityPeriod, (String) claimsSet.getCustomClaim(USER_TYPE));
+        accessTokenDO.setValidityPeriodInMillis(validityPeriod);
+        accessTokenDO.setAccessToken(jwtID);
+        accessTokenDO.setTokenState(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE);
+        return accessTokenDO;
+    }
+
+    /**
+     * Adds a token to the revocation list, until it expires
+     *
+     * @param accessTokenDO revoked access token, as read from the database
+     * @throws IdentityOAuth2Exception if the persistence processor fails to process the identifier
+     */
+    public static void revokeToken(AccessTokenDO accessTokenDO) throws IdentityOAuth2Exception {
+        revokeToken(accessTokenDO.getAccessToken(),
+                accessTokenDO.getIssuedTime().getTime() + accessTokenDO.getValidityPeriodInMillis());
+    }
+
+    /**
+     * Adds a token to the revocation list, until the longest configured validity period has elapsed
+     *
+     * @param tokenIdentifier identifier of the revoked access token, as sent by the client or as read from the
+     *                        database, i.e. converted with the persistence processor
+     * @throws IdentityOAuth2Exception if the persistence processor fails to process the identifier
+     */
+    public static void revokeToken(String tokenIdentifier) throws IdentityOAuth2Exception {
+        OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+        long validityPeriod = Math.max(config.getUserAccessTokenValidityPeriodInSeconds(),
+                config.getApplicationAccessTokenValidityPeriodInSeconds());
+        revokeToken(tokenIdentifier, System.currentTimeMillis() + validityPeriod * 1000);
+    }
+
+    /**
+     * Revokes all the tokens issued to a client until now, e.g. when the client is removed
+     *
+     * @param consumerKey consumer key of the client
+     */
+    public static void revokeTokensOfClient(String consumerKey) {
+        if (!isEnabled() || consumerKey == null) {
+            return;
+        }
+        RevokedTokenCache.getInstance().addRevocationTime(getClientRevocationKey(consumerKey),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Revokes all the tokens issued to a client for a user until now, e.g. when the user revokes the
+     * authorization of the client
+     *
+     * @param consumerKey consumer key of the client
+     * @param authzUser   user the tokens are issued for
+     */
+    public static void revokeTokensOfUser(String consumerKey, String authzUser) {
+        if (!isEnabled() || consumerKey == null || authzUser == null) {
+            return;
+        }
+        RevokedTokenCache.getInstance().addRevocationTime(getUserRevocationKey(consumerKey, authzUser),
+                System.currentTimeMillis());
+    }
+
+    static String getClientRevocationKey(String consumerKey) {
+        return CLIENT_REVOCATION_PREFIX + consumerKey;
+    }
+
+    static String getUserRevocationKey(String consumerKey, String authzUser) {
+        // the user is persisted in lower case
+        return USER_REVOCATION_PREFIX + consumerKey + ":" + authzUser.toLowerCase();
+    }
+
+    /**
+     * The issue time of a JWT is in seconds, so a token issued within the second the tokens are revoked in is
+     * taken as revoked as well
+     *
+     * @param issueTime      issue time of the token
+     * @param revocationTime time in milliseconds until which the tokens issued are revoked, -1 if they are not
+     * @return true if the token is issued until the revocation time
+     */
+    static boolean isIssuedUntil(Date issueTime, long revocationTime) {
+        return revocationTime >= 0 && issueTime.getTime() <= revocationTime;
+    }
+
+    /**
+     * @param processor persistence processor of the access tokens
+     * @param jwtID     JWT ID of a token
+     * @return key of the token in the revocation list
+     * @throws IdentityOAuth2Exception if the processor fails to process the JWT ID
+     */
+    static String getRevocationKey(TokenPersistenceProcessor processor, String jwtID)
+            throws IdentityOAuth2Exception {
+        return isOneWay(processor) ? processor.getProcessedAccessTokenIdentifier(jwtID) : jwtID;
+    }
+
+    /**
+     * A token identifier read from the database is the JWT ID itself, unless the processor is one way, when it
+     * is the persisted identifier and so already the key of the token. The identifier sent by the client is
+     * the JWT ID. As it is not known which one a one way processor is given, both keys are returned then.
+     *
+     * @param processor       persistence processor of the access tokens
+     * @param tokenIdentifier identifier of a token, as sent by the client or as read from the database
+     * @return keys the token is added to the revocation list with
+     * @throws IdentityOAuth2Exception if the processor fails to process the identifier
+     */
+    static String[] getRevocationKeys(TokenPersistenceProcessor processor, String tokenIdentifier)
+            throws IdentityOAuth2Exception {
+        if (!isOneWay(processor)) {
+            return new String[]{tokenIdentifier};
+        }
+        return new String[]{processor.getProcessedAccessTokenIdentifier(tokenIdentifier), tokenIdentifier};
+    }
+
+    /**
+     * @return true if the processor can not recover an identifier from its persisted form, e.g. when it hashes it
+     */
+    static boolean isOneWay(TokenPersistenceProcessor processor) throws IdentityOAuth2Exception {
+        Boolean oneWay = oneWayProcessors.get(processor);
+        if (oneWay == null) {
+            oneWay = !ONE_WAY_PROBE.equals(processor.getPreprocessedAccessTokenIdentifier(
+                    processor.getProcessedAccessTokenIdentifier(ONE_WAY_PROBE)));
+            oneWayProcessors.put(processor, oneWay);
+        }
+        return oneWay;
+    }
+
+    private static void revokeToken(String tokenIdentifier, long expiryTime) throws IdentityOAuth2Exception {
+        if (!isEnabled() || tokenIdentifier == null) {
+            return;
+        }
+        // a token is rejected a while after it expires, as the expiry is checked with the timestamp skew
+        long skew = OAuthServerConfiguration.getInstance().getTimeStampSkewInSeconds() * 1000;
+        TokenPersistenceProcessor processor = OAuthServerConfiguration.getInstance().getPersistenceProcessor();
+        for (String key : getRevocationKeys(processor, tokenIdentifier)) {
+            RevokedTokenCache.getInstance().addToCache(key, expiryTime + skew);
+        }
+    }
+
+    private static boolean isRevoked(String jwtID) throws IdentityOAuth2Exception {
+        TokenPersistenceProcessor processor = OAuthServerConfiguration.getInstance().getPersistenceProcessor();
+        return RevokedTokenCache.getInstance().isRevoked(getRevocationKey(processor, jwtID));
+    }
+
+    /**
+     * @return true if all the tokens of the client, or of the user for the client, have been revoked since the
+     * token was issued
+     */
+    private static boolean isRevoked(String clientId, String authzUser, Date issueTime) {
+        RevokedTokenCache revokedTokenCache = RevokedTokenCache.getInstance();
+        return isIssuedUntil(issueTime, revokedTokenCache.getRevocationTime(getClientRevocationKey(clientId))) ||
+                isIssuedUntil(issueTime, revokedTokenCache.getRevocationTime(
+                        getUserRevocationKey(clientId, authzUser)));
+    }
+
+    private static int getTenantId(String tenantDomain) throws IdentityOAuth2Exception {
+        try {
+            return OAuthComponentServiceHolder.getRealmService().getTenantManager().getTenantId(tenantDomain);
+        } catch (UserStoreException e) {
+            throw new IdentityOAuth2Exception("Error in obtaining the tenant id of " + tenantDomain, e);
+        }
+    }
+}
@@ -18,14 +18,20 @@
 
 package org.wso2.carbon.identity.oauth2.util;
 
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.oauth.IdentityOAuthAdminException;
 import org.wso2.carbon.identity.oauth.cache.CacheEntry;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
@@ -33,6 +39,7 @@ import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth.dao.OAuthConsumerDAO;
+import org.wso2.carbon.identity.oauth.tokenprocessor.HashingPersistenceProcessor;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.ClientCredentialDO;
@@ -47,6 +54,8 @@ public class OAuth2Util {
 	private static OAuthCache cache = OAuthCache.getInstance();
     private static long timestampSkew = OAuthServerConfiguration.getInstance().getTimeStampSkewInSeconds() * 1000;
     private static ThreadLocal<Integer> clientTenatId = new ThreadLocal<Integer>();
+    private static ConcurrentHashMap<Integer, Key> privateKeys = new ConcurrentHashMap<Integer, Key>();
+    private static ConcurrentHashMap<Integer, Certificate> publicCerts = new ConcurrentHashMap<Integer, Certificate>();
     
     
 
@@ -262,6 +271,32 @@ public class OAuth2Util {
 		return null;
 	}
 
+    /**
+     * @return true if tokens are persisted as digests, in which case the tokens read from the database
+     * can not be handed out to clients
+     * @throws IdentityOAuth2Exception if the persistence processor could not be created
+     */
+    public static boolean isTokenHashingEnabled() throws IdentityOAuth2Exception {
+        return OAuthServerConfiguration.getInstance().getPersistenceProcessor() instanceof HashingPersistenceProcessor;
+    }
+
+    /**
+     * Validated access tokens are cached with the identifier of the token as it is read from the database,
+     * i.e. the digest when tokens are hashed and the token itself otherwise, so that tokens read from the
+     * database when they are revoked can be removed from the cache.
+     *
+     * @param accessTokenIdentifier access token sent by a client
+     * @return key of the token in the validation cache
+     * @throws IdentityOAuth2Exception if the token could not be processed
+     */
+    public static String getAccessTokenCacheKey(String accessTokenIdentifier) throws IdentityOAuth2Exception {
+        if (isTokenHashingEnabled()) {
+            return OAuthServerConfiguration.getInstance().getPersistenceProcessor()
+                    .getProcessedAccessTokenIdentifier(accessTokenIdentifier);
+        }
+        return accessTokenIdentifier;
+    }
+
 	public static boolean checkAccessTokenPartitioningEnabled() {
 		return OAuthServerConfiguration.getInstance().isAccessTokenPartitioningEnabled();
 	}
@@ -387,6 +422,73 @@ public class OAuth2Util {
 		}
 		return -1;
 	}
+
+    /**
+     * Returns the private key of a tenant, which tokens issued for the tenant are signed with. Keys are
+     * cached after they are first read from the key store.
+     *
+     * @param tenantDomain tenant domain
+     * @param tenantId     tenant id
+     * @return private key of the tenant
+     * @throws IdentityOAuth2Exception
+     */
+    public static Key getPrivateKey(String tenantDomain, int tenantId) throws IdentityOAuth2Exception {
+        Key privateKey = privateKeys.get(tenantId);
+        if (privateKey != null) {
+            return privateKey;
+        }
+        try {
+            // get tenant's key store manager
+            KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
+            if (!MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
+                // derive key store name
+                String jksName = tenantDomain.trim().replace(".", "-") + ".jks";
+                privateKey = tenantKSM.getPrivateKey(jksName, tenantDomain);
+            } else {
+                privateKey = tenantKSM.getDefaultPrivateKey();
+            }
+        } catch (Exception e) {
+            throw new IdentityOAuth2Exception("Error while obtaining the private key of tenant " + tenantDomain, e);
+        }
+        if (privateKey != null) {
+            privateKeys.put(tenantId, privateKey);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Returns the public certificate of a tenant, which tokens issued for the tenant are verified with.
+     * Certificates are cached after they are first read from the key store.
+     *
+     * @param tenantDomain tenant domain
+     * @param tenantId     tenant id
+     * @return public certificate of the tenant
+     * @throws IdentityOAuth2Exception
+     */
+    public static Certificate getCertificate(String tenantDomain, int tenantId) throws IdentityOAuth2Exception {
+        Certificate publicCert = publicCerts.get(tenantId);
+        if (publicCert != null) {
+            return publicCert;
+        }
+        try {
+            // get tenant's key store manager
+            KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
+            if (!MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
+                // derive key store name
+                String jksName = tenantDomain.trim().replace(".", "-") + ".jks";
+                KeyStore keyStore = tenantKSM.getKeyStore(jksName);
+                publicCert = keyStore.getCertificate(tenantDomain);
+            } else {
+                publicCert = tenantKSM.getDefaultPrimaryCertificate();
+            }
+        } catch (Exception e) {
+            throw new IdentityOAuth2Exception("Error while obtaining the certificate of tenant " + tenantDomain, e);
+        }
+        if (publicCert != null) {
+            publicCerts.put(tenantId, publicCert);
+        }
+        return publicCert;
+    }
     
 
 }
@@ -0,0 +1,97 @@
+/*
+ *Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *WSO2 Inc. licenses this file to you under the Apache License,
+ *Version 2.0 (the "License"); you may not use this file except
+ *in compliance with the License.
+ *You may obtain a copy of the License at
+ *
+ *http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an
+ *"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *KIND, either express or implied.  See the License for the
+ *specific language governing permissions and limitations
+ *under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.util;
+
+import org.apache.amber.oauth2.as.issuer.ValueGenerator;
+import org.apache.amber.oauth2.common.exception.OAuthSystemException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates the values of access tokens, refresh tokens and authorization codes from 128 random bits,
+ * encoded as 32 hexadecimal characters, the same length and alphabet as the values of the MD5Generator.
+ * Each thread draws from its own SHA1PRNG instance, so that concurrent token requests do not contend on a
+ * shared random source, and no digest is computed over the random bytes. The default SecureRandom is not
+ * used for this, as the NativePRNG instances of the JDK all read from the same locked source.
+ */
+public class SecureTokenValueGenerator implements ValueGenerator {
+
+    private static final Log log = LogFactory.getLog(SecureTokenValueGenerator.class);
+
+    private static final String RANDOM_ALGORITHM = "SHA1PRNG";
+
+    private static final int VALUE_LENGTH_IN_BYTES = 16;
+
+    private static final int SEED_LENGTH_IN_BYTES = 32;
+
+    // only used to seed the random source of each thread, once
+    private static final SecureRandom seeder = new SecureRandom();
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return newRandom();
+        }
+    };
+
+    public String generateValue() throws OAuthSystemException {
+        return generateRandomValue();
+    }
+
+    /**
+     * The value does not depend on the parameter, which is only used by digest based generators
+     */
+    public String generateValue(String param) throws OAuthSystemException {
+        return generateRandomValue();
+    }
+
+    /**
+     * @return 128 random bits encoded as 32 hexadecimal characters
+     */
+    public static String generateRandomValue() {
+        byte[] bytes = new byte[VALUE_LENGTH_IN_BYTES];
+        random.get().nextBytes(bytes);
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    private static SecureRandom newRandom() {
+        SecureRandom threadRandom;
+        try {
+            threadRandom = SecureRandom.getInstance(RANDOM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            log.warn(RANDOM_ALGORITHM + " is not available, using the default SecureRandom for token values", e);
+            return new SecureRandom();
+        }
+        // seeding before the first use replaces the self seeding of the instance
+        byte[] seed = new byte[SEED_LENGTH_IN_BYTES];
+        seeder.nextBytes(seed);
+        threadRandom.setSeed(seed);
+        return threadRandom;
+    }
+}
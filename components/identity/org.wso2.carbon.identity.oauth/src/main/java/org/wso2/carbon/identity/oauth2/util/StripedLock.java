@@ -0,0 +1,71 @@
+/*
+ *Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *WSO2 Inc. licenses this file to you under the Apache License,
+ *Version 2.0 (the "License"); you may not use this file except
+ *in compliance with the License.
+ *You may obtain a copy of the License at
+ *
+ *http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing,
+ *software distributed under the License is distributed on an
+ *"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *KIND, either express or implied.  See the License for the
+ *specific language governing permissions and limitations
+ *under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared among an unbounded set of keys. A key always maps to the same lock, so
+ * callers using the same key are serialized, while callers using different keys only contend when their
+ * keys fall into the same stripe. Unlike synchronizing on interned strings, this does not grow the JVM
+ * string table and does not allocate a lock per key.
+ */
+public class StripedLock {
+
+    private final Lock[] locks;
+
+    private final int mask;
+
+    /**
+     * @param stripes minimum number of locks. Rounded up to the next power of two.
+     */
+    public StripedLock(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the lock for the key made of the given parts. The parts are hashed individually, so neither
+     * the composite key nor an array of the parts needs to be built.
+     *
+     * @param first  first part of the key, may be null
+     * @param second second part of the key, may be null
+     * @param third  third part of the key, may be null
+     * @return lock guarding the key
+     */
+    public Lock getLock(String first, String second, String third) {
+        int hash = 31 * 31 * 31 + 31 * 31 * hashCode(first) + 31 * hashCode(second) + hashCode(third);
+        // spread the higher bits, the way HashMap does, as only the lower bits select the stripe
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return locks[hash & mask];
+    }
+
+    private static int hashCode(String keyPart) {
+        return keyPart == null ? 0 : keyPart.hashCode();
+    }
+}
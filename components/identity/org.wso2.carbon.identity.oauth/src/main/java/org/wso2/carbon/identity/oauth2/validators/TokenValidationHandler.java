@@ -32,9 +32,15 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2ClientApplicationDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationResponseDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Handles the token validation by invoking the proper validation handler by looking at the token
@@ -139,6 +145,78 @@ public class TokenValidationHandler {
     public OAuth2ClientApplicationDTO findOAuthConsumerIfTokenIsValid(OAuth2TokenValidationRequestDTO requestDTO)
             throws IdentityOAuth2Exception {
 
+        return findOAuthConsumerIfTokenIsValid(requestDTO, null, null);
+    }
+
+    /**
+     * Validates a set of access tokens. Tokens are looked up in the cache first and all the cache misses
+     * are then loaded from the database at once, instead of one query per token.
+     *
+     * @param requestDTOs validation requests
+     * @return validation responses, in the order of the requests
+     * @throws IdentityOAuth2Exception
+     */
+    public OAuth2TokenValidationResponseDTO[] validate(OAuth2TokenValidationRequestDTO[] requestDTOs)
+            throws IdentityOAuth2Exception {
+
+        Map<String, AccessTokenDO> accessTokenDOs = new HashMap<String, AccessTokenDO>();
+        Set<String> cachedTokens = new HashSet<String>();
+        Set<String> tokensToLoad = new LinkedHashSet<String>();
+
+        for (OAuth2TokenValidationRequestDTO requestDTO : requestDTOs) {
+            if (requestDTO == null || requestDTO.getAccessToken() == null ||
+                    requestDTO.getAccessToken().getIdentifier() == null) {
+                continue;
+            }
+            String accessTokenIdentifier = requestDTO.getAccessToken().getIdentifier();
+            if (accessTokenDOs.containsKey(accessTokenIdentifier) || tokensToLoad.contains(accessTokenIdentifier)
+                    || JWTAccessTokenUtil.isJWT(accessTokenIdentifier)) {
+                continue;
+            }
+            if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
+                CacheEntry result = OAuthCache.getInstance().getValueFromCache(
+                        new OAuthCacheKey(OAuth2Util.getAccessTokenCacheKey(accessTokenIdentifier)));
+                if (result instanceof AccessTokenDO) {
+                    accessTokenDOs.put(accessTokenIdentifier, (AccessTokenDO) result);
+                    cachedTokens.add(accessTokenIdentifier);
+                    continue;
+                }
+            }
+            tokensToLoad.add(accessTokenIdentifier);
+        }
+
+        if (!tokensToLoad.isEmpty()) {
+            accessTokenDOs.putAll(tokenMgtDAO.retrieveAccessTokens(tokensToLoad));
+        }
+
+        OAuth2TokenValidationResponseDTO[] responseDTOs = new OAuth2TokenValidationResponseDTO[requestDTOs.length];
+        for (int i = 0; i < requestDTOs.length; i++) {
+            if (requestDTOs[i] == null) {
+                responseDTOs[i] = new OAuth2TokenValidationResponseDTO();
+                responseDTOs[i].setValid(false);
+                responseDTOs[i].setErrorMsg("Validation request is empty");
+                continue;
+            }
+            responseDTOs[i] = findOAuthConsumerIfTokenIsValid(requestDTOs[i], accessTokenDOs, cachedTokens)
+                    .getAccessTokenValidationResponse();
+            if (requestDTOs[i].getAccessToken() != null) {
+                // the token is in the cache now, if it was valid
+                cachedTokens.add(requestDTOs[i].getAccessToken().getIdentifier());
+            }
+        }
+        return responseDTOs;
+    }
+
+    /**
+     * @param requestDTO validation request
+     * @param prefetchedTokens access tokens already loaded for a bulk validation, null otherwise
+     * @param cachedTokens identifiers of the prefetched tokens which were served from the cache
+     */
+    private OAuth2ClientApplicationDTO findOAuthConsumerIfTokenIsValid(OAuth2TokenValidationRequestDTO requestDTO,
+                                                                       Map<String, AccessTokenDO> prefetchedTokens,
+                                                                       Set<String> cachedTokens)
+            throws IdentityOAuth2Exception {
+
     	OAuth2ClientApplicationDTO clientApp = new OAuth2ClientApplicationDTO();
         OAuth2TokenValidationResponseDTO responseDTO = new OAuth2TokenValidationResponseDTO();
         OAuth2TokenValidationMessageContext messageContext =
@@ -179,10 +257,31 @@ public class TokenValidationHandler {
         AccessTokenDO accessTokenDO = null;
 
         boolean cacheHit = false;
-        // Check the cache, if caching is enabled.
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
+        boolean selfContained = false;
+        if (JWTAccessTokenUtil.isJWT(accessTokenIdentifier)) {
+            // Self contained token, verified with the certificate of the tenant instead of being looked up.
+            accessTokenDO = JWTAccessTokenUtil.validate(accessTokenIdentifier);
+            selfContained = true;
+            if (accessTokenDO == null) {
+                responseDTO.setValid(false);
+                responseDTO.setErrorMsg("Invalid input. Access token validation failed");
+                clientApp.setAccessTokenValidationResponse(responseDTO);
+                return clientApp;
+            }
+        } else if (prefetchedTokens != null) {
+            // Bulk validation, the cache and the database were already looked up.
+            accessTokenDO = prefetchedTokens.get(accessTokenIdentifier);
+            cacheHit = cachedTokens.contains(accessTokenIdentifier);
+            if (accessTokenDO == null) {
+                responseDTO.setValid(false);
+                responseDTO.setErrorMsg("Invalid input. Access token validation failed");
+                clientApp.setAccessTokenValidationResponse(responseDTO);
+                return clientApp;
+            }
+        } else if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
+            // Check the cache, if caching is enabled.
             OAuthCache oauthCache = OAuthCache.getInstance();
-            CacheKey cacheKey = new OAuthCacheKey(requestDTO.getAccessToken().getIdentifier());
+            CacheKey cacheKey = new OAuthCacheKey(OAuth2Util.getAccessTokenCacheKey(accessTokenIdentifier));
             CacheEntry result = oauthCache.getValueFromCache(cacheKey);
             // cache hit, do the type check.
             if (result instanceof AccessTokenDO) {
@@ -226,9 +325,9 @@ public class TokenValidationHandler {
         }
 
         // Add the token back to the cache in the case of a cache miss
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled() && !cacheHit) {
+        if (OAuthServerConfiguration.getInstance().isCacheEnabled() && !cacheHit && !selfContained) {
             OAuthCache oauthCache = OAuthCache.getInstance();
-            CacheKey cacheKey = new OAuthCacheKey(accessTokenIdentifier);
+            CacheKey cacheKey = new OAuthCacheKey(OAuth2Util.getAccessTokenCacheKey(accessTokenIdentifier));
             oauthCache.addToCache(cacheKey, accessTokenDO);
             if(log.isDebugEnabled()){
                 log.debug("Access Token Info object was added back to the cache.");
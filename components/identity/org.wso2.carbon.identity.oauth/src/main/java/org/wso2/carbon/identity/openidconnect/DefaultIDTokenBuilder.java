@@ -27,7 +27,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.oltu.openidconnect.as.messages.IDTokenBuilder;
 import org.apache.oltu.openidconnect.as.messages.IDTokenException;
 import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
 import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
@@ -41,18 +40,15 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.util.JWTAccessTokenUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.security.Key;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.cert.Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.text.ParseException;
 import java.util.Calendar;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the IDToken generator for the OpenID Connect Implementation. This
@@ -62,8 +58,6 @@ public class DefaultIDTokenBuilder implements org.wso2.carbon.identity.openidcon
 
     private static Log log = LogFactory.getLog(DefaultIDTokenBuilder.class);
     private static boolean DEBUG = log.isDebugEnabled();
-    private static ConcurrentHashMap<Integer, Key> privateKeys = new ConcurrentHashMap<Integer, Key>();
-    private static ConcurrentHashMap<Integer, Certificate> publicCerts = new ConcurrentHashMap<Integer, Certificate>();
 
     private static final String NONE = "NONE";
     private static final String RS256 = "RS256";
@@ -198,62 +192,14 @@ public class DefaultIDTokenBuilder implements org.wso2.carbon.identity.openidcon
             if (tenantId == 0) {
                 tenantId = MultitenantConstants.SUPER_TENANT_ID;
             }
-            Key privateKey = null;
-
-            if (!(privateKeys.containsKey(tenantId))) {
-                // get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                if (!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
-                    // derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    // obtain private key
-                    privateKey = tenantKSM.getPrivateKey(jksName, tenantDomain);
-
-                } else {
-                    try {
-                        privateKey = tenantKSM.getDefaultPrivateKey();
-                    } catch (Exception e) {
-                        log.error("Error while obtaining private key for super tenant", e);
-                    }
-                }
-                if (privateKey != null) {
-                    privateKeys.put(tenantId, privateKey);
-                }
-            } else {
-                privateKey = privateKeys.get(tenantId);
-            }
-
-            Certificate publicCert = null;
-
-            if (!(publicCerts.containsKey(tenantId))) {
-                // get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                KeyStore keyStore = null;
-                if (!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
-                    // derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    keyStore = tenantKSM.getKeyStore(jksName);
-                    publicCert = keyStore.getCertificate(tenantDomain);
-                } else {
-                    publicCert = tenantKSM.getDefaultPrimaryCertificate();
-                }
-                if (publicCert != null) {
-                    publicCerts.put(tenantId, publicCert);
-                }
-            } else {
-                publicCert = publicCerts.get(tenantId);
-            }
+            // keys are cached by OAuth2Util, as they are also used to sign the access tokens
+            Key privateKey = OAuth2Util.getPrivateKey(tenantDomain, tenantId);
             JWSSigner signer = new RSASSASigner((RSAPrivateKey) privateKey);
             SignedJWT signedJWT = new SignedJWT(new JWSHeader(jwsAlgorithm), PlainJWT.parse(payLoad).getJWTClaimsSet());
             signedJWT.sign(signer);
             return signedJWT.serialize();
-        } catch (KeyStoreException e) {
-            String error = "Error in obtaining tenant's keystore";
-            throw new IdentityOAuth2Exception(error);
+        } catch (IdentityOAuth2Exception e) {
+            throw e;
         } catch (JOSEException e) {
             throw new IdentityOAuth2Exception(e.getMessage());
         } catch (Exception e) {
@@ -305,7 +251,7 @@ public class DefaultIDTokenBuilder implements org.wso2.carbon.identity.openidcon
 
         // Cache miss, load the access token info from the database.
         if (null == accessTokenDO) {
-            accessTokenDO = tokenMgtDAO.retrieveAccessToken(accessToken);
+            accessTokenDO = tokenMgtDAO.retrieveAccessToken(JWTAccessTokenUtil.getTokenIdentifier(accessToken));
         }
 
         // if the access token or client id is not valid
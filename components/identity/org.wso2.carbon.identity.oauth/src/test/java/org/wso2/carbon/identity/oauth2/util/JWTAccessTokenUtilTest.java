@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.oauth2.util;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.identity.oauth.tokenprocessor.HashingPersistenceProcessor;
+import org.wso2.carbon.identity.oauth.tokenprocessor.PlainTextPersistenceProcessor;
+import org.wso2.carbon.identity.oauth.tokenprocessor.TokenPersistenceProcessor;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+public class JWTAccessTokenUtilTest extends TestCase {
+
+    private static final String JWT_ID = SecureTokenValueGenerator.generateRandomValue();
+
+    private Field hashKeyField;
+
+    @Override
+    protected void setUp() throws Exception {
+        // the hashing processor derives its key from the primary key store, which is not available here
+        hashKeyField = HashingPersistenceProcessor.class.getDeclaredField("hashKey");
+        hashKeyField.setAccessible(true);
+        hashKeyField.set(null, new SecretKeySpec("test-key".getBytes("UTF-8"), "HmacSHA256"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        hashKeyField.set(null, null);
+    }
+
+    public void testRevokeThenValidatePlainText() throws Exception {
+
+        TokenPersistenceProcessor processor = new PlainTextPersistenceProcessor();
+        assertFalse("plain text processor taken as one way", JWTAccessTokenUtil.isOneWay(processor));
+        assertRevokedThenRejected(processor);
+    }
+
+    public void testRevokeThenValidateHashing() throws Exception {
+
+        TokenPersistenceProcessor processor = new HashingPersistenceProcessor();
+        assertTrue("hashing processor not taken as one way", JWTAccessTokenUtil.isOneWay(processor));
+        assertRevokedThenRejected(processor);
+    }
+
+    public void testRevokeThenValidateEncryption() throws Exception {
+
+        TokenPersistenceProcessor processor = new RandomizedEncryptionProcessor();
+        assertFalse("persisted identifier is not randomized", processor.getProcessedAccessTokenIdentifier(JWT_ID)
+                .equals(processor.getProcessedAccessTokenIdentifier(JWT_ID)));
+        assertFalse("encryption processor taken as one way", JWTAccessTokenUtil.isOneWay(processor));
+        assertRevokedThenRejected(processor);
+    }
+
+    /**
+     * A token is revoked either with the identifier sent by the client, or with the identifier read from the
+     * database, and the key the JWT is looked up with when it is validated is to be among the revoked keys
+     */
+    private void assertRevokedThenRejected(TokenPersistenceProcessor processor) throws Exception {
+
+        String validationKey = JWTAccessTokenUtil.getRevocationKey(processor, JWT_ID);
+        assertEquals("revocation key of the token is not the same each time", validationKey,
+                JWTAccessTokenUtil.getRevocationKey(processor, JWT_ID));
+
+        assertTrue("token revoked by the client is not rejected", Arrays.asList(
+                JWTAccessTokenUtil.getRevocationKeys(processor, JWT_ID)).contains(validationKey));
+
+        String readIdentifier = processor.getPreprocessedAccessTokenIdentifier(
+                processor.getProcessedAccessTokenIdentifier(JWT_ID));
+        assertTrue("token revoked through the database is not rejected", Arrays.asList(
+                JWTAccessTokenUtil.getRevocationKeys(processor, readIdentifier)).contains(validationKey));
+
+        String otherKey = JWTAccessTokenUtil.getRevocationKey(processor,
+                SecureTokenValueGenerator.generateRandomValue());
+        assertFalse("other token rejected", Arrays.asList(
+                JWTAccessTokenUtil.getRevocationKeys(processor, JWT_ID)).contains(otherKey));
+    }
+
+    public void testNotRevoked() {
+
+        assertFalse("token revoked without a revocation time",
+                JWTAccessTokenUtil.isIssuedUntil(new Date(1000L), -1));
+    }
+
+    public void testIssuedBeforeRevocation() {
+
+        assertTrue("token issued before the revocation not revoked",
+                JWTAccessTokenUtil.isIssuedUntil(new Date(1000L), 5000L));
+    }
+
+    public void testIssuedInRevocationSecond() {
+
+        // the issue time of a JWT is truncated to the second
+        assertTrue("token issued in the second of the revocation not revoked",
+                JWTAccessTokenUtil.isIssuedUntil(new Date(5000L), 5999L));
+    }
+
+    public void testIssuedAfterRevocation() {
+
+        assertFalse("token issued after the revocation revoked",
+                JWTAccessTokenUtil.isIssuedUntil(new Date(6000L), 5999L));
+    }
+
+    public void testRevocationKeys() {
+
+        assertFalse("client and user revocation keys clash",
+                JWTAccessTokenUtil.getClientRevocationKey("key").equals(
+                        JWTAccessTokenUtil.getUserRevocationKey("key", "")));
+        assertEquals("user revocation key depends on the case of the user",
+                JWTAccessTokenUtil.getUserRevocationKey("key", "admin@carbon.super"),
+                JWTAccessTokenUtil.getUserRevocationKey("key", "Admin@Carbon.Super"));
+        assertFalse("user revocation keys of different clients clash",
+                JWTAccessTokenUtil.getUserRevocationKey("key1", "admin").equals(
+                        JWTAccessTokenUtil.getUserRevocationKey("key2", "admin")));
+    }
+
+    /**
+     * Persists identifiers with a random prefix, as the RSA encryption of the
+     * EncryptionDecryptionPersistenceProcessor gives a different value each time
+     */
+    private static class RandomizedEncryptionProcessor extends PlainTextPersistenceProcessor {
+
+        private final Random random = new Random();
+
+        @Override
+        public String getProcessedAccessTokenIdentifier(String accessTokenIdentifier)
+                throws IdentityOAuth2Exception {
+            return random.nextInt(Integer.MAX_VALUE) + ":" + accessTokenIdentifier;
+        }
+
+        @Override
+        public String getPreprocessedAccessTokenIdentifier(String processedAccessTokenIdentifier)
+                throws IdentityOAuth2Exception {
+            return processedAccessTokenIdentifier.substring(processedAccessTokenIdentifier.indexOf(':') + 1);
+        }
+    }
+}
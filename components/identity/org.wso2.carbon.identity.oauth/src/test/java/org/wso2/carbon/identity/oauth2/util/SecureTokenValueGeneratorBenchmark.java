@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.oauth2.util;
+
+import org.apache.amber.oauth2.as.issuer.MD5Generator;
+import org.apache.amber.oauth2.as.issuer.ValueGenerator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of the SecureTokenValueGenerator with the MD5Generator of Amber on 1, 8 and 32
+ * threads. It is not run with the unit tests; run its main method from the test class path.
+ */
+public class SecureTokenValueGeneratorBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 8, 32};
+
+    private static final long WARM_UP_MILLIS = 1000;
+
+    private static final long MEASURE_MILLIS = 3000;
+
+    private static final int BATCH_SIZE = 256;
+
+    private static volatile String sink;
+
+    public static void main(String[] args) throws Exception {
+
+        ValueGenerator secureGenerator = new SecureTokenValueGenerator();
+        ValueGenerator md5Generator = new MD5Generator();
+
+        for (int threads : THREAD_COUNTS) {
+            run(secureGenerator, threads, WARM_UP_MILLIS);
+            run(md5Generator, threads, WARM_UP_MILLIS);
+        }
+        for (int threads : THREAD_COUNTS) {
+            System.out.println("threads=" + threads +
+                    " SecureTokenValueGenerator=" + run(secureGenerator, threads, MEASURE_MILLIS) + "/s" +
+                    " MD5Generator=" + run(md5Generator, threads, MEASURE_MILLIS) + "/s");
+        }
+        System.out.println("processors=" + Runtime.getRuntime().availableProcessors() +
+                " java=" + System.getProperty("java.version"));
+    }
+
+    /**
+     * @return values generated per second by all the threads together
+     */
+    private static long run(final ValueGenerator generator, int threads, final long millis) throws Exception {
+
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    start.await();
+                    long generated = 0;
+                    long stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                    while (System.nanoTime() < stop) {
+                        for (int j = 0; j < BATCH_SIZE; j++) {
+                            sink = generator.generateValue();
+                        }
+                        generated += BATCH_SIZE;
+                    }
+                    count.addAndGet(generated);
+                    return null;
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(millis + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+        return count.get() * 1000 / millis;
+    }
+}
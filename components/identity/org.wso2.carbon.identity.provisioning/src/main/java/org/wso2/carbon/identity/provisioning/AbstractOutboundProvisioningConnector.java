@@ -19,6 +19,7 @@
 package org.wso2.carbon.identity.provisioning;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,33 @@ public abstract class AbstractOutboundProvisioningConnector implements Serializa
     public abstract ProvisionedIdentifier provision(ProvisioningEntity provisioningEntity)
             throws IdentityProvisioningException;
 
+    /**
+     * override only if the connector can provision several entities in a single call, e.g. through a
+     * bulk API. Then the queued provisioning operations are dispatched to
+     * {@link #provision(java.util.List)} in batches.
+     * 
+     * @return
+     */
+    public boolean isBatchProvisioningSupported() {
+        return false;
+    }
+
+    /**
+     * Provisions a batch of entities. The default implementation provisions them one by one.
+     * 
+     * @param provisioningEntities
+     * @return provisioned identifiers, in the order of the given entities
+     * @throws IdentityProvisioningException
+     */
+    public List<ProvisionedIdentifier> provision(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityProvisioningException {
+        List<ProvisionedIdentifier> provisionedIdentifiers = new ArrayList<ProvisionedIdentifier>();
+        for (ProvisioningEntity provisioningEntity : provisioningEntities) {
+            provisionedIdentifiers.add(provision(provisioningEntity));
+        }
+        return provisionedIdentifiers;
+    }
+
     /**
      * override only if needed - if claims are controlled by the identity provider, this will return
      * null. If it is connector specific this must return the corresponding claim dialect.
@@ -0,0 +1,378 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.provisioning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+
+/**
+ * Dispatches non blocking out-bound provisioning operations on a shared, bounded thread pool.
+ *
+ * The operations of each connector, i.e. of each tenant, identity provider and connector type, are
+ * queued in a fixed number of lanes. All the operations on an entity go to the same lane, so that they
+ * reach the connector in the order they were made. A lane is drained by at most one thread at a time,
+ * which dispatches the queued operations in batches to connectors supporting batch provisioning. The
+ * calls made to each connector are limited to the configured rate. When a lane is full, the thread
+ * submitting the operation waits for space, so that bulk operations are slowed down instead of piling
+ * up in memory.
+ */
+public class ProvisioningEngine {
+
+    private static final Log log = LogFactory.getLog(ProvisioningEngine.class);
+
+    private static final int DEFAULT_THREAD_POOL_SIZE = 10;
+
+    private static final int DEFAULT_LANES_PER_CONNECTOR = 2;
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    // batches dispatched by a lane before it yields its thread to the other lanes
+    private static final int MAX_BATCHES_PER_RUN = 10;
+
+    private static ProvisioningEngine instance = new ProvisioningEngine();
+
+    private ThreadPoolExecutor threadPool;
+
+    private int lanesPerConnector;
+
+    private int queueSize;
+
+    private int batchSize;
+
+    private int rateLimit;
+
+    private ConcurrentMap<String, ConnectorQueue> connectorQueues = new ConcurrentHashMap<String, ConnectorQueue>();
+
+    private ProvisioningEngine() {
+        int threadPoolSize = getIntProperty("OutboundProvisioning.ThreadPoolSize",
+                DEFAULT_THREAD_POOL_SIZE);
+        if (threadPoolSize < 1) {
+            log.warn("Invalid OutboundProvisioning.ThreadPoolSize : " + threadPoolSize + ". Using 1 thread.");
+            threadPoolSize = 1;
+        }
+        lanesPerConnector = Math.max(getIntProperty("OutboundProvisioning.LanesPerConnector",
+                DEFAULT_LANES_PER_CONNECTOR), 1);
+        queueSize = Math.max(getIntProperty("OutboundProvisioning.QueueSize", DEFAULT_QUEUE_SIZE), 1);
+        batchSize = Math.max(getIntProperty("OutboundProvisioning.BatchSize", DEFAULT_BATCH_SIZE), 1);
+        rateLimit = getIntProperty("OutboundProvisioning.RateLimit", 0);
+
+        // the queue only holds lanes waiting for a thread, at most one entry per lane
+        threadPool = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ProvisioningEngine-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static ProvisioningEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queues the provisioning operation to be dispatched to its connector.
+     *
+     * @param provisioningThread
+     */
+    public void submit(ProvisioningThread provisioningThread) {
+        String connectorKey = provisioningThread.getTenantDomainName() + ":"
+                + provisioningThread.getIdPName() + ":" + provisioningThread.getConnectorType();
+        ConnectorQueue connectorQueue = connectorQueues.get(connectorKey);
+        if (connectorQueue == null) {
+            connectorQueue = new ConnectorQueue();
+            ConnectorQueue existing = connectorQueues.putIfAbsent(connectorKey, connectorQueue);
+            if (existing != null) {
+                connectorQueue = existing;
+            }
+        }
+        connectorQueue.submit(provisioningThread);
+    }
+
+    /**
+     *
+     * @return keys of the connectors which have been provisioned to, as tenant:idp:connectorType
+     */
+    public Set<String> getConnectorKeys() {
+        return Collections.unmodifiableSet(connectorQueues.keySet());
+    }
+
+    /**
+     *
+     * @return number of operations waiting to be dispatched to any connector
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ConnectorQueue connectorQueue : connectorQueues.values()) {
+            depth += connectorQueue.getQueueDepth();
+        }
+        return depth;
+    }
+
+    public int getQueueDepth(String connectorKey) {
+        ConnectorQueue connectorQueue = connectorQueues.get(connectorKey);
+        return connectorQueue == null ? 0 : connectorQueue.getQueueDepth();
+    }
+
+    public long getProvisionedCount(String connectorKey) {
+        ConnectorQueue connectorQueue = connectorQueues.get(connectorKey);
+        return connectorQueue == null ? 0 : connectorQueue.provisionedCount.get();
+    }
+
+    public long getFailedCount(String connectorKey) {
+        ConnectorQueue connectorQueue = connectorQueues.get(connectorKey);
+        return connectorQueue == null ? 0 : connectorQueue.failedCount.get();
+    }
+
+    /**
+     *
+     * @param connectorKey
+     * @return average time in milliseconds taken by a call to the connector
+     */
+    public long getAverageLatency(String connectorKey) {
+        ConnectorQueue connectorQueue = connectorQueues.get(connectorKey);
+        if (connectorQueue == null || connectorQueue.callCount.get() == 0) {
+            return 0;
+        }
+        return connectorQueue.totalLatency.get() / connectorQueue.callCount.get();
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = IdentityUtil.getProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for " + name + " : " + value, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Lanes, rate limit and metrics of a single connector
+     */
+    private class ConnectorQueue {
+
+        private Lane[] lanes;
+
+        private long callInterval;
+
+        private long nextCallTime;
+
+        private AtomicLong provisionedCount = new AtomicLong();
+
+        private AtomicLong failedCount = new AtomicLong();
+
+        private AtomicLong callCount = new AtomicLong();
+
+        private AtomicLong totalLatency = new AtomicLong();
+
+        private ConnectorQueue() {
+            lanes = new Lane[lanesPerConnector];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new Lane(this);
+            }
+            callInterval = rateLimit > 0 ? TimeUnit.SECONDS.toNanos(1) / rateLimit : 0;
+        }
+
+        private void submit(ProvisioningThread provisioningThread) {
+            String entityName = provisioningThread.getProvisioningEntity().getEntityName();
+            int hash = entityName == null ? 0 : entityName.hashCode();
+            lanes[(hash & Integer.MAX_VALUE) % lanes.length].submit(provisioningThread);
+        }
+
+        private int getQueueDepth() {
+            int depth = 0;
+            for (Lane lane : lanes) {
+                depth += lane.queue.size();
+            }
+            return depth;
+        }
+
+        private void dispatch(List<ProvisioningThread> batch) {
+            AbstractOutboundProvisioningConnector connector = batch.get(0).getConnector();
+            if (batch.size() > 1 && connector.isBatchProvisioningSupported()) {
+                dispatch(batch, true);
+            } else {
+                for (ProvisioningThread provisioningThread : batch) {
+                    dispatch(Collections.singletonList(provisioningThread), false);
+                }
+            }
+        }
+
+        private void dispatch(List<ProvisioningThread> tasks, boolean batch) {
+            acquire();
+            long startTime = System.currentTimeMillis();
+            boolean provisioned = ProvisioningThread.provision(tasks, batch);
+            callCount.incrementAndGet();
+            totalLatency.addAndGet(System.currentTimeMillis() - startTime);
+            if (provisioned) {
+                provisionedCount.addAndGet(tasks.size());
+            } else {
+                failedCount.addAndGet(tasks.size());
+            }
+        }
+
+        /**
+         * Waits until the next call to the connector is allowed by the rate limit. If interrupted the call is
+         * allowed right away, and the interrupt is kept so that the lane stops after the current batch.
+         */
+        private void acquire() {
+            if (callInterval <= 0) {
+                return;
+            }
+            long waitTime;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long callTime = Math.max(now, nextCallTime);
+                nextCallTime = callTime + callInterval;
+                waitTime = callTime - now;
+            }
+            if (waitTime > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue of operations of a connector which are dispatched in order
+     */
+    private class Lane implements Runnable {
+
+        private ConnectorQueue connectorQueue;
+
+        private BlockingQueue<ProvisioningThread> queue = new LinkedBlockingQueue<ProvisioningThread>(queueSize);
+
+        private AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Lane(ConnectorQueue connectorQueue) {
+            this.connectorQueue = connectorQueue;
+        }
+
+        private void submit(ProvisioningThread provisioningThread) {
+            try {
+                if (!queue.offer(provisioningThread)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Provisioning queue of the identity provider "
+                                + provisioningThread.getIdPName() + " is full. Waiting for space.");
+                    }
+                    schedule();
+                    queue.put(provisioningThread);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while queuing the provisioning operation. Provisioning it now.", e);
+                provisioningThread.run();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    threadPool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    log.error("Error while scheduling out-bound provisioning.", e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // the polled batch has been dispatched, the rest of the queue is left to another run
+                        log.warn("Interrupted while dispatching provisioning operations.");
+                        break;
+                    }
+                    List<ProvisioningThread> batch = nextBatch();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    connectorQueue.dispatch(batch);
+                }
+            } catch (RuntimeException e) {
+                log.error("Error while out-bound provisioning.", e);
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Operations at the head of the queue which are for the same connector instance
+         */
+        private List<ProvisioningThread> nextBatch() {
+            List<ProvisioningThread> batch = new ArrayList<ProvisioningThread>();
+            ProvisioningThread first = queue.poll();
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+            if (!first.getConnector().isBatchProvisioningSupported()) {
+                return batch;
+            }
+            while (batch.size() < batchSize) {
+                ProvisioningThread next = queue.peek();
+                if (next == null || next.getConnector() != first.getConnector()) {
+                    break;
+                }
+                batch.add(queue.poll());
+            }
+            return batch;
+        }
+    }
+}
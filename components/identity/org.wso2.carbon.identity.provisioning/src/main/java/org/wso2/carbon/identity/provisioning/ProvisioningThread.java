@@ -1,5 +1,7 @@
 package org.wso2.carbon.identity.provisioning;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
@@ -7,10 +9,15 @@ import org.wso2.carbon.identity.provisioning.dao.CacheBackedProvisioningMgtDAO;
 import org.wso2.carbon.idp.mgt.util.IdPManagementUtil;
 import org.wso2.carbon.user.api.UserStoreException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 public class ProvisioningThread implements Runnable {
 
+    private static final Log log = LogFactory.getLog(ProvisioningThread.class);
+
     private ProvisioningEntity provisioningEntity;
     private String tenantDomainName;
     private AbstractOutboundProvisioningConnector connector;
@@ -32,11 +39,24 @@ public class ProvisioningThread implements Runnable {
 
     @Override
     public void run() {
+        provision(Collections.singletonList(this), false);
+    }
+
+    /**
+     * Provisions the entities of the given tasks, which must be of the same connector, and stores or
+     * deletes the provisioned identifiers.
+     * 
+     * @param tasks
+     * @param batch whether to provision all the entities in a single call to the connector
+     * @return true if the entities are provisioned
+     */
+    static boolean provision(List<ProvisioningThread> tasks, boolean batch) {
 
+        ProvisioningThread firstTask = tasks.get(0);
         String tenantDomainName = null;
 
         if (CarbonContext.getThreadLocalCarbonContext() != null) {
-            tenantDomainName = this.tenantDomainName;
+            tenantDomainName = firstTask.tenantDomainName;
         }
 
         try {
@@ -46,28 +66,34 @@ public class ProvisioningThread implements Runnable {
                     .getThreadLocalCarbonContext();
             carbonContext.setTenantDomain(tenantDomainName);
 
-            ProvisionedIdentifier provisionedIdentifier = null;
             // real provisioning happens now.
-            provisionedIdentifier = connector.provision(provisioningEntity);
-
-            if (provisioningEntity.getOperation() == ProvisioningOperation.DELETE) {
-                deleteProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
-                        tenantDomainName);
-            } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
-
-                if (provisionedIdentifier == null || provisionedIdentifier.getIdentifier() == null) {
-                    provisionedIdentifier = new ProvisionedIdentifier();
-                    provisionedIdentifier.setIdentifier(UUID.randomUUID().toString());
+            if (batch) {
+                List<ProvisioningEntity> provisioningEntities = new ArrayList<ProvisioningEntity>();
+                for (ProvisioningThread task : tasks) {
+                    provisioningEntities.add(task.provisioningEntity);
+                }
+                List<ProvisionedIdentifier> provisionedIdentifiers = firstTask.connector
+                        .provision(provisioningEntities);
+                for (int i = 0; i < tasks.size(); i++) {
+                    ProvisionedIdentifier provisionedIdentifier = null;
+                    if (provisionedIdentifiers != null && i < provisionedIdentifiers.size()) {
+                        provisionedIdentifier = provisionedIdentifiers.get(i);
+                    }
+                    tasks.get(i).updateProvisionedEntityIdentifier(provisionedIdentifier,
+                            tenantDomainName);
+                }
+            } else {
+                for (ProvisioningThread task : tasks) {
+                    ProvisionedIdentifier provisionedIdentifier = task.connector
+                            .provision(task.provisioningEntity);
+                    task.updateProvisionedEntityIdentifier(provisionedIdentifier, tenantDomainName);
                 }
-
-                provisioningEntity.setIdentifier(provisionedIdentifier);
-
-                // store provisioned identifier for future reference.
-                storeProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
-                        tenantDomainName);
             }
+            return true;
         } catch (Exception e) {
-
+            log.error("Error while provisioning " + tasks.size() + " entities to the identity provider "
+                    + firstTask.idPName + " with the connector " + firstTask.connectorType, e);
+            return false;
         } finally {
             PrivilegedCarbonContext.endTenantFlow();
 
@@ -78,6 +104,47 @@ public class ProvisioningThread implements Runnable {
         }
     }
 
+    private void updateProvisionedEntityIdentifier(ProvisionedIdentifier provisionedIdentifier,
+            String tenantDomainName) throws IdentityApplicationManagementException {
+
+        if (provisioningEntity.getOperation() == ProvisioningOperation.DELETE) {
+            deleteProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
+                    tenantDomainName);
+        } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
+
+            if (provisionedIdentifier == null || provisionedIdentifier.getIdentifier() == null) {
+                provisionedIdentifier = new ProvisionedIdentifier();
+                provisionedIdentifier.setIdentifier(UUID.randomUUID().toString());
+            }
+
+            provisioningEntity.setIdentifier(provisionedIdentifier);
+
+            // store provisioned identifier for future reference.
+            storeProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
+                    tenantDomainName);
+        }
+    }
+
+    ProvisioningEntity getProvisioningEntity() {
+        return provisioningEntity;
+    }
+
+    AbstractOutboundProvisioningConnector getConnector() {
+        return connector;
+    }
+
+    String getTenantDomainName() {
+        return tenantDomainName;
+    }
+
+    String getConnectorType() {
+        return connectorType;
+    }
+
+    String getIdPName() {
+        return idPName;
+    }
+
     /**
      *
      * @param idpName
@@ -50,7 +50,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * This is to perform SCIM related operation on User Operations.
@@ -62,7 +61,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
     private static Log log = LogFactory.getLog(SCIMUserOperationListener.class);
 
     //to make provisioning to other providers asynchronously happen.
-    private ExecutorService provisioningThreadPool = Executors.newCachedThreadPool();
+    private ExecutorService provisioningThreadPool = SCIMCommonUtils.getProvisioningThreadPool();
     private String provisioningHandlerImplClass= SCIMProvisioningConfigManager.getProvisioningHandlers()[0];
 
     public int getExecutionOrderId() {
@@ -36,5 +36,9 @@ public class SCIMCommonConstants {
     //cache id
     public static final String SCIM_CACHE = "SCIM_CACHE";
 
+    //threads shared by the provisioning of all SCIM operations, and the operations they can queue
+    public static final int PROVISIONING_THREAD_POOL_SIZE = 10;
+    public static final int PROVISIONING_QUEUE_SIZE = 1000;
+
 }
 
@@ -20,10 +20,17 @@ package org.wso2.carbon.identity.scim.common.utils;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.base.ServerConfiguration;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.scim.common.config.SCIMProviderDTO;
 import org.wso2.carbon.user.core.UserCoreConstants;
 
@@ -37,6 +44,11 @@ public class SCIMCommonUtils {
     private static String scimGroupLocation;
     private static String scimUserLocation;
 
+    //shared by all the provisioning handlers and agents, so that bulk operations do not start a thread
+    //per provisioned object. When the queue is full, the operation runs in the calling thread, which
+    //slows bulk operations down instead of piling them up in memory.
+    private static ExecutorService provisioningThreadPool;
+
     //this is temporary - until persisted in DB
     public static Map<String, List<SCIMProviderDTO>> providers =
             new HashMap<String, List<SCIMProviderDTO>>();
@@ -55,6 +67,40 @@ public class SCIMCommonUtils {
         }
     }
 
+    public static synchronized ExecutorService getProvisioningThreadPool() {
+        if (provisioningThreadPool == null) {
+            int threadPoolSize = Math.max(getIntProperty("SCIMProvisioning.ThreadPoolSize",
+                    SCIMCommonConstants.PROVISIONING_THREAD_POOL_SIZE), 1);
+            int queueSize = Math.max(getIntProperty("SCIMProvisioning.QueueSize",
+                    SCIMCommonConstants.PROVISIONING_QUEUE_SIZE), 1);
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 60,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SCIMProvisioning-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            threadPool.allowCoreThreadTimeOut(true);
+            provisioningThreadPool = threadPool;
+        }
+        return provisioningThreadPool;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = IdentityUtil.getProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // the default is used
+            }
+        }
+        return defaultValue;
+    }
+
     public static String getSCIMUserURL(String id) {
         return scimUserLocation + "/" + id;
     }
@@ -18,8 +18,8 @@
 package org.wso2.carbon.identity.scim.provider.impl;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -61,8 +61,22 @@ public class SCIMUserManager implements UserManager {
 
     private static Log log = LogFactory.getLog(SCIMUserManager.class);
 
+    private static final String SORT_ORDER_DESCENDING = "descending";
+
+    private static final String USER_NAME_ATTRIBUTE = "userName";
+
+    private static final String DISPLAY_NAME_ATTRIBUTE = "displayName";
+
+    // time for which the ordered names are reused by the following pages of a listing
+    private static final long SORTED_NAMES_TIMEOUT = 30 * 1000;
+
+    // ordered user names and group names by tenant, so that each page does not read and sort all the names
+    private static final Map<Integer, SortedNames> sortedUserNames = new ConcurrentHashMap<Integer, SortedNames>();
+
+    private static final Map<Integer, SortedNames> sortedRoleNames = new ConcurrentHashMap<Integer, SortedNames>();
+
     //to make provisioning to other providers asynchronously happen.
-    private ExecutorService provisioningThreadPool = Executors.newCachedThreadPool();
+    private ExecutorService provisioningThreadPool = SCIMCommonUtils.getProvisioningThreadPool();
 
     public SCIMUserManager(UserStoreManager carbonUserStoreManager, String userName,
                            ClaimManager claimManager) {
@@ -150,6 +164,7 @@ public class SCIMUserManager implements UserManager {
                     claimsMap.remove(SCIMConstants.USER_NAME_URI);
                 }
                 carbonUM.addUser(user.getUserName(), user.getPassword(), null, claimsMap, null);
+                clearSortedNames(sortedUserNames);
                 log.info("User: " + user.getUserName() + " is created through SCIM.");
 
             } catch (UserStoreException e) {
@@ -197,25 +212,7 @@ public class SCIMUserManager implements UserManager {
     }
 
     public List<User> listUsers() throws CharonException {
-        List<User> users = new ArrayList<User>();
-        try {
-            String[] userNames = carbonUM.getUserList(SCIMConstants.ID_URI, "*", null);
-            if (userNames != null && userNames.length != 0) {
-                for (String userName : userNames) {
-                    if (userName.contains(UserCoreConstants.NAME_COMBINER)) {
-                        userName = userName.split("\\" + UserCoreConstants.NAME_COMBINER)[0];
-                    }
-                    User scimUser = this.getSCIMUser(userName);
-                    Map<String, Attribute> attrMap = scimUser.getAttributeList();
-                    if (attrMap != null && !attrMap.isEmpty()) {
-                        users.add(scimUser);
-                    }
-                }
-            }
-        } catch (org.wso2.carbon.user.core.UserStoreException e) {
-            throw new CharonException("Error while retrieving users from user store..", e);
-        }
-        return users;
+        return getSCIMUsers(getSCIMUserNames());
     }
 
     public List<User> listUsersByAttribute(Attribute attribute) {
@@ -276,12 +273,35 @@ public class SCIMUserManager implements UserManager {
         return filteredUsers;
     }
 
-    public List<User> listUsersBySort(String s, String s1) {
-        return null;
+    /**
+     * Lists the users sorted by user name. The user store only provides the user names, so sorting by any
+     * other attribute would require all the users to be loaded, hence it is not supported.
+     */
+    public List<User> listUsersBySort(String sortBy, String sortOrder) throws CharonException {
+        if (!isSortByName(sortBy, USER_NAME_ATTRIBUTE)) {
+            throw new CharonException("Users can only be sorted by user name.");
+        }
+        List<String> userNames = getSCIMUserNames();
+        sort(userNames, sortOrder);
+        return getSCIMUsers(userNames);
     }
 
-    public List<User> listUsersWithPagination(int i, int i1) {
-        return null;
+    /**
+     * Lists a page of the users ordered by user name. The attributes are read only for the users of the
+     * page. The ordered user names are read once and reused by the following pages for a short time, so
+     * users added or removed outside SCIM in the meantime may not show up in those pages.
+     *
+     * @param startIndex 1-based index of the first user of the page
+     * @param count      maximum number of users in the page
+     */
+    public List<User> listUsersWithPagination(int startIndex, int count) throws CharonException {
+        SortedNames userNames = getSortedNames(sortedUserNames);
+        if (userNames == null) {
+            List<String> names = getSCIMUserNames();
+            sort(names, null);
+            userNames = putSortedNames(sortedUserNames, names);
+        }
+        return getSCIMUsers(getPage(userNames.names, startIndex, count));
     }
 
     public User updateUser(User user) throws CharonException {
@@ -390,6 +410,7 @@ public class SCIMUserManager implements UserManager {
                     //we assume (since id is unique per user) only one user exists for a given id
                     userName = userNames[0];
                     carbonUM.deleteUser(userName);
+                    clearSortedNames(sortedUserNames);
                     log.info("User: " + userName + " is deleted through SCIM.");
                 }
 
@@ -492,12 +513,14 @@ public class SCIMUserManager implements UserManager {
 						scimGroupHandler.createSCIMAttributes(group);
 					carbonUM.addRole(group.getDisplayName(),
 					                 members.toArray(new String[members.size()]), null, false);
+					clearSortedNames(sortedRoleNames);
 					log.info("Group: " + group.getDisplayName() + " is created through SCIM.");
                 } else {
                     //add other scim attributes in the identity DB since user store doesn't support some attributes.
                     SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
                     scimGroupHandler.createSCIMAttributes(group);
                     carbonUM.addRole(group.getDisplayName(), null, null, false);
+                    clearSortedNames(sortedRoleNames);
                     log.info("Group: " + group.getDisplayName() + " is created through SCIM.");
                 }
             } catch (UserStoreException e) {
@@ -537,22 +560,7 @@ public class SCIMUserManager implements UserManager {
     }
 
     public List<Group> listGroups() throws CharonException {
-        List<Group> groupList = new ArrayList<Group>();
-        try {
-            SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-            Set<String> roleNames = groupHandler.listSCIMRoles();
-            for (String roleName : roleNames) {
-                Group group = this.getGroupWithName(roleName);
-                groupList.add(group);
-            }
-        } catch (org.wso2.carbon.user.core.UserStoreException e) {
-            String errMsg = "Error in obtaining role names from user store." ;
-            errMsg += e.getMessage();
-            throw new CharonException(errMsg, e);
-        } catch (IdentitySCIMException e) {
-            throw new CharonException("Error in retrieving SCIM Group information from database.", e);
-        }
-        return groupList;
+        return getGroups(getSCIMRoleNames());
     }
 
     public List<Group> listGroupsByAttribute(Attribute attribute) throws CharonException {
@@ -606,12 +614,29 @@ public class SCIMUserManager implements UserManager {
         return filteredGroups;
     }
 
-    public List<Group> listGroupsBySort(String s, String s1) throws CharonException {
-        return null;
+    public List<Group> listGroupsBySort(String sortBy, String sortOrder) throws CharonException {
+        if (!isSortByName(sortBy, DISPLAY_NAME_ATTRIBUTE)) {
+            throw new CharonException("Groups can only be sorted by display name.");
+        }
+        List<String> roleNames = getSCIMRoleNames();
+        sort(roleNames, sortOrder);
+        return getGroups(roleNames);
     }
 
-    public List<Group> listGroupsWithPagination(int i, int i1) {
-        return null;
+    /**
+     * Lists a page of the groups ordered by display name.
+     *
+     * @param startIndex 1-based index of the first group of the page
+     * @param count      maximum number of groups in the page
+     */
+    public List<Group> listGroupsWithPagination(int startIndex, int count) throws CharonException {
+        SortedNames roleNames = getSortedNames(sortedRoleNames);
+        if (roleNames == null) {
+            List<String> names = getSCIMRoleNames();
+            sort(names, null);
+            roleNames = putSortedNames(sortedRoleNames, names);
+        }
+        return getGroups(getPage(roleNames.names, startIndex, count));
     }
 
     public Group updateGroup(Group oldGroup, Group newGroup) throws CharonException {
@@ -720,6 +745,7 @@ public class SCIMUserManager implements UserManager {
                 if (!(oldGroup.getDisplayName().equals(newGroup.getDisplayName()))) {
                     //update group name in carbon UM
                     carbonUM.updateRoleName(oldGroup.getDisplayName(), newGroup.getDisplayName());
+                    clearSortedNames(sortedRoleNames);
 
                     updated = true;
                 }
@@ -807,6 +833,7 @@ public class SCIMUserManager implements UserManager {
                 if (groupName != null) {
                     //delete group in carbon UM
                     carbonUM.deleteRole(groupName);
+                    clearSortedNames(sortedRoleNames);
 
                     //we do not update Identity_SCIM DB here since it is updated in SCIMUserOperationListener's methods.
                     log.info("Group: " + groupName + " is deleted through SCIM.");
@@ -825,19 +852,139 @@ public class SCIMUserManager implements UserManager {
         }
     }
 
-    private User getSCIMUser(String userName) throws CharonException {
-        User scimUser = null;
+    /**
+     * Names of the users which have a SCIM id, without the profile suffix
+     */
+    private List<String> getSCIMUserNames() throws CharonException {
+        List<String> userNameList = new ArrayList<String>();
+        try {
+            String[] userNames = carbonUM.getUserList(SCIMConstants.ID_URI, "*", null);
+            if (userNames != null) {
+                for (String userName : userNames) {
+                    if (userName.contains(UserCoreConstants.NAME_COMBINER)) {
+                        userName = userName.split("\\" + UserCoreConstants.NAME_COMBINER)[0];
+                    }
+                    userNameList.add(userName);
+                }
+            }
+        } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            throw new CharonException("Error while retrieving users from user store..", e);
+        }
+        return userNameList;
+    }
+
+    private List<User> getSCIMUsers(List<String> userNames) throws CharonException {
+        List<User> users = new ArrayList<User>();
+        if (userNames.isEmpty()) {
+            return users;
+        }
+        UserListContext context = new UserListContext();
+        for (String userName : userNames) {
+            User scimUser = this.getSCIMUser(userName, context);
+            Map<String, Attribute> attrMap = scimUser.getAttributeList();
+            if (attrMap != null && !attrMap.isEmpty()) {
+                users.add(scimUser);
+            }
+        }
+        return users;
+    }
+
+    private List<String> getSCIMRoleNames() throws CharonException {
         try {
-            //get claims related to SCIM claim dialect
-            ClaimMapping[] claims = carbonClaimManager.getAllClaimMappings(SCIMCommonUtils.SCIM_CLAIM_DIALECT);
+            SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+            return new ArrayList<String>(groupHandler.listSCIMRoles());
+        } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            String errMsg = "Error in obtaining role names from user store." ;
+            errMsg += e.getMessage();
+            throw new CharonException(errMsg, e);
+        } catch (IdentitySCIMException e) {
+            throw new CharonException("Error in retrieving SCIM Group information from database.", e);
+        }
+    }
 
-            List<String> claimURIList = new ArrayList<String>();
-            for (ClaimMapping claim : claims) {
-                claimURIList.add(claim.getClaim().getClaimUri());
+    private List<Group> getGroups(List<String> roleNames) throws CharonException {
+        List<Group> groupList = new ArrayList<Group>();
+        try {
+            for (String roleName : roleNames) {
+                Group group = this.getGroupWithName(roleName);
+                groupList.add(group);
             }
+        } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            String errMsg = "Error in obtaining role names from user store." ;
+            errMsg += e.getMessage();
+            throw new CharonException(errMsg, e);
+        } catch (IdentitySCIMException e) {
+            throw new CharonException("Error in retrieving SCIM Group information from database.", e);
+        }
+        return groupList;
+    }
+
+    // the attribute can be given either by its name or by its URI
+    private static boolean isSortByName(String sortBy, String nameAttribute) {
+        if (sortBy == null) {
+            return false;
+        }
+        String attributeName = sortBy.substring(sortBy.lastIndexOf(':') + 1);
+        return nameAttribute.equalsIgnoreCase(attributeName);
+    }
+
+    private static void sort(List<String> names, String sortOrder) {
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        if (SORT_ORDER_DESCENDING.equalsIgnoreCase(sortOrder)) {
+            Collections.reverse(names);
+        }
+    }
+
+    private SortedNames getSortedNames(Map<Integer, SortedNames> sortedNames) throws CharonException {
+        SortedNames names = sortedNames.get(getTenantId());
+        if (names == null || System.currentTimeMillis() - names.createdTime > SORTED_NAMES_TIMEOUT) {
+            return null;
+        }
+        return names;
+    }
+
+    private SortedNames putSortedNames(Map<Integer, SortedNames> sortedNames, List<String> names)
+            throws CharonException {
+        SortedNames snapshot = new SortedNames(Collections.unmodifiableList(names));
+        sortedNames.put(getTenantId(), snapshot);
+        return snapshot;
+    }
+
+    private void clearSortedNames(Map<Integer, SortedNames> sortedNames) {
+        try {
+            sortedNames.remove(carbonUM.getTenantId());
+        } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            log.error("Error while clearing the ordered names of the tenant", e);
+        }
+    }
+
+    private int getTenantId() throws CharonException {
+        try {
+            return carbonUM.getTenantId();
+        } catch (org.wso2.carbon.user.core.UserStoreException e) {
+            throw new CharonException("Error in obtaining the tenant of the user store.", e);
+        }
+    }
+
+    private static List<String> getPage(List<String> names, int startIndex, int count) {
+        int fromIndex = Math.max(startIndex, 1) - 1;
+        if (fromIndex >= names.size() || count <= 0) {
+            return Collections.emptyList();
+        }
+        int toIndex = (int) Math.min((long) fromIndex + count, names.size());
+        return names.subList(fromIndex, toIndex);
+    }
+
+    private User getSCIMUser(String userName) throws CharonException {
+        return getSCIMUser(userName, new UserListContext());
+    }
+
+    private User getSCIMUser(String userName, UserListContext context) throws CharonException {
+        User scimUser = null;
+        try {
             //obtain user claim values
             Map<String, String> attributes = carbonUM.getUserClaimValues(
-                    userName, claimURIList.toArray(new String[claimURIList.size()]), null);
+                    userName, context.getClaimURIs(), null);
             //skip simple type addresses claim coz it is complex with sub types in the schema
             if (attributes.containsKey(SCIMConstants.ADDRESSES_URI)) {
                 attributes.remove(SCIMConstants.ADDRESSES_URI);
@@ -863,7 +1010,7 @@ public class SCIMUserManager implements UserManager {
                     // skip intenal roles
                     continue;
                 }
-                Group group = getGroupOnlyWithMetaAttributes(role);
+                Group group = context.getGroupOnlyWithMetaAttributes(role);
 				if (group != null) { // can be null for non SCIM groups
 					scimUser.setGroup(null, group.getId(), role);
 				}
@@ -903,12 +1050,14 @@ public class SCIMUserManager implements UserManager {
         group.setDisplayName(groupName);
         String[] userNames = carbonUM.getUserListOfRole(groupName);
 
-        //get the ids of the users and set them in the group with id + display name
+        //get the ids of the users and set them in the group with id + display name. Only the id is
+        //read, as the rest of the user attributes are not part of the group.
         if (userNames != null && userNames.length != 0) {
             for (String userName : userNames) {
-                User user = this.getSCIMUser(userName);
-                if (user != null) {
-                    group.setMember(user.getId(), userName);
+                String userId = carbonUM.getUserClaimValue(userName, SCIMConstants.ID_URI, null);
+                // users without a SCIM id are not SCIM users
+                if (userId != null) {
+                    group.setMember(userId, userName);
                 }
             }
         }
@@ -984,4 +1133,54 @@ public class SCIMUserManager implements UserManager {
             throw new CharonException("Error in initializing provisioning handler", e);
         }
     }
+
+    /**
+     * Ordered names read for a listing, with the time they were read
+     */
+    private static class SortedNames {
+
+        private List<String> names;
+
+        private long createdTime = System.currentTimeMillis();
+
+        private SortedNames(List<String> names) {
+            this.names = names;
+        }
+    }
+
+    /**
+     * State shared while reading a list of users, so that the SCIM claims and the SCIM attributes of the
+     * groups are read once per list instead of once per user.
+     */
+    private class UserListContext {
+
+        private String[] claimURIs;
+
+        private Map<String, Group> groups = new HashMap<String, Group>();
+
+        private String[] getClaimURIs() throws UserStoreException {
+            if (claimURIs == null) {
+                //get claims related to SCIM claim dialect
+                ClaimMapping[] claims = carbonClaimManager.getAllClaimMappings(SCIMCommonUtils.SCIM_CLAIM_DIALECT);
+
+                List<String> claimURIList = new ArrayList<String>();
+                for (ClaimMapping claim : claims) {
+                    claimURIList.add(claim.getClaim().getClaimUri());
+                }
+                claimURIs = claimURIList.toArray(new String[claimURIList.size()]);
+            }
+            return claimURIs;
+        }
+
+        private Group getGroupOnlyWithMetaAttributes(String groupName)
+                throws CharonException, IdentitySCIMException,
+                       org.wso2.carbon.user.core.UserStoreException {
+            if (groups.containsKey(groupName)) {
+                return groups.get(groupName);
+            }
+            Group group = SCIMUserManager.this.getGroupOnlyWithMetaAttributes(groupName);
+            groups.put(groupName, group);
+            return group;
+        }
+    }
 }
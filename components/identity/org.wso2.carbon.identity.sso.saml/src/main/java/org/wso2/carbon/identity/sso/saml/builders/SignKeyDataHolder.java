@@ -30,6 +30,7 @@ import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.sso.saml.SAMLSSOConstants;
+import org.wso2.carbon.identity.sso.saml.util.CredentialCache;
 import org.wso2.carbon.identity.sso.saml.util.SAMLSSOUtil;
 import org.wso2.carbon.security.keystore.KeyStoreAdmin;
 import org.wso2.carbon.utils.AuthenticationObserver;
@@ -57,6 +58,9 @@ public class SignKeyDataHolder implements X509Credential {
 
     private PrivateKey issuerPK = null;
 
+    // signing keys loaded from the key stores, so that they are not read and decrypted for each response
+    private static volatile CredentialCache<SigningKey> signingKeyCache = null;
+
     private void initializeRegistry(int tenantId) {
         BundleContext bundleContext = SAMLSSOUtil.getBundleContext();
         if (bundleContext != null) {
@@ -106,6 +110,16 @@ public class SignKeyDataHolder implements X509Credential {
                 tenantID = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
             }
 
+            String cacheAlias = tenantID != MultitenantConstants.SUPER_TENANT_ID ? tenantDomain :
+                    ServerConfiguration.getInstance().getFirstProperty("Security.KeyStore.KeyAlias");
+            SigningKey signingKey = getSigningKeyCache().get(tenantID, cacheAlias);
+            if (signingKey != null) {
+                issuerPK = signingKey.privateKey;
+                issuerCerts = signingKey.certificates;
+                signatureAlgorithm = signingKey.signatureAlgorithm;
+                return;
+            }
+
             initializeRegistry(tenantID);
             
             if (tenantID != MultitenantConstants.SUPER_TENANT_ID) {
@@ -156,6 +170,9 @@ public class SignKeyDataHolder implements X509Credential {
                 }
             }
 
+            getSigningKeyCache().put(tenantID, cacheAlias,
+                    new SigningKey(issuerPK, issuerCerts, signatureAlgorithm));
+
         } catch (Exception e) {
             throw new IdentityException(e.getMessage(), e);
         }
@@ -220,5 +237,31 @@ public class SignKeyDataHolder implements X509Credential {
         return null;
     }
 
+    private static CredentialCache<SigningKey> getSigningKeyCache() {
+        if (signingKeyCache == null) {
+            synchronized (SignKeyDataHolder.class) {
+                if (signingKeyCache == null) {
+                    signingKeyCache = new CredentialCache<SigningKey>(SAMLSSOUtil.getCredentialCacheTimeout());
+                }
+            }
+        }
+        return signingKeyCache;
+    }
+
+    private static class SigningKey {
+
+        private PrivateKey privateKey;
+
+        private X509Certificate[] certificates;
+
+        private String signatureAlgorithm;
+
+        private SigningKey(PrivateKey privateKey, X509Certificate[] certificates, String signatureAlgorithm) {
+            this.privateKey = privateKey;
+            this.certificates = certificates;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+    }
+
 }
 
@@ -23,7 +23,8 @@ import org.opensaml.xml.security.x509.X509Credential;
 import org.wso2.carbon.identity.base.IdentityException;
 
 /**
- * Interface to Encrypt SAML assertion
+ * Interface to Encrypt SAML assertion. A single instance is created, initialized once and shared by
+ * all requests, so implementations must be thread safe.
  */
 
 public interface SSOEncrypter {
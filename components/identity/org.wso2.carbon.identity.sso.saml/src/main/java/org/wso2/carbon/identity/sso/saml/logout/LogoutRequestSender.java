@@ -20,17 +20,25 @@ package org.wso2.carbon.identity.sso.saml.logout;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
 import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.sso.saml.dto.SingleLogoutRequestDTO;
 import org.wso2.carbon.identity.sso.saml.util.SAMLSSOUtil;
 
@@ -38,49 +46,134 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is used to send logout requests to each and every session participant. It follows a fire and
  * forget approach where the task of sending each and every logout request is submitted to a threadpool
  * as a job. This class implements a singleton, because it is expensive to create thread pool for each
  * and every object.
+ *
+ * All the requests share a pooled HTTP client, so that connections to a session participant are kept alive
+ * and reused. A failed request is not retried in the worker thread, instead it is scheduled to be submitted
+ * again after an exponentially growing interval, so that a slow or unavailable session participant does not
+ * hold up the logout requests of the others. Session participants which keep failing are short circuited for
+ * a while, during which their requests are not sent but rescheduled.
  */
 public class LogoutRequestSender {
 
     private static Log log = LogFactory.getLog(LogoutRequestSender.class);
 
-    private static ExecutorService threadPool = Executors.newFixedThreadPool(2);
+    private static final int DEFAULT_THREAD_POOL_SIZE = 10;
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+    private static final int DEFAULT_CONNECTION_TIMEOUT = 10000;
+
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+
+    private static final long DEFAULT_CIRCUIT_BREAKER_RESET_TIME = 60000;
+
+    // retry interval grows up to this multiple of the configured interval
+    private static final int MAX_BACKOFF_MULTIPLIER = 8;
 
     private static LogoutRequestSender instance = new LogoutRequestSender();
 
+    private ExecutorService threadPool;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private DefaultHttpClient httpClient;
+
+    private int circuitBreakerThreshold;
+
+    private long circuitBreakerResetTime;
+
+    private ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private AtomicLong sentCount = new AtomicLong();
+
+    private AtomicLong failedCount = new AtomicLong();
+
+    private AtomicLong retryCount = new AtomicLong();
+
+    private AtomicLong shortCircuitedCount = new AtomicLong();
+
+    private AtomicLong fanOutCount = new AtomicLong();
+
+    private AtomicLong totalFanOutLatency = new AtomicLong();
+
+    private AtomicLong maxFanOutLatency = new AtomicLong();
+
     /**
      * This class is used to model a single logout request that is being sent to a session participant.
      * It will send the logout req. to the session participant in its 'run' method when this job is
-     * submitted to the thread pool.
+     * submitted to the thread pool. If sending fails, the same task is scheduled to be run again.
      */
     private class LogoutReqSenderTask implements Runnable {
 
         private SingleLogoutRequestDTO logoutReqDTO;
 
-        public LogoutReqSenderTask(SingleLogoutRequestDTO logoutReqDTO) {
+        private FanOut fanOut;
+
+        private int attempt;
+
+        public LogoutReqSenderTask(SingleLogoutRequestDTO logoutReqDTO, FanOut fanOut) {
             this.logoutReqDTO = logoutReqDTO;
+            this.fanOut = fanOut;
         }
 
         public void run() {
-            List<NameValuePair> logoutReqParams = new ArrayList<NameValuePair>();
-            // set the logout request
-            logoutReqParams.add(new BasicNameValuePair("SAMLRequest", logoutReqDTO.getLogoutResponse()));
+            attempt++;
+            boolean completed = true;
+            try {
+                completed = send();
+            } catch (RuntimeException e) {
+                log.error("Runtime exception occurred.", e);
+            } finally {
+                if (completed) {
+                    fanOut.complete();
+                }
+            }
+        }
+
+        /**
+         * @return false if the request is scheduled to be sent again
+         */
+        private boolean send() {
+            String assertionConsumerURL = logoutReqDTO.getAssertionConsumerURL();
+            CircuitBreaker circuitBreaker;
+            try {
+                circuitBreaker = getCircuitBreaker(assertionConsumerURL);
+            } catch (URISyntaxException e) {
+                log.error("Error deriving host from the assertion consumer url " + assertionConsumerURL, e);
+                failedCount.incrementAndGet();
+                return true;
+            }
 
-            if(log.isDebugEnabled()) {
+            if (!circuitBreaker.allowRequest()) {
+                shortCircuitedCount.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("Single logout requests to " + assertionConsumerURL +
+                            " are short circuited after repeated failures");
+                }
+                return !scheduleRetry();
+            }
+
+            if (attempt == 1 && log.isDebugEnabled()) {
                 try {
                     log.debug("SAMLRequest : " + SAMLSSOUtil.decodeForPost(logoutReqDTO.getLogoutResponse()));
                 } catch (IdentityException e) {
@@ -88,100 +181,131 @@ public class LogoutRequestSender {
                 }
             }
 
+            List<NameValuePair> logoutReqParams = new ArrayList<NameValuePair>();
+            // set the logout request
+            logoutReqParams.add(new BasicNameValuePair("SAMLRequest", logoutReqDTO.getLogoutResponse()));
+
+            HttpPost httpPost = new HttpPost(assertionConsumerURL);
+            int statusCode = 0;
             try {
-                int port = derivePortFromAssertionConsumerURL(logoutReqDTO.getAssertionConsumerURL());
-                UrlEncodedFormEntity entity = new UrlEncodedFormEntity(logoutReqParams, "UTF-8");
-                HttpPost httpPost = new HttpPost(logoutReqDTO.getAssertionConsumerURL());
-                httpPost.setEntity(entity);
+                httpPost.setEntity(new UrlEncodedFormEntity(logoutReqParams, "UTF-8"));
                 httpPost.addHeader("Cookie", "JSESSIONID=" + logoutReqDTO.getRpSessionId());
-                TrustManager easyTrustManager = new X509TrustManager() {
-                    public void checkClientTrusted(
-                            java.security.cert.X509Certificate[] x509Certificates,
-                            String s)
-                            throws java.security.cert.CertificateException {
-                    }
+                // send the logout request as a POST
+                HttpResponse response = httpClient.execute(httpPost);
+                statusCode = response.getStatusLine().getStatusCode();
+                // consume the response so that the connection is released back to the pool
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException e) {
+                httpPost.abort();
+                if (log.isDebugEnabled()) {
+                    log.debug("Error sending logout request to : " + assertionConsumerURL, e);
+                }
+            }
 
-                    public void checkServerTrusted(
-                            java.security.cert.X509Certificate[] x509Certificates,
-                            String s)
-                            throws java.security.cert.CertificateException {
-                    }
+            if (SAMLSSOUtil.isHttpSuccessStatusCode(statusCode)) {
+                circuitBreaker.recordSuccess();
+                sentCount.incrementAndGet();
+                log.info("single logout request is sent to : " + assertionConsumerURL +
+                        " is returned with " + HttpStatus.getStatusText(statusCode));
+                return true;
+            }
 
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return null;
-                    }
-                };
-
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(null, new TrustManager[]{easyTrustManager}, null);
-                SSLSocketFactory sf = new SSLSocketFactory(sslContext);
-                sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-                Scheme httpsScheme = new Scheme("https", sf, port);
-
-                HttpClient httpClient = new DefaultHttpClient();
-                httpClient.getConnectionManager().getSchemeRegistry().register(httpsScheme);
-                
-                HttpResponse response = null;
-                boolean isSuccessfullyLogout = false;
-                for (int currentRetryCount = 0; currentRetryCount < SAMLSSOUtil.getSingleLogoutRetryCount(); currentRetryCount++) {
-                    int statusCode = 0;
-                    
-                    //Completely consume the previous response before retrying 
-                    if (response != null) {
-                    	HttpEntity httpEntity = response.getEntity();
-    					if (httpEntity != null && httpEntity.isStreaming()) {
-    						InputStream instream = httpEntity.getContent();
-    						if (instream != null)
-    							instream.close();
-    					}
-                    }
-                    
-                    // send the logout request as a POST
-                    try {
-                        response = httpClient.execute(httpPost);
-                        statusCode = response.getStatusLine().getStatusCode();
-                    } catch (IOException e) {
-                        // ignore this exception since retrying is enabled if response is null.
-                    }
-                    if (response != null && SAMLSSOUtil.isHttpSuccessStatusCode(statusCode)) {
-                        log.info("single logout request is sent to : " + logoutReqDTO.getAssertionConsumerURL() +
-                                 " is returned with " + HttpStatus.getStatusText(response.getStatusLine().getStatusCode()));
-                        isSuccessfullyLogout = true;
-                        break;
-                    } else {
-                        if (statusCode != 0) {
-                            log.warn("Failed single logout response from " +
-                                     logoutReqDTO.getAssertionConsumerURL() + " with status code " +
-                                     HttpStatus.getStatusText(statusCode));
-                        }
-                        try {
-                            synchronized (Thread.currentThread()) {
-                                Thread.currentThread().wait(SAMLSSOUtil.getSingleLogoutRetryInterval());
-                            }
-                            log.info("Sending single log out request again with retry count " +
-                                     (currentRetryCount + 1) + " after waiting for " +
-                                     SAMLSSOUtil.getSingleLogoutRetryInterval() + " milli seconds to " +
-                                     logoutReqDTO.getAssertionConsumerURL());
-                        } catch (InterruptedException e) {
-                            //Todo: handle this in better way.
-                        }
+            circuitBreaker.recordFailure();
+            if (statusCode != 0) {
+                log.warn("Failed single logout response from " + assertionConsumerURL + " with status code " +
+                        HttpStatus.getStatusText(statusCode));
+            }
+            return !scheduleRetry();
+        }
+
+        /**
+         * @return false if there are no retries left
+         */
+        private boolean scheduleRetry() {
+            if (attempt >= SAMLSSOUtil.getSingleLogoutRetryCount()) {
+                failedCount.incrementAndGet();
+                log.error("Single logout to " + logoutReqDTO.getAssertionConsumerURL() + " failed after " +
+                        attempt + " attempts starting with time interval " +
+                        SAMLSSOUtil.getSingleLogoutRetryInterval() + " in milli seconds.");
+                return false;
+            }
+
+            long interval = SAMLSSOUtil.getSingleLogoutRetryInterval() *
+                    Math.min(1L << Math.min(attempt - 1, 30), MAX_BACKOFF_MULTIPLIER);
+            try {
+                retryScheduler.schedule(new Runnable() {
+                    public void run() {
+                        submit(LogoutReqSenderTask.this);
                     }
+                }, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.error("Error scheduling single logout retry to " + logoutReqDTO.getAssertionConsumerURL(), e);
+                failedCount.incrementAndGet();
+                return false;
+            }
+            retryCount.incrementAndGet();
+            log.info("Sending single log out request again with retry count " + attempt + " after waiting for " +
+                    interval + " milli seconds to " + logoutReqDTO.getAssertionConsumerURL());
+            return true;
+        }
+    }
 
+    /**
+     * Logout requests sent for a single logout, to measure the time taken to complete all of them
+     */
+    private class FanOut {
+
+        private long startTime = System.currentTimeMillis();
+
+        private AtomicInteger remaining;
+
+        private FanOut(int size) {
+            remaining = new AtomicInteger(size);
+        }
+
+        private void complete() {
+            if (remaining.decrementAndGet() == 0) {
+                long latency = System.currentTimeMillis() - startTime;
+                fanOutCount.incrementAndGet();
+                totalFanOutLatency.addAndGet(latency);
+                long max = maxFanOutLatency.get();
+                while (latency > max && !maxFanOutLatency.compareAndSet(max, latency)) {
+                    max = maxFanOutLatency.get();
                 }
-                if (!isSuccessfullyLogout) {
-                    log.error("Single logout failed after retrying " + SAMLSSOUtil.getSingleLogoutRetryCount() +
-                              " times with time interval " + SAMLSSOUtil.getSingleLogoutRetryInterval() + " in milli seconds.");
+                if (log.isDebugEnabled()) {
+                    log.debug("Single logout fan out completed in " + latency + " milli seconds");
                 }
+            }
+        }
+    }
 
-            } catch (IOException e) {
-                log.error("Error sending logout requests to : " +
-                          logoutReqDTO.getAssertionConsumerURL(), e);
-            } catch (GeneralSecurityException e) {
-                log.error("Error registering the EasySSLProtocolSocketFactory", e);
-            } catch (RuntimeException e) {
-                log.error("Runtime exception occurred.", e);
-            } catch (URISyntaxException e) {
-                log.error("Error deriving port from the assertion consumer url", e);
+    /**
+     * Tracks consecutive failures of the session participants of a host. Once the threshold is reached,
+     * requests are not allowed until the reset time elapses, after which a single trial request is allowed.
+     */
+    private class CircuitBreaker {
+
+        private AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private AtomicLong openUntil = new AtomicLong();
+
+        private boolean allowRequest() {
+            if (consecutiveFailures.get() < circuitBreakerThreshold) {
+                return true;
+            }
+            long until = openUntil.get();
+            long now = System.currentTimeMillis();
+            // let one request through to find out whether the host has recovered
+            return now >= until && openUntil.compareAndSet(until, now + circuitBreakerResetTime);
+        }
+
+        private void recordSuccess() {
+            consecutiveFailures.set(0);
+        }
+
+        private void recordFailure() {
+            if (consecutiveFailures.incrementAndGet() == circuitBreakerThreshold) {
+                openUntil.set(System.currentTimeMillis() + circuitBreakerResetTime);
             }
         }
     }
@@ -191,6 +315,22 @@ public class LogoutRequestSender {
      */
     private LogoutRequestSender() {
 
+        int threadPoolSize = getIntProperty("SSOService.SingleLogoutThreadPoolSize", DEFAULT_THREAD_POOL_SIZE);
+        int maxConnectionsPerHost = getIntProperty("SSOService.SingleLogoutMaxConnectionsPerHost",
+                DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        int connectionTimeout = getIntProperty("SSOService.SingleLogoutConnectionTimeout",
+                DEFAULT_CONNECTION_TIMEOUT);
+        circuitBreakerThreshold = getIntProperty("SSOService.SingleLogoutCircuitBreakerThreshold",
+                DEFAULT_CIRCUIT_BREAKER_THRESHOLD);
+        circuitBreakerResetTime = getIntProperty("SSOService.SingleLogoutCircuitBreakerResetTime",
+                (int) DEFAULT_CIRCUIT_BREAKER_RESET_TIME);
+        if (circuitBreakerThreshold <= 0) {
+            circuitBreakerThreshold = Integer.MAX_VALUE;
+        }
+
+        threadPool = Executors.newFixedThreadPool(threadPoolSize);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        httpClient = createHttpClient(threadPoolSize, maxConnectionsPerHost, connectionTimeout);
     }
 
     /**
@@ -209,12 +349,13 @@ public class LogoutRequestSender {
      * @param singleLogoutRequestDTOs Array of SingleLogoutRequestDTO representing all the session participants
      */
     public void sendLogoutRequests(org.wso2.carbon.identity.sso.saml.dto.SingleLogoutRequestDTO[] singleLogoutRequestDTOs) {
-        if (singleLogoutRequestDTOs == null) {
+        if (singleLogoutRequestDTOs == null || singleLogoutRequestDTOs.length == 0) {
             return;
         }
+        FanOut fanOut = new FanOut(singleLogoutRequestDTOs.length);
         // For each logoutReq, create a new task and submit it to the thread pool.
         for (SingleLogoutRequestDTO reqDTO : singleLogoutRequestDTOs) {
-            threadPool.submit(new LogoutReqSenderTask(reqDTO));
+            submit(new LogoutReqSenderTask(reqDTO, fanOut));
             if (log.isDebugEnabled()) {
                 log.debug("A logoutReqSenderTask is assigned to the thread pool");
 
@@ -222,30 +363,140 @@ public class LogoutRequestSender {
         }
     }
 
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getShortCircuitedCount() {
+        return shortCircuitedCount.get();
+    }
+
+    public long getFanOutCount() {
+        return fanOutCount.get();
+    }
+
+    /**
+     * @return average time in milli seconds taken to complete all the logout requests of a single logout
+     */
+    public long getAverageFanOutLatency() {
+        long count = fanOutCount.get();
+        return count == 0 ? 0 : totalFanOutLatency.get() / count;
+    }
+
+    /**
+     * @return maximum time in milli seconds taken to complete all the logout requests of a single logout
+     */
+    public long getMaxFanOutLatency() {
+        return maxFanOutLatency.get();
+    }
+
+    private void submit(LogoutReqSenderTask task) {
+        try {
+            threadPool.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.error("Error submitting the logout request to " + task.logoutReqDTO.getAssertionConsumerURL(), e);
+            failedCount.incrementAndGet();
+            task.fanOut.complete();
+        }
+    }
+
+    private CircuitBreaker getCircuitBreaker(String assertionConsumerURL) throws URISyntaxException {
+        URI uri = new URI(assertionConsumerURL);
+        String host = uri.getScheme() + "://" + uri.getHost() + ":" + derivePort(uri);
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker();
+            CircuitBreaker existing = circuitBreakers.putIfAbsent(host, circuitBreaker);
+            if (existing != null) {
+                circuitBreaker = existing;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Creates the HTTP client shared by all the logout requests. Connections are pooled per host. Cookies
+     * are ignored, as a cookie set by a service provider in the response to one user's logout request
+     * would otherwise be sent with the logout requests of other users.
+     */
+    private DefaultHttpClient createHttpClient(int maxConnections, int maxConnectionsPerHost,
+                                               int connectionTimeout) {
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        try {
+            TrustManager easyTrustManager = new X509TrustManager() {
+                public void checkClientTrusted(
+                        java.security.cert.X509Certificate[] x509Certificates,
+                        String s)
+                        throws java.security.cert.CertificateException {
+                }
+
+                public void checkServerTrusted(
+                        java.security.cert.X509Certificate[] x509Certificates,
+                        String s)
+                        throws java.security.cert.CertificateException {
+                }
+
+                public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
+            };
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{easyTrustManager}, null);
+            SSLSocketFactory sf = new SSLSocketFactory(sslContext);
+            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            schemeRegistry.register(new Scheme("https", sf, 443));
+        } catch (GeneralSecurityException e) {
+            log.error("Error registering the EasySSLProtocolSocketFactory", e);
+        }
+
+        ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(schemeRegistry);
+        connectionManager.setMaxTotal(Math.max(maxConnections, maxConnectionsPerHost));
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, connectionTimeout);
+        HttpConnectionParams.setSoTimeout(params, connectionTimeout);
+        params.setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.IGNORE_COOKIES);
+        return new DefaultHttpClient(connectionManager, params);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = IdentityUtil.getProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for " + name + " : " + value, e);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * This method is used to derive the port from the assertion consumer URL.
      *
-     * @param assertionConsumerURL Assertion Consumer URL
+     * @param uri Assertion Consumer URL
      * @return Port, if mentioned in the URL, or else 443 as the default value
-     * @throws MalformedURLException when the ACS is malformed.
      */
-    private int derivePortFromAssertionConsumerURL(String assertionConsumerURL)
-            throws URISyntaxException {
+    private int derivePort(URI uri) {
         int port = 443;    // use 443 as the default port
-        try {
-            URI uri = new URI(assertionConsumerURL);
-            if (uri.getPort() != -1) {    // if the port is mentioned in the URL
-                port = uri.getPort();
-            } else if ("http".equals(uri.getScheme())) {  // if it is using http
-                port = 80;
-            }
-        } catch (URISyntaxException e) {
-            log.error("Error deriving port from the assertion consumer url", e);
-            throw e;
+        if (uri.getPort() != -1) {    // if the port is mentioned in the URL
+            port = uri.getPort();
+        } else if ("http".equals(uri.getScheme())) {  // if it is using http
+            port = 80;
         }
         return port;
     }
 
 
 }
-
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.sso.saml.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node local cache of key material loaded from the tenant key stores, keyed by tenant and alias. Entries
+ * expire after the configured timeout, which bounds how long a change to a key store takes to be picked up.
+ */
+public class CredentialCache<V> {
+
+    private ConcurrentMap<String, CacheEntry<V>> entries = new ConcurrentHashMap<String, CacheEntry<V>>();
+
+    private long timeoutMillis;
+
+    /**
+     * @param timeoutMillis time an entry is kept. Caching is disabled if not positive.
+     */
+    public CredentialCache(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public V get(int tenantId, String alias) {
+        if (timeoutMillis <= 0) {
+            return null;
+        }
+        String key = getKey(tenantId, alias);
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiryTime < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(int tenantId, String alias, V value) {
+        if (timeoutMillis <= 0 || value == null) {
+            return;
+        }
+        entries.put(getKey(tenantId, alias), new CacheEntry<V>(value, System.currentTimeMillis() + timeoutMillis));
+    }
+
+    private static String getKey(int tenantId, String alias) {
+        return tenantId + ":" + alias;
+    }
+
+    private static class CacheEntry<V> {
+
+        private V value;
+
+        private long expiryTime;
+
+        private CacheEntry(V value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -126,9 +126,15 @@ public class SAMLSSOUtil {
     private static final Set<Character> UNRESERVED_CHARACTERS = new HashSet<Character>();
     private static String responseBuilderClassName = null;
 
-    private static SSOEncrypter ssoEncrypter = null;
-    private static SSOSigner ssoSigner = null;
-    private static SAML2HTTPRedirectSignatureValidator samlHTTPRedirectSignatureValidator = null;
+    // extensions are created once and shared, so the implementations must be thread safe
+    private static volatile SSOEncrypter ssoEncrypter = null;
+    private static volatile SSOSigner ssoSigner = null;
+    private static volatile SAML2HTTPRedirectSignatureValidator samlHTTPRedirectSignatureValidator = null;
+    private static final Object extensionLock = new Object();
+
+    // default time in seconds key material loaded from the key stores is cached
+    private static final long DEFAULT_CREDENTIAL_CACHE_TIMEOUT = 300;
+    private static volatile CredentialCache<X509CredentialImpl> x509CredentialCache = null;
     private static ThreadLocal tenantDomainInThreadLocal = new ThreadLocal();
     private static ThreadLocal<Boolean> isSaaSApplication = null;
     
@@ -479,13 +485,7 @@ public class SAMLSSOUtil {
         doBootstrap();
         try {
 
-            synchronized (Runtime.getRuntime().getClass()){
-                ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                        "SSOService.SAMLSSOSigner").trim()).newInstance();
-                ssoSigner.init();
-            }
-
-            return ssoSigner.doSignResponse(response, signatureAlgorithm, cred);
+            return getSSOSigner().doSignResponse(response, signatureAlgorithm, cred);
 
         } catch (ClassNotFoundException e) {
             throw new IdentityException("Class not found: "
@@ -507,13 +507,7 @@ public class SAMLSSOUtil {
         doBootstrap();
         try {
 
-            synchronized (Runtime.getRuntime().getClass()){
-                ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                        "SSOService.SAMLSSOSigner").trim()).newInstance();
-                ssoSigner.init();
-            }
-
-            return ssoSigner.doSetSignature(assertion, signatureAlgorithm,cred);
+            return getSSOSigner().doSetSignature(assertion, signatureAlgorithm,cred);
 //            Signature signature = (Signature) buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
 //            signature.setSigningCredential(cred);
 //            signature.setSignatureAlgorithm(signatureAlgorithm);
@@ -568,12 +562,7 @@ public class SAMLSSOUtil {
         try {
             X509Credential cred = SAMLSSOUtil.getX509CredentialImplForTenant(domainName, alias);
 
-                synchronized (Runtime.getRuntime().getClass()){
-                            ssoEncrypter = (SSOEncrypter)Class.forName(IdentityUtil.getProperty(
-                                    "SSOService.SAMLSSOEncrypter").trim()).newInstance();
-                            ssoEncrypter.init();
-                }
-                return  ssoEncrypter.doEncryptedAssertion(assertion, cred, alias, encryptionAlgorithm);
+                return  getSSOEncrypter().doEncryptedAssertion(assertion, cred, alias, encryptionAlgorithm);
 //
 //            Credential symmetricCredential = SecurityHelper.getSimpleCredential(
 //                    SecurityHelper.generateSymmetricKey(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256));
@@ -682,11 +671,15 @@ public class SAMLSSOUtil {
             }
         }
 
+        X509CredentialImpl credentialImpl = getX509CredentialCache().get(tenantID, alias);
+        if (credentialImpl != null) {
+            return credentialImpl;
+        }
+
         KeyStoreManager keyStoreManager;
         // get an instance of the corresponding Key Store Manager instance
         keyStoreManager = KeyStoreManager.getInstance(tenantID);
 
-        X509CredentialImpl credentialImpl = null;
         KeyStore keyStore;
 
         try {
@@ -706,9 +699,84 @@ public class SAMLSSOUtil {
             log.error(errorMsg, e);
             throw new IdentitySAML2SSOException(errorMsg, e);
         }
+        getX509CredentialCache().put(tenantID, alias, credentialImpl);
         return credentialImpl;
     }
 
+    /**
+     * Returns the time in milliseconds key material loaded from the key stores is cached
+     *
+     * @return credential cache timeout
+     */
+    public static long getCredentialCacheTimeout() {
+        String timeout = IdentityUtil.getProperty("SSOService.CredentialCacheTimeout");
+        if (timeout != null && timeout.trim().length() > 0) {
+            try {
+                return Long.parseLong(timeout.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                log.error("Invalid SSOService.CredentialCacheTimeout : " + timeout, e);
+            }
+        }
+        return DEFAULT_CREDENTIAL_CACHE_TIMEOUT * 1000;
+    }
+
+    private static CredentialCache<X509CredentialImpl> getX509CredentialCache() {
+        if (x509CredentialCache == null) {
+            synchronized (extensionLock) {
+                if (x509CredentialCache == null) {
+                    x509CredentialCache = new CredentialCache<X509CredentialImpl>(getCredentialCacheTimeout());
+                }
+            }
+        }
+        return x509CredentialCache;
+    }
+
+    private static SSOSigner getSSOSigner() throws IdentityException, ClassNotFoundException,
+            InstantiationException, IllegalAccessException {
+        if (ssoSigner == null) {
+            synchronized (extensionLock) {
+                if (ssoSigner == null) {
+                    SSOSigner signer = (SSOSigner) Class.forName(IdentityUtil.getProperty(
+                            "SSOService.SAMLSSOSigner").trim()).newInstance();
+                    signer.init();
+                    ssoSigner = signer;
+                }
+            }
+        }
+        return ssoSigner;
+    }
+
+    private static SSOEncrypter getSSOEncrypter() throws IdentityException, ClassNotFoundException,
+            InstantiationException, IllegalAccessException {
+        if (ssoEncrypter == null) {
+            synchronized (extensionLock) {
+                if (ssoEncrypter == null) {
+                    SSOEncrypter encrypter = (SSOEncrypter) Class.forName(IdentityUtil.getProperty(
+                            "SSOService.SAMLSSOEncrypter").trim()).newInstance();
+                    encrypter.init();
+                    ssoEncrypter = encrypter;
+                }
+            }
+        }
+        return ssoEncrypter;
+    }
+
+    private static SAML2HTTPRedirectSignatureValidator getSAML2HTTPRedirectSignatureValidator()
+            throws IdentityException, ClassNotFoundException, InstantiationException, IllegalAccessException {
+        if (samlHTTPRedirectSignatureValidator == null) {
+            synchronized (extensionLock) {
+                if (samlHTTPRedirectSignatureValidator == null) {
+                    SAML2HTTPRedirectSignatureValidator validator =
+                            (SAML2HTTPRedirectSignatureValidator) Class.forName(IdentityUtil.getProperty(
+                                    "SSOService.SAML2HTTPRedirectSignatureValidator").trim()).newInstance();
+                    validator.init();
+                    samlHTTPRedirectSignatureValidator = validator;
+                }
+            }
+        }
+        return samlHTTPRedirectSignatureValidator;
+    }
+
     /**
      * Validates the request message's signature. Validates the signature of
      * both HTTP POST Binding and HTTP Redirect Binding.
@@ -803,13 +871,7 @@ public class SAMLSSOUtil {
                                                     String alias, String domainName) throws IdentityException{
         try {
 
-                synchronized (Runtime.getRuntime().getClass()){
-                    samlHTTPRedirectSignatureValidator = (SAML2HTTPRedirectSignatureValidator)Class.forName(IdentityUtil.getProperty(
-                            "SSOService.SAML2HTTPRedirectSignatureValidator").trim()).newInstance();
-                    samlHTTPRedirectSignatureValidator.init();
-                }
-
-                return samlHTTPRedirectSignatureValidator.validateSignature(queryString, issuer,
+                return getSAML2HTTPRedirectSignatureValidator().validateSignature(queryString, issuer,
                         alias, domainName);
 
         } catch (SecurityException e) {
@@ -852,13 +914,7 @@ public class SAMLSSOUtil {
             try {
                 X509Credential cred = SAMLSSOUtil.getX509CredentialImplForTenant(domainName, alias);
 
-                synchronized (Runtime.getRuntime().getClass()){
-                    ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                            "SSOService.SAMLSSOSigner").trim()).newInstance();
-                    ssoSigner.init();
-                }
-
-                return ssoSigner.doValidateXMLSignature(request, cred, alias);
+                return getSSOSigner().doValidateXMLSignature(request, cred, alias);
             } catch (IdentitySAML2SSOException ignore) {
                 log.warn("Signature validation failed for the SAML Message : Failed to construct the X509CredentialImpl for the alias " +
                         alias);
@@ -20,6 +20,10 @@ package org.wso2.carbon.identity.sso.saml.validators;
 import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.sso.saml.exception.IdentitySAML2SSOException;
 
+/**
+ * Validates the signature of SAML messages sent with the HTTP Redirect binding. A single instance is
+ * created, initialized once and shared by all requests, so implementations must be thread safe.
+ */
 public interface SAML2HTTPRedirectSignatureValidator {
 
     public void init() throws IdentityException;
@@ -2,15 +2,15 @@ package org.wso2.carbon.identity.user.store.remote;
 
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
 import org.apache.axis2.description.TransportOutDescription;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.user.store.remote.RemoteUserStoreBalancer.RemoteOperation;
 import org.wso2.carbon.um.ws.api.WSUserStoreManager;
 import org.wso2.carbon.user.api.ClaimManager;
 import org.wso2.carbon.user.api.Permission;
@@ -26,20 +26,29 @@ import org.wso2.carbon.user.core.util.UserCoreUtil;
 
 public class CarbonRemoteUserStoreManger implements UserStoreManager {
 
-    private WSUserStoreManager remoteUserStore;
     private RealmConfiguration realmConfig;
     private String domainName;
     private UserStoreManager secondaryUserStoreManager;
-    private Map<String, WSUserStoreManager> remoteServers = new HashMap<String, WSUserStoreManager>();
+    private Map<String, WSUserStoreManager> remoteServers = new LinkedHashMap<String, WSUserStoreManager>();
+    private RemoteUserStoreBalancer balancer;
+    private RemoteUserStoreReadCache readCache;
     private static Log log = LogFactory.getLog(CarbonRemoteUserStoreManger.class);
-    private static final String CONNECTION_REFUSED = "Connection refused";
+
+    private static final String LOAD_BALANCING = "loadBalancing";
+    private static final String HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+    private static final String READ_CACHE_TIMEOUT = "readCacheTimeout";
+    private static final String READ_CACHE_SIZE = "readCacheSize";
+    private static final long DEFAULT_HEALTH_CHECK_INTERVAL = 30000;
+    // read results may be stale for up to the timeout, so caching has to be enabled explicitly
+    private static final long DEFAULT_READ_CACHE_TIMEOUT = 0;
+    private static final int DEFAULT_READ_CACHE_SIZE = 10000;
 
     public CarbonRemoteUserStoreManger() {
 
     }
 
     /**
-     * 
+     *
      * @param realmConfig
      * @param properties
      * @throws Exception
@@ -59,7 +68,8 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         String[] serverUrls = realmConfig.getUserStoreProperty("serverUrls").split(",");
 
         for (int i = 0; i < serverUrls.length; i++) {
-            remoteUserStore = new WSUserStoreManager(
+            serverUrls[i] = serverUrls[i].trim();
+            WSUserStoreManager remoteUserStore = new WSUserStoreManager(
                     realmConfig.getUserStoreProperty("remoteUserName"),
                     realmConfig.getUserStoreProperty("password"), serverUrls[i],
                     configurationContext);
@@ -73,10 +83,17 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
 
         this.realmConfig = realmConfig;
         domainName = realmConfig.getUserStoreProperty(UserStoreConfigConstants.DOMAIN_NAME);
+
+        balancer = new RemoteUserStoreBalancer(remoteServers,
+                realmConfig.getUserStoreProperty(LOAD_BALANCING),
+                getLongProperty(realmConfig, HEALTH_CHECK_INTERVAL, DEFAULT_HEALTH_CHECK_INTERVAL));
+        readCache = new RemoteUserStoreReadCache(
+                getLongProperty(realmConfig, READ_CACHE_TIMEOUT, DEFAULT_READ_CACHE_TIMEOUT) * 1000,
+                (int) getLongProperty(realmConfig, READ_CACHE_SIZE, DEFAULT_READ_CACHE_SIZE));
     }
 
     /**
-	 * 
+	 *
 	 */
     public Properties getDefaultUserStoreProperties() {
         Properties properties = new Properties();
@@ -113,109 +130,79 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         mandatoryProperties = new Property[] { remoteServerUserName, password, serverUrls,
                 disabled, passwordJavaScriptRegEx, usernameJavaScriptRegEx, roleNameJavaScriptRegEx };
         properties.setMandatoryProperties(mandatoryProperties);
+
+        Property loadBalancing = new Property(LOAD_BALANCING, RemoteUserStoreBalancer.ROUND_ROBIN,
+                "Load Balancing#How read operations are spread across the remote servers: "
+                        + RemoteUserStoreBalancer.ROUND_ROBIN + " or "
+                        + RemoteUserStoreBalancer.LEAST_LATENCY, null);
+        Property healthCheckInterval = new Property(HEALTH_CHECK_INTERVAL,
+                String.valueOf(DEFAULT_HEALTH_CHECK_INTERVAL),
+                "Health Check Interval#Interval in milliseconds between checks which put unreachable "
+                        + "remote servers back in rotation. 0 to disable", null);
+        Property readCacheTimeout = new Property(READ_CACHE_TIMEOUT,
+                String.valueOf(DEFAULT_READ_CACHE_TIMEOUT),
+                "Read Cache Timeout#Time in seconds user existence, roles and claims read from the "
+                        + "remote servers are cached. Changes made on the remote servers by others are "
+                        + "not seen until then. 0 to disable", null);
+        Property readCacheSize = new Property(READ_CACHE_SIZE, String.valueOf(DEFAULT_READ_CACHE_SIZE),
+                "Read Cache Size#Maximum number of cached read results", null);
+        properties.setOptionalProperties(new Property[] { loadBalancing, healthCheckInterval,
+                readCacheTimeout, readCacheSize });
         return properties;
     }
 
     /**
-	 * 
+	 *
 	 */
     @Override
-    public boolean isExistingRole(String roleName, boolean isShared)
+    public boolean isExistingRole(final String roleName, final boolean isShared)
             throws org.wso2.carbon.user.api.UserStoreException {
-        boolean rolesExists = false;
-        try {
-            rolesExists = remoteUserStore.isExistingRole(roleName, isShared);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        rolesExists = remoteStore.getValue().isExistingRole(roleName, isShared);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+        String key = RemoteUserStoreReadCache.getKey("isExistingRole", roleName, isShared);
+        Boolean roleExists = (Boolean) readCache.get(key);
+        if (roleExists == null) {
+            roleExists = balancer.execute(new RemoteOperation<Boolean>() {
+                public Boolean execute(WSUserStoreManager remoteUserStore)
+                        throws org.wso2.carbon.user.api.UserStoreException {
+                    return remoteUserStore.isExistingRole(roleName, isShared);
                 }
-            }
+            });
+            readCache.put(key, roleExists);
         }
-        return rolesExists;
+        return roleExists;
     }
 
     @Override
-    public void addRole(String roleName, String[] userList, Permission[] permissions,
-            boolean isSharedRole) throws org.wso2.carbon.user.api.UserStoreException {
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addRole(roleName, userList, permissions);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to update the remote server : " + remoteStore.getKey());
-            }
-        }
-
+    public void addRole(final String roleName, final String[] userList,
+            final Permission[] permissions, boolean isSharedRole)
+            throws org.wso2.carbon.user.api.UserStoreException {
+        addRole(roleName, userList, permissions);
     }
 
     @Override
-    public void addRole(String roleName, String[] userList, Permission[] permissions)
-            throws org.wso2.carbon.user.api.UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-
-            try {
-                remoteStore.getValue().addRole(roleName, userList, permissions);
-            } catch (org.wso2.carbon.user.api.UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void addRole(final String roleName, final String[] userList,
+            final Permission[] permissions) throws org.wso2.carbon.user.api.UserStoreException {
+        try {
+            balancer.executeOnAll(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore)
+                        throws org.wso2.carbon.user.api.UserStoreException {
+                    remoteUserStore.addRole(roleName, userList, permissions);
+                    return null;
                 }
-                log.error("Failed to update the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.clear();
         }
     }
 
     @Override
-    public Map<String, String> getProperties(org.wso2.carbon.user.api.Tenant tenant)
+    public Map<String, String> getProperties(final org.wso2.carbon.user.api.Tenant tenant)
             throws org.wso2.carbon.user.api.UserStoreException {
-        Map<String, String> properties = new HashMap<String, String>();
-        try {
-            properties = remoteUserStore.getProperties(tenant);
-        } catch (org.wso2.carbon.user.api.UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        properties = remoteStore.getValue().getProperties(tenant);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        return balancer.execute(new RemoteOperation<Map<String, String>>() {
+            public Map<String, String> execute(WSUserStoreManager remoteUserStore)
+                    throws org.wso2.carbon.user.api.UserStoreException {
+                return remoteUserStore.getProperties(tenant);
             }
-        }
-        return properties;
+        });
     }
 
     @Override
@@ -239,7 +226,7 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
 
     @Override
     public ClaimManager getClaimManager() throws org.wso2.carbon.user.api.UserStoreException {
-        return remoteUserStore.getClaimManager();
+        return balancer.getRemoteUserStore().getClaimManager();
     }
 
     @Override
@@ -255,102 +242,42 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     }
 
     @Override
-    public String[] listUsers(String filter, int maxItemLimit) throws UserStoreException {
+    public String[] listUsers(final String filter, final int maxItemLimit) throws UserStoreException {
 
-        String[] users = null;
-
-        try {
-            users = remoteUserStore.listUsers(filter, maxItemLimit);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().listUsers(filter, maxItemLimit);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        String[] users = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.listUsers(filter, maxItemLimit);
             }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
-            }
-        } else {
-            users = new String[0];
-        }
-
-        return users;
+        });
+        return addDomain(users);
     }
 
     @Override
-    public boolean isExistingUser(String userName) throws UserStoreException {
-        boolean usersExists = false;
-        try {
-            usersExists = remoteUserStore.isExistingUser(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        usersExists = remoteStore.getValue().isExistingUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+    public boolean isExistingUser(final String userName) throws UserStoreException {
+        String key = RemoteUserStoreReadCache.getUserKey(getCacheUserName(userName), "isExistingUser");
+        Boolean userExists = (Boolean) readCache.get(key);
+        if (userExists == null) {
+            userExists = read(new RemoteOperation<Boolean>() {
+                public Boolean execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    return remoteUserStore.isExistingUser(userName);
                 }
-            }
+            });
+            readCache.put(key, userExists);
         }
-        return usersExists;
+        return userExists;
     }
 
     @Override
-    public boolean isExistingRole(String roleName) throws UserStoreException {
-        boolean roleExists = false;
-        try {
-            roleExists = remoteUserStore.isExistingRole(roleName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roleExists = remoteStore.getValue().isExistingRole(roleName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+    public boolean isExistingRole(final String roleName) throws UserStoreException {
+        String key = RemoteUserStoreReadCache.getKey("isExistingRole", roleName);
+        Boolean roleExists = (Boolean) readCache.get(key);
+        if (roleExists == null) {
+            roleExists = read(new RemoteOperation<Boolean>() {
+                public Boolean execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    return remoteUserStore.isExistingRole(roleName);
                 }
-            }
+            });
+            readCache.put(key, roleExists);
         }
         return roleExists;
     }
@@ -358,370 +285,161 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     @Override
     public String[] getRoleNames() throws UserStoreException {
 
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleNames();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleNames();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
+        String[] roles = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getRoleNames();
             }
-        } else {
-            roles = new String[0];
-        }
-
-        return roles;
+        });
+        return addDomain(roles);
     }
 
     @Override
-    public String[] getRoleNames(boolean noHybridRoles) throws UserStoreException {
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleNames(noHybridRoles);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleNames(noHybridRoles);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
+    public String[] getRoleNames(final boolean noHybridRoles) throws UserStoreException {
+        String[] roles = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getRoleNames(noHybridRoles);
             }
-        } else {
-            roles = new String[0];
-        }
-
-        return roles;
+        });
+        return addDomain(roles);
     }
 
     @Override
-    public String[] getProfileNames(String userName) throws UserStoreException {
+    public String[] getProfileNames(final String userName) throws UserStoreException {
 
-        String[] profileNames = new String[0];
-
-        try {
-            profileNames = remoteUserStore.getProfileNames(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        profileNames = remoteStore.getValue().getRoleListOfUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        String[] profileNames = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getProfileNames(userName);
             }
-        }
-        return profileNames;
+        });
+        return profileNames != null ? profileNames : new String[0];
     }
 
     @Override
-    public String[] getRoleListOfUser(String userName) throws UserStoreException {
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleListOfUser(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleListOfUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+    public String[] getRoleListOfUser(final String userName) throws UserStoreException {
+        String key = RemoteUserStoreReadCache.getUserKey(getCacheUserName(userName),
+                "getRoleListOfUser");
+        String[] roles = (String[]) readCache.get(key);
+        if (roles == null) {
+            roles = read(new RemoteOperation<String[]>() {
+                public String[] execute(WSUserStoreManager remoteUserStore)
+                        throws UserStoreException {
+                    return remoteUserStore.getRoleListOfUser(userName);
                 }
-            }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
-            }
-        } else {
-            roles = new String[0];
+            });
+            readCache.put(key, roles);
         }
-        return roles;
+        // the cached roles are kept without the domain
+        return addDomain(roles);
     }
 
     @Override
-    public String[] getUserListOfRole(String roleName) throws UserStoreException {
-        String[] users = null;
-
-        try {
-            users = remoteUserStore.getUserListOfRole(roleName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().getUserListOfRole(roleName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
+    public String[] getUserListOfRole(final String roleName) throws UserStoreException {
+        String[] users = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getUserListOfRole(roleName);
             }
-        } else {
-            users = new String[0];
-        }
-
-        return users;
+        });
+        return addDomain(users);
     }
 
     @Override
-    public String getUserClaimValue(String userName, String claim, String profileName)
-            throws UserStoreException {
-        String claimValue = null;
-        try {
-            claimValue = remoteUserStore.getUserClaimValue(userName, claim, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claimValue = remoteStore.getValue().getUserClaimValue(userName, claim,
-                                profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+    public String getUserClaimValue(final String userName, final String claim,
+            final String profileName) throws UserStoreException {
+        String key = RemoteUserStoreReadCache.getUserKey(getCacheUserName(userName),
+                "getUserClaimValue", claim, profileName);
+        String claimValue = (String) readCache.get(key);
+        if (claimValue == null) {
+            claimValue = read(new RemoteOperation<String>() {
+                public String execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    return remoteUserStore.getUserClaimValue(userName, claim, profileName);
                 }
-            }
+            });
+            readCache.put(key, claimValue);
         }
         return claimValue;
     }
 
     @Override
-    public Map<String, String> getUserClaimValues(String userName, String[] claims,
-            String profileName) throws UserStoreException {
-        Map<String, String> claimValue = new HashMap<String, String>();
-
-        try {
-            claimValue = remoteUserStore.getUserClaimValues(userName, claims, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claimValue = remoteStore.getValue().getUserClaimValues(userName, claims,
-                                profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+    public Map<String, String> getUserClaimValues(final String userName, final String[] claims,
+            final String profileName) throws UserStoreException {
+        String key = RemoteUserStoreReadCache.getUserKey(getCacheUserName(userName),
+                "getUserClaimValues", claims, profileName);
+        @SuppressWarnings("unchecked")
+        Map<String, String> claimValues = (Map<String, String>) readCache.get(key);
+        if (claimValues == null) {
+            claimValues = read(new RemoteOperation<Map<String, String>>() {
+                public Map<String, String> execute(WSUserStoreManager remoteUserStore)
+                        throws UserStoreException {
+                    return remoteUserStore.getUserClaimValues(userName, claims, profileName);
                 }
+            });
+            if (claimValues == null) {
+                claimValues = new HashMap<String, String>();
             }
+            readCache.put(key, claimValues);
         }
-        return claimValue;
+        return claimValues;
     }
 
     /**
-     * 
+     *
      */
     @Override
-    public Claim[] getUserClaimValues(String userName, String profileName)
+    public Claim[] getUserClaimValues(final String userName, final String profileName)
             throws UserStoreException {
-        Claim[] claim = new Claim[0];
-        try {
-            claim = remoteUserStore.getUserClaimValues(userName, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claim = remoteStore.getValue().getUserClaimValues(userName, profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
+        String key = RemoteUserStoreReadCache.getUserKey(getCacheUserName(userName),
+                "getUserClaimValues", profileName);
+        Claim[] claims = (Claim[]) readCache.get(key);
+        if (claims == null) {
+            claims = read(new RemoteOperation<Claim[]>() {
+                public Claim[] execute(WSUserStoreManager remoteUserStore)
+                        throws UserStoreException {
+                    return remoteUserStore.getUserClaimValues(userName, profileName);
                 }
+            });
+            if (claims == null) {
+                claims = new Claim[0];
             }
+            readCache.put(key, claims);
         }
-        return claim;
+        return claims;
     }
 
     /**
-     * 
+     *
      */
     @Override
     public String[] getAllProfileNames() throws UserStoreException {
-        String[] profileNames = new String[0];
-        try {
-            profileNames = remoteUserStore.getAllProfileNames();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        profileNames = remoteStore.getValue().getAllProfileNames();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        String[] profileNames = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getAllProfileNames();
             }
-        }
-        return profileNames;
+        });
+        return profileNames != null ? profileNames : new String[0];
     }
 
     @Override
     public boolean isReadOnly() throws UserStoreException {
-        boolean readOnly = false;
-        try {
-            readOnly = remoteUserStore.isReadOnly();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+        return read(new RemoteOperation<Boolean>() {
+            public Boolean execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.isReadOnly();
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        readOnly = remoteStore.getValue().isReadOnly();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return readOnly;
+        });
     }
 
     @Override
-    public void addUser(String userName, Object credential, String[] roleList,
-            Map<String, String> claims, String profileName) throws UserStoreException {
+    public void addUser(final String userName, final Object credential, final String[] roleList,
+            final Map<String, String> claims, final String profileName) throws UserStoreException {
 
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addUser(userName, credential, roleList, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.addUser(userName, credential, roleList, claims, profileName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
@@ -729,434 +447,230 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     public void addUser(String userName, Object credential, String[] roleList,
             Map<String, String> claims, String profileName, boolean requirePasswordChange)
             throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addUser(userName, credential, roleList, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
-        }
+        addUser(userName, credential, roleList, claims, profileName);
     }
 
     @Override
-    public void updateCredential(String userName, Object newCredential, Object oldCredential)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateCredential(userName, newCredential, oldCredential);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void updateCredential(final String userName, final Object newCredential,
+            final Object oldCredential) throws UserStoreException {
+        write(new RemoteOperation<Object>() {
+            public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                remoteUserStore.updateCredential(userName, newCredential, oldCredential);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void updateCredentialByAdmin(String userName, Object newCredential)
+    public void updateCredentialByAdmin(final String userName, final Object newCredential)
             throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateCredentialByAdmin(userName, newCredential);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+        write(new RemoteOperation<Object>() {
+            public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                remoteUserStore.updateCredentialByAdmin(userName, newCredential);
+                return null;
             }
-        }
+        });
     }
 
     @Override
     public void deleteUser(String userName) throws UserStoreException {
-        
-        userName = UserCoreUtil.removeDomainFromName(userName);
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUser(userName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+        final String remoteUserName = UserCoreUtil.removeDomainFromName(userName);
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.deleteUser(remoteUserName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(remoteUserName);
         }
     }
 
     @Override
     public void deleteRole(String roleName) throws UserStoreException {
-        
-        roleName = UserCoreUtil.removeDomainFromName(roleName);
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteRole(roleName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+        final String remoteRoleName = UserCoreUtil.removeDomainFromName(roleName);
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.deleteRole(remoteRoleName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            // the role is removed from the role lists of its users
+            readCache.clear();
         }
     }
 
     @Override
-    public void updateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateUserListOfRole(roleName, deletedUsers, newUsers);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void updateUserListOfRole(final String roleName, final String[] deletedUsers,
+            final String[] newUsers) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.updateUserListOfRole(roleName, deletedUsers, newUsers);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.clear();
         }
     }
 
     @Override
-    public void updateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateRoleListOfUser(userName, deletedRoles, newRoles);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void updateRoleListOfUser(final String userName, final String[] deletedRoles,
+            final String[] newRoles) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.updateRoleListOfUser(userName, deletedRoles, newRoles);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
     @Override
-    public void setUserClaimValue(String userName, String claimURI, String claimValue,
-            String profileName) throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().setUserClaimValue(userName, claimURI, claimValue,
-                        profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void setUserClaimValue(final String userName, final String claimURI,
+            final String claimValue, final String profileName) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.setUserClaimValue(userName, claimURI, claimValue, profileName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
     @Override
-    public void setUserClaimValues(String userName, Map<String, String> claims, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().setUserClaimValues(userName, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void setUserClaimValues(final String userName, final Map<String, String> claims,
+            final String profileName) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.setUserClaimValues(userName, claims, profileName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
     @Override
-    public void deleteUserClaimValue(String userName, String claimURI, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUserClaimValue(userName, claimURI, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void deleteUserClaimValue(final String userName, final String claimURI,
+            final String profileName) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.deleteUserClaimValue(userName, claimURI, profileName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
     @Override
-    public void deleteUserClaimValues(String userName, String[] claims, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUserClaimValues(userName, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void deleteUserClaimValues(final String userName, final String[] claims,
+            final String profileName) throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.deleteUserClaimValues(userName, claims, profileName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.invalidateUser(getCacheUserName(userName));
         }
     }
 
     @Override
     public String[] getHybridRoles() throws UserStoreException {
-        String[] roles = new String[0];
-        try {
-            roles = remoteUserStore.getHybridRoles();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getHybridRoles();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        String[] roles = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getHybridRoles();
             }
-        }
-
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
-            }
-        } else {
-            return new String[0];
-        }
-        return roles;
+        });
+        return addDomain(roles);
     }
 
     @Override
     public String[] getAllSecondaryRoles() throws UserStoreException {
-        String[] roles = new String[0];
-
-        try {
-            roles = remoteUserStore.getAllSecondaryRoles();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getAllSecondaryRoles();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
+        String[] roles = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getAllSecondaryRoles();
             }
-        } else {
-            return new String[0];
-        }
-        return roles;
+        });
+        return addDomain(roles);
     }
 
     @Override
-    public Date getPasswordExpirationTime(String username) throws UserStoreException {
-        Date date = null;
-        try {
-            date = remoteUserStore.getPasswordExpirationTime(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        date = remoteStore.getValue().getPasswordExpirationTime(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public Date getPasswordExpirationTime(final String username) throws UserStoreException {
+        return read(new RemoteOperation<Date>() {
+            public Date execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getPasswordExpirationTime(username);
             }
-        }
-        return date;
+        });
     }
 
     @Override
-    public int getUserId(String username) throws UserStoreException {
-        int userId = -1;
-        try {
-            userId = remoteUserStore.getUserId(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        userId = remoteStore.getValue().getUserId(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public int getUserId(final String username) throws UserStoreException {
+        return read(new RemoteOperation<Integer>() {
+            public Integer execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getUserId(username);
             }
-        }
-        return userId;
+        });
     }
 
     @Override
-    public int getTenantId(String username) throws UserStoreException {
-        int tenantId = -1;
-        try {
-            tenantId = remoteUserStore.getTenantId(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+    public int getTenantId(final String username) throws UserStoreException {
+        return read(new RemoteOperation<Integer>() {
+            public Integer execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getTenantId(username);
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        tenantId = remoteStore.getValue().getTenantId(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return tenantId;
+        });
     }
 
     @Override
     public int getTenantId() throws UserStoreException {
-        int tenantId = -1;
-        try {
-            tenantId = remoteUserStore.getTenantId();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        tenantId = remoteStore.getValue().getTenantId();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        return read(new RemoteOperation<Integer>() {
+            public Integer execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getTenantId();
             }
-        }
-        return tenantId;
+        });
     }
 
     @Override
-    public Map<String, String> getProperties(Tenant tenant) throws UserStoreException {
-        Map<String, String> properties = new HashMap<String, String>();
-        try {
-            properties = remoteUserStore.getProperties(tenant);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        properties = remoteStore.getValue().getProperties(tenant);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public Map<String, String> getProperties(final Tenant tenant) throws UserStoreException {
+        return read(new RemoteOperation<Map<String, String>>() {
+            public Map<String, String> execute(WSUserStoreManager remoteUserStore)
+                    throws UserStoreException {
+                return remoteUserStore.getProperties(tenant);
             }
-        }
-        return properties;
+        });
     }
 
     @Override
-    public void updateRoleName(String roleName, String newRoleName) throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateRoleName(roleName, newRoleName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
+    public void updateRoleName(final String roleName, final String newRoleName)
+            throws UserStoreException {
+        try {
+            write(new RemoteOperation<Object>() {
+                public Object execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                    remoteUserStore.updateRoleName(roleName, newRoleName);
+                    return null;
                 }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
+            });
+        } finally {
+            readCache.clear();
         }
     }
 
@@ -1166,42 +680,14 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     }
 
     @Override
-    public String[] getUserList(String claim, String claimValue, String profileName)
-            throws UserStoreException {
-        String[] users = new String[0];
-        try {
-            users = remoteUserStore.getUserList(claim, claimValue, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().getUserList(claim, claimValue, profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
+    public String[] getUserList(final String claim, final String claimValue,
+            final String profileName) throws UserStoreException {
+        String[] users = read(new RemoteOperation<String[]>() {
+            public String[] execute(WSUserStoreManager remoteUserStore) throws UserStoreException {
+                return remoteUserStore.getUserList(claim, claimValue, profileName);
             }
-        } else {
-            return new String[0];
-        }
-        return users;
+        });
+        return addDomain(users);
     }
 
     @Override
@@ -1222,7 +708,6 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     @Override
     public void setSecondaryUserStoreManager(UserStoreManager userStoreManager) {
         this.secondaryUserStoreManager = userStoreManager;
-
     }
 
     @Override
@@ -1230,4 +715,55 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         return realmConfig;
     }
 
+    /**
+     * Executes a read operation on one of the remote servers
+     */
+    private <T> T read(RemoteOperation<T> operation) throws UserStoreException {
+        try {
+            return balancer.execute(operation);
+        } catch (UserStoreException e) {
+            throw e;
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            throw new UserStoreException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Executes a write operation on all the remote servers
+     */
+    private void write(RemoteOperation<?> operation) throws UserStoreException {
+        try {
+            balancer.executeOnAll(operation);
+        } catch (UserStoreException e) {
+            throw e;
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            throw new UserStoreException(e.getMessage(), e);
+        }
+    }
+
+    private String[] addDomain(String[] names) {
+        if (names == null) {
+            return new String[0];
+        }
+        for (int i = 0; i < names.length; i++) {
+            names[i] = domainName + "/" + names[i];
+        }
+        return names;
+    }
+
+    private static String getCacheUserName(String userName) {
+        return userName == null ? null : UserCoreUtil.removeDomainFromName(userName);
+    }
+
+    private static long getLongProperty(RealmConfiguration realmConfig, String name, long defaultValue) {
+        String value = realmConfig.getUserStoreProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for the remote user store property " + name + " : " + value);
+            }
+        }
+        return defaultValue;
+    }
 }
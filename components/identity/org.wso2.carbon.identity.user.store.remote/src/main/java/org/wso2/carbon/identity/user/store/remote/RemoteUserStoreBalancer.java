@@ -0,0 +1,279 @@
+package org.wso2.carbon.identity.user.store.remote;
+
+import java.lang.ref.WeakReference;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.um.ws.api.WSUserStoreManager;
+import org.wso2.carbon.user.api.UserStoreException;
+
+/**
+ * Spreads the operations on a remote user store across all of its servers. Read operations are sent to
+ * one server, chosen either in round robin order or as the one with the least latency, and fail over to
+ * the other servers when the server can not be connected. Servers which can not be connected are taken
+ * out of rotation, and are put back once a background health check finds them reachable again.
+ *
+ * The health checks of all the balancers run on a single shared thread. A balancer is only weakly
+ * referenced by its health check, so the check stops once the user store manager owning the balancer
+ * is no longer used, even if {@link #shutdown()} is never called.
+ */
+public class RemoteUserStoreBalancer {
+
+    public static final String ROUND_ROBIN = "RoundRobin";
+    public static final String LEAST_LATENCY = "LeastLatency";
+
+    private static Log log = LogFactory.getLog(RemoteUserStoreBalancer.class);
+    private static final String CONNECTION_REFUSED = "Connection refused";
+
+    // weight of the latest call in the moving average of the latency of a server
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private List<RemoteServer> servers = new ArrayList<RemoteServer>();
+    private boolean leastLatency;
+    private AtomicInteger nextServer = new AtomicInteger();
+    private HealthCheck healthCheck;
+
+    private static ScheduledExecutorService healthChecker;
+
+    /**
+     * Operation on a single remote server
+     */
+    public interface RemoteOperation<T> {
+
+        T execute(WSUserStoreManager remoteUserStore) throws UserStoreException;
+    }
+
+    /**
+     *
+     * @param remoteServers remote user store of each server URL
+     * @param loadBalancing {@link #ROUND_ROBIN} or {@link #LEAST_LATENCY}
+     * @param healthCheckInterval interval between health checks in milliseconds, or 0 to disable
+     */
+    public RemoteUserStoreBalancer(Map<String, WSUserStoreManager> remoteServers, String loadBalancing,
+            long healthCheckInterval) {
+
+        for (Entry<String, WSUserStoreManager> remoteServer : remoteServers.entrySet()) {
+            servers.add(new RemoteServer(remoteServer.getKey(), remoteServer.getValue()));
+        }
+        leastLatency = LEAST_LATENCY.equalsIgnoreCase(loadBalancing);
+
+        if (healthCheckInterval > 0) {
+            healthCheck = new HealthCheck(this);
+            healthCheck.future = getHealthChecker().scheduleWithFixedDelay(healthCheck, healthCheckInterval,
+                    healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getHealthChecker() {
+        if (healthChecker == null) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RemoteUserStoreHealthChecker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return healthChecker;
+    }
+
+    /**
+     * Executes the operation on the selected server, failing over to the other servers if it can not
+     * be connected.
+     *
+     * @param operation
+     * @return result of the operation
+     * @throws UserStoreException
+     */
+    public <T> T execute(RemoteOperation<T> operation) throws UserStoreException {
+        UserStoreException connectionError = null;
+        for (RemoteServer server : getCandidates()) {
+            long startTime = System.nanoTime();
+            try {
+                T result = operation.execute(server.remoteUserStore);
+                server.recordSuccess(System.nanoTime() - startTime);
+                return result;
+            } catch (UserStoreException e) {
+                if (!isConnectionFailure(e)) {
+                    throw e;
+                }
+                server.markDown();
+                log.error("Failed to connect to the remote server : " + server.url);
+                connectionError = e;
+            }
+        }
+        if (connectionError != null) {
+            throw connectionError;
+        }
+        throw new UserStoreException("No remote server is configured");
+    }
+
+    /**
+     * Executes the operation on every server, skipping the servers which can not be connected.
+     *
+     * @param operation
+     * @throws UserStoreException
+     */
+    public void executeOnAll(RemoteOperation<?> operation) throws UserStoreException {
+        for (RemoteServer server : servers) {
+            try {
+                operation.execute(server.remoteUserStore);
+            } catch (UserStoreException e) {
+                if (!isConnectionFailure(e)) {
+                    throw e;
+                }
+                server.markDown();
+                log.error("Failed to update the remote server : " + server.url);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return the remote user store which would serve the next read operation
+     */
+    public WSUserStoreManager getRemoteUserStore() {
+        List<RemoteServer> candidates = getCandidates();
+        return candidates.isEmpty() ? null : candidates.get(0).remoteUserStore;
+    }
+
+    /**
+     * Stops the health check of this balancer
+     */
+    public void shutdown() {
+        if (healthCheck != null) {
+            healthCheck.cancel();
+        }
+    }
+
+    /**
+     * Servers in the order they are to be tried. Servers which are down are only tried when all the
+     * others have failed.
+     */
+    private List<RemoteServer> getCandidates() {
+        List<RemoteServer> available = new ArrayList<RemoteServer>();
+        List<RemoteServer> down = new ArrayList<RemoteServer>();
+        for (RemoteServer server : servers) {
+            if (server.up) {
+                available.add(server);
+            } else {
+                down.add(server);
+            }
+        }
+
+        if (leastLatency) {
+            Collections.sort(available, new Comparator<RemoteServer>() {
+                public int compare(RemoteServer server1, RemoteServer server2) {
+                    return Double.compare(server1.latency, server2.latency);
+                }
+            });
+        } else if (available.size() > 1) {
+            int first = (nextServer.getAndIncrement() & Integer.MAX_VALUE) % available.size();
+            Collections.rotate(available, -first);
+        }
+
+        available.addAll(down);
+        return available;
+    }
+
+    private void checkHealth() {
+        for (RemoteServer server : servers) {
+            long startTime = System.nanoTime();
+            try {
+                server.remoteUserStore.isReadOnly();
+                server.recordSuccess(System.nanoTime() - startTime);
+            } catch (UserStoreException e) {
+                if (isConnectionFailure(e)) {
+                    server.markDown();
+                } else {
+                    // the server responded, so it is reachable
+                    server.recordSuccess(System.nanoTime() - startTime);
+                }
+            } catch (RuntimeException e) {
+                log.error("Error while checking the health of the remote server : " + server.url, e);
+            }
+        }
+    }
+
+    private static boolean isConnectionFailure(UserStoreException e) {
+        if (CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Health check of a balancer, which cancels itself once the balancer is no longer referenced
+     */
+    private static class HealthCheck implements Runnable {
+
+        private WeakReference<RemoteUserStoreBalancer> balancer;
+        private volatile ScheduledFuture<?> future;
+
+        private HealthCheck(RemoteUserStoreBalancer balancer) {
+            this.balancer = new WeakReference<RemoteUserStoreBalancer>(balancer);
+        }
+
+        public void run() {
+            RemoteUserStoreBalancer remoteUserStoreBalancer = balancer.get();
+            if (remoteUserStoreBalancer == null) {
+                cancel();
+                return;
+            }
+            remoteUserStoreBalancer.checkHealth();
+        }
+
+        private void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static class RemoteServer {
+
+        private String url;
+        private WSUserStoreManager remoteUserStore;
+        private volatile boolean up = true;
+        // moving average of the latency in nanoseconds
+        private volatile double latency;
+
+        private RemoteServer(String url, WSUserStoreManager remoteUserStore) {
+            this.url = url;
+            this.remoteUserStore = remoteUserStore;
+        }
+
+        private void recordSuccess(long callLatency) {
+            if (!up) {
+                up = true;
+                log.info("Remote server is back in rotation : " + url);
+            }
+            latency = latency == 0 ? callLatency : latency + LATENCY_WEIGHT * (callLatency - latency);
+        }
+
+        private void markDown() {
+            if (up) {
+                up = false;
+                log.warn("Remote server is taken out of rotation : " + url);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.wso2.carbon.identity.user.store.remote;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.wso2.carbon.user.core.claim.Claim;
+
+/**
+ * Local cache of the results of read only operations on a remote user store. Entries expire after the
+ * configured timeout, and the least recently used entries are evicted beyond the configured size.
+ * Entries of a user are keyed with the user name as prefix, so that they can be invalidated when the
+ * user is changed. Arrays, maps and claims are copied when they are put and returned, so that callers
+ * can not change the cached values.
+ */
+public class RemoteUserStoreReadCache {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private Map<String, CacheEntry> entries;
+    private long timeout;
+
+    /**
+     *
+     * @param timeout time in milliseconds an entry is kept. Caching is disabled if not positive.
+     * @param maxSize maximum number of entries
+     */
+    public RemoteUserStoreReadCache(long timeout, final int maxSize) {
+        this.timeout = timeout;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return timeout > 0;
+    }
+
+    /**
+     *
+     * @param userName
+     * @param parts operation and its arguments
+     * @return key of an entry of the user
+     */
+    public static String getUserKey(String userName, Object... parts) {
+        StringBuilder key = new StringBuilder("user").append(KEY_SEPARATOR).append(userName)
+                .append(KEY_SEPARATOR);
+        appendParts(key, parts);
+        return key.toString();
+    }
+
+    /**
+     *
+     * @param parts operation and its arguments
+     * @return key of an entry which does not belong to a user
+     */
+    public static String getKey(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        appendParts(key, parts);
+        return key.toString();
+    }
+
+    public synchronized Object get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiryTime < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return copy(entry.value);
+    }
+
+    public synchronized void put(String key, Object value) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+        entries.put(key, new CacheEntry(copy(value), System.currentTimeMillis() + timeout));
+    }
+
+    /**
+     * Removes all the entries of the user
+     *
+     * @param userName
+     */
+    public synchronized void invalidateUser(String userName) {
+        String prefix = getUserKey(userName);
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Claim[]) {
+            Claim[] claims = (Claim[]) value;
+            Claim[] copies = new Claim[claims.length];
+            for (int i = 0; i < claims.length; i++) {
+                copies[i] = copyClaim(claims[i]);
+            }
+            return copies;
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        } else if (value instanceof Map) {
+            return new HashMap<Object, Object>((Map<?, ?>) value);
+        }
+        // strings and booleans are immutable
+        return value;
+    }
+
+    private static Claim copyClaim(Claim claim) {
+        if (claim == null) {
+            return null;
+        }
+        Claim copy = new Claim();
+        copy.setClaimUri(claim.getClaimUri());
+        copy.setValue(claim.getValue());
+        copy.setDisplayTag(claim.getDisplayTag());
+        copy.setDescription(claim.getDescription());
+        copy.setDialectURI(claim.getDialectURI());
+        copy.setRegEx(claim.getRegEx());
+        copy.setRequired(claim.isRequired());
+        copy.setSupportedByDefault(claim.isSupportedByDefault());
+        copy.setDisplayOrder(claim.getDisplayOrder());
+        copy.setCheckedAttribute(claim.isCheckedAttribute());
+        copy.setReadOnly(claim.isReadOnly());
+        return copy;
+    }
+
+    private static void appendParts(StringBuilder key, Object[] parts) {
+        for (Object part : parts) {
+            if (part instanceof Object[]) {
+                Object[] values = (Object[]) part;
+                key.append('[').append(values.length).append(']');
+                for (Object value : values) {
+                    appendPart(key, value);
+                }
+            } else {
+                appendPart(key, part);
+            }
+        }
+    }
+
+    // length prefixed, so that the parts can not run into each other
+    private static void appendPart(StringBuilder key, Object part) {
+        if (part == null) {
+            key.append("-1:");
+        } else {
+            String value = String.valueOf(part);
+            key.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static class CacheEntry {
+
+        private Object value;
+        private long expiryTime;
+
+        private CacheEntry(Object value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
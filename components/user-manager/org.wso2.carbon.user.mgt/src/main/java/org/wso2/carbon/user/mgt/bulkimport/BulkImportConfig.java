@@ -23,6 +23,7 @@ public class BulkImportConfig {
     private InputStream inStream;
     private String fileName;
     private String defaultPassword;
+    private int startRow = 1;
 
     public BulkImportConfig(InputStream inStream, String fileName) {
         this.inStream = inStream;
@@ -45,6 +46,22 @@ public class BulkImportConfig {
         this.defaultPassword = defaultPassword;
     }
 
+    /**
+     * @return the first row to import, starting from 1 for the first row after the header
+     */
+    public int getStartRow() {
+        return startRow;
+    }
+
+    /**
+     * Sets the row to resume an import from. The users of the rows before it are not imported.
+     *
+     * @param startRow row starting from 1 for the first row after the header
+     */
+    public void setStartRow(int startRow) {
+        this.startRow = startRow;
+    }
+
     public InputStream getInStream() {
         return inStream;
     }
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2005-2007 WSO2, Inc. (http://wso2.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.user.mgt.bulkimport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.ServerConfiguration;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.mgt.common.UserAdminException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds the users read by a bulk import on a bounded pool of workers. The reader is made to add the
+ * user itself when all the workers are busy and the queue is full, so that a large file is never
+ * buffered in memory. A failed row is recorded and the import continues with the next one.
+ */
+public class BulkUserImporter {
+
+    private static Log log = LogFactory.getLog(BulkUserImporter.class);
+
+    private static final String WORKER_COUNT = "UserBulkImport.WorkerCount";
+    private static final int DEFAULT_WORKER_COUNT = 4;
+    private static final int QUEUE_SIZE_PER_WORKER = 100;
+    private static final int PROGRESS_INTERVAL = 10000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int MAX_ERRORS_IN_MESSAGE = 10;
+
+    private UserStoreManager userStore;
+    private String password;
+    private int startRow;
+    private ThreadPoolExecutor executor;
+
+    private AtomicInteger processedCount = new AtomicInteger();
+    private AtomicInteger addedCount = new AtomicInteger();
+    private AtomicInteger duplicateCount = new AtomicInteger();
+    private AtomicInteger failedCount = new AtomicInteger();
+    private List<String> errors = new ArrayList<String>();
+    private String lastError = "UNKNOWN";
+
+    // rows are read in order, so all the rows before the first one in progress are processed
+    private int lastReadRow;
+    private TreeSet<Integer> rowsInProgress = new TreeSet<Integer>();
+
+    private int tenantId;
+    private String tenantDomain;
+
+    public BulkUserImporter(UserStoreManager userStore, BulkImportConfig config) {
+        this.userStore = userStore;
+        this.password = config.getDefaultPassword();
+        this.startRow = config.getStartRow();
+        this.lastReadRow = startRow - 1;
+
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        this.tenantId = carbonContext.getTenantId();
+        this.tenantDomain = carbonContext.getTenantDomain();
+
+        int workerCount = getWorkerCount();
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(workerCount * QUEUE_SIZE_PER_WORKER),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Adds the user of a row unless it already exists
+     *
+     * @param row number of the row, starting from 1 for the first row after the header. Rows are to
+     * be added in increasing order.
+     * @param userName user name read from the row
+     */
+    public void addUser(final int row, final String userName) {
+        if (row < startRow) {
+            return;
+        }
+        synchronized (this) {
+            rowsInProgress.add(row);
+            lastReadRow = row;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    PrivilegedCarbonContext.startTenantFlow();
+                    PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                    carbonContext.setTenantId(tenantId);
+                    carbonContext.setTenantDomain(tenantDomain);
+                    doAddUser(row, userName);
+                } finally {
+                    PrivilegedCarbonContext.endTenantFlow();
+                    processed(row);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the users of all the rows read are added
+     */
+    public void awaitCompletion() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+            logProgress();
+        }
+    }
+
+    /**
+     * @throws UserAdminException if any of the users could not be added, or already existed
+     */
+    public void reportResult() throws UserAdminException {
+        log.info("Bulk user import completed. Added : " + addedCount.get() + ", duplicates : "
+                + duplicateCount.get() + ", failed : " + failedCount.get());
+
+        boolean fail = failedCount.get() > 0;
+        boolean success = addedCount.get() > 0;
+        if (fail && success) {
+            throw new UserAdminException("Error occurs while importing user names. " +
+                    "Some user names were successfully imported. Some were not. Last error was : " +
+                    lastError + getErrorReport());
+        }
+
+        if (fail && !success) {
+            throw new UserAdminException("Error occurs while importing user names. " +
+                    "All user names were not imported. Last error was : " + lastError + getErrorReport());
+        }
+        if (duplicateCount.get() > 0) {
+            throw new UserAdminException("Detected duplicate user names. " +
+                    "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
+        }
+    }
+
+    /**
+     * @return the row up to which all the rows have been processed. An import can be resumed from the
+     * next row with {@link BulkImportConfig#setStartRow(int)}.
+     */
+    public synchronized int getCheckpoint() {
+        return rowsInProgress.isEmpty() ? lastReadRow : rowsInProgress.first() - 1;
+    }
+
+    /**
+     * @return failed rows, with the user name and the error of each
+     */
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<String>(errors);
+        }
+    }
+
+    public int getAddedCount() {
+        return addedCount.get();
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    private void doAddUser(int row, String userName) {
+        if (userName == null || userName.trim().length() == 0) {
+            return;
+        }
+        try {
+            if (!userStore.isExistingUser(userName)) {
+                userStore.addUser(userName, password, null, null, null, true);
+                addedCount.incrementAndGet();
+            } else {
+                duplicateCount.incrementAndGet();
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug(e);
+            }
+            failedCount.incrementAndGet();
+            String error = "Row " + row + " (" + userName + ") : " + e.getMessage();
+            log.error("Bulk user import failed at " + error);
+            synchronized (errors) {
+                lastError = e.getMessage();
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+    }
+
+    private void processed(int row) {
+        synchronized (this) {
+            rowsInProgress.remove(row);
+        }
+        if (processedCount.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+            logProgress();
+        }
+    }
+
+    private void logProgress() {
+        log.info("Bulk user import in progress. Processed rows : " + processedCount.get() + ", added : "
+                + addedCount.get() + ", duplicates : " + duplicateCount.get() + ", failed : "
+                + failedCount.get() + ". All rows up to " + getCheckpoint() + " are processed");
+    }
+
+    private String getErrorReport() {
+        List<String> reportedErrors = getErrors();
+        StringBuilder report = new StringBuilder(". Failed rows : ").append(failedCount.get());
+        for (int i = 0; i < reportedErrors.size() && i < MAX_ERRORS_IN_MESSAGE; i++) {
+            report.append("\n").append(reportedErrors.get(i));
+        }
+        return report.toString();
+    }
+
+    private static int getWorkerCount() {
+        String workerCount = ServerConfiguration.getInstance().getFirstProperty(WORKER_COUNT);
+        if (workerCount != null && workerCount.trim().length() > 0) {
+            try {
+                return Math.max(Integer.parseInt(workerCount.trim()), 1);
+            } catch (NumberFormatException e) {
+                log.error("Invalid value for " + WORKER_COUNT + " : " + workerCount, e);
+            }
+        }
+        return DEFAULT_WORKER_COUNT;
+    }
+}
@@ -39,47 +39,20 @@ public class CSVUserBulkImport {
 
     public void addUserList(UserStoreManager userStore) throws UserAdminException {
         try {
+            // lines are read one at a time, as the importer takes them
             CSVReader csvReader = new CSVReader(reader, ',', '"', 1);
-            String password = config.getDefaultPassword();
-            String[] line = csvReader.readNext();
-            boolean isDuplicate = false;
-            boolean fail = false;
-            boolean success = false;
-            String lastError = "UNKNOWN";
-            while (line != null && line.length > 0) {
-                String userName = line[0];
-                if(userName != null && userName.trim().length() > 0){
-                    try{
-                        if (!userStore.isExistingUser(userName)) {
-                            userStore.addUser(userName, password, null, null, null, true);
-                            success = true;
-                        } else {
-                            isDuplicate = true;
-                        }
-                    } catch (Exception e){
-                        if(log.isDebugEnabled()) {
-                            log.debug(e);
-                        }
-                        lastError = e.getMessage();
-                        fail = true;
-                    }
+            BulkUserImporter importer = new BulkUserImporter(userStore, config);
+            try {
+                String[] line = csvReader.readNext();
+                int row = 1;
+                while (line != null && line.length > 0) {
+                    importer.addUser(row++, line[0]);
+                    line = csvReader.readNext();
                 }
-                line = csvReader.readNext();
-            }
-
-            if (fail && success) {
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "Some user names were successfully imported. Some were not. Last error was : " + lastError);
-            }
-
-            if(fail && !success){
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "All user names were not imported. Last error was : " + lastError);
-            }
-            if (isDuplicate) {
-                throw new UserAdminException("Detected duplicate user names. " +
-                        "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
+            } finally {
+                importer.awaitCompletion();
             }
+            importer.reportResult();
         } catch (UserAdminException e) {
             throw e;
         } catch (Throwable e) {
@@ -18,22 +18,40 @@ package org.wso2.carbon.user.mgt.bulkimport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.mgt.common.UserAdminException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.SAXParserFactory;
 import java.io.InputStream;
+import java.util.Iterator;
 
+/**
+ * Imports the user names in the first column of the first sheet of a workbook. The sheet is read with
+ * the event APIs of POI, one cell at a time, instead of loading the whole workbook in to memory.
+ */
 public class ExcelUserBulkImport {
 
     private static Log log = LogFactory.getLog(ExcelUserBulkImport.class);
-    
+
     private BulkImportConfig config;
 
     public ExcelUserBulkImport(BulkImportConfig config) {
@@ -43,53 +61,22 @@ public class ExcelUserBulkImport {
 
     public void addUserList(UserStoreManager userStore) throws UserAdminException {
         try {
-            Workbook wb = this.createWorkbook();
-            Sheet sheet = wb.getSheet(wb.getSheetName(0));
-            String password = config.getDefaultPassword();
-           
-            if (sheet == null || sheet.getLastRowNum() == -1) {
-                throw new UserAdminException("The first sheet is empty");
-            }
-            int limit = sheet.getLastRowNum();
-            boolean isDuplicate = false;
-            boolean fail = false;
-            boolean success = false;
-            String lastError = "UNKNOWN";
-            for (int i = 1; i < limit+1; i++) {
-                Row row = sheet.getRow(i);
-                Cell cell = row.getCell(0);
-                String userName = cell.getStringCellValue();
-                if(userName != null && userName.trim().length() > 0){
-                    try{
-                        if (!userStore.isExistingUser(userName)) {
-                            userStore.addUser(userName, password, null, null, null, true);
-                            success = true;
-                        } else {
-                            isDuplicate = true;
-                        }
-                    } catch (Exception e){
-                        if(log.isDebugEnabled()) {
-                            log.debug(e);
-                        }
-                        lastError = e.getMessage();
-                        fail = true;
-                    }
+            BulkUserImporter importer = new BulkUserImporter(userStore, config);
+            boolean hasRows;
+            try {
+                if (config.getFileName().endsWith(".xlsx")) {
+                    hasRows = readXSSF(importer);
+                } else {
+                    hasRows = readHSSF(importer);
                 }
-            }
-            
-            if (fail && success) {
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "Some user names were successfully imported. Some were not. Last error was : " + lastError);
+            } finally {
+                importer.awaitCompletion();
             }
 
-            if(fail && !success){
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "All user names were not imported. Last error was : " + lastError);
+            if (!hasRows) {
+                throw new UserAdminException("The first sheet is empty");
             }
-            if (isDuplicate) {
-                throw new UserAdminException("Detected duplicate user names. " +
-                        "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
-            }            
+            importer.reportResult();
         } catch (UserAdminException e) {
             throw e;
         } catch (Throwable e) {
@@ -98,6 +85,9 @@ public class ExcelUserBulkImport {
         }
     }
 
+    /**
+     * Loads the whole workbook in to memory. Bulk import reads the workbook as a stream instead.
+     */
     public Workbook createWorkbook() throws Throwable {
         String filename = config.getFileName();
         InputStream ins = config.getInStream();
@@ -116,4 +106,153 @@ public class ExcelUserBulkImport {
         return wb;
     }
 
+    private boolean readXSSF(BulkUserImporter importer) throws Exception {
+        OPCPackage pkg = OPCPackage.open(config.getInStream());
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return false;
+            }
+
+            InputStream sheet = sheets.next();
+            try {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+                XSSFSheetHandler handler = new XSSFSheetHandler(importer, sharedStrings);
+                xmlReader.setContentHandler(handler);
+                xmlReader.parse(new InputSource(sheet));
+                return handler.hasRows;
+            } finally {
+                sheet.close();
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private boolean readHSSF(BulkUserImporter importer) throws Exception {
+        HSSFSheetListener listener = new HSSFSheetListener(importer);
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        new HSSFEventFactory().processWorkbookEvents(request, new POIFSFileSystem(config.getInStream()));
+        return listener.hasRows;
+    }
+
+    /**
+     * Reads the user names from the first column of an xlsx sheet
+     */
+    private static class XSSFSheetHandler extends DefaultHandler {
+
+        private BulkUserImporter importer;
+        private ReadOnlySharedStringsTable sharedStrings;
+        private boolean hasRows;
+        private int rowIndex = -1;
+        private boolean inFirstColumn;
+        private String cellType;
+        private boolean inValue;
+        private StringBuilder value = new StringBuilder();
+
+        private XSSFSheetHandler(BulkUserImporter importer, ReadOnlySharedStringsTable sharedStrings) {
+            this.importer = importer;
+            this.sharedStrings = sharedStrings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("row".equals(localName)) {
+                hasRows = true;
+                String rowNumber = attributes.getValue("r");
+                // row numbers start from 1, and the first row is the header
+                rowIndex = rowNumber != null ? Integer.parseInt(rowNumber) - 1 : rowIndex + 1;
+            } else if ("c".equals(localName)) {
+                String reference = attributes.getValue("r");
+                inFirstColumn = reference == null || isFirstColumn(reference);
+                cellType = attributes.getValue("t");
+                value.setLength(0);
+            } else if ("v".equals(localName) || "t".equals(localName)) {
+                inValue = inFirstColumn;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("v".equals(localName) || "t".equals(localName)) {
+                inValue = false;
+            } else if ("c".equals(localName) && inFirstColumn) {
+                inFirstColumn = false;
+                if (rowIndex > 0) {
+                    String userName = value.toString();
+                    if ("s".equals(cellType) && userName.length() > 0) {
+                        userName = sharedStrings.getEntryAt(Integer.parseInt(userName));
+                    }
+                    importer.addUser(rowIndex, userName);
+                }
+            }
+        }
+
+        private static boolean isFirstColumn(String reference) {
+            return reference.length() > 1 && reference.charAt(0) == 'A'
+                    && Character.isDigit(reference.charAt(1));
+        }
+    }
+
+    /**
+     * Reads the user names from the first column of the first sheet of an xls workbook
+     */
+    private static class HSSFSheetListener implements HSSFListener {
+
+        private BulkUserImporter importer;
+        private SSTRecord sharedStrings;
+        private int sheetIndex = -1;
+        private boolean hasRows;
+
+        private HSSFSheetListener(BulkUserImporter importer) {
+            this.importer = importer;
+        }
+
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        sheetIndex++;
+                    }
+                    break;
+                case SSTRecord.sid:
+                    sharedStrings = (SSTRecord) record;
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord labelSST = (LabelSSTRecord) record;
+                    addUser(labelSST.getRow(), labelSST.getColumn(),
+                            sharedStrings.getString(labelSST.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord label = (LabelRecord) record;
+                    addUser(label.getRow(), label.getColumn(), label.getValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void addUser(int row, int column, String userName) {
+            if (sheetIndex != 0) {
+                return;
+            }
+            hasRows = true;
+            // the first row is the header
+            if (column == 0 && row > 0) {
+                importer.addUser(row, userName);
+            }
+        }
+    }
 }
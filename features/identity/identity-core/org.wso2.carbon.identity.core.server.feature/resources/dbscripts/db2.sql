@@ -64,6 +64,33 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 /
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE)
 /
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED)
+/
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED)
+/
+CREATE TABLE IDN_OAUTH2_AUTHORIZATION_CODE_ARCHIVE (
+            AUTHORIZATION_CODE VARCHAR (512) NOT NULL,
+            CONSUMER_KEY VARCHAR (512),
+	        CALLBACK_URL VARCHAR (1024),
+            SCOPE VARCHAR(2048),
+            AUTHZ_USER VARCHAR (512),
+            TIME_CREATED TIMESTAMP,
+            VALIDITY_PERIOD BIGINT,
+            PRIMARY KEY (AUTHORIZATION_CODE))
+/
+CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN_ARCHIVE (
+			ACCESS_TOKEN VARCHAR (255) NOT NULL,
+			REFRESH_TOKEN VARCHAR (255),
+			CONSUMER_KEY VARCHAR (150) NOT NULL,
+			AUTHZ_USER VARCHAR (150) NOT NULL,
+			USER_TYPE VARCHAR (25) NOT NULL,
+			TIME_CREATED TIMESTAMP,
+			VALIDITY_PERIOD BIGINT,
+			TOKEN_SCOPE VARCHAR (25) NOT NULL,
+			TOKEN_STATE VARCHAR (25) DEFAULT 'ACTIVE' NOT NULL,
+			TOKEN_STATE_ID VARCHAR (150) DEFAULT 'NONE' NOT NULL,
+			PRIMARY KEY (ACCESS_TOKEN))
+/
 CREATE TABLE IDN_OAUTH2_SCOPE (
             SCOPE_ID INTEGER NOT NULL,
             SCOPE_KEY VARCHAR (100) NOT NULL,
@@ -71,6 +71,35 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE);
 
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED);
+
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED);
+
+CREATE TABLE IDN_OAUTH2_AUTHORIZATION_CODE_ARCHIVE (
+            AUTHORIZATION_CODE LVARCHAR(255),
+            CONSUMER_KEY LVARCHAR(255),
+	        CALLBACK_URL LVARCHAR(1024),
+            SCOPE LVARCHAR(2048),
+            AUTHZ_USER LVARCHAR(512),
+	        TIME_CREATED DATETIME YEAR TO SECOND,
+	        VALIDITY_PERIOD BIGINT,
+            PRIMARY KEY (AUTHORIZATION_CODE)
+);
+
+CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN_ARCHIVE (
+			ACCESS_TOKEN LVARCHAR(255),
+			REFRESH_TOKEN LVARCHAR(255),
+			CONSUMER_KEY LVARCHAR(255),
+			AUTHZ_USER LVARCHAR(100),
+			USER_TYPE LVARCHAR (25),
+			TIME_CREATED DATETIME YEAR TO SECOND,
+			VALIDITY_PERIOD BIGINT,
+			TOKEN_SCOPE LVARCHAR(2048),
+			TOKEN_STATE LVARCHAR(25) DEFAULT 'ACTIVE',
+			TOKEN_STATE_ID LVARCHAR (255) DEFAULT 'NONE',
+			PRIMARY KEY (ACCESS_TOKEN)
+);
+
 CREATE TABLE IDN_OAUTH2_SCOPE (
             SCOPE_ID SERIAL UNIQUE,
             SCOPE_KEY LVARCHAR(100) NOT NULL,
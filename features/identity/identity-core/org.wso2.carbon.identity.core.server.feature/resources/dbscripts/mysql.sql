@@ -70,6 +70,35 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE);
 
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED);
+
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED);
+
+CREATE TABLE IDN_OAUTH2_AUTHORIZATION_CODE_ARCHIVE (
+            AUTHORIZATION_CODE VARCHAR(255),
+            CONSUMER_KEY VARCHAR(255),
+	        CALLBACK_URL VARCHAR(1024),
+            SCOPE VARCHAR(2048),
+            AUTHZ_USER VARCHAR(512),
+	        TIME_CREATED TIMESTAMP,
+	        VALIDITY_PERIOD BIGINT,
+            PRIMARY KEY (AUTHORIZATION_CODE)
+)ENGINE INNODB;
+
+CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN_ARCHIVE (
+			ACCESS_TOKEN VARCHAR(255),
+			REFRESH_TOKEN VARCHAR(255),
+			CONSUMER_KEY VARCHAR(255),
+			AUTHZ_USER VARCHAR(100),
+			USER_TYPE VARCHAR (25),
+			TIME_CREATED TIMESTAMP DEFAULT 0,
+			VALIDITY_PERIOD BIGINT,
+			TOKEN_SCOPE VARCHAR(25),
+			TOKEN_STATE VARCHAR(25) DEFAULT 'ACTIVE',
+			TOKEN_STATE_ID VARCHAR (255) DEFAULT 'NONE',
+			PRIMARY KEY (ACCESS_TOKEN)
+)ENGINE INNODB;
+
 CREATE TABLE IF NOT EXISTS IDN_OAUTH2_SCOPE (
             SCOPE_ID INT(11) NOT NULL AUTO_INCREMENT,
             SCOPE_KEY VARCHAR(100) NOT NULL,
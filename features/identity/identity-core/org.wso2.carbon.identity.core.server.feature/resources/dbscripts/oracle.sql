@@ -64,6 +64,33 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 /
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE)
 /
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED)
+/
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED)
+/
+CREATE TABLE IDN_OAUTH2_AUTHORIZATION_CODE_ARCHIVE (
+            AUTHORIZATION_CODE VARCHAR2 (512),
+            CONSUMER_KEY VARCHAR2 (512),
+	        CALLBACK_URL VARCHAR2 (1024),
+            SCOPE VARCHAR2(2048),
+            AUTHZ_USER VARCHAR2 (512),
+            TIME_CREATED TIMESTAMP,
+            VALIDITY_PERIOD NUMBER(19),
+            PRIMARY KEY (AUTHORIZATION_CODE))
+/
+CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN_ARCHIVE (
+			ACCESS_TOKEN VARCHAR2 (255),
+			REFRESH_TOKEN VARCHAR2 (255),
+			CONSUMER_KEY VARCHAR2 (255),
+			AUTHZ_USER VARCHAR2 (255),
+			USER_TYPE VARCHAR (25),
+			TIME_CREATED TIMESTAMP,
+			VALIDITY_PERIOD NUMBER(19),
+			TOKEN_SCOPE VARCHAR2 (2048),
+			TOKEN_STATE VARCHAR2 (25) DEFAULT 'ACTIVE',
+			TOKEN_STATE_ID VARCHAR (256) DEFAULT 'NONE',
+			PRIMARY KEY (ACCESS_TOKEN))
+/
 CREATE TABLE IDN_OAUTH2_SCOPE (
             SCOPE_ID INTEGER,
             SCOPE_KEY VARCHAR2 (100) NOT NULL,